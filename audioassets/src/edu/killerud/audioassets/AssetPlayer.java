@@ -0,0 +1,101 @@
+package edu.killerud.audioassets;
+
+import android.media.MediaPlayer;
+
+/**
+ * A prepared MediaPlayer for one sound, shared by everyone who acquired that
+ * sound from AudioAssets. Each acquire must be matched by a release() once
+ * the sound is no longer needed, and the player stops playing when the last
+ * one is released.
+ * 
+ * @author William Killerud
+ * 
+ */
+public class AssetPlayer
+{
+	private final AudioAssets mAssets;
+	private final String mAsset;
+	private final boolean mLooping;
+	private final LatencyStats mTriggerLatency;
+
+	/* Null once the MediaPlayer has been released */
+	MediaPlayer mPlayer;
+	int mReferences;
+
+	AssetPlayer(AudioAssets assets, String asset, MediaPlayer player,
+			boolean looping, LatencyStats triggerLatency)
+	{
+		mAssets = assets;
+		mAsset = asset;
+		mPlayer = player;
+		mLooping = looping;
+		mTriggerLatency = triggerLatency;
+	}
+
+	/*
+	 * Plays the sound from the start. A looping sound that is already playing
+	 * just keeps playing, so several alarms going off sound like one.
+	 */
+	public void play()
+	{
+		synchronized (mAssets)
+		{
+			checkAcquired();
+			long start = System.nanoTime();
+			if (mLooping && mPlayer.isPlaying())
+			{
+				return;
+			}
+			mPlayer.seekTo(0);
+			mPlayer.start();
+			mTriggerLatency.record(System.nanoTime() - start);
+		}
+	}
+
+	/* Stops the sound, and rewinds it for the next time it is played */
+	public void stop()
+	{
+		synchronized (mAssets)
+		{
+			checkAcquired();
+			rewind();
+		}
+	}
+
+	public boolean isPlaying()
+	{
+		synchronized (mAssets)
+		{
+			return mPlayer != null && mPlayer.isPlaying();
+		}
+	}
+
+	/* Gives up this reference to the player. Must not be used afterwards */
+	public void release()
+	{
+		mAssets.release(this);
+	}
+
+	/* Which sound this is, as the latency is reported for it */
+	public String getAsset()
+	{
+		return mAsset;
+	}
+
+	void rewind()
+	{
+		if (mPlayer.isPlaying())
+		{
+			mPlayer.pause();
+		}
+		mPlayer.seekTo(0);
+	}
+
+	private void checkAcquired()
+	{
+		if (mReferences == 0 || mPlayer == null)
+		{
+			throw new IllegalStateException(mAsset + " has been released");
+		}
+	}
+}
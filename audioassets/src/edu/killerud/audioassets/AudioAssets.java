@@ -0,0 +1,298 @@
+package edu.killerud.audioassets;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.AudioManager;
+import android.media.MediaPlayer;
+import android.net.Uri;
+import android.util.Log;
+
+/**
+ * Hands out prepared players for the sounds of an app, so that a sound played
+ * over and over, or from several places at once, is only ever opened and
+ * prepared once. Players are counted by reference: acquiring a sound that is
+ * already open just returns its player, and the player lives until the last
+ * one who acquired it releases it.
+ * 
+ * A player nobody holds is kept prepared a while longer, since the one who
+ * let go of it is often just about to ask for it again, like an activity that
+ * is recreated when the screen rotates. Only a few are kept like that, and
+ * trim() lets go of them at once, for when memory is low.
+ * 
+ * How long each sound took to open and prepare, and to start when it was
+ * played, is kept per sound.
+ * 
+ * @author William Killerud
+ * 
+ */
+public class AudioAssets
+{
+	private static final String TAG = "AudioAssets";
+
+	/* How many players nobody holds are kept prepared */
+	private static final int DEFAULT_MAX_IDLE = 2;
+
+	private static AudioAssets sInstance;
+
+	private final Context mContext;
+	private final int mMaxIdle;
+
+	/* Every open player, in use or idle */
+	private final HashMap<String, AssetPlayer> mPlayers = new HashMap<String, AssetPlayer>();
+	/* The idle ones, least recently used first */
+	private final LinkedHashMap<String, AssetPlayer> mIdle = new LinkedHashMap<String, AssetPlayer>();
+
+	private final LinkedHashMap<String, LatencyStats> mStartupLatency = new LinkedHashMap<String, LatencyStats>();
+	private final HashMap<String, LatencyStats> mTriggerLatency = new HashMap<String, LatencyStats>();
+
+	public AudioAssets(Context context, int maxIdle)
+	{
+		mContext = context.getApplicationContext();
+		mMaxIdle = maxIdle;
+	}
+
+	/*
+	 * The assets of the whole app. Activities and services come and go, but
+	 * the players they share outlive them here.
+	 */
+	public static synchronized AudioAssets get(Context context)
+	{
+		if (sInstance == null)
+		{
+			sInstance = new AudioAssets(context, DEFAULT_MAX_IDLE);
+		}
+		return sInstance;
+	}
+
+	/*
+	 * Acquires a player for a sound in res/raw, on the music stream. Opening
+	 * it may take a while the first time, so avoid doing that right when the
+	 * sound is needed.
+	 */
+	public synchronized AssetPlayer acquire(int rawResource)
+			throws IOException
+	{
+		String asset = "raw/"
+				+ mContext.getResources().getResourceEntryName(rawResource);
+		AssetPlayer player = reuse(asset);
+		if (player != null)
+		{
+			return player;
+		}
+
+		long start = System.nanoTime();
+		MediaPlayer media = open(asset);
+		try
+		{
+			AssetFileDescriptor file = mContext.getResources()
+					.openRawResourceFd(rawResource);
+			try
+			{
+				media.setDataSource(file.getFileDescriptor(), file
+						.getStartOffset(), file.getLength());
+			} finally
+			{
+				file.close();
+			}
+			media.setAudioStreamType(AudioManager.STREAM_MUSIC);
+			media.prepare();
+		} catch (IOException e)
+		{
+			close(media);
+			throw e;
+		} catch (RuntimeException e)
+		{
+			close(media);
+			throw opening(asset, e);
+		}
+		return add(asset, media, false, start);
+	}
+
+	/*
+	 * Acquires a player for a sound at the given address, like a ringtone, on
+	 * the given stream.
+	 */
+	public synchronized AssetPlayer acquire(Uri uri, int streamType,
+			boolean looping) throws IOException
+	{
+		String asset = uri + (looping ? " looping" : "") + " on stream "
+				+ streamType;
+		AssetPlayer player = reuse(asset);
+		if (player != null)
+		{
+			return player;
+		}
+
+		long start = System.nanoTime();
+		MediaPlayer media = open(asset);
+		try
+		{
+			media.setDataSource(mContext, uri);
+			media.setAudioStreamType(streamType);
+			media.setLooping(looping);
+			media.prepare();
+		} catch (IOException e)
+		{
+			close(media);
+			throw e;
+		} catch (RuntimeException e)
+		{
+			/* Like a SecurityException for a sound we may not read */
+			close(media);
+			throw opening(asset, e);
+		}
+		return add(asset, media, looping, start);
+	}
+
+	/* Lets go of the players nobody holds */
+	public synchronized void trim()
+	{
+		for (AssetPlayer player : mIdle.values())
+		{
+			destroy(player);
+		}
+		mIdle.clear();
+	}
+
+	/*
+	 * Releases every player, even those still held, which must not be played
+	 * afterwards. Returns how many were still held, which should be none.
+	 */
+	public synchronized int close()
+	{
+		trim();
+		int held = mPlayers.size();
+		for (AssetPlayer player : new ArrayList<AssetPlayer>(mPlayers.values()))
+		{
+			Log.w(TAG, player.getAsset() + " still held by "
+					+ player.mReferences);
+			destroy(player);
+		}
+		return held;
+	}
+
+	/* How long opening and preparing the sound took, or null if it never was */
+	public synchronized LatencyStats getStartupLatency(String asset)
+	{
+		return mStartupLatency.get(asset);
+	}
+
+	/* How long playing the sound took to start it */
+	public synchronized LatencyStats getTriggerLatency(String asset)
+	{
+		return mTriggerLatency.get(asset);
+	}
+
+	/* Every sound that has been opened, in the order they first were */
+	public synchronized String[] getAssets()
+	{
+		return mStartupLatency.keySet().toArray(
+				new String[mStartupLatency.size()]);
+	}
+
+	/* Logs the startup and trigger latency of every sound */
+	public synchronized void logLatency(String tag)
+	{
+		for (Map.Entry<String, LatencyStats> entry : mStartupLatency
+				.entrySet())
+		{
+			LatencyStats startup = entry.getValue();
+			LatencyStats trigger = mTriggerLatency.get(entry.getKey());
+			Log.d(tag, String.format("%s: startup %.1f ms median of %d, "
+					+ "trigger %.2f ms median, %.2f ms worst of %d", entry
+					.getKey(), startup.getMedianMillis(), startup.getCount(),
+					trigger.getMedianMillis(), trigger.getWorstMillis(),
+					trigger.getCount()));
+		}
+	}
+
+	synchronized void release(AssetPlayer player)
+	{
+		if (player.mReferences == 0 || player.mPlayer == null)
+		{
+			throw new IllegalStateException(player.getAsset()
+					+ " released more often than acquired");
+		}
+		player.mReferences--;
+		if (player.mReferences > 0)
+		{
+			return;
+		}
+
+		player.rewind();
+		mIdle.put(player.getAsset(), player);
+		Iterator<AssetPlayer> eldest = mIdle.values().iterator();
+		while (mIdle.size() > mMaxIdle)
+		{
+			destroy(eldest.next());
+			eldest.remove();
+		}
+	}
+
+	/* Returns the player for the sound if it is already open */
+	private AssetPlayer reuse(String asset)
+	{
+		AssetPlayer player = mPlayers.get(asset);
+		if (player != null)
+		{
+			mIdle.remove(asset);
+			player.mReferences++;
+		}
+		return player;
+	}
+
+	private MediaPlayer open(String asset)
+	{
+		MediaPlayer media = new MediaPlayer();
+		NativePlayers.opened(media, asset);
+		return media;
+	}
+
+	private AssetPlayer add(String asset, MediaPlayer media, boolean looping,
+			long start)
+	{
+		LatencyStats startup = mStartupLatency.get(asset);
+		if (startup == null)
+		{
+			startup = new LatencyStats();
+			mStartupLatency.put(asset, startup);
+			mTriggerLatency.put(asset, new LatencyStats());
+		}
+		startup.record(System.nanoTime() - start);
+
+		AssetPlayer player = new AssetPlayer(this, asset, media, looping,
+				mTriggerLatency.get(asset));
+		player.mReferences = 1;
+		mPlayers.put(asset, player);
+		return player;
+	}
+
+	private void destroy(AssetPlayer player)
+	{
+		mPlayers.remove(player.getAsset());
+		close(player.mPlayer);
+		player.mPlayer = null;
+		player.mReferences = 0;
+	}
+
+	private static void close(MediaPlayer media)
+	{
+		media.release();
+		NativePlayers.closed(media);
+	}
+
+	/* The IOException(String, Throwable) constructor is API 9 */
+	private static IOException opening(Object asset, Throwable cause)
+	{
+		IOException exception = new IOException("Could not open " + asset);
+		exception.initCause(cause);
+		return exception;
+	}
+}
@@ -0,0 +1,115 @@
+package edu.killerud.audioassets;
+
+import java.util.ArrayList;
+
+/**
+ * Keeps the buffers sounds are decoded into, so decoding one sound after
+ * another reuses the same few arrays instead of leaving a new one of several
+ * hundred kilobytes for the garbage collector every time. On older phones a
+ * collection that size stops everything, the audio thread included.
+ * 
+ * Buffers are handed out with take() and must be given back with give() once
+ * whatever was decoded into them has been copied out. The pool keeps at most
+ * a fixed number of bytes, and lets the largest buffers go first when it is
+ * over. It may be used from any thread.
+ * 
+ * @author William Killerud
+ * 
+ */
+public class BufferPool
+{
+	/* Buffers are at least this long, so small sounds share them too */
+	private static final int MIN_LENGTH = 4096;
+
+	private final ArrayList<short[]> mFree = new ArrayList<short[]>();
+	private final long mMaxBytes;
+	private long mBytes;
+
+	private int mTaken;
+	private int mAllocated;
+
+	public BufferPool(long maxBytes)
+	{
+		mMaxBytes = maxBytes;
+	}
+
+	/*
+	 * Returns a buffer of at least the given length, the smallest that is
+	 * free if there is one. Its contents are whatever was left in it.
+	 */
+	public synchronized short[] take(int length)
+	{
+		mTaken++;
+		int best = -1;
+		for (int i = 0; i < mFree.size(); i++)
+		{
+			int free = mFree.get(i).length;
+			if (free >= length
+					&& (best < 0 || free < mFree.get(best).length))
+			{
+				best = i;
+			}
+		}
+		if (best >= 0)
+		{
+			short[] buffer = mFree.remove(best);
+			mBytes -= buffer.length * 2l;
+			return buffer;
+		}
+		mAllocated++;
+		return new short[Math.max(length, MIN_LENGTH)];
+	}
+
+	/*
+	 * Swaps a buffer that turned out too small for a bigger one with the
+	 * first length elements copied over, and gives back the small one.
+	 */
+	public short[] grow(short[] buffer, int length, int newLength)
+	{
+		short[] grown = take(newLength);
+		System.arraycopy(buffer, 0, grown, 0, length);
+		give(buffer);
+		return grown;
+	}
+
+	public synchronized void give(short[] buffer)
+	{
+		mFree.add(buffer);
+		mBytes += buffer.length * 2l;
+		while (mBytes > mMaxBytes)
+		{
+			int largest = 0;
+			for (int i = 1; i < mFree.size(); i++)
+			{
+				if (mFree.get(i).length > mFree.get(largest).length)
+				{
+					largest = i;
+				}
+			}
+			mBytes -= mFree.remove(largest).length * 2l;
+		}
+	}
+
+	public synchronized void clear()
+	{
+		mFree.clear();
+		mBytes = 0;
+	}
+
+	/* The bytes held by buffers that are free */
+	public synchronized long getBytes()
+	{
+		return mBytes;
+	}
+
+	public synchronized int getTakenCount()
+	{
+		return mTaken;
+	}
+
+	/* How many of the buffers taken had to be allocated */
+	public synchronized int getAllocatedCount()
+	{
+		return mAllocated;
+	}
+}
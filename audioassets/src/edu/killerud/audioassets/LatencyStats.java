@@ -0,0 +1,68 @@
+package edu.killerud.audioassets;
+
+import java.util.Arrays;
+
+/**
+ * Keeps track of how long something took, like a sound taking from a button
+ * being tapped to coming out of the speaker. The latest measurements are kept
+ * for the median, and every one counts toward the average and the worst.
+ * 
+ * Measurements may be recorded from one thread, like the audio thread, and
+ * read from another.
+ * 
+ * @author William Killerud
+ * 
+ */
+public class LatencyStats
+{
+	/* How many of the latest measurements the median is taken over */
+	private static final int RECENT = 64;
+
+	private final long[] mRecent = new long[RECENT];
+	private int mCount;
+	private long mTotal;
+	private long mWorst;
+	private long mLast;
+
+	public synchronized void record(long nanos)
+	{
+		mRecent[mCount % RECENT] = nanos;
+		mCount++;
+		mTotal += nanos;
+		mWorst = Math.max(mWorst, nanos);
+		mLast = nanos;
+	}
+
+	public synchronized int getCount()
+	{
+		return mCount;
+	}
+
+	public synchronized double getLastMillis()
+	{
+		return mLast / 1e6;
+	}
+
+	public synchronized double getAverageMillis()
+	{
+		return mCount == 0 ? 0 : mTotal / 1e6 / mCount;
+	}
+
+	public synchronized double getWorstMillis()
+	{
+		return mWorst / 1e6;
+	}
+
+	public synchronized double getMedianMillis()
+	{
+		int count = Math.min(mCount, RECENT);
+		if (count == 0)
+		{
+			return 0;
+		}
+		long[] sorted = new long[count];
+		System.arraycopy(mRecent, 0, sorted, 0, count);
+		Arrays.sort(sorted);
+		return sorted[count / 2] / 1e6;
+	}
+}
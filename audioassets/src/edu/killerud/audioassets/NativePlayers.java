@@ -0,0 +1,82 @@
+package edu.killerud.audioassets;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import android.util.Log;
+
+/**
+ * Counts the players that hold native audio resources, like MediaPlayer,
+ * SoundPool and AudioTrack, from when they are created until they are
+ * released. There are only so many of those to go around on a phone, and one
+ * that is never released keeps its decoder and its share of the mixer until
+ * the process dies, so a count that only goes up is a leak.
+ * 
+ * Whoever creates a player tells us with opened(), and with closed() once it
+ * is released. Where each live player was opened is remembered, so a leak can
+ * be traced back to the code that made it.
+ * 
+ * @author William Killerud
+ * 
+ */
+public class NativePlayers
+{
+	private static final Map<Object, Throwable> sLive = new IdentityHashMap<Object, Throwable>();
+	private static int sOpened;
+	private static int sClosed;
+
+	private NativePlayers()
+	{
+	}
+
+	/* The description is what the player plays, for the log */
+	public static synchronized void opened(Object player, String description)
+	{
+		sLive.put(player, new Throwable(player.getClass().getSimpleName()
+				+ " for " + description));
+		sOpened++;
+	}
+
+	/* Closing a player twice, or one we never heard of, is not counted */
+	public static synchronized void closed(Object player)
+	{
+		if (sLive.remove(player) != null)
+		{
+			sClosed++;
+		}
+	}
+
+	public static synchronized int getLiveCount()
+	{
+		return sLive.size();
+	}
+
+	public static synchronized int getOpenedCount()
+	{
+		return sOpened;
+	}
+
+	public static synchronized int getClosedCount()
+	{
+		return sClosed;
+	}
+
+	/*
+	 * Logs every player still alive, with where it was opened. Call when all
+	 * players should have been released, like when the last activity or
+	 * service of the app is destroyed. Returns how many there were.
+	 */
+	public static synchronized int logLive(String tag)
+	{
+		for (Throwable opened : sLive.values())
+		{
+			Log.w(tag, "Player never released: " + opened.getMessage(), opened);
+		}
+		if (!sLive.isEmpty())
+		{
+			Log.w(tag, sLive.size() + " of " + sOpened
+					+ " players never released");
+		}
+		return sLive.size();
+	}
+}
@@ -0,0 +1,160 @@
+package edu.killerud.fileexplorer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import edu.killerud.fileexplorer.core.DirectoryEntries;
+
+/**
+ * Builds a zip with lots of small entries spread over a few hundred
+ * directories and times listing it, the first time (reading the central
+ * directory) and again (from the cache). java.util.zip.ZipFile reading all
+ * the entries is there for comparison. A few entries are streamed back and
+ * compared with what was written.
+ *
+ * java edu.killerud.fileexplorer.ArchiveBenchmark [entries]
+ *
+ * @author William Killerud
+ *
+ */
+public class ArchiveBenchmark
+{
+	private static final int DIRECTORIES = 250;
+	private static final int RUNS = 5;
+
+	public static void main(String[] args) throws Exception
+	{
+		int entries = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+		File archive = File.createTempFile("archive-bench", ".zip");
+		try
+		{
+			generate(archive, entries);
+			System.out.printf("%d entries, %.1f MB%n", entries,
+					archive.length() / 1e6);
+
+			for (int run = 0; run < RUNS; run++)
+			{
+				long start = System.nanoTime();
+				ZipIndex index = ZipIndex.read(archive);
+				DirectoryEntries top = index.list("");
+				DirectoryEntries deep = index.list("dir123/sub");
+				long indexed = System.nanoTime();
+
+				/* The second time it comes straight from the cache */
+				ArchiveFileSystem.list(new File(archive, "dir123/sub"));
+				long firstCached = System.nanoTime();
+				ArchiveFileSystem.list(new File(archive, "dir123/sub"));
+				long cached = System.nanoTime();
+
+				int zipFileEntries = 0;
+				ZipFile zipFile = new ZipFile(archive);
+				try
+				{
+					Enumeration<? extends ZipEntry> all = zipFile.entries();
+					while (all.hasMoreElements())
+					{
+						all.nextElement();
+						zipFileEntries++;
+					}
+				} finally
+				{
+					zipFile.close();
+				}
+				long zipFileDone = System.nanoTime();
+
+				System.out.printf("Read + list: %.1f ms (%d top, %d deep), "
+						+ "cached: %.3f ms, ZipFile: %.1f ms (%d entries)%n",
+						(indexed - start) / 1e6, top.size(), deep.size(),
+						(cached - firstCached) / 1e6,
+						(zipFileDone - cached) / 1e6, zipFileEntries);
+			}
+
+			check(archive, entries);
+		} finally
+		{
+			archive.delete();
+		}
+	}
+
+	/* Half the entries stored, half deflated, so both ways are read back */
+	private static void generate(File archive, int entries) throws IOException
+	{
+		ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive));
+		try
+		{
+			for (int i = 0; i < entries; i++)
+			{
+				byte[] content = contentOf(i);
+				ZipEntry entry = new ZipEntry(nameOf(i));
+				if (i % 2 == 0)
+				{
+					entry.setMethod(ZipEntry.STORED);
+					entry.setSize(content.length);
+					CRC32 crc = new CRC32();
+					crc.update(content);
+					entry.setCrc(crc.getValue());
+				}
+				out.putNextEntry(entry);
+				out.write(content);
+				out.closeEntry();
+			}
+		} finally
+		{
+			out.close();
+		}
+	}
+
+	private static String nameOf(int i)
+	{
+		return "dir" + (i % DIRECTORIES) + "/sub/file" + i + ".txt";
+	}
+
+	private static byte[] contentOf(int i) throws IOException
+	{
+		StringBuilder content = new StringBuilder();
+		for (int line = 0; line < 1 + i % 40; line++)
+		{
+			content.append("Entry ").append(i).append(", line ").append(line)
+					.append('\n');
+		}
+		return content.toString().getBytes("UTF-8");
+	}
+
+	private static void check(File archive, int entries) throws IOException
+	{
+		int checked = 0;
+		for (int i = 0; i < entries; i += 997)
+		{
+			byte[] expected = contentOf(i);
+			InputStream in = ArchiveFileSystem.open(new File(archive, nameOf(i)));
+			try
+			{
+				byte[] actual = new byte[expected.length + 1];
+				int length = 0;
+				int read;
+				while ((read = in.read(actual, length, actual.length - length)) > 0)
+				{
+					length += read;
+				}
+				if (length != expected.length
+						|| !Arrays.equals(expected, Arrays.copyOf(actual, length)))
+				{
+					throw new IllegalStateException(nameOf(i) + " came back wrong");
+				}
+			} finally
+			{
+				in.close();
+			}
+			checked++;
+		}
+		System.out.println(checked + " streamed entries match");
+	}
+}
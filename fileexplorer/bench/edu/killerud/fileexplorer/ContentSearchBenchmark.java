@@ -0,0 +1,167 @@
+package edu.killerud.fileexplorer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates a tree of text files (plus some binary ones that should be
+ * skipped) and times the content search on it. The matches are checked
+ * against a plain line-by-line indexOf, so this doubles as a sanity check of
+ * the line numbering across mapped windows.
+ *
+ * java edu.killerud.fileexplorer.ContentSearchBenchmark [megabytes]
+ *
+ * @author William Killerud
+ *
+ */
+public class ContentSearchBenchmark
+{
+	private static final String NEEDLE = "needle";
+
+	public static void main(String[] args) throws Exception
+	{
+		int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+		File corpus = new File(System.getProperty("java.io.tmpdir"),
+				"search-corpus-" + System.nanoTime());
+		long bytes = generate(corpus, megabytes, new Random(42));
+		int expected = countWithIndexOf(corpus);
+		System.out.printf("Corpus: %.1f MB, %d lines with \"%s\"%n",
+				bytes / 1e6, expected, NEEDLE);
+
+		for (int threads = 1; threads <= 4; threads *= 2)
+		{
+			for (int ignoreCase = 0; ignoreCase < 2; ignoreCase++)
+			{
+				ContentSearch search = new ContentSearch(NEEDLE,
+						ignoreCase == 1, threads);
+				final AtomicInteger matches = new AtomicInteger();
+				long start = System.nanoTime();
+				search.search(corpus, new ContentSearch.MatchListener()
+				{
+					public void onMatch(File file, int line, String excerpt)
+					{
+						matches.incrementAndGet();
+					}
+				});
+				double seconds = (System.nanoTime() - start) / 1e9;
+				System.out.printf("%d thread(s)%s: %d matches%s, %d files "
+						+ "(%d skipped), %.1f MB/s%n", threads,
+						ignoreCase == 1 ? ", ignoring case" : "",
+						matches.get(),
+						ignoreCase == 0 && matches.get() != expected ? " (WRONG)"
+								: "", search.getFilesScanned(), search
+								.getFilesSkipped(), search.getBytesScanned()
+								/ 1e6 / seconds);
+			}
+		}
+
+		delete(corpus);
+	}
+
+	/*
+	 * Mostly small text files and one big one that spans several mapped
+	 * windows, with the needle planted here and there.
+	 */
+	private static long generate(File corpus, int megabytes, Random random)
+			throws IOException
+	{
+		corpus.mkdirs();
+		long written = 0;
+		int file = 0;
+		long target = megabytes * 1024l * 1024l;
+		while (written < target)
+		{
+			File directory = new File(corpus, "dir" + (file % 8));
+			directory.mkdirs();
+
+			boolean binary = file % 10 == 9;
+			int size = file == 0 ? 40 * 1024 * 1024 : 1024 + random
+					.nextInt(256 * 1024);
+			byte[] content = new byte[size];
+			for (int i = 0; i < size; i++)
+			{
+				int c = random.nextInt(40);
+				content[i] = (byte) (c == 0 ? '\n' : c == 1 ? ' ' : 'a' + c % 26);
+			}
+			for (int i = 0; i < size / 50000; i++)
+			{
+				int at = random.nextInt(size - NEEDLE.length());
+				System.arraycopy(NEEDLE.getBytes("UTF-8"), 0, content, at,
+						NEEDLE.length());
+			}
+			if (binary)
+			{
+				content[random.nextInt(Math.min(size, 512))] = 0;
+			}
+
+			OutputStream out = new FileOutputStream(new File(directory, "file"
+					+ file + (binary ? ".bin" : ".txt")));
+			try
+			{
+				out.write(content);
+			} finally
+			{
+				out.close();
+			}
+			written += size;
+			file++;
+		}
+		return written;
+	}
+
+	private static int countWithIndexOf(File file) throws IOException
+	{
+		if (file.isDirectory())
+		{
+			int count = 0;
+			for (File child : file.listFiles())
+			{
+				count += countWithIndexOf(child);
+			}
+			return count;
+		}
+		if (file.getName().endsWith(".bin"))
+		{
+			return 0;
+		}
+
+		int count = 0;
+		BufferedReader in = new BufferedReader(new InputStreamReader(
+				new FileInputStream(file), "UTF-8"));
+		try
+		{
+			String line;
+			while ((line = in.readLine()) != null)
+			{
+				if (line.indexOf(NEEDLE) >= 0)
+				{
+					count++;
+				}
+			}
+		} finally
+		{
+			in.close();
+		}
+		return count;
+	}
+
+	private static void delete(File file)
+	{
+		File[] children = file.listFiles();
+		if (children != null)
+		{
+			for (File child : children)
+			{
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
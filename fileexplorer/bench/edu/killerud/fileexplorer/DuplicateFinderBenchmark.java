@@ -0,0 +1,126 @@
+package edu.killerud.fileexplorer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import edu.killerud.fileexplorer.DuplicateFinder.DuplicateGroup;
+
+/**
+ * Generates a corpus of files in a temporary directory and times the
+ * duplicate finder on it. The corpus mixes real duplicates with files that
+ * only share a size, and with files that share a size and their first and
+ * last block but differ in the middle, so every stage of the pipeline gets
+ * some work to do.
+ *
+ * java edu.killerud.fileexplorer.DuplicateFinderBenchmark [megabytes]
+ *
+ * @author William Killerud
+ *
+ */
+public class DuplicateFinderBenchmark
+{
+	public static void main(String[] args) throws IOException
+	{
+		int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+		File corpus = new File(System.getProperty("java.io.tmpdir"),
+				"duplicate-corpus-" + System.nanoTime());
+		Random random = new Random(42);
+
+		long corpusBytes = generate(corpus, megabytes, random);
+		System.out.printf("Corpus: %.1f MB in %s%n", corpusBytes / 1e6,
+				corpus);
+
+		for (int threads = 1; threads <= 4; threads *= 2)
+		{
+			DuplicateFinder finder = new DuplicateFinder(threads);
+			long start = System.nanoTime();
+			List<DuplicateGroup> duplicates = finder.find(corpus);
+			double seconds = (System.nanoTime() - start) / 1e9;
+
+			System.out.printf("%d thread(s): %d groups, %.1f MB reclaimable, "
+					+ "read %.1f MB in %.2f s (%.1f MB/s read, "
+					+ "%.1f MB/s of corpus)%n", threads, duplicates.size(),
+					DuplicateFinder.getReclaimableBytes(duplicates) / 1e6,
+					finder.getBytesRead() / 1e6, seconds,
+					finder.getBytesRead() / 1e6 / seconds, corpusBytes / 1e6
+							/ seconds);
+		}
+
+		delete(corpus);
+	}
+
+	/*
+	 * Writes roughly the requested amount of data. A third of the files get
+	 * an exact copy, a third get a same-sized sibling with different content,
+	 * and a third get a sibling that only differs in the middle.
+	 */
+	private static long generate(File corpus, int megabytes, Random random)
+			throws IOException
+	{
+		for (int i = 0; i < 16; i++)
+		{
+			new File(corpus, "dir" + i).mkdirs();
+		}
+
+		long written = 0;
+		int file = 0;
+		while (written < megabytes * 1024l * 1024l)
+		{
+			File directory = new File(corpus, "dir" + (file % 16));
+
+			/* Mostly small files, with the occasional big one */
+			int size = random.nextInt(8) == 0 ? 1024 * (1024 + random
+					.nextInt(4096)) : 1 + random.nextInt(64 * 1024);
+			byte[] content = new byte[size];
+			random.nextBytes(content);
+			write(new File(directory, "file" + file + ".bin"), content);
+
+			byte[] sibling = content.clone();
+			switch (file % 3)
+			{
+			case 0:
+				break;
+			case 1:
+				random.nextBytes(sibling);
+				break;
+			case 2:
+				sibling[size / 2] ^= 1;
+				break;
+			}
+			write(new File(corpus, "dir" + ((file + 7) % 16) + "/copy" + file
+					+ ".bin"), sibling);
+
+			written += 2l * size;
+			file++;
+		}
+		return written;
+	}
+
+	private static void write(File file, byte[] content) throws IOException
+	{
+		FileOutputStream out = new FileOutputStream(file);
+		try
+		{
+			out.write(content);
+		} finally
+		{
+			out.close();
+		}
+	}
+
+	private static void delete(File file)
+	{
+		File[] children = file.listFiles();
+		if (children != null)
+		{
+			for (File child : children)
+			{
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,182 @@
+package edu.killerud.fileexplorer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+
+import edu.killerud.fileexplorer.core.DirectoryEntries;
+import edu.killerud.fileexplorer.core.EntrySorter;
+import edu.killerud.fileexplorer.core.FileSystem;
+import edu.killerud.fileexplorer.core.LocalFileSystem;
+
+/**
+ * Times navigating a tree the way a user tends to: jumping deep into it from
+ * the breadcrumbs, backing out a level at a time, and going back into
+ * directories visited before. Each session starts with an empty cache and is
+ * run with and without the prefetcher, with a pause between steps standing in
+ * for the user looking at the list.
+ *
+ * java edu.killerud.fileexplorer.NavigationBenchmark [files per directory]
+ *
+ * @author William Killerud
+ *
+ */
+public class NavigationBenchmark
+{
+	private static final int DEPTH = 4;
+	private static final int SIBLINGS = 3;
+	private static final int SESSIONS = 10;
+	private static final long THINK_MILLIS = 300;
+
+	private static final FileSystem FILE_SYSTEM = new LocalFileSystem();
+
+	/* What the app does with Process.setThreadPriority(), near enough */
+	private static final ThreadFactory LOW_PRIORITY = new ThreadFactory()
+	{
+		public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, "DirectoryPrefetcher");
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		}
+	};
+
+	public static void main(String[] args) throws Exception
+	{
+		int files = args.length > 0 ? Integer.parseInt(args[0]) : 900;
+		File root = new File(System.getProperty("java.io.tmpdir"),
+				"navigation-bench-" + System.nanoTime());
+		try
+		{
+			File deepest = generate(root, files);
+			System.out.printf("%d levels, %d files per directory%n", DEPTH,
+					files);
+
+			List<File> route = routeThrough(root, deepest);
+			for (int prefetch = 0; prefetch < 2; prefetch++)
+			{
+				List<Long> times = new ArrayList<Long>();
+				int prefetched = 0;
+				for (int session = 0; session < SESSIONS; session++)
+				{
+					DirectoryCache cache = new DirectoryCache(FILE_SYSTEM,
+							20000);
+					DirectoryPrefetcher prefetcher = new DirectoryPrefetcher(
+							FILE_SYSTEM, cache, LOW_PRIORITY);
+					for (File directory : route)
+					{
+						long start = System.nanoTime();
+						navigate(directory, cache);
+						times.add(Long.valueOf(System.nanoTime() - start));
+						if (prefetch == 1)
+						{
+							prefetcher.onNavigated(directory);
+						}
+						Thread.sleep(THINK_MILLIS);
+					}
+					prefetched += prefetcher.getPrefetched();
+					prefetcher.shutdown();
+				}
+
+				Collections.sort(times);
+				long total = 0;
+				for (Long time : times)
+				{
+					total += time.longValue();
+				}
+				System.out.printf("%s: mean %.2f ms, median %.2f ms, "
+						+ "worst %.2f ms over %d steps (%d prefetched)%n",
+						prefetch == 1 ? "With prefetch" : "Cache only",
+						total / 1e6 / times.size(),
+						times.get(times.size() / 2) / 1e6,
+						times.get(times.size() - 1) / 1e6, times.size(),
+						prefetched);
+			}
+		} finally
+		{
+			delete(root);
+		}
+	}
+
+	/* The same as ExplorerActivity.navigateExplorer(), less the UI */
+	private static DirectoryEntries navigate(File directory,
+			DirectoryCache cache) throws IOException
+	{
+		DirectoryEntries entries = cache.get(directory);
+		if (entries == null)
+		{
+			String path = directory.getPath();
+			long lastModified = FILE_SYSTEM.lastModified(path);
+			entries = FILE_SYSTEM.list(path);
+			cache.put(directory, lastModified, entries);
+		}
+		EntrySorter.sort(entries, EntrySorter.SortMode.NAME, true);
+		return entries;
+	}
+
+	/*
+	 * Straight to the bottom, back up to the top, then down again the same
+	 * way, and finally into a sibling of the deepest directory and back.
+	 */
+	private static List<File> routeThrough(File root, File deepest)
+	{
+		List<File> route = new ArrayList<File>();
+		route.add(deepest);
+		for (File up = deepest.getParentFile(); !up.equals(root
+				.getParentFile()); up = up.getParentFile())
+		{
+			route.add(up);
+		}
+		List<File> down = new ArrayList<File>();
+		for (File level = deepest; !level.equals(root); level = level
+				.getParentFile())
+		{
+			down.add(0, level);
+		}
+		route.addAll(down);
+		route.add(new File(deepest.getParentFile(), "level" + (DEPTH - 1)
+				+ "-1"));
+		route.add(deepest.getParentFile());
+		return route;
+	}
+
+	private static File generate(File root, int files) throws IOException
+	{
+		File level = root;
+		for (int depth = 0; depth < DEPTH; depth++)
+		{
+			for (int sibling = 0; sibling < SIBLINGS; sibling++)
+			{
+				File directory = new File(level, "level" + depth + "-"
+						+ sibling);
+				directory.mkdirs();
+				for (int i = 0; i < files; i++)
+				{
+					new File(directory, "file" + i + ".txt").createNewFile();
+				}
+			}
+			level = new File(level, "level" + depth + "-0");
+		}
+		for (int i = 0; i < files; i++)
+		{
+			new File(root, "file" + i + ".txt").createNewFile();
+		}
+		return level;
+	}
+
+	private static void delete(File file)
+	{
+		File[] children = file.listFiles();
+		if (children != null)
+		{
+			for (File child : children)
+			{
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,86 @@
+package edu.killerud.fileexplorer;
+
+import java.util.Random;
+
+import edu.killerud.fileexplorer.core.DirectoryEntries;
+
+/**
+ * Takes snapshots of two made-up listings of a huge directory, where a few
+ * percent of the files have been added, removed or modified between them,
+ * and times taking the snapshots and diffing them. The counts found are
+ * checked against what was changed.
+ *
+ * java edu.killerud.fileexplorer.SnapshotDiffBenchmark [entries]
+ *
+ * @author William Killerud
+ *
+ */
+public class SnapshotDiffBenchmark
+{
+	private static final int RUNS = 5;
+
+	/* One in this many files is added, removed and modified */
+	private static final int CHANGE_EVERY = 50;
+
+	public static void main(String[] args)
+	{
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		Random random = new Random(42);
+
+		String[] oldNames = new String[count];
+		long[] oldSizes = new long[count];
+		long[] oldTimes = new long[count];
+		String[] newNames = new String[count];
+		long[] newSizes = new long[count];
+		long[] newTimes = new long[count];
+		int added = 0;
+		int removed = 0;
+		int modified = 0;
+		for (int i = 0; i < count; i++)
+		{
+			oldNames[i] = "IMG_" + i + ".jpg";
+			oldSizes[i] = random.nextInt(8 * 1024 * 1024);
+			oldTimes[i] = 1300000000000l + random.nextInt(1000000000);
+			newNames[i] = oldNames[i];
+			newSizes[i] = oldSizes[i];
+			newTimes[i] = oldTimes[i];
+
+			if (i % CHANGE_EVERY == 0)
+			{
+				/* Removed and another file added in its place */
+				newNames[i] = "IMG_" + i + "_edited.jpg";
+				added++;
+				removed++;
+			} else if (i % CHANGE_EVERY == 1)
+			{
+				newTimes[i] += 1000;
+				modified++;
+			}
+		}
+		DirectoryEntries older = new DirectoryEntries(oldNames, oldSizes,
+				oldTimes, new boolean[count]);
+		DirectoryEntries newer = new DirectoryEntries(newNames, newSizes,
+				newTimes, new boolean[count]);
+
+		for (int run = 0; run < RUNS; run++)
+		{
+			long start = System.nanoTime();
+			DirectorySnapshot oldSnapshot = DirectorySnapshot.of(older);
+			DirectorySnapshot newSnapshot = DirectorySnapshot.of(newer);
+			long snapshotted = System.nanoTime();
+			DirectoryChanges changes = newSnapshot.diffFrom(oldSnapshot);
+			long diffed = System.nanoTime();
+
+			boolean right = changes.getAddedCount() == added
+					&& changes.getRemovedCount() == removed
+					&& changes.getModifiedCount() == modified;
+			System.out.printf("%d entries: two snapshots %.1f ms, diff %.1f ms, "
+					+ "%.1f MB per snapshot, %d added, %d removed, "
+					+ "%d modified%s%n", count, (snapshotted - start) / 1e6,
+					(diffed - snapshotted) / 1e6,
+					newSnapshot.getByteCount() / 1e6, changes.getAddedCount(),
+					changes.getRemovedCount(), changes.getModifiedCount(),
+					right ? "" : " (WRONG)");
+		}
+	}
+}
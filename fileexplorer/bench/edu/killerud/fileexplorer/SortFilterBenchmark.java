@@ -0,0 +1,94 @@
+package edu.killerud.fileexplorer;
+
+import java.util.Random;
+
+import edu.killerud.fileexplorer.core.DirectoryEntries;
+import edu.killerud.fileexplorer.core.EntryFilter;
+import edu.killerud.fileexplorer.core.EntrySorter;
+import edu.killerud.fileexplorer.core.EntrySorter.SortMode;
+
+/**
+ * Times sorting and filtering of a generated directory snapshot. This doesn't
+ * need a device, run it on a desktop JVM with the app sources on the
+ * classpath:
+ *
+ * java edu.killerud.fileexplorer.SortFilterBenchmark [entries]
+ *
+ * @author William Killerud
+ *
+ */
+public class SortFilterBenchmark
+{
+	private static final String[] EXTENSIONS = { "jpg", "png", "txt", "mp3",
+			"apk", "pdf", "zip", "" };
+
+	public static void main(String[] args)
+	{
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		DirectoryEntries entries = generate(size, new Random(42));
+
+		long start = System.nanoTime();
+		entries.getCollationKeys();
+		report("Collation keys", start);
+		start = System.nanoTime();
+		entries.buildRanks();
+		report("Name and extension ranks", start);
+
+		/* Warm up the JIT before we take the numbers that matter */
+		for (int i = 0; i < 5; i++)
+		{
+			for (SortMode mode : SortMode.values())
+			{
+				EntrySorter.sort(entries, mode, i % 2 == 0);
+			}
+		}
+
+		for (SortMode mode : SortMode.values())
+		{
+			start = System.nanoTime();
+			EntrySorter.sort(entries, mode, true);
+			report("Sort by " + mode, start);
+		}
+
+		EntryFilter filter = new EntryFilter(entries, EntrySorter.sort(
+				entries, SortMode.NAME, true));
+		String query = "file12";
+		for (int i = 1; i <= query.length(); i++)
+		{
+			start = System.nanoTime();
+			filter.setQuery(query.substring(0, i));
+			report("Filter \"" + query.substring(0, i) + "\" ("
+					+ filter.getCount() + " left)", start);
+		}
+
+		start = System.nanoTime();
+		filter.setQuery("*.jp");
+		report("Filter \"*.jp\" (" + filter.getCount() + " left)", start);
+	}
+
+	private static DirectoryEntries generate(int size, Random random)
+	{
+		String[] names = new String[size];
+		long[] sizes = new long[size];
+		long[] lastModified = new long[size];
+		boolean[] directories = new boolean[size];
+		for (int i = 0; i < size; i++)
+		{
+			directories[i] = random.nextInt(10) == 0;
+			String extension = EXTENSIONS[random.nextInt(EXTENSIONS.length)];
+			names[i] = (directories[i] ? "Folder " : "file")
+					+ random.nextInt(size)
+					+ (directories[i] || extension.length() == 0 ? "" : "."
+							+ extension);
+			sizes[i] = directories[i] ? 0 : random.nextInt(1 << 24);
+			lastModified[i] = 1300000000000l + random.nextInt(1 << 30);
+		}
+		return new DirectoryEntries(names, sizes, lastModified, directories);
+	}
+
+	private static void report(String what, long start)
+	{
+		System.out.printf("%-40s %8.2f ms%n", what,
+				(System.nanoTime() - start) / 1e6);
+	}
+}
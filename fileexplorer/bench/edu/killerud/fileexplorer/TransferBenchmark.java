@@ -0,0 +1,166 @@
+package edu.killerud.fileexplorer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the TransferEngine against copying the same files one at a time
+ * with plain streams, the way you'd usually write it. Runs on a set of a few
+ * large files and on a set of many small ones, then times a move, which on
+ * the same file system should be a rename.
+ *
+ * java edu.killerud.fileexplorer.TransferBenchmark
+ *
+ * @author William Killerud
+ *
+ */
+public class TransferBenchmark
+{
+	public static void main(String[] args) throws IOException
+	{
+		File root = new File(System.getProperty("java.io.tmpdir"),
+				"transfer-bench-" + System.nanoTime());
+		Random random = new Random(42);
+
+		File large = generate(new File(root, "large"), 4, 64 * 1024 * 1024,
+				random);
+		File small = generate(new File(root, "small"), 4000, 8 * 1024, random);
+
+		compare("4 x 64 MB", large, root);
+		compare("4000 x 8 KB", small, root);
+
+		File moved = new File(root, "moved");
+		moved.mkdirs();
+		List<File> sources = new ArrayList<File>();
+		sources.add(large);
+		long start = System.nanoTime();
+		new TransferEngine().run(new FileTransfer(sources, moved, true), null);
+		System.out.printf("%-14s move (rename)  %8.2f ms%n", "4 x 64 MB",
+				(System.nanoTime() - start) / 1e6);
+
+		delete(root);
+	}
+
+	private static void compare(String name, File source, File root)
+			throws IOException
+	{
+		long bytes = sizeOf(source);
+		for (int round = 0; round < 2; round++)
+		{
+			File streamTarget = new File(root, "stream" + round);
+			long start = System.nanoTime();
+			streamCopy(source, streamTarget);
+			report(name, "streams", bytes, start);
+			delete(streamTarget);
+
+			File engineTarget = new File(root, "engine" + round);
+			engineTarget.mkdirs();
+			List<File> sources = new ArrayList<File>();
+			sources.add(source);
+			start = System.nanoTime();
+			new TransferEngine().run(new FileTransfer(sources, engineTarget,
+					false), null);
+			report(name, "engine", bytes, start);
+			delete(engineTarget);
+		}
+	}
+
+	/* The straightforward way: one file after the other, through a buffer */
+	private static void streamCopy(File source, File target)
+			throws IOException
+	{
+		if (source.isDirectory())
+		{
+			target.mkdirs();
+			for (File child : source.listFiles())
+			{
+				streamCopy(child, new File(target, child.getName()));
+			}
+			return;
+		}
+
+		InputStream in = new FileInputStream(source);
+		try
+		{
+			OutputStream out = new FileOutputStream(target);
+			try
+			{
+				byte[] buffer = new byte[8192];
+				int read;
+				while ((read = in.read(buffer)) > 0)
+				{
+					out.write(buffer, 0, read);
+				}
+			} finally
+			{
+				out.close();
+			}
+		} finally
+		{
+			in.close();
+		}
+	}
+
+	private static File generate(File directory, int files, int size,
+			Random random) throws IOException
+	{
+		directory.mkdirs();
+		byte[] content = new byte[size];
+		for (int i = 0; i < files; i++)
+		{
+			random.nextBytes(content);
+			OutputStream out = new FileOutputStream(new File(directory, "file"
+					+ i));
+			try
+			{
+				out.write(content);
+			} finally
+			{
+				out.close();
+			}
+		}
+		return directory;
+	}
+
+	private static long sizeOf(File file)
+	{
+		long size = file.length();
+		File[] children = file.listFiles();
+		if (children != null)
+		{
+			for (File child : children)
+			{
+				size += sizeOf(child);
+			}
+		}
+		return size;
+	}
+
+	private static void report(String name, String method, long bytes,
+			long start)
+	{
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("%-14s %-14s %8.2f ms %8.1f MB/s%n", name, method,
+				seconds * 1000, bytes / 1e6 / seconds);
+	}
+
+	private static void delete(File file)
+	{
+		File[] children = file.listFiles();
+		if (children != null)
+		{
+			for (File child : children)
+			{
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,78 @@
+package edu.killerud.fileexplorer.core;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.killerud.fileexplorer.core.EntrySorter.SortMode;
+
+/**
+ * Filtering a sorted snapshot: a query typed from scratch, the same query
+ * typed a character at a time (which lets the filter narrow down what it
+ * already has), and a file type query.
+ *
+ * @author William Killerud
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark
+{
+	private static final String QUERY = "file12";
+
+	@Param({ "1000", "100000", "1000000" })
+	public int entries;
+
+	private DirectoryEntries mEntries;
+	private int[] mOrder;
+
+	@Setup
+	public void setUp() throws IOException
+	{
+		mEntries = GeneratedDirectory.create(entries).list(
+				GeneratedDirectory.PATH);
+		mOrder = EntrySorter.sort(mEntries, SortMode.NAME, true);
+	}
+
+	@Benchmark
+	public int substring()
+	{
+		EntryFilter filter = new EntryFilter(mEntries, mOrder);
+		filter.setQuery(QUERY);
+		return filter.getCount();
+	}
+
+	@Benchmark
+	public int typedOneCharacterAtATime()
+	{
+		EntryFilter filter = new EntryFilter(mEntries, mOrder);
+		for (int i = 1; i <= QUERY.length(); i++)
+		{
+			filter.setQuery(QUERY.substring(0, i));
+		}
+		return filter.getCount();
+	}
+
+	@Benchmark
+	public int extension()
+	{
+		EntryFilter filter = new EntryFilter(mEntries, mOrder);
+		filter.setQuery("*.jp");
+		return filter.getCount();
+	}
+}
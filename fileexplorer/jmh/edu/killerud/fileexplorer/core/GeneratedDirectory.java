@@ -0,0 +1,50 @@
+package edu.killerud.fileexplorer.core;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Fills an in-memory file system with one big directory of made-up files and
+ * folders, the same way every time, for the benchmarks to work on.
+ *
+ * @author William Killerud
+ *
+ */
+class GeneratedDirectory
+{
+	static final String PATH = "/sdcard/DCIM";
+
+	private static final String[] EXTENSIONS = { "jpg", "png", "txt", "mp3",
+			"apk", "pdf", "zip", "" };
+
+	private GeneratedDirectory()
+	{
+	}
+
+	static InMemoryFileSystem create(int entries) throws IOException
+	{
+		Random random = new Random(42);
+		InMemoryFileSystem fileSystem = new InMemoryFileSystem();
+		fileSystem.mkdirs(PATH);
+		for (int i = 0; i < entries; i++)
+		{
+			boolean directory = random.nextInt(10) == 0;
+			String extension = EXTENSIONS[random.nextInt(EXTENSIONS.length)];
+
+			/* The index keeps the names unique */
+			String name = (directory ? "Folder " : "file") + i
+					+ (directory || extension.length() == 0 ? "" : "."
+							+ extension);
+			if (directory)
+			{
+				fileSystem.mkdirs(PATH + "/" + name);
+			} else
+			{
+				fileSystem.createFile(PATH + "/" + name, random
+						.nextInt(1 << 24), 1300000000000l + random
+						.nextInt(1 << 30));
+			}
+		}
+		return fileSystem;
+	}
+}
@@ -0,0 +1,63 @@
+package edu.killerud.fileexplorer.core;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Listing a directory from the in-memory file system, which is the cost of
+ * building the snapshot without any disk access, and listing followed by
+ * the first sort, which includes building the collation ranks.
+ *
+ * @author William Killerud
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListingBenchmark
+{
+	@Param({ "1000", "100000", "1000000" })
+	public int entries;
+
+	private InMemoryFileSystem mFileSystem;
+
+	@Setup
+	public void setUp() throws IOException
+	{
+		mFileSystem = GeneratedDirectory.create(entries);
+	}
+
+	@Benchmark
+	public DirectoryEntries list() throws IOException
+	{
+		return mFileSystem.list(GeneratedDirectory.PATH);
+	}
+
+	@Benchmark
+	public String[] listNames() throws IOException
+	{
+		return mFileSystem.listNames(GeneratedDirectory.PATH);
+	}
+
+	@Benchmark
+	public int[] listAndSortByName() throws IOException
+	{
+		return EntrySorter.sort(mFileSystem.list(GeneratedDirectory.PATH),
+				EntrySorter.SortMode.NAME, true);
+	}
+}
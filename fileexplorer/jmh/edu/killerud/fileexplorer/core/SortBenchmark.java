@@ -0,0 +1,67 @@
+package edu.killerud.fileexplorer.core;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.killerud.fileexplorer.core.EntrySorter.SortMode;
+
+/**
+ * Sorting a snapshot whose ranks are already built, which is what happens
+ * every time the user picks another sort order.
+ *
+ * @author William Killerud
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SortBenchmark
+{
+	@Param({ "1000", "100000", "1000000" })
+	public int entries;
+
+	@Param({ "NAME", "SIZE", "LAST_MODIFIED", "TYPE" })
+	public String mode;
+
+	private DirectoryEntries mEntries;
+	private SortMode mMode;
+
+	@Setup
+	public void setUp() throws IOException
+	{
+		mEntries = GeneratedDirectory.create(entries).list(
+				GeneratedDirectory.PATH);
+		mMode = SortMode.valueOf(mode);
+
+		/* Builds the ranks, so they are not part of what is measured */
+		mEntries.getNameRanks();
+		mEntries.getExtensionRanks();
+	}
+
+	@Benchmark
+	public int[] sortAscending()
+	{
+		return EntrySorter.sort(mEntries, mMode, true);
+	}
+
+	@Benchmark
+	public int[] sortDescending()
+	{
+		return EntrySorter.sort(mEntries, mMode, false);
+	}
+}
@@ -0,0 +1,158 @@
+package edu.killerud.fileexplorer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import edu.killerud.fileexplorer.core.DirectoryEntries;
+
+/**
+ * Lets the explorer treat zip and jar files as if they were directories. A
+ * path like /sdcard/stuff.zip/docs/readme.txt is split into the archive on
+ * disk and the path inside it, and the parsed table of contents of each
+ * archive is kept for the next time, so moving around inside one only costs
+ * a lookup.
+ *
+ * @author William Killerud
+ *
+ */
+public class ArchiveFileSystem
+{
+	private static final String[] ARCHIVE_EXTENSIONS = { "zip", "jar" };
+
+	/* How many archives we keep the table of contents of */
+	private static final int MAX_CACHED = 4;
+
+	private static final LinkedHashMap<String, CachedIndex> sIndexes = new LinkedHashMap<String, CachedIndex>(
+			MAX_CACHED, 0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CachedIndex> eldest)
+		{
+			return size() > MAX_CACHED;
+		}
+	};
+
+	/*
+	 * The index is only good for as long as the archive stays the same, which
+	 * we take the modification time and the size to tell us.
+	 */
+	private static class CachedIndex
+	{
+		final ZipIndex mIndex;
+		final long mLastModified;
+		final long mLength;
+
+		CachedIndex(ZipIndex index, long lastModified, long length)
+		{
+			mIndex = index;
+			mLastModified = lastModified;
+			mLength = length;
+		}
+	}
+
+	private ArchiveFileSystem()
+	{
+	}
+
+	public static boolean isArchive(String extension)
+	{
+		for (int i = 0; i < ARCHIVE_EXTENSIONS.length; i++)
+		{
+			if (ARCHIVE_EXTENSIONS[i].equals(extension))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Returns the archive the path is in, or points at, or null if it is a
+	 * plain path on disk.
+	 */
+	public static File findArchive(File path)
+	{
+		for (File file = path; file != null; file = file.getParentFile())
+		{
+			if (file.isFile())
+			{
+				String name = file.getName();
+				int dot = name.lastIndexOf('.');
+				return dot > 0
+						&& isArchive(name.substring(dot + 1).toLowerCase()) ? file
+						: null;
+			}
+			if (file.isDirectory())
+			{
+				return null;
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * Lists a directory inside an archive, or the top of the archive if the
+	 * path is the archive itself.
+	 */
+	public static DirectoryEntries list(File path) throws IOException
+	{
+		File archive = findArchive(path);
+		if (archive == null)
+		{
+			throw new IOException(path + " is not in an archive");
+		}
+		return getIndex(archive).list(pathInside(archive, path));
+	}
+
+	/*
+	 * Opens a file inside an archive for reading. The content is inflated as
+	 * it is read.
+	 */
+	public static InputStream open(File path) throws IOException
+	{
+		File archive = findArchive(path);
+		if (archive == null)
+		{
+			throw new IOException(path + " is not in an archive");
+		}
+		return getIndex(archive).open(pathInside(archive, path));
+	}
+
+	public static ZipIndex getIndex(File archive) throws IOException
+	{
+		String key = archive.getAbsolutePath();
+		long lastModified = archive.lastModified();
+		long length = archive.length();
+
+		synchronized (sIndexes)
+		{
+			CachedIndex cached = sIndexes.get(key);
+			if (cached != null && cached.mLastModified == lastModified
+					&& cached.mLength == length)
+			{
+				return cached.mIndex;
+			}
+		}
+
+		/* Parsed outside the lock, so one big archive doesn't hold up others */
+		ZipIndex index = ZipIndex.read(archive);
+		synchronized (sIndexes)
+		{
+			sIndexes.put(key, new CachedIndex(index, lastModified, length));
+		}
+		return index;
+	}
+
+	private static String pathInside(File archive, File path)
+	{
+		String archivePath = archive.getAbsolutePath();
+		String fullPath = path.getAbsolutePath();
+		return fullPath.length() > archivePath.length() ? fullPath
+				.substring(archivePath.length() + 1) : "";
+	}
+}
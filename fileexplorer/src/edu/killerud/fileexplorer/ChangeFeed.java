@@ -0,0 +1,90 @@
+package edu.killerud.fileexplorer;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import edu.killerud.fileexplorer.core.DirectoryEntries;
+
+/**
+ * Remembers a snapshot of each directory that has been listed, and tells its
+ * listeners what changed whenever a directory is listed again. Snapshots of
+ * the least recently listed directories are dropped when the total number of
+ * entries held grows past the limit.
+ *
+ * Must be used from the UI thread. Listeners are called before update()
+ * returns.
+ *
+ * @author William Killerud
+ *
+ */
+public class ChangeFeed
+{
+	public interface ChangeListener
+	{
+		/* Only called when something did change */
+		void onDirectoryChanged(File directory, DirectoryChanges changes);
+	}
+
+	private final LinkedHashMap<String, DirectorySnapshot> mSnapshots = new LinkedHashMap<String, DirectorySnapshot>(
+			16, 0.75f, true);
+	private final List<ChangeListener> mListeners = new ArrayList<ChangeListener>();
+	private final int mMaxEntries;
+	private int mEntries;
+
+	public ChangeFeed(int maxEntries)
+	{
+		mMaxEntries = maxEntries;
+	}
+
+	public void addListener(ChangeListener listener)
+	{
+		mListeners.add(listener);
+	}
+
+	public void removeListener(ChangeListener listener)
+	{
+		mListeners.remove(listener);
+	}
+
+	/*
+	 * Takes a snapshot of a new listing of the directory, compares it with the
+	 * last one, if any, and keeps it for next time. Returns the changes, or
+	 * null on the first visit.
+	 */
+	public DirectoryChanges update(File directory, DirectoryEntries entries)
+	{
+		String key = directory.getAbsolutePath();
+		DirectorySnapshot snapshot = DirectorySnapshot.of(entries);
+		DirectorySnapshot previous = mSnapshots.remove(key);
+		DirectoryChanges changes = null;
+		if (previous != null)
+		{
+			mEntries -= previous.size();
+			changes = snapshot.diffFrom(previous);
+		}
+
+		if (snapshot.size() <= mMaxEntries)
+		{
+			mSnapshots.put(key, snapshot);
+			mEntries += snapshot.size();
+			Iterator<DirectorySnapshot> eldest = mSnapshots.values().iterator();
+			while (mEntries > mMaxEntries && eldest.hasNext())
+			{
+				mEntries -= eldest.next().size();
+				eldest.remove();
+			}
+		}
+
+		if (changes != null && !changes.isEmpty())
+		{
+			for (ChangeListener listener : mListeners)
+			{
+				listener.onDirectoryChanged(directory, changes);
+			}
+		}
+		return changes;
+	}
+}
@@ -0,0 +1,428 @@
+package edu.killerud.fileexplorer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Searches the content of every file below a directory for a string, like
+ * grep. One thread walks the tree and hands files to a few worker threads
+ * through a small bounded queue, so the walk never runs far ahead of the
+ * searching. The workers skip files that look binary, map the rest into
+ * memory and scan them with Boyer-Moore-Horspool, which can skip ahead by up
+ * to the length of the pattern for every byte it looks at.
+ *
+ * Matches are handed to the listener as soon as they are found, from the
+ * worker threads. Only the first match on each line is reported.
+ *
+ * @author William Killerud
+ *
+ */
+public class ContentSearch
+{
+	/* Files with a zero byte in this many first bytes are taken as binary */
+	private static final int SNIFF_BYTES = 1024;
+
+	/* How much of a file we map at a time */
+	private static final int MAP_WINDOW = 16 * 1024 * 1024;
+
+	/* Longest line excerpt handed to the listener */
+	private static final int MAX_EXCERPT = 200;
+
+	private static final int QUEUE_CAPACITY = 64;
+
+	/* Put in the queue by the walker to tell a worker there is no more */
+	private static final File END = new File("");
+
+	public interface MatchListener
+	{
+		/* Called from the worker threads, with the line numbered from one */
+		void onMatch(File file, int line, String excerpt);
+	}
+
+	private final byte[] mPattern;
+	private final boolean mIgnoreCase;
+	private final int[] mShift = new int[256];
+	private final int mThreads;
+
+	private volatile boolean mCancelled;
+	private final AtomicLong mBytesScanned = new AtomicLong();
+	private final AtomicInteger mFilesScanned = new AtomicInteger();
+	private final AtomicInteger mFilesSkipped = new AtomicInteger();
+
+	public ContentSearch(String query, boolean ignoreCase)
+	{
+		this(query, ignoreCase, Math.min(4, Runtime.getRuntime()
+				.availableProcessors()));
+	}
+
+	public ContentSearch(String query, boolean ignoreCase, int threads)
+	{
+		if (query.length() == 0)
+		{
+			throw new IllegalArgumentException("Nothing to search for");
+		}
+		try
+		{
+			mPattern = query.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e)
+		{
+			throw noUtf8(e);
+		}
+		mIgnoreCase = ignoreCase;
+		mThreads = Math.max(1, threads);
+
+		if (mIgnoreCase)
+		{
+			for (int i = 0; i < mPattern.length; i++)
+			{
+				mPattern[i] = fold(mPattern[i]);
+			}
+		}
+
+		/*
+		 * The Horspool shift table: how far we can move the pattern when the
+		 * byte under its last position is the given byte.
+		 */
+		for (int i = 0; i < mShift.length; i++)
+		{
+			mShift[i] = mPattern.length;
+		}
+		for (int i = 0; i < mPattern.length - 1; i++)
+		{
+			mShift[mPattern[i] & 0xff] = mPattern.length - 1 - i;
+		}
+		if (mIgnoreCase)
+		{
+			for (int c = 'a'; c <= 'z'; c++)
+			{
+				mShift[c - 'a' + 'A'] = mShift[c];
+			}
+		}
+	}
+
+	public void cancel()
+	{
+		mCancelled = true;
+	}
+
+	public long getBytesScanned()
+	{
+		return mBytesScanned.get();
+	}
+
+	public int getFilesScanned()
+	{
+		return mFilesScanned.get();
+	}
+
+	/* Files left out because they looked binary or couldn't be read */
+	public int getFilesSkipped()
+	{
+		return mFilesSkipped.get();
+	}
+
+	/*
+	 * Searches the directory and everything below it, blocking until done or
+	 * cancelled.
+	 */
+	public void search(File directory, final MatchListener listener)
+			throws InterruptedException
+	{
+		mCancelled = false;
+		final BlockingQueue<File> queue = new ArrayBlockingQueue<File>(
+				QUEUE_CAPACITY);
+		final CountDownLatch finished = new CountDownLatch(mThreads);
+
+		for (int i = 0; i < mThreads; i++)
+		{
+			Thread worker = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					try
+					{
+						File file;
+						while ((file = queue.take()) != END)
+						{
+							if (!mCancelled)
+							{
+								searchFile(file, listener);
+							}
+						}
+					} catch (InterruptedException e)
+					{
+						mCancelled = true;
+					} finally
+					{
+						finished.countDown();
+					}
+				}
+			}, "ContentSearch");
+			worker.start();
+		}
+
+		try
+		{
+			walk(directory, queue);
+		} finally
+		{
+			/* Every worker gets an END, even if we stopped early */
+			for (int i = 0; i < mThreads; i++)
+			{
+				while (!queue.offer(END, 100, TimeUnit.MILLISECONDS))
+				{
+					if (mCancelled)
+					{
+						/* Nobody wants what's left, make room */
+						queue.clear();
+					}
+				}
+			}
+			finished.await();
+		}
+	}
+
+	/*
+	 * Walks the tree, putting every file in the queue. put() blocks while the
+	 * queue is full, which is what keeps the walk from racing ahead.
+	 */
+	private void walk(File root, BlockingQueue<File> queue)
+			throws InterruptedException
+	{
+		HashSet<String> visited = new HashSet<String>();
+		ArrayList<File> pending = new ArrayList<File>();
+		pending.add(root);
+
+		while (!pending.isEmpty() && !mCancelled)
+		{
+			File directory = pending.remove(pending.size() - 1);
+			try
+			{
+				if (!visited.add(directory.getCanonicalPath()))
+				{
+					continue;
+				}
+			} catch (IOException e)
+			{
+				continue;
+			}
+
+			File[] files = directory.listFiles();
+			if (files == null)
+			{
+				continue;
+			}
+			for (int i = 0; i < files.length && !mCancelled; i++)
+			{
+				if (files[i].isDirectory())
+				{
+					pending.add(files[i]);
+				} else if (files[i].length() >= mPattern.length)
+				{
+					queue.put(files[i]);
+				}
+			}
+		}
+	}
+
+	private void searchFile(File file, MatchListener listener)
+	{
+		try
+		{
+			FileInputStream in = new FileInputStream(file);
+			try
+			{
+				FileChannel channel = in.getChannel();
+				long size = channel.size();
+				if (looksBinary(channel, size))
+				{
+					mFilesSkipped.incrementAndGet();
+					return;
+				}
+				scan(file, channel, size, listener);
+				mFilesScanned.incrementAndGet();
+			} finally
+			{
+				in.close();
+			}
+		} catch (IOException e)
+		{
+			mFilesSkipped.incrementAndGet();
+		}
+	}
+
+	private static boolean looksBinary(FileChannel channel, long size)
+			throws IOException
+	{
+		MappedByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+				Math.min(size, SNIFF_BYTES));
+		while (head.hasRemaining())
+		{
+			if (head.get() == 0)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Maps the file a window at a time. Windows overlap by the length of the
+	 * pattern, less one, so a match straddling two windows is still found.
+	 */
+	private void scan(File file, FileChannel channel, long size,
+			MatchListener listener) throws IOException
+	{
+		int line = 1;
+
+		/* Bytes at the start of a window that the previous one dealt with */
+		int carry = 0;
+
+		for (long start = 0; start < size && !mCancelled;)
+		{
+			int length = (int) Math.min(MAP_WINDOW, size - start);
+			MappedByteBuffer window = channel.map(
+					FileChannel.MapMode.READ_ONLY, start, length);
+			boolean last = start + length >= size;
+			int end = last ? length : length - (mPattern.length - 1);
+
+			/* Newlines before counted are already included in line */
+			int counted = carry;
+			int position = carry;
+			while ((position = indexOf(window, position, length)) >= 0
+					&& position < end)
+			{
+				line += countLines(window, counted, position);
+				int lineStart = lineStart(window, position);
+				int lineEnd = lineEnd(window, position, length);
+				listener.onMatch(file, line, excerpt(window, lineStart, lineEnd));
+
+				/* Go on from the next line, one match per line is plenty */
+				if (lineEnd < length)
+				{
+					line++;
+					counted = lineEnd + 1;
+				} else
+				{
+					counted = length;
+				}
+				position = counted;
+			}
+
+			if (counted < end)
+			{
+				line += countLines(window, counted, end);
+				carry = 0;
+			} else
+			{
+				carry = counted - end;
+			}
+			mBytesScanned.addAndGet(end);
+			start += end;
+		}
+	}
+
+	/* Boyer-Moore-Horspool */
+	private int indexOf(MappedByteBuffer text, int from, int to)
+	{
+		int last = mPattern.length - 1;
+		int position = from;
+		while (position + last < to)
+		{
+			int i = last;
+			while (i >= 0 && byteAt(text, position + i) == mPattern[i])
+			{
+				i--;
+			}
+			if (i < 0)
+			{
+				return position;
+			}
+			position += mShift[text.get(position + last) & 0xff];
+		}
+		return -1;
+	}
+
+	private byte byteAt(MappedByteBuffer text, int index)
+	{
+		byte b = text.get(index);
+		return mIgnoreCase ? fold(b) : b;
+	}
+
+	/* Lower-cases ASCII, leaves everything else alone */
+	private static byte fold(byte b)
+	{
+		return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+	}
+
+	private static int countLines(MappedByteBuffer text, int from, int to)
+	{
+		int lines = 0;
+		for (int i = from; i < to; i++)
+		{
+			if (text.get(i) == '\n')
+			{
+				lines++;
+			}
+		}
+		return lines;
+	}
+
+	private static int lineStart(MappedByteBuffer text, int position)
+	{
+		int start = position;
+		while (start > 0 && text.get(start - 1) != '\n'
+				&& position - start < MAX_EXCERPT)
+		{
+			start--;
+		}
+		return start;
+	}
+
+	private static int lineEnd(MappedByteBuffer text, int position, int length)
+	{
+		int end = position;
+		while (end < length && text.get(end) != '\n')
+		{
+			end++;
+		}
+		return end;
+	}
+
+	private static String excerpt(MappedByteBuffer text, int start, int end)
+	{
+		byte[] bytes = new byte[Math.min(end - start, MAX_EXCERPT)];
+		for (int i = 0; i < bytes.length; i++)
+		{
+			bytes[i] = text.get(start + i);
+		}
+		try
+		{
+			return new String(bytes, "UTF-8").trim();
+		} catch (UnsupportedEncodingException e)
+		{
+			throw noUtf8(e);
+		}
+	}
+
+	/* Every platform has UTF-8; the cause constructor is API 9 */
+	private static IllegalStateException noUtf8(UnsupportedEncodingException e)
+	{
+		IllegalStateException missing = new IllegalStateException(
+				"UTF-8 is not supported");
+		missing.initCause(e);
+		return missing;
+	}
+}
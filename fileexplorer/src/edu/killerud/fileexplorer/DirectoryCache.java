@@ -0,0 +1,142 @@
+package edu.killerud.fileexplorer;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import edu.killerud.fileexplorer.core.DirectoryEntries;
+import edu.killerud.fileexplorer.core.FileSystem;
+
+/**
+ * Listings of directories we have been to, or expect to go to soon. Adding or
+ * removing a file changes the modification time of its directory, so a
+ * listing is only handed out while that is unchanged. Listings are also
+ * dropped after a while, since a file changing size inside the directory
+ * doesn't touch the directory itself.
+ *
+ * The cache holds up to a fixed number of entries in total, dropping the
+ * least recently used listings first. It may be used from any thread.
+ *
+ * @author William Killerud
+ *
+ */
+public class DirectoryCache
+{
+	private static final long MAX_AGE_MILLIS = 60 * 1000;
+
+	private final LinkedHashMap<String, Listing> mListings = new LinkedHashMap<String, Listing>(
+			16, 0.75f, true);
+	private final FileSystem mFileSystem;
+	private final int mMaxEntries;
+	private int mEntries;
+
+	private int mHits;
+	private int mMisses;
+
+	private static class Listing
+	{
+		final DirectoryEntries mEntries;
+		final long mLastModified;
+		final long mCreated;
+
+		Listing(DirectoryEntries entries, long lastModified, long created)
+		{
+			mEntries = entries;
+			mLastModified = lastModified;
+			mCreated = created;
+		}
+	}
+
+	public DirectoryCache(FileSystem fileSystem, int maxEntries)
+	{
+		mFileSystem = fileSystem;
+		mMaxEntries = maxEntries;
+	}
+
+	/*
+	 * Returns the cached listing of the directory, or null if there is none
+	 * or the directory has changed since.
+	 */
+	public synchronized DirectoryEntries get(File directory)
+	{
+		String key = directory.getAbsolutePath();
+		Listing listing = mListings.get(key);
+		if (listing != null && !isFresh(listing, directory))
+		{
+			remove(key);
+			listing = null;
+		}
+
+		if (listing == null)
+		{
+			mMisses++;
+			return null;
+		}
+		mHits++;
+		return listing.mEntries;
+	}
+
+	/* Like get(), but without counting as a hit or a miss */
+	public synchronized boolean contains(File directory)
+	{
+		Listing listing = mListings.get(directory.getAbsolutePath());
+		return listing != null && isFresh(listing, directory);
+	}
+
+	/*
+	 * Adds a listing. The modification time must be read before the directory
+	 * is listed, so a change made while listing makes the listing stale.
+	 */
+	public synchronized void put(File directory, long lastModified,
+			DirectoryEntries entries)
+	{
+		if (entries.size() > mMaxEntries)
+		{
+			return;
+		}
+		String key = directory.getAbsolutePath();
+		remove(key);
+		mListings.put(key, new Listing(entries, lastModified, System
+				.currentTimeMillis()));
+		mEntries += entries.size();
+
+		Iterator<Listing> eldest = mListings.values().iterator();
+		while (mEntries > mMaxEntries && eldest.hasNext())
+		{
+			mEntries -= eldest.next().mEntries.size();
+			eldest.remove();
+		}
+	}
+
+	public synchronized void clear()
+	{
+		mListings.clear();
+		mEntries = 0;
+	}
+
+	public synchronized int getHits()
+	{
+		return mHits;
+	}
+
+	public synchronized int getMisses()
+	{
+		return mMisses;
+	}
+
+	private boolean isFresh(Listing listing, File directory)
+	{
+		return listing.mLastModified == mFileSystem.lastModified(directory
+				.getPath())
+				&& System.currentTimeMillis() - listing.mCreated <= MAX_AGE_MILLIS;
+	}
+
+	private void remove(String key)
+	{
+		Listing listing = mListings.remove(key);
+		if (listing != null)
+		{
+			mEntries -= listing.mEntries.size();
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package edu.killerud.fileexplorer;
+
+import java.util.Arrays;
+
+/**
+ * What changed in a directory between two snapshots of it. Added and modified
+ * entries are indices into the newer listing, so they can be looked up while
+ * the list is drawn. Removed entries are only counted, since they are no
+ * longer in the listing to be shown.
+ *
+ * @author William Killerud
+ *
+ */
+public class DirectoryChanges
+{
+	public static final int UNCHANGED = 0;
+	public static final int ADDED = 1;
+	public static final int MODIFIED = 2;
+
+	private final int[] mAdded;
+	private final int[] mModified;
+	private final int mRemoved;
+
+	DirectoryChanges(int[] added, int[] modified, int removed)
+	{
+		mAdded = added;
+		mModified = modified;
+		mRemoved = removed;
+	}
+
+	public boolean isEmpty()
+	{
+		return mAdded.length == 0 && mModified.length == 0 && mRemoved == 0;
+	}
+
+	public int getAddedCount()
+	{
+		return mAdded.length;
+	}
+
+	public int getModifiedCount()
+	{
+		return mModified.length;
+	}
+
+	public int getRemovedCount()
+	{
+		return mRemoved;
+	}
+
+	/* Tells whether the entry is new, modified or neither */
+	public int getChange(int entry)
+	{
+		if (Arrays.binarySearch(mAdded, entry) >= 0)
+		{
+			return ADDED;
+		}
+		if (Arrays.binarySearch(mModified, entry) >= 0)
+		{
+			return MODIFIED;
+		}
+		return UNCHANGED;
+	}
+}
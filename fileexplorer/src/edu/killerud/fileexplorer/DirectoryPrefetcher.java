@@ -0,0 +1,156 @@
+package edu.killerud.fileexplorer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.killerud.fileexplorer.core.DirectoryEntries;
+import edu.killerud.fileexplorer.core.FileSystem;
+
+/**
+ * Lists the directories the user is likely to go to next, before they do: the
+ * parent of the current directory, and the children of it that were visited
+ * most recently. The listings go into the directory cache, so going there is
+ * just a lookup.
+ *
+ * The work is done on one thread from the given factory, which should make
+ * it of the lowest priority, and each round is bounded both in directories
+ * and in files stat'ed. Navigating again drops whatever is left of the
+ * previous round. Nothing here knows about Android, so it can be run and
+ * timed on a JVM.
+ *
+ * onNavigated() must be called from the UI thread.
+ *
+ * @author William Killerud
+ *
+ */
+public class DirectoryPrefetcher
+{
+	/* At most this many directories and this many files per round */
+	private static final int MAX_DIRECTORIES = 4;
+	private static final int MAX_FILES = 4000;
+
+	/* How many visited directories we remember */
+	private static final int MAX_RECENT = 32;
+
+	private final FileSystem mFileSystem;
+	private final DirectoryCache mCache;
+	private final ExecutorService mWorker;
+	private final AtomicInteger mRound = new AtomicInteger();
+	private final AtomicInteger mPrefetched = new AtomicInteger();
+
+	private final LinkedHashMap<String, File> mRecent = new LinkedHashMap<String, File>(
+			MAX_RECENT, 0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, File> eldest)
+		{
+			return size() > MAX_RECENT;
+		}
+	};
+
+	public DirectoryPrefetcher(FileSystem fileSystem, DirectoryCache cache,
+			ThreadFactory threads)
+	{
+		mFileSystem = fileSystem;
+		mCache = cache;
+		mWorker = Executors.newSingleThreadExecutor(threads);
+	}
+
+	/* How many directories have been listed ahead of time so far */
+	public int getPrefetched()
+	{
+		return mPrefetched.get();
+	}
+
+	/*
+	 * Remembers the visit and starts listing where the user may go from here.
+	 */
+	public void onNavigated(File directory)
+	{
+		mRecent.put(directory.getAbsolutePath(), directory);
+
+		final List<File> candidates = new ArrayList<File>(MAX_DIRECTORIES);
+		if (directory.getParentFile() != null)
+		{
+			candidates.add(directory.getParentFile());
+		}
+
+		/* The map iterates from least to most recently visited */
+		List<File> recent = new ArrayList<File>(mRecent.values());
+		for (int i = recent.size() - 1; i >= 0
+				&& candidates.size() < MAX_DIRECTORIES; i--)
+		{
+			File visited = recent.get(i);
+			if (directory.equals(visited.getParentFile()))
+			{
+				candidates.add(visited);
+			}
+		}
+
+		final int round = mRound.incrementAndGet();
+		mWorker.execute(new Runnable()
+		{
+			public void run()
+			{
+				prefetch(candidates, round);
+			}
+		});
+	}
+
+	public void shutdown()
+	{
+		mRound.incrementAndGet();
+		mWorker.shutdownNow();
+	}
+
+	private void prefetch(List<File> candidates, int round)
+	{
+		int budget = MAX_FILES;
+		for (File directory : candidates)
+		{
+			if (mRound.get() != round)
+			{
+				/* The user has moved on, this round is of no use */
+				return;
+			}
+			if (mCache.contains(directory))
+			{
+				continue;
+			}
+
+			/*
+			 * Stat'ing the files is the costly part, so that is what we count.
+			 * Getting just the names first tells us whether it fits.
+			 */
+			String path = directory.getPath();
+			long lastModified = mFileSystem.lastModified(path);
+			try
+			{
+				if (mFileSystem.listNames(path).length > budget)
+				{
+					continue;
+				}
+				DirectoryEntries entries = mFileSystem.list(path);
+				budget -= entries.size();
+
+				/* So going there doesn't build them on the UI thread */
+				entries.buildRanks();
+				mCache.put(directory, lastModified, entries);
+				mPrefetched.incrementAndGet();
+			} catch (IOException e)
+			{
+				/* Can't be read, the user will find out if they go there */
+			}
+		}
+	}
+}
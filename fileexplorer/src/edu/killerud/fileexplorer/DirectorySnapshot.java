@@ -0,0 +1,222 @@
+package edu.killerud.fileexplorer;
+
+import java.util.Arrays;
+
+import edu.killerud.fileexplorer.core.DirectoryEntries;
+
+/**
+ * A compact record of what a directory looked like, for telling later what
+ * has changed. Each entry is kept as a 64-bit hash of its name and a 64-bit
+ * fingerprint of its size and modification time, along with its index in the
+ * listing the snapshot was taken from, sorted by the name hash. That is 20
+ * bytes an entry, whatever the length of the names.
+ *
+ * Two snapshots are compared by walking both sorted arrays once, side by
+ * side, like the merge step of a merge sort.
+ *
+ * @author William Killerud
+ *
+ */
+public class DirectorySnapshot
+{
+	/* Below this many elements the sort switches to insertion sort */
+	private static final int INSERTION_SORT_CUTOFF = 16;
+
+	private final long[] mNameHashes;
+	private final long[] mFingerprints;
+	private final int[] mEntries;
+
+	private DirectorySnapshot(long[] nameHashes, long[] fingerprints,
+			int[] entries)
+	{
+		mNameHashes = nameHashes;
+		mFingerprints = fingerprints;
+		mEntries = entries;
+	}
+
+	public static DirectorySnapshot of(DirectoryEntries entries)
+	{
+		int count = entries.size();
+		long[] nameHashes = new long[count];
+		long[] fingerprints = new long[count];
+		int[] indices = new int[count];
+		for (int i = 0; i < count; i++)
+		{
+			nameHashes[i] = hash(entries.getName(i));
+			fingerprints[i] = mix(entries.getSize(i)
+					^ mix(entries.getLastModified(i))
+					^ (entries.isDirectory(i) ? 1 : 0));
+			indices[i] = i;
+		}
+		sort(nameHashes, fingerprints, indices, 0, count - 1);
+		return new DirectorySnapshot(nameHashes, fingerprints, indices);
+	}
+
+	public int size()
+	{
+		return mNameHashes.length;
+	}
+
+	public long getByteCount()
+	{
+		return mNameHashes.length * (8l + 8l + 4l);
+	}
+
+	/*
+	 * Finds what changed between an older snapshot of the same directory and
+	 * this one. Added and modified entries are given as indices into the
+	 * listing this snapshot was taken from.
+	 */
+	public DirectoryChanges diffFrom(DirectorySnapshot older)
+	{
+		IntList added = new IntList();
+		IntList modified = new IntList();
+		int removed = 0;
+
+		long[] newHashes = mNameHashes;
+		long[] oldHashes = older.mNameHashes;
+		int i = 0;
+		int j = 0;
+		while (i < newHashes.length && j < oldHashes.length)
+		{
+			if (newHashes[i] == oldHashes[j])
+			{
+				if (mFingerprints[i] != older.mFingerprints[j])
+				{
+					modified.add(mEntries[i]);
+				}
+				i++;
+				j++;
+			} else if (newHashes[i] < oldHashes[j])
+			{
+				added.add(mEntries[i++]);
+			} else
+			{
+				removed++;
+				j++;
+			}
+		}
+		while (i < newHashes.length)
+		{
+			added.add(mEntries[i++]);
+		}
+		removed += oldHashes.length - j;
+
+		return new DirectoryChanges(added.toSortedArray(),
+				modified.toSortedArray(), removed);
+	}
+
+	/* FNV-1a over the characters, finished off with a mix of the bits */
+	private static long hash(String name)
+	{
+		long hash = 0xcbf29ce484222325l;
+		for (int i = 0; i < name.length(); i++)
+		{
+			hash ^= name.charAt(i);
+			hash *= 0x100000001b3l;
+		}
+		return mix(hash);
+	}
+
+	/* The finalizer from MurmurHash3, which spreads every input bit around */
+	private static long mix(long value)
+	{
+		long h = value;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdl;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53l;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/*
+	 * Quicksort on the hashes, moving the other two arrays along. The hashes
+	 * are as good as random, so the middle element makes a fine pivot.
+	 * Recursing into the smaller half keeps the stack shallow.
+	 */
+	private static void sort(long[] keys, long[] fingerprints, int[] indices,
+			int low, int high)
+	{
+		int from = low;
+		int to = high;
+		while (to - from >= INSERTION_SORT_CUTOFF)
+		{
+			long pivot = keys[(from + to) >>> 1];
+			int i = from;
+			int j = to;
+			while (i <= j)
+			{
+				while (keys[i] < pivot)
+				{
+					i++;
+				}
+				while (keys[j] > pivot)
+				{
+					j--;
+				}
+				if (i <= j)
+				{
+					swap(keys, fingerprints, indices, i++, j--);
+				}
+			}
+			if (j - from < to - i)
+			{
+				sort(keys, fingerprints, indices, from, j);
+				from = i;
+			} else
+			{
+				sort(keys, fingerprints, indices, i, to);
+				to = j;
+			}
+		}
+
+		for (int i = from + 1; i <= to; i++)
+		{
+			for (int j = i; j > from && keys[j - 1] > keys[j]; j--)
+			{
+				swap(keys, fingerprints, indices, j - 1, j);
+			}
+		}
+	}
+
+	private static void swap(long[] keys, long[] fingerprints, int[] indices,
+			int a, int b)
+	{
+		long key = keys[a];
+		keys[a] = keys[b];
+		keys[b] = key;
+		long fingerprint = fingerprints[a];
+		fingerprints[a] = fingerprints[b];
+		fingerprints[b] = fingerprint;
+		int index = indices[a];
+		indices[a] = indices[b];
+		indices[b] = index;
+	}
+
+	/* Just enough of a growable int array to collect the changes in */
+	private static class IntList
+	{
+		private int[] mValues = new int[16];
+		private int mSize;
+
+		void add(int value)
+		{
+			if (mSize == mValues.length)
+			{
+				int[] values = new int[mSize * 2];
+				System.arraycopy(mValues, 0, values, 0, mSize);
+				mValues = values;
+			}
+			mValues[mSize++] = value;
+		}
+
+		int[] toSortedArray()
+		{
+			int[] values = new int[mSize];
+			System.arraycopy(mValues, 0, values, 0, mSize);
+			Arrays.sort(values);
+			return values;
+		}
+	}
+}
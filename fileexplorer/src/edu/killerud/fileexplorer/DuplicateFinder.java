@@ -0,0 +1,384 @@
+package edu.killerud.fileexplorer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finds duplicate files below a directory. Reading every byte of every file
+ * is expensive, so the candidates are narrowed down in stages:
+ *
+ * 1. Files are grouped by size. A file with a unique size has no duplicates.
+ *
+ * 2. The remaining files are grouped by a hash of their first and last block.
+ * Most files that merely happen to share a size differ right at the start
+ * (headers) or the end.
+ *
+ * 3. Only what is left is hashed in full.
+ *
+ * The files are read through memory mapped FileChannels, by a fixed number of
+ * worker threads.
+ *
+ * @author William Killerud
+ *
+ */
+public class DuplicateFinder
+{
+	/* The size of the first and last block hashed in stage two */
+	private static final int BLOCK_SIZE = 4096;
+
+	/* How much of a file we map at a time when hashing it in full */
+	private static final int MAP_WINDOW = 8 * 1024 * 1024;
+
+	private static final String DIGEST = "SHA-1";
+
+	private final int mThreads;
+	private final AtomicLong mBytesRead = new AtomicLong();
+	private volatile boolean mCancelled;
+
+	public DuplicateFinder()
+	{
+		this(Math.min(4, Runtime.getRuntime().availableProcessors()));
+	}
+
+	public DuplicateFinder(int threads)
+	{
+		mThreads = Math.max(1, threads);
+	}
+
+	/*
+	 * A set of files with identical content.
+	 */
+	public static class DuplicateGroup
+	{
+		private final long mSize;
+		private final List<File> mFiles;
+
+		DuplicateGroup(long size, List<File> files)
+		{
+			mSize = size;
+			mFiles = files;
+		}
+
+		public long getSize()
+		{
+			return mSize;
+		}
+
+		public List<File> getFiles()
+		{
+			return mFiles;
+		}
+
+		/* Keeping one copy, this is how much space the others take up */
+		public long getReclaimableBytes()
+		{
+			return mSize * (mFiles.size() - 1);
+		}
+	}
+
+	/*
+	 * Searches the directory and everything below it. Returns an empty list if
+	 * cancel() was called along the way.
+	 */
+	public List<DuplicateGroup> find(File directory) throws IOException
+	{
+		mCancelled = false;
+		mBytesRead.set(0);
+
+		HashMap<Long, List<File>> bySize = new HashMap<Long, List<File>>();
+		collectFiles(directory, bySize);
+
+		ExecutorService workers = Executors.newFixedThreadPool(mThreads);
+		try
+		{
+			List<List<File>> candidates = withoutSingletons(bySize.values());
+			candidates = regroup(workers, candidates, true);
+			candidates = regroup(workers, candidates, false);
+
+			List<DuplicateGroup> duplicates = new ArrayList<DuplicateGroup>();
+			if (!mCancelled)
+			{
+				for (List<File> group : candidates)
+				{
+					duplicates.add(new DuplicateGroup(group.get(0).length(),
+							group));
+				}
+			}
+			return duplicates;
+		} finally
+		{
+			workers.shutdownNow();
+		}
+	}
+
+	public void cancel()
+	{
+		mCancelled = true;
+	}
+
+	/* How many bytes were read from disk during the last search */
+	public long getBytesRead()
+	{
+		return mBytesRead.get();
+	}
+
+	public static long getReclaimableBytes(List<DuplicateGroup> duplicates)
+	{
+		long reclaimable = 0;
+		for (DuplicateGroup group : duplicates)
+		{
+			reclaimable += group.getReclaimableBytes();
+		}
+		return reclaimable;
+	}
+
+	/*
+	 * Walks the tree without recursion, so a deep tree can't blow the stack.
+	 * Directories are remembered by their canonical path so that symbolic
+	 * links can't send us around in circles.
+	 */
+	private void collectFiles(File root, HashMap<Long, List<File>> bySize)
+			throws IOException
+	{
+		HashSet<String> visited = new HashSet<String>();
+		ArrayList<File> pending = new ArrayList<File>();
+		pending.add(root);
+
+		while (!pending.isEmpty() && !mCancelled)
+		{
+			File directory = pending.remove(pending.size() - 1);
+			if (!visited.add(directory.getCanonicalPath()))
+			{
+				continue;
+			}
+
+			File[] files = directory.listFiles();
+			if (files == null)
+			{
+				continue;
+			}
+
+			for (int i = 0; i < files.length; i++)
+			{
+				if (files[i].isDirectory())
+				{
+					pending.add(files[i]);
+					continue;
+				}
+
+				/* Empty files take up no space, so there is nothing to gain */
+				long size = files[i].length();
+				if (size == 0)
+				{
+					continue;
+				}
+
+				Long key = Long.valueOf(size);
+				List<File> sameSize = bySize.get(key);
+				if (sameSize == null)
+				{
+					sameSize = new ArrayList<File>(2);
+					bySize.put(key, sameSize);
+				}
+				sameSize.add(files[i]);
+			}
+		}
+	}
+
+	/*
+	 * Hashes every file in every group on the worker threads, and splits the
+	 * groups up by hash. All files are queued up front so that the workers
+	 * stay busy even when most groups are just a pair of files. Files whose
+	 * hash can't be computed are dropped.
+	 */
+	private List<List<File>> regroup(ExecutorService workers,
+			List<List<File>> groups, final boolean partial)
+	{
+		List<List<File>> result = new ArrayList<List<File>>();
+		List<List<File>> hashed = new ArrayList<List<File>>();
+		ArrayList<Future<String>> hashes = new ArrayList<Future<String>>();
+
+		for (List<File> group : groups)
+		{
+			/*
+			 * Files no bigger than the two blocks were read in full during
+			 * the partial stage, there is no need to read them again.
+			 */
+			if (!partial && group.get(0).length() <= 2 * BLOCK_SIZE)
+			{
+				result.add(group);
+				continue;
+			}
+
+			hashed.add(group);
+			for (final File file : group)
+			{
+				hashes.add(workers.submit(new Callable<String>()
+				{
+					public String call() throws IOException
+					{
+						return partial ? hashEnds(file) : hashAll(file);
+					}
+				}));
+			}
+		}
+
+		int next = 0;
+		for (List<File> group : hashed)
+		{
+			HashMap<String, List<File>> byHash = new HashMap<String, List<File>>();
+			for (File file : group)
+			{
+				String hash = await(hashes.get(next++));
+				if (hash == null)
+				{
+					continue;
+				}
+				List<File> sameHash = byHash.get(hash);
+				if (sameHash == null)
+				{
+					sameHash = new ArrayList<File>(2);
+					byHash.put(hash, sameHash);
+				}
+				sameHash.add(file);
+			}
+			result.addAll(withoutSingletons(byHash.values()));
+		}
+		return result;
+	}
+
+	private String await(Future<String> hash)
+	{
+		try
+		{
+			return hash.get();
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			mCancelled = true;
+			return null;
+		} catch (ExecutionException e)
+		{
+			/* Unreadable file, it simply can't be part of a group */
+			return null;
+		}
+	}
+
+	/* Hashes the first and the last block of the file */
+	private String hashEnds(File file) throws IOException
+	{
+		if (mCancelled)
+		{
+			return null;
+		}
+
+		FileInputStream in = new FileInputStream(file);
+		try
+		{
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+			MessageDigest digest = newDigest();
+
+			long headLength = Math.min(size, BLOCK_SIZE);
+			digest.update(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					headLength));
+
+			long tailStart = Math.max(headLength, size - BLOCK_SIZE);
+			if (tailStart < size)
+			{
+				digest.update(channel.map(FileChannel.MapMode.READ_ONLY,
+						tailStart, size - tailStart));
+			}
+			mBytesRead.addAndGet(headLength + (size - tailStart));
+			return toHex(digest.digest());
+		} finally
+		{
+			in.close();
+		}
+	}
+
+	/* Hashes the whole file, one mapped window at a time */
+	private String hashAll(File file) throws IOException
+	{
+		FileInputStream in = new FileInputStream(file);
+		try
+		{
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+			MessageDigest digest = newDigest();
+
+			for (long position = 0; position < size; position += MAP_WINDOW)
+			{
+				if (mCancelled)
+				{
+					return null;
+				}
+				long length = Math.min(MAP_WINDOW, size - position);
+				MappedByteBuffer window = channel.map(
+						FileChannel.MapMode.READ_ONLY, position, length);
+				digest.update(window);
+				mBytesRead.addAndGet(length);
+			}
+			return toHex(digest.digest());
+		} finally
+		{
+			in.close();
+		}
+	}
+
+	private static List<List<File>> withoutSingletons(
+			Collection<List<File>> groups)
+	{
+		List<List<File>> result = new ArrayList<List<File>>();
+		for (List<File> group : groups)
+		{
+			if (group.size() > 1)
+			{
+				result.add(group);
+			}
+		}
+		return result;
+	}
+
+	private static MessageDigest newDigest()
+	{
+		try
+		{
+			return MessageDigest.getInstance(DIGEST);
+		} catch (NoSuchAlgorithmException e)
+		{
+			/* Every Java platform is required to have SHA-1 */
+			IllegalStateException missing = new IllegalStateException(DIGEST
+					+ " is not available");
+			missing.initCause(e);
+			throw missing;
+		}
+	}
+
+	private static String toHex(byte[] bytes)
+	{
+		char[] hex = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++)
+		{
+			hex[i * 2] = Character.forDigit((bytes[i] >> 4) & 0xf, 16);
+			hex[i * 2 + 1] = Character.forDigit(bytes[i] & 0xf, 16);
+		}
+		return new String(hex);
+	}
+}
@@ -0,0 +1,155 @@
+package edu.killerud.fileexplorer;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.ImageView;
+import android.widget.TextView;
+import edu.killerud.fileexplorer.core.DirectoryEntries;
+import edu.killerud.fileexplorer.core.EntryFilter;
+
+/**
+ * Shows the entries of the current directory that pass the filter, in sorted
+ * order. The adapter reads straight from the snapshot, so no list of names has
+ * to be built when the sort order or the filter changes.
+ *
+ * Images and text files get a preview, loaded in the background. A row that
+ * is reused for another entry drops the request for its old preview.
+ *
+ * Entries that are new or changed since the last visit are highlighted.
+ *
+ * @author William Killerud
+ *
+ */
+public class EntryAdapter extends BaseAdapter
+{
+	private final LayoutInflater mInflater;
+	private final DirectoryEntries mEntries;
+	private final EntryFilter mFilter;
+	private final PreviewLoader mPreviews;
+	private final int mAddedColor;
+	private final int mModifiedColor;
+	private DirectoryChanges mChanges;
+
+	public EntryAdapter(Context context, DirectoryEntries entries,
+			EntryFilter filter, PreviewLoader previews)
+	{
+		mInflater = LayoutInflater.from(context);
+		mEntries = entries;
+		mFilter = filter;
+		mPreviews = previews;
+		mAddedColor = context.getResources().getColor(R.color.entry_added);
+		mModifiedColor = context.getResources().getColor(
+				R.color.entry_modified);
+	}
+
+	/* The changes to highlight, or null for none */
+	public void setChanges(DirectoryChanges changes)
+	{
+		mChanges = changes;
+		notifyDataSetChanged();
+	}
+
+	public int getCount()
+	{
+		return mFilter.getCount();
+	}
+
+	/* Returns the snapshot index of the entry shown at the given position */
+	public Object getItem(int position)
+	{
+		return Integer.valueOf(mFilter.getEntryIndex(position));
+	}
+
+	public long getItemId(int position)
+	{
+		return mFilter.getEntryIndex(position);
+	}
+
+	public View getView(int position, View convertView, ViewGroup parent)
+	{
+		View row = convertView;
+		RowHolder holder;
+		if (row == null)
+		{
+			row = mInflater.inflate(R.layout.explorer_row, parent, false);
+			holder = new RowHolder(row);
+			row.setTag(holder);
+		} else
+		{
+			holder = (RowHolder) row.getTag();
+		}
+
+		int entry = mFilter.getEntryIndex(position);
+		holder.mName.setText(mEntries.getName(entry));
+		holder.clearPreview();
+
+		int change = mChanges == null ? DirectoryChanges.UNCHANGED : mChanges
+				.getChange(entry);
+		row.setBackgroundColor(change == DirectoryChanges.ADDED ? mAddedColor
+				: change == DirectoryChanges.MODIFIED ? mModifiedColor : 0);
+
+		String extension = mEntries.getExtension(entry);
+		if (mEntries.getFile(entry) != null
+				&& PreviewLoader.canPreview(extension))
+		{
+			mPreviews.load(mEntries.getFile(entry), extension,
+					mEntries.getLastModified(entry), mEntries.getSize(entry),
+					holder);
+		} else
+		{
+			mPreviews.cancel(holder);
+		}
+		return row;
+	}
+
+	/*
+	 * Called when a row scrolls off screen, so we don't keep decoding a
+	 * preview nobody is going to see.
+	 */
+	public void onRowHidden(View row)
+	{
+		Object holder = row.getTag();
+		if (holder instanceof RowHolder)
+		{
+			mPreviews.cancel((RowHolder) holder);
+		}
+	}
+
+	private static class RowHolder implements PreviewLoader.Target
+	{
+		final TextView mName;
+		final ImageView mImage;
+		final TextView mText;
+
+		RowHolder(View row)
+		{
+			mName = (TextView) row.findViewById(R.id.explorer_row);
+			mImage = (ImageView) row.findViewById(R.id.preview_image);
+			mText = (TextView) row.findViewById(R.id.preview_text);
+		}
+
+		void clearPreview()
+		{
+			mImage.setImageBitmap(null);
+			mImage.setVisibility(View.GONE);
+			mText.setText(null);
+			mText.setVisibility(View.GONE);
+		}
+
+		public void onPreviewLoaded(Preview preview)
+		{
+			if (preview.getImage() != null)
+			{
+				mImage.setImageBitmap(preview.getImage());
+				mImage.setVisibility(View.VISIBLE);
+			} else
+			{
+				mText.setText(preview.getText());
+				mText.setVisibility(View.VISIBLE);
+			}
+		}
+	}
+}
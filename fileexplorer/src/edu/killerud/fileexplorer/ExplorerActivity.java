@@ -3,30 +3,106 @@ package edu.killerud.fileexplorer;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import android.app.AlertDialog;
 import android.app.ListActivity;
+import android.app.ProgressDialog;
+import android.content.DialogInterface;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Process;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.text.format.Formatter;
+import android.view.ContextMenu;
+import android.view.ContextMenu.ContextMenuInfo;
+import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
 import android.view.View;
+import android.widget.AbsListView.RecyclerListener;
+import android.widget.AdapterView.AdapterContextMenuInfo;
 import android.widget.ArrayAdapter;
+import android.widget.EditText;
+import android.widget.HorizontalScrollView;
+import android.widget.LinearLayout;
 import android.widget.ListView;
 import android.widget.TextView;
 import android.widget.Toast;
+import edu.killerud.fileexplorer.DuplicateFinder.DuplicateGroup;
+import edu.killerud.fileexplorer.core.DirectoryEntries;
+import edu.killerud.fileexplorer.core.EntryFilter;
+import edu.killerud.fileexplorer.core.EntrySorter;
+import edu.killerud.fileexplorer.core.EntrySorter.SortMode;
+import edu.killerud.fileexplorer.core.FileSystem;
+import edu.killerud.fileexplorer.core.LocalFileSystem;
 
 public class ExplorerActivity extends ListActivity
 {
 
+	/* Where the listings come from, and the directory we are in */
+	private final FileSystem mFileSystem = new LocalFileSystem();
+	private File mCurrentDirectory;
+
+	/* Whether the current directory is inside a zip or jar file */
+	private boolean mInArchive;
+
 	/*
-	 * Holds the current directory File object and the file list for that
-	 * directory
+	 * The stat'ed snapshot of the current directory, and the sorted and
+	 * filtered view of it that is shown in the list
 	 */
-	private File mCurrentDirectory;
-	private File[] mCurrentDirectoryList;
+	private DirectoryEntries mEntries;
+	private EntryFilter mFilter;
+	private EntryAdapter mAdapter;
+	private SortMode mSortMode = SortMode.NAME;
+	private boolean mSortAscending = true;
+
+	/* Thumbnails and text snippets for the rows, cached in memory and on disk */
+	private PreviewLoader mPreviews;
+
+	/*
+	 * Listings of directories we have seen, or are likely to see next, so
+	 * going back and forth doesn't stat every file each time
+	 */
+	private DirectoryCache mDirectories;
+	private DirectoryPrefetcher mPrefetcher;
+
+	/* Snapshots of the directories we have listed, to tell what changed since */
+	private ChangeFeed mChanges;
+
+	/*
+	 * Files picked with Copy or Move from the context menu, waiting to be
+	 * pasted, and a paste that was cancelled and can be resumed
+	 */
+	private ArrayList<File> mClipboard = new ArrayList<File>();
+	private boolean mClipboardIsMove;
+	private FileTransfer mInterruptedTransfer;
+
+	/* The path at the top of our screen, one button per directory in it */
+	private HorizontalScrollView mBreadcrumbScroller;
+	private LinearLayout mBreadcrumbs;
 
-	/* The path TextView at the top of our screen */
-	private TextView mPathOut;
+	/* The filter field below the path */
+	private EditText mFilterIn;
 
 	private static final String PATH_TO_ROOT = "/";
 
+	/* Files in all cached directory listings together */
+	private static final int MAX_CACHED_ENTRIES = 20000;
+
+	/* Files in all snapshots together, at 20 bytes each */
+	private static final int MAX_SNAPSHOT_ENTRIES = 200000;
+
+	/*
+	 * Directories of up to this many files are ranked for sorting right away.
+	 * Bigger ones are ranked in the background, as that takes seconds.
+	 */
+	private static final int MAX_RANKED_IN_PLACE = 500;
+
 	/** Called when the activity is first created. */
 	@Override
 	public void onCreate(Bundle savedInstanceState)
@@ -35,7 +111,85 @@ public class ExplorerActivity extends ListActivity
 		setContentView(R.layout.main);
 
 		/* Set up our fields and load root */
-		mPathOut = (TextView) findViewById(R.id.current_path);
+		mBreadcrumbScroller = (HorizontalScrollView) findViewById(R.id.breadcrumb_scroller);
+		mBreadcrumbs = (LinearLayout) findViewById(R.id.breadcrumbs);
+		mFilterIn = (EditText) findViewById(R.id.filter);
+
+		/* Narrow down the list as the user types */
+		mFilterIn.addTextChangedListener(new TextWatcher()
+		{
+			public void onTextChanged(CharSequence s, int start, int before,
+					int count)
+			{
+				if (mFilter != null)
+				{
+					mFilter.setQuery(s.toString());
+					mAdapter.notifyDataSetChanged();
+				}
+			}
+
+			public void beforeTextChanged(CharSequence s, int start,
+					int count, int after)
+			{
+			}
+
+			public void afterTextChanged(Editable s)
+			{
+			}
+		});
+
+		/* Long-pressing a file brings up copy and move */
+		registerForContextMenu(getListView());
+
+		/* Use an eighth of the heap for previews kept in memory */
+		mPreviews = new PreviewLoader(new PreviewCache(new File(getCacheDir(),
+				"previews"), Runtime.getRuntime().maxMemory() / 8));
+		mDirectories = new DirectoryCache(mFileSystem, MAX_CACHED_ENTRIES);
+		mPrefetcher = new DirectoryPrefetcher(mFileSystem, mDirectories,
+				new ThreadFactory()
+				{
+					public Thread newThread(final Runnable runnable)
+					{
+						return new Thread(new Runnable()
+						{
+							public void run()
+							{
+								Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+								runnable.run();
+							}
+						}, "DirectoryPrefetcher");
+					}
+				});
+
+		/* Highlight what is new or changed when coming back to a directory */
+		mChanges = new ChangeFeed(MAX_SNAPSHOT_ENTRIES);
+		mChanges.addListener(new ChangeFeed.ChangeListener()
+		{
+			public void onDirectoryChanged(File directory,
+					DirectoryChanges changes)
+			{
+				if (directory.equals(mCurrentDirectory))
+				{
+					mAdapter.setChanges(changes);
+					Toast.makeText(getApplicationContext(), getString(
+							R.string.changes_since_last_visit,
+							changes.getAddedCount(),
+							changes.getModifiedCount(),
+							changes.getRemovedCount()), Toast.LENGTH_SHORT).show();
+				}
+			}
+		});
+
+		getListView().setRecyclerListener(new RecyclerListener()
+		{
+			public void onMovedToScrapHeap(View row)
+			{
+				if (mAdapter != null)
+				{
+					mAdapter.onRowHidden(row);
+				}
+			}
+		});
 
 		try
 		{
@@ -51,6 +205,156 @@ public class ExplorerActivity extends ListActivity
 		}
 	}
 
+	@Override
+	protected void onDestroy()
+	{
+		super.onDestroy();
+		mPreviews.shutdown();
+		mPrefetcher.shutdown();
+	}
+
+	@Override
+	public boolean onCreateOptionsMenu(Menu menu)
+	{
+		MenuInflater inflater = getMenuInflater();
+		inflater.inflate(R.menu.menu, menu);
+		return true;
+	}
+
+	@Override
+	public boolean onPrepareOptionsMenu(Menu menu)
+	{
+		/* Archives are read-only, and the searches only look at plain files */
+		menu.findItem(R.id.paste).setVisible(
+				!mClipboard.isEmpty() && !mInArchive);
+		menu.findItem(R.id.resume_transfer).setVisible(
+				mInterruptedTransfer != null && !mInArchive);
+		menu.findItem(R.id.find_duplicates).setVisible(!mInArchive);
+		menu.findItem(R.id.search_content).setVisible(!mInArchive);
+		return true;
+	}
+
+	@Override
+	public boolean onOptionsItemSelected(MenuItem item)
+	{
+		switch (item.getItemId())
+		{
+		case R.id.paste:
+			FileTransfer transfer = new FileTransfer(mClipboard,
+					mCurrentDirectory, mClipboardIsMove);
+			if (mClipboardIsMove)
+			{
+				/* The files won't be where they were anymore */
+				mClipboard.clear();
+			}
+			new TransferTask().execute(transfer);
+			return true;
+		case R.id.resume_transfer:
+			new TransferTask().execute(mInterruptedTransfer);
+			mInterruptedTransfer = null;
+			return true;
+		case R.id.sort_name:
+			sortBy(SortMode.NAME);
+			return true;
+		case R.id.sort_size:
+			sortBy(SortMode.SIZE);
+			return true;
+		case R.id.sort_modified:
+			sortBy(SortMode.LAST_MODIFIED);
+			return true;
+		case R.id.sort_type:
+			sortBy(SortMode.TYPE);
+			return true;
+		case R.id.find_duplicates:
+			new DuplicateSearchTask().execute(mCurrentDirectory);
+			return true;
+		case R.id.search_content:
+			askForSearchQuery();
+			return true;
+		default:
+			return super.onOptionsItemSelected(item);
+		}
+	}
+
+	/* Asks what to look for, then searches the files below this directory */
+	private void askForSearchQuery()
+	{
+		final EditText queryIn = new EditText(this);
+		new AlertDialog.Builder(this).setTitle(R.string.search_content)
+				.setView(queryIn)
+				.setPositiveButton(R.string.search,
+						new DialogInterface.OnClickListener()
+						{
+							public void onClick(DialogInterface dialog,
+									int which)
+							{
+								String query = queryIn.getText().toString();
+								if (query.length() > 0)
+								{
+									new ContentSearchTask(query)
+											.execute(mCurrentDirectory);
+								}
+							}
+						}).show();
+	}
+
+	/*
+	 * Sorts the list by the given mode. Picking the mode that is already in
+	 * use flips the direction instead.
+	 */
+	private void sortBy(SortMode mode)
+	{
+		if (mode == mSortMode)
+		{
+			mSortAscending = !mSortAscending;
+		} else
+		{
+			mSortMode = mode;
+			mSortAscending = true;
+		}
+
+		/* If the ranks are still being built, the list is sorted once they are */
+		if (mEntries != null && mEntries.hasRanks())
+		{
+			mFilter.setOrder(EntrySorter.sort(mEntries, mSortMode,
+					mSortAscending));
+			mAdapter.notifyDataSetChanged();
+		}
+	}
+
+	@Override
+	public void onCreateContextMenu(ContextMenu menu, View view,
+			ContextMenuInfo menuInfo)
+	{
+		super.onCreateContextMenu(menu, view, menuInfo);
+		if (!mInArchive)
+		{
+			getMenuInflater().inflate(R.menu.entry, menu);
+		}
+	}
+
+	@Override
+	public boolean onContextItemSelected(MenuItem item)
+	{
+		AdapterContextMenuInfo info = (AdapterContextMenuInfo) item
+				.getMenuInfo();
+		File file = mEntries.getFile(mFilter.getEntryIndex(info.position));
+
+		switch (item.getItemId())
+		{
+		case R.id.copy:
+		case R.id.move:
+			mClipboard.clear();
+			mClipboard.add(file);
+			mClipboardIsMove = item.getItemId() == R.id.move;
+			Toast.makeText(getApplicationContext(), R.string.paste_hint,
+					Toast.LENGTH_SHORT).show();
+			return true;
+		default:
+			return super.onContextItemSelected(item);
+		}
+	}
+
 	/*
 	 * 
 	 * (non-Javadoc)
@@ -62,76 +366,413 @@ public class ExplorerActivity extends ListActivity
 	protected void onListItemClick(ListView parentList, View clickedView,
 			int viewPosition, long viewId)
 	{
-		/*
-		 * Here you can for instance get the position of the view and use it to
-		 * fetch the file details of the file at that position in the directory
-		 * File array. If the position is a directory, why don't navigate to it?
-		 * 
-		 * Go nuts!
-		 */
+		/* Directories, and zip and jar files on disk, can be opened */
+		int entry = mFilter.getEntryIndex(viewPosition);
+		if (!mEntries.isDirectory(entry)
+				&& (mInArchive || !ArchiveFileSystem.isArchive(mEntries
+						.getExtension(entry))))
+		{
+			return;
+		}
+		openDirectory(new File(mCurrentDirectory, mEntries.getName(entry)));
+	}
+
+	/* Back goes up a level, and only leaves the app at the top */
+	@Override
+	public void onBackPressed()
+	{
+		File parent = mCurrentDirectory.getParentFile();
+		if (parent == null)
+		{
+			super.onBackPressed();
+			return;
+		}
+		openDirectory(parent);
+	}
+
+	private void openDirectory(File directory)
+	{
+		try
+		{
+			navigateExplorer(directory.getAbsolutePath());
+			mFilterIn.setText("");
+		} catch (IOException e)
+		{
+			Toast.makeText(getApplicationContext(), R.string.open_error,
+					Toast.LENGTH_SHORT).show();
+		}
 	}
 
 	/*
 	 * Navigates the application to the given path, updating the UI in the
-	 * process.
+	 * process. Paths into zip and jar files are listed from the archive's
+	 * table of contents.
 	 */
 	private void navigateExplorer(String pathToNavigateTo) throws IOException
 	{
-		mCurrentDirectory = new File(pathToNavigateTo);
-		mCurrentDirectoryList = mCurrentDirectory.listFiles();
-		mPathOut.setText(mCurrentDirectory.getAbsolutePath());
-		listDirectoryContent(getFileNames(mCurrentDirectoryList));
+		File directory = new File(pathToNavigateTo);
+		DirectoryEntries entries;
+		boolean inArchive = ArchiveFileSystem.findArchive(directory) != null;
+		if (inArchive)
+		{
+			entries = ArchiveFileSystem.list(directory);
+		} else if ((entries = mDirectories.get(directory)) == null)
+		{
+			long lastModified = mFileSystem.lastModified(pathToNavigateTo);
+			entries = mFileSystem.list(pathToNavigateTo);
+			mDirectories.put(directory, lastModified, entries);
+		}
+
+		mCurrentDirectory = directory;
+		mInArchive = inArchive;
+		showBreadcrumbs(mCurrentDirectory.getAbsoluteFile());
+		listDirectoryContent(entries);
+
+		/* Archives have their own cache, and no parent to speak of */
+		if (!mInArchive)
+		{
+			mChanges.update(directory, entries);
+			mPrefetcher.onNavigated(directory);
+		}
+	}
+
+	/*
+	 * Shows the path as a row of directory names, each of which takes us back
+	 * to that directory when tapped, scrolled so the current one is in view.
+	 */
+	private void showBreadcrumbs(File directory)
+	{
+		ArrayList<File> path = new ArrayList<File>();
+		for (File crumb = directory; crumb != null; crumb = crumb.getParentFile())
+		{
+			path.add(0, crumb);
+		}
+
+		mBreadcrumbs.removeAllViews();
+		LayoutInflater inflater = LayoutInflater.from(this);
+		for (int i = 0; i < path.size(); i++)
+		{
+			final File crumb = path.get(i);
+			TextView crumbView = (TextView) inflater.inflate(
+					R.layout.breadcrumb, mBreadcrumbs, false);
+			crumbView.setText(i == 0 ? PATH_TO_ROOT : crumb.getName() + " /");
+			if (i < path.size() - 1)
+			{
+				crumbView.setOnClickListener(new View.OnClickListener()
+				{
+					public void onClick(View view)
+					{
+						openDirectory(crumb);
+					}
+				});
+			}
+			mBreadcrumbs.addView(crumbView);
+		}
+
+		mBreadcrumbScroller.post(new Runnable()
+		{
+			public void run()
+			{
+				mBreadcrumbScroller.fullScroll(View.FOCUS_RIGHT);
+			}
+		});
+	}
+
+	/*
+	 * Populates the ListView with the entries of the current directory,
+	 * sorted and filtered the way the user last asked for. A huge directory
+	 * that wasn't ranked by the prefetcher is shown in the order it was
+	 * listed in, and sorted once the ranks are built in the background.
+	 */
+	private void listDirectoryContent(DirectoryEntries entries)
+	{
+		mEntries = entries;
+		if (!entries.hasRanks() && entries.size() <= MAX_RANKED_IN_PLACE)
+		{
+			entries.buildRanks();
+		}
+
+		int[] order;
+		if (entries.hasRanks())
+		{
+			order = EntrySorter.sort(mEntries, mSortMode, mSortAscending);
+		} else
+		{
+			order = new int[entries.size()];
+			for (int i = 0; i < order.length; i++)
+			{
+				order[i] = i;
+			}
+			new RankTask().execute(entries);
+		}
+		mFilter = new EntryFilter(mEntries, order);
+		mFilter.setQuery(mFilterIn.getText().toString());
+		mAdapter = new EntryAdapter(getApplicationContext(), mEntries, mFilter,
+				mPreviews);
+		setListAdapter(mAdapter);
+	}
+
+	/*
+	 * Builds the collation keys and ranks of a listing in the background,
+	 * then sorts the list by them, if the listing is still the one shown.
+	 */
+	private class RankTask extends
+			AsyncTask<DirectoryEntries, Void, DirectoryEntries>
+	{
+		@Override
+		protected DirectoryEntries doInBackground(DirectoryEntries... entries)
+		{
+			entries[0].buildRanks();
+			return entries[0];
+		}
+
+		@Override
+		protected void onPostExecute(DirectoryEntries entries)
+		{
+			if (entries == mEntries)
+			{
+				mFilter.setOrder(EntrySorter.sort(mEntries, mSortMode,
+						mSortAscending));
+				mAdapter.notifyDataSetChanged();
+			}
+		}
 	}
 
 	/*
-	 * Populates the ListView with the file names of the File array for the
-	 * current directory.
+	 * Searches for duplicates below the current directory in the background,
+	 * then lists what was found along with how much space could be saved.
 	 */
-	private void listDirectoryContent(ArrayList<String> fileNames)
+	private class DuplicateSearchTask extends
+			AsyncTask<File, Void, List<DuplicateGroup>>
 	{
-		ArrayAdapter<String> adapter = new ArrayAdapter<String>(
-				getApplicationContext(), android.R.layout.simple_list_item_1,
-				android.R.id.text1, fileNames);
-		setListAdapter(adapter);
+		private final DuplicateFinder mFinder = new DuplicateFinder();
+		private ProgressDialog mProgress;
+
+		@Override
+		protected void onPreExecute()
+		{
+			mProgress = ProgressDialog.show(ExplorerActivity.this, null,
+					getString(R.string.finding_duplicates), true, true,
+					new DialogInterface.OnCancelListener()
+					{
+						public void onCancel(DialogInterface dialog)
+						{
+							mFinder.cancel();
+							cancel(false);
+						}
+					});
+		}
+
+		@Override
+		protected List<DuplicateGroup> doInBackground(File... directories)
+		{
+			try
+			{
+				return mFinder.find(directories[0]);
+			} catch (IOException e)
+			{
+				return null;
+			}
+		}
+
+		@Override
+		protected void onPostExecute(List<DuplicateGroup> duplicates)
+		{
+			mProgress.dismiss();
+			if (duplicates == null)
+			{
+				Toast.makeText(getApplicationContext(),
+						R.string.duplicates_error, Toast.LENGTH_LONG).show();
+				return;
+			}
+			if (duplicates.isEmpty())
+			{
+				Toast.makeText(getApplicationContext(),
+						R.string.no_duplicates, Toast.LENGTH_LONG).show();
+				return;
+			}
+
+			/* One line per group, with the paths of all copies below it */
+			CharSequence[] groups = new CharSequence[duplicates.size()];
+			for (int i = 0; i < groups.length; i++)
+			{
+				DuplicateGroup group = duplicates.get(i);
+				StringBuilder description = new StringBuilder();
+				description.append(Formatter.formatFileSize(
+						getApplicationContext(), group.getSize()));
+				for (File copy : group.getFiles())
+				{
+					description.append('\n').append(copy.getAbsolutePath());
+				}
+				groups[i] = description;
+			}
+
+			String reclaimable = Formatter.formatFileSize(
+					getApplicationContext(),
+					DuplicateFinder.getReclaimableBytes(duplicates));
+			new AlertDialog.Builder(ExplorerActivity.this)
+					.setTitle(getString(R.string.reclaimable, reclaimable))
+					.setItems(groups, null).show();
+		}
 	}
 
 	/*
-	 * Takes a File array and builds an arraylist consisting of strings with the
-	 * file name of all files in the File array.
+	 * Copies or moves files into the current directory in the background,
+	 * showing the progress as it goes. A cancelled transfer is kept around so
+	 * the user can resume it from the options menu.
 	 */
-	private ArrayList<String> getFileNames(File[] fileList)
+	private class TransferTask extends AsyncTask<FileTransfer, Long, FileTransfer>
 	{
-		ArrayList<String> fileNames = new ArrayList<String>();
-		if (fileList.length < 1)
+		private final TransferEngine mEngine = new TransferEngine();
+		private ProgressDialog mProgress;
+
+		@Override
+		protected void onPreExecute()
+		{
+			mProgress = new ProgressDialog(ExplorerActivity.this);
+			mProgress.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+			mProgress.setMessage(getString(R.string.transferring));
+			mProgress.setMax(100);
+			mProgress.setCancelable(true);
+			mProgress.setOnCancelListener(new DialogInterface.OnCancelListener()
+			{
+				public void onCancel(DialogInterface dialog)
+				{
+					mEngine.cancel();
+				}
+			});
+			mProgress.show();
+		}
+
+		@Override
+		protected FileTransfer doInBackground(FileTransfer... transfers)
+		{
+			mEngine.run(transfers[0], new TransferEngine.ProgressListener()
+			{
+				public void onProgress(long bytesDone, long bytesTotal,
+						int filesDone, int filesTotal)
+				{
+					publishProgress(bytesTotal == 0 ? 100l : bytesDone * 100
+							/ bytesTotal);
+				}
+			});
+			return transfers[0];
+		}
+
+		@Override
+		protected void onProgressUpdate(Long... percent)
 		{
-			fileNames.add("No files in directory");
-			return fileNames;
+			mProgress.setProgress(percent[percent.length - 1].intValue());
 		}
 
-		for (int i = 0; i < fileList.length; i++)
+		@Override
+		protected void onPostExecute(FileTransfer transfer)
 		{
-			fileNames.add(fileList[i].getName());
+			mProgress.dismiss();
+
+			/* Both ends of a move have changed, and maybe within the second */
+			mDirectories.clear();
+			if (mEngine.isCancelled() && !transfer.isComplete())
+			{
+				mInterruptedTransfer = transfer;
+			} else if (!transfer.getErrors().isEmpty())
+			{
+				Toast.makeText(getApplicationContext(),
+						transfer.getErrors().get(0), Toast.LENGTH_LONG).show();
+			}
+
+			try
+			{
+				navigateExplorer(mCurrentDirectory.getAbsolutePath());
+			} catch (IOException e)
+			{
+				Toast.makeText(getApplicationContext(), R.string.error,
+						Toast.LENGTH_LONG).show();
+			}
 		}
-		return fileNames;
 	}
 
 	/*
-	 * Takes a File array and builds an arraylist consisting of strings with the
-	 * abolute path to all files in the File array.
+	 * Searches the content of the files below a directory, adding matches to
+	 * the result dialog as they come in. When done, the title shows how many
+	 * were found and how fast the files were read.
 	 */
-	private ArrayList<String> getFilePaths(File[] fileList)
+	private class ContentSearchTask extends
+			AsyncTask<File, String, ContentSearch>
 	{
-		ArrayList<String> filePaths = new ArrayList<String>();
-		if (fileList.length < 1)
+		/* More than this and the list is of no use to anyone anyway */
+		private static final int MAX_SHOWN = 500;
+
+		private final ContentSearch mSearch;
+		private final AtomicInteger mMatches = new AtomicInteger();
+		private ArrayAdapter<String> mResults;
+		private AlertDialog mDialog;
+		private long mStarted;
+
+		ContentSearchTask(String query)
+		{
+			mSearch = new ContentSearch(query, true);
+		}
+
+		@Override
+		protected void onPreExecute()
+		{
+			mResults = new ArrayAdapter<String>(ExplorerActivity.this,
+					android.R.layout.simple_list_item_1);
+			mDialog = new AlertDialog.Builder(ExplorerActivity.this)
+					.setTitle(R.string.searching).setAdapter(mResults, null)
+					.setOnCancelListener(new DialogInterface.OnCancelListener()
+					{
+						public void onCancel(DialogInterface dialog)
+						{
+							mSearch.cancel();
+						}
+					}).show();
+			mStarted = System.currentTimeMillis();
+		}
+
+		@Override
+		protected ContentSearch doInBackground(File... directories)
+		{
+			try
+			{
+				mSearch.search(directories[0],
+						new ContentSearch.MatchListener()
+						{
+							public void onMatch(File file, int line,
+									String excerpt)
+							{
+								if (mMatches.incrementAndGet() <= MAX_SHOWN)
+								{
+									publishProgress(file.getPath() + ":" + line
+											+ "\n" + excerpt);
+								}
+							}
+						});
+			} catch (InterruptedException e)
+			{
+				mSearch.cancel();
+			}
+			return mSearch;
+		}
+
+		@Override
+		protected void onProgressUpdate(String... matches)
 		{
-			filePaths.add("/");
-			return filePaths;
+			for (String match : matches)
+			{
+				mResults.add(match);
+			}
 		}
 
-		for (int i = 0; i < fileList.length; i++)
+		@Override
+		protected void onPostExecute(ContentSearch search)
 		{
-			filePaths.add(fileList[i].getAbsolutePath());
+			long millis = Math.max(1, System.currentTimeMillis() - mStarted);
+			double megabytesPerSecond = search.getBytesScanned() / 1000.0
+					/ millis;
+			mDialog.setTitle(getString(R.string.search_done, mMatches.get(),
+					search.getFilesScanned(), megabytesPerSecond));
 		}
-		return filePaths;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,246 @@
+package edu.killerud.fileexplorer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * A copy or move of a set of files and directories into a target directory.
+ * The transfer keeps track of how far it has come, so a transfer that was
+ * cancelled can be handed to the TransferEngine again to resume where it
+ * stopped.
+ *
+ * Directories are expanded into the files below them when the transfer is
+ * run, not when it is created, so that a move which can be done by simply
+ * renaming the directory never has to walk it.
+ *
+ * @author William Killerud
+ *
+ */
+public class FileTransfer
+{
+	private final List<File> mSources;
+	private final File mTargetDirectory;
+	private final boolean mMove;
+
+	/* Top-level sources that have been renamed or expanded into items */
+	private final boolean[] mSourceHandled;
+
+	/* Every file and directory to create, in the order they were found */
+	private final List<Item> mItems = new ArrayList<Item>();
+
+	/* Source directories to delete once a move has copied their content */
+	private final List<File> mEmptiedDirectories = new ArrayList<File>();
+
+	private final List<String> mErrors = new ArrayList<String>();
+
+	public FileTransfer(List<File> sources, File targetDirectory, boolean move)
+	{
+		mSources = new ArrayList<File>(sources);
+		mTargetDirectory = targetDirectory;
+		mMove = move;
+		mSourceHandled = new boolean[mSources.size()];
+	}
+
+	/*
+	 * One file to copy, or one directory to create.
+	 */
+	static class Item
+	{
+		final File mSource;
+		final File mTarget;
+		final boolean mDirectory;
+		final long mLength;
+
+		/* How many bytes have made it to the target so far */
+		long mCopied;
+		boolean mDone;
+
+		Item(File source, File target, boolean directory, long length)
+		{
+			mSource = source;
+			mTarget = target;
+			mDirectory = directory;
+			mLength = length;
+		}
+	}
+
+	public boolean isMove()
+	{
+		return mMove;
+	}
+
+	public File getTargetDirectory()
+	{
+		return mTargetDirectory;
+	}
+
+	public synchronized List<String> getErrors()
+	{
+		return new ArrayList<String>(mErrors);
+	}
+
+	/* True once every source has been renamed or copied */
+	public boolean isComplete()
+	{
+		for (int i = 0; i < mSourceHandled.length; i++)
+		{
+			if (!mSourceHandled[i])
+			{
+				return false;
+			}
+		}
+		for (Item item : mItems)
+		{
+			if (!item.mDone)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	synchronized void addError(String error)
+	{
+		mErrors.add(error);
+	}
+
+	List<Item> getItems()
+	{
+		return mItems;
+	}
+
+	List<File> getEmptiedDirectories()
+	{
+		return mEmptiedDirectories;
+	}
+
+	/*
+	 * Tries to move every source that hasn't been handled yet by renaming it.
+	 * This only works when the source and the target are on the same file
+	 * system, in which case no data has to be copied at all.
+	 */
+	void renameSources()
+	{
+		if (!mMove)
+		{
+			return;
+		}
+		for (int i = 0; i < mSources.size(); i++)
+		{
+			File source = mSources.get(i);
+			if (mSourceHandled[i])
+			{
+				continue;
+			}
+			if (mTargetDirectory.equals(source.getParentFile()))
+			{
+				/* Moving a file to where it already is */
+				mSourceHandled[i] = true;
+				continue;
+			}
+
+			File target = new File(mTargetDirectory, source.getName());
+			if (!target.exists() && source.renameTo(target))
+			{
+				mSourceHandled[i] = true;
+			}
+		}
+	}
+
+	/*
+	 * Expands the sources that couldn't be renamed into the files and
+	 * directories that have to be copied.
+	 */
+	void expandSources()
+	{
+		for (int i = 0; i < mSources.size(); i++)
+		{
+			if (mSourceHandled[i])
+			{
+				continue;
+			}
+			mSourceHandled[i] = true;
+
+			File source = mSources.get(i);
+			try
+			{
+				if (isInside(mTargetDirectory, source))
+				{
+					addError(source.getName() + ": can't be put inside itself");
+					continue;
+				}
+				expand(source, uniqueTarget(mTargetDirectory, source.getName()),
+						new HashSet<String>());
+			} catch (IOException e)
+			{
+				addError(source.getName() + ": " + e.getMessage());
+			}
+		}
+	}
+
+	/*
+	 * Directories are remembered by their canonical path, so a symbolic link
+	 * to a directory already expanded is skipped, rather than followed around
+	 * in circles.
+	 */
+	private void expand(File source, File target, HashSet<String> visited)
+			throws IOException
+	{
+		if (!source.isDirectory())
+		{
+			mItems.add(new Item(source, target, false, source.length()));
+			return;
+		}
+		if (!visited.add(source.getCanonicalPath()))
+		{
+			addError(source.getName()
+					+ ": links to a directory that is already being copied");
+			return;
+		}
+
+		mItems.add(new Item(source, target, true, 0));
+		File[] children = source.listFiles();
+		if (children == null)
+		{
+			addError(source.getName() + ": can't be read");
+			return;
+		}
+		for (File child : children)
+		{
+			expand(child, new File(target, child.getName()), visited);
+		}
+		if (mMove)
+		{
+			mEmptiedDirectories.add(source);
+		}
+	}
+
+	private static boolean isInside(File directory, File source)
+			throws IOException
+	{
+		String directoryPath = directory.getCanonicalPath() + File.separator;
+		String sourcePath = source.getCanonicalPath() + File.separator;
+		return directoryPath.startsWith(sourcePath);
+	}
+
+	/*
+	 * Returns a target that doesn't exist yet, adding (2), (3) and so on to the
+	 * name if needed. Copying a file into its own directory makes a copy next
+	 * to it rather than overwriting it.
+	 */
+	private static File uniqueTarget(File directory, String name)
+	{
+		File target = new File(directory, name);
+		int dot = name.lastIndexOf('.');
+		String base = dot > 0 ? name.substring(0, dot) : name;
+		String extension = dot > 0 ? name.substring(dot) : "";
+		for (int copy = 2; target.exists(); copy++)
+		{
+			target = new File(directory, base + " (" + copy + ")" + extension);
+		}
+		return target;
+	}
+}
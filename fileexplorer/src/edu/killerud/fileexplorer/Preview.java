@@ -0,0 +1,48 @@
+package edu.killerud.fileexplorer;
+
+import android.graphics.Bitmap;
+
+/**
+ * A preview of a file: a downsampled image, or the first few lines of a text
+ * file. Exactly one of the two is set.
+ *
+ * @author William Killerud
+ *
+ */
+public class Preview
+{
+	private final Bitmap mImage;
+	private final String mText;
+
+	public Preview(Bitmap image)
+	{
+		mImage = image;
+		mText = null;
+	}
+
+	public Preview(String text)
+	{
+		mImage = null;
+		mText = text;
+	}
+
+	public Bitmap getImage()
+	{
+		return mImage;
+	}
+
+	public String getText()
+	{
+		return mText;
+	}
+
+	/* Roughly how much memory the preview holds on to */
+	public int getByteCount()
+	{
+		if (mImage != null)
+		{
+			return mImage.getRowBytes() * mImage.getHeight();
+		}
+		return mText.length() * 2;
+	}
+}
@@ -0,0 +1,250 @@
+package edu.killerud.fileexplorer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+/**
+ * Two levels of cache for previews. The first is in memory, holding the most
+ * recently used previews up to a fixed number of bytes. The second is on
+ * disk, so previews survive the app being killed.
+ *
+ * Entries are keyed by the path, the modification time and the size of the
+ * file, so a file that changes simply gets a new key and the stale preview is
+ * never looked up again.
+ *
+ * The memory cache may only be used from the UI thread. The disk cache may be
+ * used from any thread.
+ *
+ * @author William Killerud
+ *
+ */
+public class PreviewCache
+{
+	/* The first byte of a file in the disk cache says what follows */
+	private static final int TYPE_IMAGE = 1;
+	private static final int TYPE_TEXT = 2;
+
+	/* The disk cache is trimmed back to this size when it grows past it */
+	private static final long MAX_DISK_BYTES = 16 * 1024 * 1024;
+
+	private final LinkedHashMap<String, Preview> mMemory = new LinkedHashMap<String, Preview>(
+			64, 0.75f, true);
+	private final long mMaxMemoryBytes;
+	private long mMemoryBytes;
+
+	private final File mDirectory;
+
+	public PreviewCache(File directory, long maxMemoryBytes)
+	{
+		mDirectory = directory;
+		mDirectory.mkdirs();
+		mMaxMemoryBytes = maxMemoryBytes;
+	}
+
+	public static String keyFor(File file, long lastModified, long size)
+	{
+		String identity = file.getAbsolutePath() + '\0' + lastModified + '\0'
+				+ size;
+		try
+		{
+			byte[] hash = MessageDigest.getInstance("MD5").digest(
+					identity.getBytes("UTF-8"));
+			StringBuilder key = new StringBuilder(hash.length * 2);
+			for (int i = 0; i < hash.length; i++)
+			{
+				key.append(Character.forDigit((hash[i] >> 4) & 0xf, 16));
+				key.append(Character.forDigit(hash[i] & 0xf, 16));
+			}
+			return key.toString();
+		} catch (NoSuchAlgorithmException e)
+		{
+			throw keyFailed(e);
+		} catch (IOException e)
+		{
+			throw keyFailed(e);
+		}
+	}
+
+	/* MD5 and UTF-8 are always there, but the compiler doesn't know */
+	private static IllegalStateException keyFailed(Exception cause)
+	{
+		IllegalStateException failed = new IllegalStateException(
+				"Could not make a preview key");
+		failed.initCause(cause);
+		return failed;
+	}
+
+	public Preview getFromMemory(String key)
+	{
+		return mMemory.get(key);
+	}
+
+	/*
+	 * Adds the preview to the memory cache, throwing out the least recently
+	 * used previews until we're back under budget.
+	 */
+	public void putInMemory(String key, Preview preview)
+	{
+		Preview previous = mMemory.put(key, preview);
+		if (previous != null)
+		{
+			mMemoryBytes -= previous.getByteCount();
+		}
+		mMemoryBytes += preview.getByteCount();
+
+		Iterator<Preview> oldest = mMemory.values().iterator();
+		while (mMemoryBytes > mMaxMemoryBytes && oldest.hasNext())
+		{
+			mMemoryBytes -= oldest.next().getByteCount();
+			oldest.remove();
+		}
+	}
+
+	/* Returns null if the preview isn't on disk or can't be read */
+	public Preview getFromDisk(String key)
+	{
+		File file = new File(mDirectory, key);
+		if (!file.exists())
+		{
+			return null;
+		}
+
+		try
+		{
+			InputStream in = new BufferedInputStream(new FileInputStream(file));
+			try
+			{
+				int type = in.read();
+				if (type == TYPE_IMAGE)
+				{
+					Bitmap image = BitmapFactory.decodeStream(in);
+					return image == null ? null : new Preview(image);
+				} else if (type == TYPE_TEXT)
+				{
+					byte[] text = new byte[(int) file.length() - 1];
+					int read = 0;
+					while (read < text.length)
+					{
+						int count = in.read(text, read, text.length - read);
+						if (count < 0)
+						{
+							return null;
+						}
+						read += count;
+					}
+					return new Preview(new String(text, "UTF-8"));
+				}
+				return null;
+			} finally
+			{
+				in.close();
+				/* Touch it, so trimming throws out the least recently used */
+				file.setLastModified(System.currentTimeMillis());
+			}
+		} catch (IOException e)
+		{
+			file.delete();
+			return null;
+		}
+	}
+
+	public void putOnDisk(String key, Preview preview)
+	{
+		/* Write to a temporary file first, so a reader never sees half of it */
+		File temporary = new File(mDirectory, key + ".tmp");
+		try
+		{
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(
+					temporary));
+			try
+			{
+				if (preview.getImage() != null)
+				{
+					out.write(TYPE_IMAGE);
+					preview.getImage().compress(Bitmap.CompressFormat.PNG, 100,
+							out);
+				} else
+				{
+					out.write(TYPE_TEXT);
+					out.write(preview.getText().getBytes("UTF-8"));
+				}
+			} finally
+			{
+				out.close();
+			}
+			if (!temporary.renameTo(new File(mDirectory, key)))
+			{
+				temporary.delete();
+			}
+		} catch (IOException e)
+		{
+			/* The disk cache is just a bonus, we can do without it */
+			temporary.delete();
+		}
+	}
+
+	/*
+	 * Deletes the least recently used previews from disk until the cache is
+	 * back under its size limit.
+	 */
+	public void trimDisk()
+	{
+		File[] files = mDirectory.listFiles();
+		if (files == null)
+		{
+			return;
+		}
+
+		long total = 0;
+		final long[] lastModified = new long[files.length];
+		Integer[] order = new Integer[files.length];
+		for (int i = 0; i < files.length; i++)
+		{
+			total += files[i].length();
+			lastModified[i] = files[i].lastModified();
+			order[i] = Integer.valueOf(i);
+		}
+		if (total <= MAX_DISK_BYTES)
+		{
+			return;
+		}
+
+		Arrays.sort(order, new Comparator<Integer>()
+		{
+			public int compare(Integer a, Integer b)
+			{
+				long difference = lastModified[a.intValue()]
+						- lastModified[b.intValue()];
+				return difference < 0 ? -1 : (difference == 0 ? 0 : 1);
+			}
+		});
+		for (int i = 0; i < order.length && total > MAX_DISK_BYTES; i++)
+		{
+			File oldest = files[order[i].intValue()];
+			total -= oldest.length();
+			oldest.delete();
+		}
+	}
+
+	/* Drops everything held in memory */
+	public void clearMemory()
+	{
+		mMemory.clear();
+		mMemoryBytes = 0;
+	}
+}
@@ -0,0 +1,331 @@
+package edu.killerud.fileexplorer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+/**
+ * Loads previews for the rows in the file list on a couple of background
+ * threads. If several rows ask for the preview of the same file while it is
+ * being made, it is only made once. When a row scrolls out of view its
+ * request is cancelled, and if nobody else wants the preview the decoding is
+ * stopped.
+ *
+ * All public methods must be called from the UI thread, and the targets are
+ * called back on the UI thread.
+ *
+ * @author William Killerud
+ *
+ */
+public class PreviewLoader
+{
+	/* Images are scaled down to at least this size on both sides */
+	private static final int THUMBNAIL_SIZE = 96;
+
+	/* How much of a text file we read, and how much of that we keep */
+	private static final int TEXT_BYTES = 512;
+	private static final int SNIPPET_LENGTH = 120;
+
+	private static final String[] IMAGE_EXTENSIONS = { "jpg", "jpeg", "png",
+			"gif", "bmp", "webp" };
+	private static final String[] TEXT_EXTENSIONS = { "txt", "md", "log",
+			"csv", "xml", "html", "json", "java", "c", "h", "py", "sh",
+			"properties", "ini", "cfg" };
+
+	public interface Target
+	{
+		void onPreviewLoaded(Preview preview);
+	}
+
+	private final PreviewCache mCache;
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+	private final ExecutorService mWorkers;
+
+	/* Requests being worked on, by key, and the request each target waits for */
+	private final HashMap<String, Request> mInFlight = new HashMap<String, Request>();
+	private final HashMap<Target, Request> mWaiting = new HashMap<Target, Request>();
+
+	public PreviewLoader(final PreviewCache cache)
+	{
+		mCache = cache;
+		mWorkers = Executors.newFixedThreadPool(2, new ThreadFactory()
+		{
+			public Thread newThread(final Runnable runnable)
+			{
+				return new Thread(new Runnable()
+				{
+					public void run()
+					{
+						/* Stay out of the way of the UI thread */
+						Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+						runnable.run();
+					}
+				}, "PreviewLoader");
+			}
+		});
+
+		mWorkers.execute(new Runnable()
+		{
+			public void run()
+			{
+				cache.trimDisk();
+			}
+		});
+	}
+
+	public static boolean canPreview(String extension)
+	{
+		return isImage(extension) || isText(extension);
+	}
+
+	/*
+	 * Asks for the preview of a file to be handed to the target. Whatever the
+	 * target was waiting for before is cancelled.
+	 */
+	public void load(File file, String extension, long lastModified,
+			long size, Target target)
+	{
+		cancel(target);
+
+		String key = PreviewCache.keyFor(file, lastModified, size);
+		Preview cached = mCache.getFromMemory(key);
+		if (cached != null)
+		{
+			target.onPreviewLoaded(cached);
+			return;
+		}
+
+		Request request = mInFlight.get(key);
+		if (request == null)
+		{
+			request = new Request(key, file, isImage(extension));
+			mInFlight.put(key, request);
+			request.mFuture = mWorkers.submit(request);
+		}
+		request.mTargets.add(target);
+		mWaiting.put(target, request);
+	}
+
+	/*
+	 * The target no longer wants its preview. If it was the last one waiting
+	 * for it, we stop making it.
+	 */
+	public void cancel(Target target)
+	{
+		Request request = mWaiting.remove(target);
+		if (request == null)
+		{
+			return;
+		}
+		request.mTargets.remove(target);
+		if (request.mTargets.isEmpty())
+		{
+			mInFlight.remove(request.mKey);
+			request.cancel();
+		}
+	}
+
+	public void shutdown()
+	{
+		for (Request request : mInFlight.values())
+		{
+			request.cancel();
+		}
+		mInFlight.clear();
+		mWaiting.clear();
+		mWorkers.shutdownNow();
+	}
+
+	/*
+	 * Called on the UI thread when a worker is done with a request. The
+	 * preview is null if it couldn't be made.
+	 */
+	private void deliver(Request request, Preview preview)
+	{
+		if (mInFlight.get(request.mKey) != request)
+		{
+			/* Cancelled while we were working on it */
+			return;
+		}
+		mInFlight.remove(request.mKey);
+		if (preview != null)
+		{
+			mCache.putInMemory(request.mKey, preview);
+		}
+
+		for (Target target : request.mTargets)
+		{
+			mWaiting.remove(target);
+			if (preview != null)
+			{
+				target.onPreviewLoaded(preview);
+			}
+		}
+		request.mTargets.clear();
+	}
+
+	private class Request implements Runnable
+	{
+		final String mKey;
+		final File mFile;
+		final boolean mImage;
+		final List<Target> mTargets = new ArrayList<Target>(1);
+		Future<?> mFuture;
+
+		private volatile boolean mCancelled;
+		private volatile BitmapFactory.Options mOptions;
+
+		Request(String key, File file, boolean image)
+		{
+			mKey = key;
+			mFile = file;
+			mImage = image;
+		}
+
+		void cancel()
+		{
+			mCancelled = true;
+			BitmapFactory.Options options = mOptions;
+			if (options != null)
+			{
+				/* Stops a decode that is already running */
+				options.requestCancelDecode();
+			}
+			if (mFuture != null)
+			{
+				mFuture.cancel(false);
+			}
+		}
+
+		public void run()
+		{
+			if (mCancelled)
+			{
+				return;
+			}
+
+			Preview preview = mCache.getFromDisk(mKey);
+			if (preview == null && !mCancelled)
+			{
+				preview = mImage ? decodeImage() : readText();
+				if (preview != null && !mCancelled)
+				{
+					mCache.putOnDisk(mKey, preview);
+				}
+			}
+
+			/* Posted even on failure, so the request is taken off the books */
+			if (!mCancelled)
+			{
+				final Preview result = preview;
+				mHandler.post(new Runnable()
+				{
+					public void run()
+					{
+						deliver(Request.this, result);
+					}
+				});
+			}
+		}
+
+		/*
+		 * Reads just the dimensions first, then decodes the image at the
+		 * largest power of two reduction that still covers a thumbnail.
+		 */
+		private Preview decodeImage()
+		{
+			String path = mFile.getAbsolutePath();
+			BitmapFactory.Options options = new BitmapFactory.Options();
+			options.inJustDecodeBounds = true;
+			mOptions = options;
+			BitmapFactory.decodeFile(path, options);
+			if (options.outWidth <= 0 || options.outHeight <= 0 || mCancelled)
+			{
+				return null;
+			}
+
+			int sampleSize = 1;
+			while (options.outWidth / (sampleSize * 2) >= THUMBNAIL_SIZE
+					&& options.outHeight / (sampleSize * 2) >= THUMBNAIL_SIZE)
+			{
+				sampleSize *= 2;
+			}
+
+			options = new BitmapFactory.Options();
+			options.inSampleSize = sampleSize;
+			mOptions = options;
+			Bitmap image = BitmapFactory.decodeFile(path, options);
+			return image == null ? null : new Preview(image);
+		}
+
+		/* The first couple of lines of the file, on one line */
+		private Preview readText()
+		{
+			try
+			{
+				InputStream in = new FileInputStream(mFile);
+				try
+				{
+					byte[] head = new byte[TEXT_BYTES];
+					int length = 0;
+					int read;
+					while (length < head.length
+							&& (read = in.read(head, length, head.length
+									- length)) > 0)
+					{
+						length += read;
+					}
+					String text = new String(head, 0, length, "UTF-8").trim()
+							.replaceAll("\\s+", " ");
+					if (text.length() > SNIPPET_LENGTH)
+					{
+						text = text.substring(0, SNIPPET_LENGTH);
+					}
+					return new Preview(text);
+				} finally
+				{
+					in.close();
+				}
+			} catch (IOException e)
+			{
+				return null;
+			}
+		}
+	}
+
+	private static boolean isImage(String extension)
+	{
+		return contains(IMAGE_EXTENSIONS, extension);
+	}
+
+	private static boolean isText(String extension)
+	{
+		return contains(TEXT_EXTENSIONS, extension);
+	}
+
+	private static boolean contains(String[] extensions, String extension)
+	{
+		for (int i = 0; i < extensions.length; i++)
+		{
+			if (extensions[i].equals(extension))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,335 @@
+package edu.killerud.fileexplorer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs FileTransfers. File content is copied with FileChannel.transferTo, which
+ * lets the kernel move the data without it ever passing through a Java
+ * buffer, and moves within one file system are done by renaming.
+ *
+ * Big files are copied one per task, while small files are batched together
+ * so that a directory of thousands of tiny files doesn't drown in task
+ * overhead. The tasks run on a small, fixed pool of threads since more
+ * threads than that just make the disk seek back and forth.
+ *
+ * @author William Killerud
+ *
+ */
+public class TransferEngine
+{
+	/* Files at least this big get a task of their own */
+	private static final long LARGE_FILE = 1024 * 1024;
+
+	/* Limits for one batch of small files */
+	private static final int BATCH_FILES = 64;
+	private static final long BATCH_BYTES = 1024 * 1024;
+
+	/* How much transferTo is asked to copy at a time */
+	private static final long CHUNK = 4 * 1024 * 1024;
+
+	/* Progress is reported at most this often */
+	private static final long PROGRESS_INTERVAL_MILLIS = 100;
+
+	public interface ProgressListener
+	{
+		/* Called from the I/O threads */
+		void onProgress(long bytesDone, long bytesTotal, int filesDone,
+				int filesTotal);
+	}
+
+	private final int mThreads;
+	private volatile boolean mCancelled;
+
+	private ProgressListener mListener;
+	private final AtomicLong mBytesDone = new AtomicLong();
+	private final AtomicInteger mFilesDone = new AtomicInteger();
+	private final AtomicLong mLastReport = new AtomicLong();
+	private long mBytesTotal;
+	private int mFilesTotal;
+
+	public TransferEngine()
+	{
+		this(2);
+	}
+
+	public TransferEngine(int threads)
+	{
+		mThreads = Math.max(1, threads);
+	}
+
+	public void cancel()
+	{
+		mCancelled = true;
+	}
+
+	public boolean isCancelled()
+	{
+		return mCancelled;
+	}
+
+	/*
+	 * Runs the transfer, or what's left of it, and blocks until it is done or
+	 * cancelled. Problems with single files are collected in the transfer
+	 * rather than stopping the rest.
+	 */
+	public void run(FileTransfer transfer, ProgressListener listener)
+	{
+		mCancelled = false;
+		mListener = listener;
+
+		transfer.renameSources();
+		transfer.expandSources();
+
+		List<FileTransfer.Item> remaining = new ArrayList<FileTransfer.Item>();
+		mBytesTotal = 0;
+		mFilesTotal = 0;
+		mBytesDone.set(0);
+		mFilesDone.set(0);
+		for (FileTransfer.Item item : transfer.getItems())
+		{
+			mBytesTotal += item.mLength;
+			mFilesTotal++;
+			if (item.mDone)
+			{
+				mBytesDone.addAndGet(item.mLength);
+				mFilesDone.incrementAndGet();
+			} else
+			{
+				mBytesDone.addAndGet(item.mCopied);
+				remaining.add(item);
+			}
+		}
+
+		/*
+		 * Directories are created up front, in order, so that every parent
+		 * exists before the workers start putting files into it.
+		 */
+		for (FileTransfer.Item item : remaining)
+		{
+			if (item.mDirectory)
+			{
+				if (item.mTarget.isDirectory() || item.mTarget.mkdirs())
+				{
+					item.mDone = true;
+					mFilesDone.incrementAndGet();
+				} else
+				{
+					transfer.addError(item.mTarget.getPath()
+							+ ": can't be created");
+				}
+			}
+		}
+
+		runBatches(transfer, batch(remaining));
+
+		if (transfer.isMove() && transfer.isComplete())
+		{
+			/* Deepest first, so every directory is empty when we get to it */
+			List<File> emptied = transfer.getEmptiedDirectories();
+			for (int i = emptied.size() - 1; i >= 0; i--)
+			{
+				emptied.get(i).delete();
+			}
+		}
+		reportProgress(true);
+	}
+
+	/*
+	 * Splits the files into tasks: one per big file, and batches of small ones.
+	 */
+	private List<List<FileTransfer.Item>> batch(List<FileTransfer.Item> items)
+	{
+		List<List<FileTransfer.Item>> batches = new ArrayList<List<FileTransfer.Item>>();
+		List<FileTransfer.Item> small = new ArrayList<FileTransfer.Item>();
+		long smallBytes = 0;
+
+		for (FileTransfer.Item item : items)
+		{
+			if (item.mDirectory || item.mDone)
+			{
+				continue;
+			}
+			if (item.mLength >= LARGE_FILE)
+			{
+				List<FileTransfer.Item> single = new ArrayList<FileTransfer.Item>(1);
+				single.add(item);
+				batches.add(single);
+				continue;
+			}
+
+			small.add(item);
+			smallBytes += item.mLength;
+			if (small.size() >= BATCH_FILES || smallBytes >= BATCH_BYTES)
+			{
+				batches.add(small);
+				small = new ArrayList<FileTransfer.Item>();
+				smallBytes = 0;
+			}
+		}
+		if (!small.isEmpty())
+		{
+			batches.add(small);
+		}
+		return batches;
+	}
+
+	private void runBatches(final FileTransfer transfer,
+			List<List<FileTransfer.Item>> batches)
+	{
+		ExecutorService workers = Executors.newFixedThreadPool(mThreads);
+		try
+		{
+			List<Future<Void>> results = new ArrayList<Future<Void>>();
+			for (final List<FileTransfer.Item> batch : batches)
+			{
+				results.add(workers.submit(new Callable<Void>()
+				{
+					public Void call()
+					{
+						for (FileTransfer.Item item : batch)
+						{
+							if (mCancelled)
+							{
+								break;
+							}
+							transferItem(transfer, item);
+						}
+						return null;
+					}
+				}));
+			}
+
+			for (Future<Void> result : results)
+			{
+				try
+				{
+					result.get();
+				} catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					mCancelled = true;
+				} catch (ExecutionException e)
+				{
+					transfer.addError(String.valueOf(e.getCause()));
+				}
+			}
+		} finally
+		{
+			workers.shutdown();
+		}
+	}
+
+	private void transferItem(FileTransfer transfer, FileTransfer.Item item)
+	{
+		try
+		{
+			copy(item);
+			if (item.mDone)
+			{
+				item.mTarget.setLastModified(item.mSource.lastModified());
+				if (transfer.isMove() && !item.mSource.delete())
+				{
+					transfer.addError(item.mSource.getPath()
+							+ ": copied, but can't be deleted");
+				}
+				mFilesDone.incrementAndGet();
+				reportProgress(false);
+			}
+		} catch (IOException e)
+		{
+			transfer.addError(item.mSource.getName() + ": " + e.getMessage());
+		}
+	}
+
+	/*
+	 * Copies the file with transferTo, a chunk at a time so we can report
+	 * progress and notice a cancel. If an earlier run was cancelled halfway
+	 * through this file, we carry on from where it stopped.
+	 */
+	private void copy(FileTransfer.Item item) throws IOException
+	{
+		boolean resume = item.mCopied > 0
+				&& item.mTarget.length() == item.mCopied;
+		if (!resume && item.mCopied > 0)
+		{
+			/* Someone touched the half-copied file, start over */
+			mBytesDone.addAndGet(-item.mCopied);
+			item.mCopied = 0;
+		}
+
+		FileInputStream in = new FileInputStream(item.mSource);
+		try
+		{
+			FileOutputStream out = new FileOutputStream(item.mTarget, resume);
+			try
+			{
+				FileChannel source = in.getChannel();
+				FileChannel target = out.getChannel();
+				long size = source.size();
+				long position = item.mCopied;
+
+				while (position < size)
+				{
+					if (mCancelled)
+					{
+						return;
+					}
+					long copied = source.transferTo(position,
+							Math.min(CHUNK, size - position), target);
+					if (copied <= 0)
+					{
+						throw new IOException("copy stopped at byte "
+								+ position);
+					}
+					position += copied;
+					item.mCopied = position;
+					mBytesDone.addAndGet(copied);
+					reportProgress(false);
+				}
+				item.mDone = true;
+			} finally
+			{
+				out.close();
+			}
+		} finally
+		{
+			in.close();
+		}
+	}
+
+	/*
+	 * Tells the listener how far we have come, unless we already did so very
+	 * recently. With thousands of small files there is no point in updating
+	 * the UI for every single one of them.
+	 */
+	private void reportProgress(boolean force)
+	{
+		if (mListener == null)
+		{
+			return;
+		}
+		long now = System.currentTimeMillis();
+		long last = mLastReport.get();
+		if (!force
+				&& (now - last < PROGRESS_INTERVAL_MILLIS || !mLastReport
+						.compareAndSet(last, now)))
+		{
+			return;
+		}
+		mListener.onProgress(mBytesDone.get(), mBytesTotal, mFilesDone.get(),
+				mFilesTotal);
+	}
+}
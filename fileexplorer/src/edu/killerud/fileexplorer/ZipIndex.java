@@ -0,0 +1,526 @@
+package edu.killerud.fileexplorer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import edu.killerud.fileexplorer.core.DirectoryEntries;
+
+/**
+ * The table of contents of a zip (or jar) file. Only the central directory at
+ * the end of the archive is read, which lists every entry along with where in
+ * the file its data starts, so listing even a huge archive never inflates
+ * anything. Entries are streamed from the archive when someone asks for them.
+ *
+ * @author William Killerud
+ *
+ */
+public class ZipIndex
+{
+	private static final int END_SIGNATURE = 0x06054b50;
+	private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+	private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+	private static final int CENTRAL_SIGNATURE = 0x02014b50;
+	private static final int LOCAL_SIGNATURE = 0x04034b50;
+
+	private static final int END_LENGTH = 22;
+	private static final int MAX_COMMENT = 0xffff;
+	private static final int CENTRAL_LENGTH = 46;
+	private static final int LOCAL_LENGTH = 30;
+
+	private static final int METHOD_STORED = 0;
+	private static final int METHOD_DEFLATED = 8;
+
+	/* Bit 11 of the flags says the name is UTF-8 rather than the DOS code page */
+	private static final int FLAG_UTF8 = 1 << 11;
+
+	/* By name, as the String constructor taking a Charset is API 9 */
+	private static final String UTF8 = "UTF-8";
+	private static final String LATIN1 = "ISO-8859-1";
+
+	private final File mArchive;
+
+	/* One slot per entry in the central directory */
+	private final String[] mNames;
+	private final long[] mCompressedSizes;
+	private final long[] mSizes;
+	private final long[] mLocalOffsets;
+	private final int[] mMethods;
+	private final int[] mDosTimes;
+
+	/* What's in each directory, by path without a trailing slash ("" is the top) */
+	private final HashMap<String, Directory> mDirectories = new HashMap<String, Directory>();
+
+	private static class Directory
+	{
+		final LinkedHashSet<String> mSubdirectories = new LinkedHashSet<String>();
+		final ArrayList<Integer> mFiles = new ArrayList<Integer>();
+		DirectoryEntries mListing;
+	}
+
+	private ZipIndex(File archive, int entries)
+	{
+		mArchive = archive;
+		mNames = new String[entries];
+		mCompressedSizes = new long[entries];
+		mSizes = new long[entries];
+		mLocalOffsets = new long[entries];
+		mMethods = new int[entries];
+		mDosTimes = new int[entries];
+		mDirectories.put("", new Directory());
+	}
+
+	/*
+	 * Reads the central directory of the archive.
+	 */
+	public static ZipIndex read(File archive) throws IOException
+	{
+		FileInputStream in = new FileInputStream(archive);
+		try
+		{
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+
+			/* The end record sits at the very end, unless there is a comment */
+			int tailLength = (int) Math.min(size, END_LENGTH + MAX_COMMENT);
+			ByteBuffer tail = map(channel, size - tailLength, tailLength);
+			int end = -1;
+			for (int i = tailLength - END_LENGTH; i >= 0; i--)
+			{
+				if (tail.getInt(i) == END_SIGNATURE)
+				{
+					end = i;
+					break;
+				}
+			}
+			if (end < 0)
+			{
+				throw new IOException(archive.getName() + " is not a zip file");
+			}
+
+			long entries = tail.getShort(end + 10) & 0xffff;
+			long centralSize = tail.getInt(end + 12) & 0xffffffffl;
+			long centralOffset = tail.getInt(end + 16) & 0xffffffffl;
+
+			/* Too many entries, or too big, for the classic format */
+			if (end >= 20 && tail.getInt(end - 20) == ZIP64_LOCATOR_SIGNATURE)
+			{
+				long zip64End = tail.getLong(end - 20 + 8);
+				if (zip64End < 0 || zip64End + 56 > size)
+				{
+					throw new IOException(archive.getName() + " is damaged");
+				}
+				ByteBuffer record = map(channel, zip64End, 56);
+				if (record.getInt(0) != ZIP64_END_SIGNATURE)
+				{
+					throw new IOException(archive.getName() + " is damaged");
+				}
+				entries = record.getLong(32);
+				centralSize = record.getLong(40);
+				centralOffset = record.getLong(48);
+			}
+
+			/*
+			 * Every entry takes at least CENTRAL_LENGTH bytes, so a count that
+			 * doesn't fit is a damaged header rather than arrays to allocate
+			 */
+			if (entries < 0 || centralSize < 0 || centralOffset < 0
+					|| centralSize > Integer.MAX_VALUE
+					|| entries * CENTRAL_LENGTH > centralSize
+					|| centralOffset + centralSize > size)
+			{
+				throw new IOException(archive.getName() + " is damaged");
+			}
+
+			ZipIndex index = new ZipIndex(archive, (int) entries);
+			index.parse(map(channel, centralOffset, (int) centralSize));
+			return index;
+		} finally
+		{
+			in.close();
+		}
+	}
+
+	private static ByteBuffer map(FileChannel channel, long position, int length)
+			throws IOException
+	{
+		ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+				position, length);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		return buffer;
+	}
+
+	private void parse(ByteBuffer central) throws IOException
+	{
+		byte[] name = new byte[256];
+		int position = 0;
+		for (int i = 0; i < mNames.length; i++)
+		{
+			if (position + CENTRAL_LENGTH > central.limit()
+					|| central.getInt(position) != CENTRAL_SIGNATURE)
+			{
+				throw new IOException(mArchive.getName() + " is damaged");
+			}
+
+			int flags = central.getShort(position + 8) & 0xffff;
+			mMethods[i] = central.getShort(position + 10) & 0xffff;
+			mDosTimes[i] = central.getInt(position + 12);
+			mCompressedSizes[i] = central.getInt(position + 20) & 0xffffffffl;
+			mSizes[i] = central.getInt(position + 24) & 0xffffffffl;
+			int nameLength = central.getShort(position + 28) & 0xffff;
+			int extraLength = central.getShort(position + 30) & 0xffff;
+			int commentLength = central.getShort(position + 32) & 0xffff;
+			mLocalOffsets[i] = central.getInt(position + 42) & 0xffffffffl;
+			if (position + CENTRAL_LENGTH + nameLength + extraLength
+					+ commentLength > central.limit())
+			{
+				throw new IOException(mArchive.getName() + " is damaged");
+			}
+
+			if (nameLength > name.length)
+			{
+				name = new byte[nameLength];
+			}
+			central.position(position + CENTRAL_LENGTH);
+			central.get(name, 0, nameLength);
+			mNames[i] = new String(name, 0, nameLength,
+					(flags & FLAG_UTF8) != 0 ? UTF8 : LATIN1);
+
+			readZip64Extra(central, position + CENTRAL_LENGTH + nameLength,
+					extraLength, i);
+			addToDirectory(i);
+
+			position += CENTRAL_LENGTH + nameLength + extraLength
+					+ commentLength;
+		}
+	}
+
+	/*
+	 * Values that didn't fit in 32 bits are set to all ones in the entry, and
+	 * stored in full in a zip64 extra field, in this order.
+	 */
+	private void readZip64Extra(ByteBuffer central, int start, int length,
+			int entry) throws IOException
+	{
+		int position = start;
+		while (position + 4 <= start + length)
+		{
+			int id = central.getShort(position) & 0xffff;
+			int size = central.getShort(position + 2) & 0xffff;
+			if (position + 4 + size > start + length)
+			{
+				throw new IOException(mArchive.getName() + " is damaged");
+			}
+			if (id == 0x0001)
+			{
+				int field = position + 4;
+				int fieldEnd = field + size;
+				if (mSizes[entry] == 0xffffffffl)
+				{
+					mSizes[entry] = readZip64Value(central, field, fieldEnd);
+					field += 8;
+				}
+				if (mCompressedSizes[entry] == 0xffffffffl)
+				{
+					mCompressedSizes[entry] = readZip64Value(central, field,
+							fieldEnd);
+					field += 8;
+				}
+				if (mLocalOffsets[entry] == 0xffffffffl)
+				{
+					mLocalOffsets[entry] = readZip64Value(central, field,
+							fieldEnd);
+				}
+				return;
+			}
+			position += 4 + size;
+		}
+	}
+
+	private long readZip64Value(ByteBuffer central, int field, int fieldEnd)
+			throws IOException
+	{
+		if (field + 8 > fieldEnd)
+		{
+			throw new IOException(mArchive.getName() + " is damaged");
+		}
+		return central.getLong(field);
+	}
+
+	/*
+	 * Files the entry under its directory, creating any directories on the way
+	 * that the archive doesn't have entries of their own for.
+	 */
+	private void addToDirectory(int entry)
+	{
+		String name = mNames[entry];
+		boolean isDirectory = name.endsWith("/");
+		String path = isDirectory ? name.substring(0, name.length() - 1) : name;
+		if (path.length() == 0)
+		{
+			return;
+		}
+
+		if (!isDirectory)
+		{
+			directory(parentOf(path)).mFiles.add(Integer.valueOf(entry));
+		} else
+		{
+			directory(path);
+		}
+	}
+
+	private Directory directory(String path)
+	{
+		Directory directory = mDirectories.get(path);
+		if (directory == null)
+		{
+			directory = new Directory();
+			mDirectories.put(path, directory);
+			String parent = parentOf(path);
+			directory(parent).mSubdirectories.add(path.substring(parent
+					.length() == 0 ? 0 : parent.length() + 1));
+		}
+		return directory;
+	}
+
+	private static String parentOf(String path)
+	{
+		int slash = path.lastIndexOf('/');
+		return slash < 0 ? "" : path.substring(0, slash);
+	}
+
+	public File getArchive()
+	{
+		return mArchive;
+	}
+
+	public int size()
+	{
+		return mNames.length;
+	}
+
+	public boolean isDirectory(String path)
+	{
+		return mDirectories.containsKey(trimSlashes(path));
+	}
+
+	/*
+	 * Lists a directory inside the archive. The listing is built the first
+	 * time it is asked for and kept for later.
+	 */
+	public synchronized DirectoryEntries list(String path) throws IOException
+	{
+		Directory directory = mDirectories.get(trimSlashes(path));
+		if (directory == null)
+		{
+			throw new IOException(path + " is not in " + mArchive.getName());
+		}
+		if (directory.mListing != null)
+		{
+			return directory.mListing;
+		}
+
+		int count = directory.mSubdirectories.size() + directory.mFiles.size();
+		String[] names = new String[count];
+		long[] sizes = new long[count];
+		long[] lastModified = new long[count];
+		boolean[] directories = new boolean[count];
+		Calendar calendar = Calendar.getInstance();
+
+		int i = 0;
+		for (String subdirectory : directory.mSubdirectories)
+		{
+			names[i] = subdirectory;
+			directories[i] = true;
+			i++;
+		}
+		for (Integer file : directory.mFiles)
+		{
+			int entry = file.intValue();
+			String name = mNames[entry];
+			names[i] = name.substring(name.lastIndexOf('/') + 1);
+			sizes[i] = mSizes[entry];
+			lastModified[i] = fromDosTime(mDosTimes[entry], calendar);
+			i++;
+		}
+
+		directory.mListing = new DirectoryEntries(names, sizes, lastModified,
+				directories);
+		return directory.mListing;
+	}
+
+	/*
+	 * Opens a stream of the uncompressed content of a file in the archive.
+	 * Nothing is read until the stream is.
+	 */
+	public InputStream open(String path) throws IOException
+	{
+		int entry = find(trimSlashes(path));
+		if (entry < 0)
+		{
+			throw new IOException(path + " is not in " + mArchive.getName());
+		}
+		if (mMethods[entry] != METHOD_STORED
+				&& mMethods[entry] != METHOD_DEFLATED)
+		{
+			throw new IOException(path + " is compressed in a way we can't read");
+		}
+
+		FileInputStream in = new FileInputStream(mArchive);
+		try
+		{
+			FileChannel channel = in.getChannel();
+			ByteBuffer local = map(channel, mLocalOffsets[entry], LOCAL_LENGTH);
+			if (local.getInt(0) != LOCAL_SIGNATURE)
+			{
+				throw new IOException(mArchive.getName() + " is damaged");
+			}
+
+			/* The local name and extra field may differ from the central ones */
+			long data = mLocalOffsets[entry] + LOCAL_LENGTH
+					+ (local.getShort(26) & 0xffff)
+					+ (local.getShort(28) & 0xffff);
+			channel.position(data);
+
+			InputStream raw = new LimitedInputStream(
+					Channels.newInputStream(channel), mCompressedSizes[entry],
+					in);
+			if (mMethods[entry] == METHOD_STORED)
+			{
+				return raw;
+			}
+			return new InflaterInputStream(raw, new Inflater(true), 8192);
+		} catch (IOException e)
+		{
+			in.close();
+			throw e;
+		}
+	}
+
+	private int find(String path)
+	{
+		String parent = parentOf(path);
+		Directory directory = mDirectories.get(parent);
+		if (directory == null)
+		{
+			return -1;
+		}
+		for (Integer file : directory.mFiles)
+		{
+			if (mNames[file.intValue()].equals(path))
+			{
+				return file.intValue();
+			}
+		}
+		return -1;
+	}
+
+	private static String trimSlashes(String path)
+	{
+		int start = 0;
+		int end = path.length();
+		while (start < end && path.charAt(start) == '/')
+		{
+			start++;
+		}
+		while (end > start && path.charAt(end - 1) == '/')
+		{
+			end--;
+		}
+		return path.substring(start, end);
+	}
+
+	/* DOS packs the date and time into 32 bits, with two second precision */
+	private static long fromDosTime(int dosTime, Calendar calendar)
+	{
+		calendar.clear();
+		calendar.set(((dosTime >> 25) & 0x7f) + 1980,
+				((dosTime >> 21) & 0x0f) - 1, (dosTime >> 16) & 0x1f,
+				(dosTime >> 11) & 0x1f, (dosTime >> 5) & 0x3f,
+				(dosTime & 0x1f) * 2);
+		return calendar.getTimeInMillis();
+	}
+
+	/*
+	 * Reads no further than the end of one entry's data, and closes the
+	 * archive file along with itself.
+	 */
+	private static class LimitedInputStream extends FilterInputStream
+	{
+		private final FileInputStream mArchive;
+		private long mRemaining;
+
+		LimitedInputStream(InputStream in, long length, FileInputStream archive)
+		{
+			super(in);
+			mRemaining = length;
+			mArchive = archive;
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			if (mRemaining <= 0)
+			{
+				return -1;
+			}
+			int b = super.read();
+			if (b >= 0)
+			{
+				mRemaining--;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length)
+				throws IOException
+		{
+			if (mRemaining <= 0)
+			{
+				return -1;
+			}
+			int read = super.read(buffer, offset,
+					(int) Math.min(length, mRemaining));
+			if (read > 0)
+			{
+				mRemaining -= read;
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long count) throws IOException
+		{
+			long skipped = super.skip(Math.min(count, mRemaining));
+			mRemaining -= skipped;
+			return skipped;
+		}
+
+		@Override
+		public int available() throws IOException
+		{
+			return (int) Math.min(super.available(), mRemaining);
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			super.close();
+			mArchive.close();
+		}
+	}
+}
@@ -0,0 +1,329 @@
+package edu.killerud.fileexplorer.core;
+
+import java.io.File;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A snapshot of the contents of a directory, kept as parallel arrays. Every
+ * entry is stat'ed exactly once when the snapshot is taken, so sorting and
+ * filtering never have to touch the File objects (and thus the disk) again.
+ *
+ * Entries are referred to by their index in the arrays. Sorting and filtering
+ * only ever shuffle int arrays of such indices around.
+ *
+ * @author William Killerud
+ *
+ */
+public class DirectoryEntries
+{
+	/* Digit runs are padded to this width so "file2" sorts before "file10" */
+	private static final int NATURAL_DIGIT_WIDTH = 20;
+
+	private final String[] mNames;
+	private final String[] mLowerCaseNames;
+	private final String[] mExtensions;
+	private final long[] mSizes;
+	private final long[] mLastModified;
+	private final boolean[] mDirectories;
+
+	/*
+	 * Built by buildRanks(), which takes seconds for a huge directory and so
+	 * belongs off the UI thread, or else lazily the first time someone sorts.
+	 * The ranks are the position of each name (or extension) in collation
+	 * order, so after building them once every comparison is a plain int
+	 * comparison.
+	 */
+	private CollationKey[] mCollationKeys;
+	private volatile int[] mNameRanks;
+	private volatile int[] mExtensionRanks;
+
+	/* The File objects, if the snapshot was made from a real directory */
+	private final File[] mFiles;
+
+	public DirectoryEntries(String[] names, long[] sizes, long[] lastModified,
+			boolean[] directories)
+	{
+		this(null, names, sizes, lastModified, directories);
+	}
+
+	private DirectoryEntries(File[] files, String[] names, long[] sizes,
+			long[] lastModified, boolean[] directories)
+	{
+		mFiles = files;
+		mNames = names;
+		mSizes = sizes;
+		mLastModified = lastModified;
+		mDirectories = directories;
+
+		mLowerCaseNames = new String[names.length];
+		mExtensions = new String[names.length];
+		for (int i = 0; i < names.length; i++)
+		{
+			mLowerCaseNames[i] = names[i].toLowerCase();
+			mExtensions[i] = directories[i] ? "" : extensionOf(mLowerCaseNames[i]);
+		}
+	}
+
+	/*
+	 * Stats every file in the array once and takes a snapshot of the result.
+	 */
+	public static DirectoryEntries fromFiles(File[] files)
+	{
+		String[] names = new String[files.length];
+		long[] sizes = new long[files.length];
+		long[] lastModified = new long[files.length];
+		boolean[] directories = new boolean[files.length];
+
+		for (int i = 0; i < files.length; i++)
+		{
+			names[i] = files[i].getName();
+			directories[i] = files[i].isDirectory();
+			sizes[i] = directories[i] ? 0l : files[i].length();
+			lastModified[i] = files[i].lastModified();
+		}
+		return new DirectoryEntries(files, names, sizes, lastModified,
+				directories);
+	}
+
+	public int size()
+	{
+		return mNames.length;
+	}
+
+	public String getName(int index)
+	{
+		return mNames[index];
+	}
+
+	public String getLowerCaseName(int index)
+	{
+		return mLowerCaseNames[index];
+	}
+
+	/* The lower case extension without the dot, or "" if there is none */
+	public String getExtension(int index)
+	{
+		return mExtensions[index];
+	}
+
+	public long getSize(int index)
+	{
+		return mSizes[index];
+	}
+
+	public long getLastModified(int index)
+	{
+		return mLastModified[index];
+	}
+
+	public boolean isDirectory(int index)
+	{
+		return mDirectories[index];
+	}
+
+	/* Returns null if the snapshot wasn't made from File objects */
+	public File getFile(int index)
+	{
+		return mFiles == null ? null : mFiles[index];
+	}
+
+	/*
+	 * Builds everything sorting needs, so that EntrySorter never has to.
+	 * Call it from a background thread.
+	 */
+	public void buildRanks()
+	{
+		getNameRanks();
+		getExtensionRanks();
+	}
+
+	/*
+	 * Whether sorting can be done right away, without building anything. Not
+	 * synchronized, so asking doesn't wait for a build going on elsewhere.
+	 */
+	public boolean hasRanks()
+	{
+		return mNameRanks != null && mExtensionRanks != null;
+	}
+
+	/*
+	 * Collation keys compare a lot faster than running the Collator on the
+	 * names over and over, so we build them once for the whole directory.
+	 */
+	public synchronized CollationKey[] getCollationKeys()
+	{
+		if (mCollationKeys == null)
+		{
+			Collator collator = Collator.getInstance(Locale.getDefault());
+			collator.setStrength(Collator.SECONDARY);
+
+			CollationKey[] keys = new CollationKey[mNames.length];
+			StringBuilder builder = new StringBuilder();
+			for (int i = 0; i < mNames.length; i++)
+			{
+				keys[i] = collator.getCollationKey(naturalForm(mNames[i],
+						builder));
+			}
+			mCollationKeys = keys;
+		}
+		return mCollationKeys;
+	}
+
+	/*
+	 * Returns the rank of every entry's name in collation order. Names that
+	 * collate as equal share a rank.
+	 */
+	public synchronized int[] getNameRanks()
+	{
+		if (mNameRanks == null)
+		{
+			CollationKey[] keys = getCollationKeys();
+			int[] order = new int[keys.length];
+			for (int i = 0; i < order.length; i++)
+			{
+				order[i] = i;
+			}
+			int[] buffer = new int[order.length];
+			System.arraycopy(order, 0, buffer, 0, order.length);
+			mergeSort(keys, buffer, order, 0, order.length);
+
+			int[] ranks = new int[keys.length];
+			int rank = 0;
+			for (int i = 0; i < order.length; i++)
+			{
+				if (i > 0 && keys[order[i - 1]].compareTo(keys[order[i]]) != 0)
+				{
+					rank++;
+				}
+				ranks[order[i]] = rank;
+			}
+			mNameRanks = ranks;
+		}
+		return mNameRanks;
+	}
+
+	/*
+	 * Returns the rank of every entry's extension in alphabetical order. There
+	 * are usually only a handful of different extensions in a directory.
+	 */
+	public synchronized int[] getExtensionRanks()
+	{
+		if (mExtensionRanks == null)
+		{
+			TreeMap<String, Integer> distinct = new TreeMap<String, Integer>();
+			for (int i = 0; i < mExtensions.length; i++)
+			{
+				distinct.put(mExtensions[i], null);
+			}
+			int rank = 0;
+			for (Map.Entry<String, Integer> extension : distinct.entrySet())
+			{
+				extension.setValue(Integer.valueOf(rank++));
+			}
+
+			int[] ranks = new int[mExtensions.length];
+			for (int i = 0; i < ranks.length; i++)
+			{
+				ranks[i] = distinct.get(mExtensions[i]).intValue();
+			}
+			mExtensionRanks = ranks;
+		}
+		return mExtensionRanks;
+	}
+
+	/*
+	 * The same merge sort on plain int indices as EntrySorter's, comparing the
+	 * collation keys the indices point at
+	 */
+	private static void mergeSort(CollationKey[] keys, int[] source,
+			int[] destination, int from, int to)
+	{
+		int length = to - from;
+		if (length < 8)
+		{
+			for (int i = from + 1; i < to; i++)
+			{
+				int value = destination[i];
+				int j = i - 1;
+				while (j >= from && keys[destination[j]].compareTo(keys[value]) > 0)
+				{
+					destination[j + 1] = destination[j];
+					j--;
+				}
+				destination[j + 1] = value;
+			}
+			return;
+		}
+
+		int middle = (from + to) >>> 1;
+		mergeSort(keys, destination, source, from, middle);
+		mergeSort(keys, destination, source, middle, to);
+
+		if (keys[source[middle - 1]].compareTo(keys[source[middle]]) <= 0)
+		{
+			System.arraycopy(source, from, destination, from, length);
+			return;
+		}
+
+		for (int i = from, left = from, right = middle; i < to; i++)
+		{
+			if (right >= to || left < middle
+					&& keys[source[left]].compareTo(keys[source[right]]) <= 0)
+			{
+				destination[i] = source[left++];
+			} else
+			{
+				destination[i] = source[right++];
+			}
+		}
+	}
+
+	/*
+	 * Left-pads every run of digits with zeroes, so that the collator ends up
+	 * comparing numbers by value rather than character by character.
+	 */
+	private static String naturalForm(String name, StringBuilder builder)
+	{
+		builder.setLength(0);
+		int length = name.length();
+		int i = 0;
+		while (i < length)
+		{
+			char c = name.charAt(i);
+			if (c >= '0' && c <= '9')
+			{
+				int end = i;
+				while (end < length && name.charAt(end) >= '0'
+						&& name.charAt(end) <= '9')
+				{
+					end++;
+				}
+				for (int pad = end - i; pad < NATURAL_DIGIT_WIDTH; pad++)
+				{
+					builder.append('0');
+				}
+				builder.append(name, i, end);
+				i = end;
+			} else
+			{
+				builder.append(c);
+				i++;
+			}
+		}
+		return builder.toString();
+	}
+
+	private static String extensionOf(String lowerCaseName)
+	{
+		int dot = lowerCaseName.lastIndexOf('.');
+		if (dot <= 0 || dot == lowerCaseName.length() - 1)
+		{
+			return "";
+		}
+		return lowerCaseName.substring(dot + 1);
+	}
+}
@@ -0,0 +1,119 @@
+package edu.killerud.fileexplorer.core;
+
+/**
+ * Filters a sorted list of entry indices on a query typed by the user. A query
+ * starting with "*." matches on file extension, anything else matches
+ * anywhere in the file name. Case is ignored.
+ *
+ * The filter is incremental: when the user types another character, the new
+ * query can only match a subset of what the old one matched, so we only scan
+ * the entries that are currently shown instead of the whole directory.
+ *
+ * @author William Killerud
+ *
+ */
+public class EntryFilter
+{
+	private static final String EXTENSION_PREFIX = "*.";
+
+	private final DirectoryEntries mEntries;
+
+	/* All entries in sorted order */
+	private int[] mOrder;
+
+	/* The entries matching the current query, in sorted order */
+	private int[] mMatches;
+	private int mMatchCount;
+
+	private String mQuery = "";
+	private boolean mExtensionQuery;
+
+	public EntryFilter(DirectoryEntries entries, int[] order)
+	{
+		mEntries = entries;
+		mMatches = new int[order.length];
+		setOrder(order);
+	}
+
+	/*
+	 * Swaps in a new sort order, keeping the current query.
+	 */
+	public void setOrder(int[] order)
+	{
+		mOrder = order;
+		refilter(mOrder, mOrder.length);
+	}
+
+	/*
+	 * Updates the query and the list of matches.
+	 */
+	public void setQuery(String query)
+	{
+		String newQuery = query == null ? "" : query.trim().toLowerCase();
+		boolean newExtensionQuery = newQuery.startsWith(EXTENSION_PREFIX);
+
+		boolean narrowing = newExtensionQuery == mExtensionQuery
+				&& (newExtensionQuery ? newQuery.startsWith(mQuery) : newQuery
+						.contains(mQuery));
+
+		mQuery = newQuery;
+		mExtensionQuery = newExtensionQuery;
+
+		if (narrowing)
+		{
+			/* Filtering in place is safe, we never write ahead of the read */
+			refilter(mMatches, mMatchCount);
+		} else
+		{
+			refilter(mOrder, mOrder.length);
+		}
+	}
+
+	public String getQuery()
+	{
+		return mQuery;
+	}
+
+	public int getCount()
+	{
+		return mMatchCount;
+	}
+
+	/* Returns the snapshot index of the entry at the given list position */
+	public int getEntryIndex(int position)
+	{
+		return mMatches[position];
+	}
+
+	private void refilter(int[] candidates, int candidateCount)
+	{
+		int count = 0;
+		if (mQuery.length() == 0)
+		{
+			System.arraycopy(candidates, 0, mMatches, 0, candidateCount);
+			count = candidateCount;
+		} else if (mExtensionQuery)
+		{
+			String extension = mQuery.substring(EXTENSION_PREFIX.length());
+			for (int i = 0; i < candidateCount; i++)
+			{
+				int entry = candidates[i];
+				if (mEntries.getExtension(entry).startsWith(extension))
+				{
+					mMatches[count++] = entry;
+				}
+			}
+		} else
+		{
+			for (int i = 0; i < candidateCount; i++)
+			{
+				int entry = candidates[i];
+				if (mEntries.getLowerCaseName(entry).indexOf(mQuery) >= 0)
+				{
+					mMatches[count++] = entry;
+				}
+			}
+		}
+		mMatchCount = count;
+	}
+}
@@ -0,0 +1,188 @@
+package edu.killerud.fileexplorer.core;
+
+/**
+ * Sorts the entries of a DirectoryEntries snapshot. Rather than sorting the
+ * entries themselves we sort an array of indices into the snapshot, comparing
+ * the precomputed keys and ranks. Directories are always listed before files.
+ *
+ * @author William Killerud
+ *
+ */
+public class EntrySorter
+{
+	public enum SortMode
+	{
+		NAME, SIZE, LAST_MODIFIED, TYPE
+	}
+
+	/*
+	 * Returns the indices of all entries in the snapshot in sorted order.
+	 */
+	public static int[] sort(DirectoryEntries entries, SortMode mode,
+			boolean ascending)
+	{
+		int[] order = new int[entries.size()];
+		for (int i = 0; i < order.length; i++)
+		{
+			order[i] = i;
+		}
+		sort(entries, order, order.length, mode, ascending);
+		return order;
+	}
+
+	/*
+	 * Sorts the first count indices of the given array in place.
+	 */
+	public static void sort(DirectoryEntries entries, int[] order, int count,
+			SortMode mode, boolean ascending)
+	{
+		IndexComparator comparator = comparatorFor(entries, mode, ascending);
+		int[] buffer = new int[count];
+		System.arraycopy(order, 0, buffer, 0, count);
+		mergeSort(buffer, order, 0, count, comparator);
+	}
+
+	private static IndexComparator comparatorFor(
+			final DirectoryEntries entries, SortMode mode,
+			final boolean ascending)
+	{
+		final int[] nameRanks = entries.getNameRanks();
+		switch (mode)
+		{
+		case SIZE:
+			return new IndexComparator(entries, nameRanks, ascending)
+			{
+				@Override
+				int compareKeys(int a, int b)
+				{
+					return compareLongs(entries.getSize(a), entries.getSize(b));
+				}
+			};
+		case LAST_MODIFIED:
+			return new IndexComparator(entries, nameRanks, ascending)
+			{
+				@Override
+				int compareKeys(int a, int b)
+				{
+					return compareLongs(entries.getLastModified(a),
+							entries.getLastModified(b));
+				}
+			};
+		case TYPE:
+			return new IndexComparator(entries, nameRanks, ascending)
+			{
+				private final int[] mExtensionRanks = entries
+						.getExtensionRanks();
+
+				@Override
+				int compareKeys(int a, int b)
+				{
+					return mExtensionRanks[a] - mExtensionRanks[b];
+				}
+			};
+		case NAME:
+		default:
+			return new IndexComparator(entries, nameRanks, ascending)
+			{
+				@Override
+				int compareKeys(int a, int b)
+				{
+					return 0;
+				}
+			};
+		}
+	}
+
+	/*
+	 * A top-down merge sort on plain ints. The source and destination arrays
+	 * swap roles on every level, so the only allocation is the one copy made
+	 * in sort().
+	 */
+	private static void mergeSort(int[] source, int[] destination, int from,
+			int to, IndexComparator comparator)
+	{
+		int length = to - from;
+		if (length < 8)
+		{
+			/* Insertion sort is faster for the tiny runs at the bottom */
+			for (int i = from + 1; i < to; i++)
+			{
+				int value = destination[i];
+				int j = i - 1;
+				while (j >= from && comparator.compare(destination[j], value) > 0)
+				{
+					destination[j + 1] = destination[j];
+					j--;
+				}
+				destination[j + 1] = value;
+			}
+			return;
+		}
+
+		int middle = (from + to) >>> 1;
+		mergeSort(destination, source, from, middle, comparator);
+		mergeSort(destination, source, middle, to, comparator);
+
+		/* Already in order, just copy the run over */
+		if (comparator.compare(source[middle - 1], source[middle]) <= 0)
+		{
+			System.arraycopy(source, from, destination, from, length);
+			return;
+		}
+
+		for (int i = from, left = from, right = middle; i < to; i++)
+		{
+			if (right >= to || left < middle
+					&& comparator.compare(source[left], source[right]) <= 0)
+			{
+				destination[i] = source[left++];
+			} else
+			{
+				destination[i] = source[right++];
+			}
+		}
+	}
+
+	private static int compareLongs(long a, long b)
+	{
+		return a < b ? -1 : (a == b ? 0 : 1);
+	}
+
+	/*
+	 * Compares two entries by their indices. Subclasses supply the key for
+	 * the chosen sort mode, while directories first and ties broken by name
+	 * are handled here for all of them.
+	 */
+	private abstract static class IndexComparator
+	{
+		private final DirectoryEntries mEntries;
+		private final int[] mNameRanks;
+		private final boolean mAscending;
+
+		IndexComparator(DirectoryEntries entries, int[] nameRanks,
+				boolean ascending)
+		{
+			mEntries = entries;
+			mNameRanks = nameRanks;
+			mAscending = ascending;
+		}
+
+		abstract int compareKeys(int a, int b);
+
+		final int compare(int a, int b)
+		{
+			boolean aIsDirectory = mEntries.isDirectory(a);
+			if (aIsDirectory != mEntries.isDirectory(b))
+			{
+				return aIsDirectory ? -1 : 1;
+			}
+
+			int result = compareKeys(a, b);
+			if (result == 0)
+			{
+				result = mNameRanks[a] - mNameRanks[b];
+			}
+			return mAscending ? result : -result;
+		}
+	}
+}
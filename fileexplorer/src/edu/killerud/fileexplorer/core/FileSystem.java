@@ -0,0 +1,31 @@
+package edu.killerud.fileexplorer.core;
+
+import java.io.IOException;
+
+/**
+ * What the explorer needs from a file system: listing a directory, with every
+ * entry stat'ed, and stat'ing a single path. Paths are absolute and separated
+ * by slashes.
+ *
+ * Like java.io.File, the stat methods give false or 0 for paths that don't
+ * exist rather than throwing.
+ *
+ * @author William Killerud
+ *
+ */
+public interface FileSystem
+{
+	/* Lists and stats the entries of a directory */
+	DirectoryEntries list(String path) throws IOException;
+
+	/* Just the names in a directory, which is much cheaper than list() */
+	String[] listNames(String path) throws IOException;
+
+	boolean exists(String path);
+
+	boolean isDirectory(String path);
+
+	long length(String path);
+
+	long lastModified(String path);
+}
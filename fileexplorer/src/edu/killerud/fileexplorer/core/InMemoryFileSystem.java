@@ -0,0 +1,213 @@
+package edu.killerud.fileexplorer.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * A file system that only exists in memory, made up of directories and of
+ * files that have a size and a modification time but no content. It stands in
+ * for the real one in tests and benchmarks, where we want directories of any
+ * size without touching the disk.
+ *
+ * Not thread safe.
+ *
+ * @author William Killerud
+ *
+ */
+public class InMemoryFileSystem implements FileSystem
+{
+	private static final String ROOT = "/";
+
+	/* Every file and directory, by normalized path */
+	private final HashMap<String, Node> mNodes = new HashMap<String, Node>();
+
+	private static class Node
+	{
+		final String mName;
+		final boolean mDirectory;
+		long mLength;
+		long mLastModified;
+
+		/* Only for directories, in the order they were added */
+		final ArrayList<Node> mChildren;
+
+		Node(String name, boolean directory, long length, long lastModified)
+		{
+			mName = name;
+			mDirectory = directory;
+			mLength = length;
+			mLastModified = lastModified;
+			mChildren = directory ? new ArrayList<Node>() : null;
+		}
+	}
+
+	public InMemoryFileSystem()
+	{
+		mNodes.put(ROOT, new Node("", true, 0, 0));
+	}
+
+	/*
+	 * Makes the directory and any parents that are missing. Returns false if
+	 * a file is in the way.
+	 */
+	public boolean mkdirs(String path)
+	{
+		String normalized = normalize(path);
+		Node node = mNodes.get(normalized);
+		if (node != null)
+		{
+			return node.mDirectory;
+		}
+		String parent = parentOf(normalized);
+		if (!mkdirs(parent))
+		{
+			return false;
+		}
+		add(parent, normalized, new Node(nameOf(normalized), true, 0,
+				System.currentTimeMillis()));
+		return true;
+	}
+
+	/*
+	 * Makes a file, or updates the size and time of one that is there. The
+	 * parent directory must exist.
+	 */
+	public void createFile(String path, long length, long lastModified)
+			throws IOException
+	{
+		String normalized = normalize(path);
+		Node node = mNodes.get(normalized);
+		if (node != null)
+		{
+			if (node.mDirectory)
+			{
+				throw new IOException(path + " is a directory");
+			}
+			node.mLength = length;
+			node.mLastModified = lastModified;
+			return;
+		}
+
+		String parent = parentOf(normalized);
+		Node directory = mNodes.get(parent);
+		if (directory == null || !directory.mDirectory)
+		{
+			throw new IOException("No directory " + parent);
+		}
+		add(parent, normalized, new Node(nameOf(normalized), false, length,
+				lastModified));
+	}
+
+	public boolean delete(String path)
+	{
+		String normalized = normalize(path);
+		Node node = mNodes.get(normalized);
+		if (node == null || ROOT.equals(normalized)
+				|| (node.mDirectory && !node.mChildren.isEmpty()))
+		{
+			return false;
+		}
+		mNodes.remove(normalized);
+		Node parent = mNodes.get(parentOf(normalized));
+		parent.mChildren.remove(node);
+		parent.mLastModified = System.currentTimeMillis();
+		return true;
+	}
+
+	public DirectoryEntries list(String path) throws IOException
+	{
+		Node directory = mNodes.get(normalize(path));
+		if (directory == null || !directory.mDirectory)
+		{
+			throw new IOException("Could not list " + path);
+		}
+
+		int count = directory.mChildren.size();
+		String[] names = new String[count];
+		long[] lengths = new long[count];
+		long[] lastModified = new long[count];
+		boolean[] directories = new boolean[count];
+		for (int i = 0; i < count; i++)
+		{
+			Node child = directory.mChildren.get(i);
+			names[i] = child.mName;
+			lengths[i] = child.mDirectory ? 0 : child.mLength;
+			lastModified[i] = child.mLastModified;
+			directories[i] = child.mDirectory;
+		}
+		return new DirectoryEntries(names, lengths, lastModified, directories);
+	}
+
+	public String[] listNames(String path) throws IOException
+	{
+		Node directory = mNodes.get(normalize(path));
+		if (directory == null || !directory.mDirectory)
+		{
+			throw new IOException("Could not list " + path);
+		}
+		String[] names = new String[directory.mChildren.size()];
+		for (int i = 0; i < names.length; i++)
+		{
+			names[i] = directory.mChildren.get(i).mName;
+		}
+		return names;
+	}
+
+	public boolean exists(String path)
+	{
+		return mNodes.containsKey(normalize(path));
+	}
+
+	public boolean isDirectory(String path)
+	{
+		Node node = mNodes.get(normalize(path));
+		return node != null && node.mDirectory;
+	}
+
+	public long length(String path)
+	{
+		Node node = mNodes.get(normalize(path));
+		return node == null || node.mDirectory ? 0 : node.mLength;
+	}
+
+	public long lastModified(String path)
+	{
+		Node node = mNodes.get(normalize(path));
+		return node == null ? 0 : node.mLastModified;
+	}
+
+	/* Adding to a directory changes its modification time, as on disk */
+	private void add(String parentPath, String path, Node node)
+	{
+		Node parent = mNodes.get(parentPath);
+		parent.mChildren.add(node);
+		parent.mLastModified = System.currentTimeMillis();
+		mNodes.put(path, node);
+	}
+
+	/* Absolute, with no empty parts and no slash at the end */
+	private static String normalize(String path)
+	{
+		StringBuilder normalized = new StringBuilder(path.length() + 1);
+		for (String part : path.split("/"))
+		{
+			if (part.length() > 0 && !part.equals("."))
+			{
+				normalized.append('/').append(part);
+			}
+		}
+		return normalized.length() == 0 ? ROOT : normalized.toString();
+	}
+
+	private static String parentOf(String normalized)
+	{
+		int slash = normalized.lastIndexOf('/');
+		return slash <= 0 ? ROOT : normalized.substring(0, slash);
+	}
+
+	private static String nameOf(String normalized)
+	{
+		return normalized.substring(normalized.lastIndexOf('/') + 1);
+	}
+}
@@ -0,0 +1,55 @@
+package edu.killerud.fileexplorer.core;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The file system of the device, through java.io.File.
+ *
+ * @author William Killerud
+ *
+ */
+public class LocalFileSystem implements FileSystem
+{
+	public DirectoryEntries list(String path) throws IOException
+	{
+		File[] files = new File(path).listFiles();
+
+		/* listFiles() gives us null if the directory can't be read */
+		if (files == null)
+		{
+			throw new IOException("Could not list " + path);
+		}
+		return DirectoryEntries.fromFiles(files);
+	}
+
+	public String[] listNames(String path) throws IOException
+	{
+		String[] names = new File(path).list();
+		if (names == null)
+		{
+			throw new IOException("Could not list " + path);
+		}
+		return names;
+	}
+
+	public boolean exists(String path)
+	{
+		return new File(path).exists();
+	}
+
+	public boolean isDirectory(String path)
+	{
+		return new File(path).isDirectory();
+	}
+
+	public long length(String path)
+	{
+		return new File(path).length();
+	}
+
+	public long lastModified(String path)
+	{
+		return new File(path).lastModified();
+	}
+}
@@ -0,0 +1,233 @@
+package hiof.enigma.android.gestures;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Labelled gestures to evaluate the recognizer with. Each gesture is a single
+ * stroke of x and y pairs, labelled with the name of what it is meant to be.
+ * 
+ * A corpus is read from a gesture library file, the same format the Gesture
+ * Tool saves and res/raw/gestures is in, where the name of each entry is the
+ * label of all its gestures. So recording a corpus is drawing each gesture a
+ * number of times in the Gesture Tool, and pulling the file off the phone.
+ * Without a recording, one can be made up with GestureSynth.
+ * 
+ * @author William Killerud
+ * 
+ */
+public class GestureCorpus
+{
+	/* The only version of the library format there has been */
+	private static final int FILE_VERSION = 1;
+
+	private final List<String> mNames = new ArrayList<String>();
+	private final Map<String, Integer> mLabels = new HashMap<String, Integer>();
+	private int[] mGestureLabels = new int[64];
+	private float[][] mStrokes = new float[64][];
+	private int mCount;
+	private int mSkipped;
+
+	/* Adds a gesture, labelled with the given name */
+	public void add(String name, float[] stroke)
+	{
+		Integer label = mLabels.get(name);
+		if (label == null)
+		{
+			label = mNames.size();
+			mNames.add(name);
+			mLabels.put(name, label);
+		}
+		if (mCount == mStrokes.length)
+		{
+			mStrokes = Arrays.copyOf(mStrokes, mCount * 2);
+			mGestureLabels = Arrays.copyOf(mGestureLabels, mCount * 2);
+		}
+		mStrokes[mCount] = stroke;
+		mGestureLabels[mCount] = label;
+		mCount++;
+	}
+
+	/*
+	 * Reads a gesture library file. Gestures of more than one stroke are
+	 * skipped, since the recognizer only takes one, and counted by
+	 * getSkippedCount().
+	 */
+	public static GestureCorpus read(String path) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(path)));
+		try
+		{
+			int version = in.readShort();
+			if (version != FILE_VERSION)
+			{
+				throw new IOException(path + " is version " + version
+						+ ", not " + FILE_VERSION);
+			}
+			GestureCorpus corpus = new GestureCorpus();
+			int entries = in.readInt();
+			for (int entry = 0; entry < entries; entry++)
+			{
+				String name = in.readUTF().trim();
+				int gestures = in.readInt();
+				for (int gesture = 0; gesture < gestures; gesture++)
+				{
+					/* The id of the gesture, which we have no use for */
+					in.readLong();
+					int strokes = in.readInt();
+					float[] first = null;
+					for (int stroke = 0; stroke < strokes; stroke++)
+					{
+						int points = in.readInt();
+						float[] read = new float[points * 2];
+						for (int point = 0; point < points; point++)
+						{
+							read[point * 2] = in.readFloat();
+							read[point * 2 + 1] = in.readFloat();
+							/* The time of the touch event */
+							in.readLong();
+						}
+						first = stroke == 0 ? read : first;
+					}
+					if (strokes == 1)
+					{
+						corpus.add(name, first);
+					} else
+					{
+						corpus.mSkipped++;
+					}
+				}
+			}
+			return corpus;
+		} finally
+		{
+			in.close();
+		}
+	}
+
+	/*
+	 * Writes the corpus as a gesture library file, an entry for each name,
+	 * with no times for the touch events
+	 */
+	public void write(String path) throws IOException
+	{
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(path)));
+		try
+		{
+			/* The gestures in order of their names, by counting them first */
+			int labels = mNames.size();
+			int[] starts = new int[labels + 1];
+			for (int i = 0; i < mCount; i++)
+			{
+				starts[mGestureLabels[i] + 1]++;
+			}
+			for (int label = 0; label < labels; label++)
+			{
+				starts[label + 1] += starts[label];
+			}
+			int[] order = new int[mCount];
+			int[] placed = Arrays.copyOf(starts, labels);
+			for (int i = 0; i < mCount; i++)
+			{
+				order[placed[mGestureLabels[i]]++] = i;
+			}
+
+			out.writeShort(FILE_VERSION);
+			out.writeInt(labels);
+			for (int label = 0; label < labels; label++)
+			{
+				out.writeUTF(mNames.get(label));
+				out.writeInt(starts[label + 1] - starts[label]);
+				for (int at = starts[label]; at < starts[label + 1]; at++)
+				{
+					float[] stroke = mStrokes[order[at]];
+					out.writeLong(at);
+					out.writeInt(1);
+					out.writeInt(stroke.length / 2);
+					for (int point = 0; point < stroke.length; point += 2)
+					{
+						out.writeFloat(stroke[point]);
+						out.writeFloat(stroke[point + 1]);
+						out.writeLong(0);
+					}
+				}
+			}
+		} finally
+		{
+			out.close();
+		}
+	}
+
+	/*
+	 * Makes up a corpus of the given number of kinds of gestures, each kind
+	 * drawn once as a template and then at random for the rest.
+	 */
+	public static GestureCorpus[] synthesize(long seed, int kinds, int tests)
+	{
+		GestureSynth synth = new GestureSynth(seed);
+		float[][] shapes = synth.shapes(kinds);
+		GestureCorpus templates = new GestureCorpus();
+		GestureCorpus drawn = new GestureCorpus();
+		for (int kind = 0; kind < kinds; kind++)
+		{
+			templates.add("kind " + kind, synth.draw(shapes[kind]));
+		}
+		for (int i = 0; i < tests; i++)
+		{
+			int kind = synth.nextKind(kinds);
+			drawn.add("kind " + kind, synth.draw(shapes[kind]));
+		}
+		return new GestureCorpus[] { templates, drawn };
+	}
+
+	/*
+	 * Splits the corpus in two: the first gesture of each label, to be the
+	 * templates, and all the rest, to be recognized
+	 */
+	public GestureCorpus[] splitFirsts()
+	{
+		GestureCorpus firsts = new GestureCorpus();
+		GestureCorpus rest = new GestureCorpus();
+		boolean[] seen = new boolean[mNames.size()];
+		for (int i = 0; i < mCount; i++)
+		{
+			int label = mGestureLabels[i];
+			(seen[label] ? rest : firsts).add(mNames.get(label), mStrokes[i]);
+			seen[label] = true;
+		}
+		return new GestureCorpus[] { firsts, rest };
+	}
+
+	public int getCount()
+	{
+		return mCount;
+	}
+
+	public float[] getStroke(int gesture)
+	{
+		return mStrokes[gesture];
+	}
+
+	public String getName(int gesture)
+	{
+		return mNames.get(mGestureLabels[gesture]);
+	}
+
+	/* Multi-stroke gestures left out when reading */
+	public int getSkippedCount()
+	{
+		return mSkipped;
+	}
+}
@@ -0,0 +1,568 @@
+package hiof.enigma.android.gestures;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the recognizer over a labelled corpus of gestures on every core, and
+ * tells how often it is right, what it takes for what, how long it takes for
+ * each template, and how many right and wrong matches each score threshold
+ * would let through. The demo only acts on matches scoring over 1.0, and
+ * this is what to pick that threshold by.
+ * 
+ * The templates are the gestures of one gesture library file, and those
+ * recognized the gestures of another, both labelled by their names. Given
+ * only one file, the first gesture of each name is the template and the rest
+ * are recognized. Given none, a corpus of 100 kinds of gestures and 100000
+ * drawings is made up, which is what to run when the recognizer changes.
+ * Gestures labelled with a name no template has are never right, so they
+ * show how much that isn't a gesture at all gets through.
+ * 
+ * Each thread recognizes a share of the gestures with a recognizer of its
+ * own, and keeps what it finds in arrays shared with the others but written
+ * at different places. Everything is tallied once they are done. With -csv,
+ * the whole confusion matrix, latencies and ROC curve are written to a
+ * directory as well, for plotting or for comparing runs.
+ * 
+ * java hiof.enigma.android.gestures.GestureEvaluation [-threads n]
+ * [-csv dir] [templates [gestures]]
+ * 
+ * @author William Killerud
+ * 
+ */
+public class GestureEvaluation
+{
+	/* The threshold the demo uses */
+	private static final float MIN_SCORE = 1.0f;
+
+	/* Thresholds to print the ROC curve at */
+	private static final float[] THRESHOLDS = { 0.5f, 0.75f, 1.0f, 1.25f,
+			1.5f, 2.0f, 2.5f, 3.0f, 4.0f, 5.0f };
+
+	/* Points of the ROC curve written with -csv */
+	private static final int CSV_POINTS = 200;
+
+	/* Confusion matrices up to this many labels are printed whole */
+	private static final int MAX_PRINTED_LABELS = 12;
+
+	/* Otherwise the most common confusions, and the slowest templates */
+	private static final int MAX_PRINTED_ROWS = 20;
+
+	private static final int SYNTHETIC_KINDS = 100;
+	private static final int SYNTHETIC_TESTS = 100000;
+
+	private final GestureCorpus mTemplates;
+	private final GestureCorpus mGestures;
+
+	private final List<String> mNames = new ArrayList<String>();
+	private final Map<String, Integer> mLabels = new HashMap<String, Integer>();
+	/* The label of each template of the recognizer, by its index */
+	private int[] mTemplateLabels;
+
+	/* The label of each gesture, what it was taken for, its score and time */
+	private final int[] mTruths;
+	private final int[] mFound;
+	private final float[] mScores;
+	private final long[] mNanos;
+
+	public GestureEvaluation(GestureCorpus templates, GestureCorpus gestures)
+	{
+		mTemplates = templates;
+		mGestures = gestures;
+		mTruths = new int[gestures.getCount()];
+		mFound = new int[gestures.getCount()];
+		mScores = new float[gestures.getCount()];
+		mNanos = new long[gestures.getCount()];
+
+		newRecognizer();
+		for (int i = 0; i < gestures.getCount(); i++)
+		{
+			mTruths[i] = label(gestures.getName(i));
+		}
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		int threads = Runtime.getRuntime().availableProcessors();
+		String csv = null;
+		List<String> files = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++)
+		{
+			if (args[i].equals("-threads"))
+			{
+				threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-csv"))
+			{
+				csv = args[++i];
+			} else
+			{
+				files.add(args[i]);
+			}
+		}
+
+		GestureCorpus[] corpus;
+		if (files.isEmpty())
+		{
+			corpus = GestureCorpus.synthesize(1, SYNTHETIC_KINDS,
+					SYNTHETIC_TESTS);
+		} else
+		{
+			GestureCorpus templates = GestureCorpus.read(files.get(0));
+			corpus = files.size() > 1 ? new GestureCorpus[] { templates,
+					GestureCorpus.read(files.get(1)) } : templates
+					.splitFirsts();
+			int skipped = templates.getSkippedCount()
+					+ (files.size() > 1 ? corpus[1].getSkippedCount() : 0);
+			if (skipped > 0)
+			{
+				System.out.printf("Skipped %d gestures of more than one "
+						+ "stroke%n", skipped);
+			}
+		}
+
+		GestureEvaluation evaluation = new GestureEvaluation(corpus[0],
+				corpus[1]);
+		/* Once to warm up the JIT, and once for real */
+		evaluation.run(threads);
+		long nanos = evaluation.run(threads);
+		evaluation.report(threads, nanos);
+		if (csv != null)
+		{
+			evaluation.writeCsv(new File(csv));
+		}
+	}
+
+	/* Recognizes every gesture, and returns how long that took in all */
+	public long run(int threads) throws InterruptedException
+	{
+		final int count = mGestures.getCount();
+		final int share = (count + threads - 1) / threads;
+		Thread[] workers = new Thread[threads];
+		long start = System.nanoTime();
+		for (int i = 0; i < threads; i++)
+		{
+			final int from = i * share;
+			final int to = Math.min(count, from + share);
+			workers[i] = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					recognize(from, to);
+				}
+			};
+			workers[i].start();
+		}
+		for (Thread worker : workers)
+		{
+			worker.join();
+		}
+		return System.nanoTime() - start;
+	}
+
+	/* Run by each thread, for its share of the gestures */
+	private void recognize(int from, int to)
+	{
+		GestureRecognizer recognizer = newRecognizer();
+		for (int i = from; i < to; i++)
+		{
+			float[] stroke = mGestures.getStroke(i);
+			long start = System.nanoTime();
+			int template = recognizer.recognize(stroke, stroke.length / 2);
+			mNanos[i] = System.nanoTime() - start;
+			mFound[i] = template < 0 ? -1 : mTemplateLabels[template];
+			mScores[i] = template < 0 ? 0 : recognizer.getScore();
+		}
+	}
+
+	/*
+	 * Every recognizer is made from the templates the same way, so they all
+	 * number them the same. The first one also maps the numbers to labels.
+	 */
+	private GestureRecognizer newRecognizer()
+	{
+		int count = mTemplates.getCount();
+		GestureRecognizer recognizer = new GestureRecognizer(count);
+		boolean first = mTemplateLabels == null;
+		int[] labels = new int[count];
+		for (int i = 0; i < count; i++)
+		{
+			float[] stroke = mTemplates.getStroke(i);
+			int template = recognizer.addTemplate(mTemplates.getName(i),
+					stroke, stroke.length / 2);
+			if (first && template >= 0)
+			{
+				labels[template] = label(mTemplates.getName(i));
+			}
+		}
+		if (first)
+		{
+			mTemplateLabels = labels;
+		}
+		return recognizer;
+	}
+
+	private int label(String name)
+	{
+		Integer label = mLabels.get(name);
+		if (label == null)
+		{
+			label = mNames.size();
+			mNames.add(name);
+			mLabels.put(name, label);
+		}
+		return label;
+	}
+
+	private void report(int threads, long nanos)
+	{
+		int count = mGestures.getCount();
+		int right = 0;
+		int accepted = 0;
+		for (int i = 0; i < count; i++)
+		{
+			if (mFound[i] == mTruths[i])
+			{
+				right++;
+				accepted += mScores[i] > MIN_SCORE ? 1 : 0;
+			}
+		}
+		long[] sorted = Arrays.copyOf(mNanos, count);
+		Arrays.sort(sorted);
+		System.out.printf("%d gestures against %d templates of %d names, "
+				+ "on %d threads in %.0f ms, %.0f gestures a second%n", count,
+				mTemplates.getCount(), mNames.size(), threads, nanos / 1e6,
+				count / (nanos / 1e9));
+		System.out.printf("%.2f%% right, %.2f%% right and over %.1f; "
+				+ "%.1f us median, %.1f us 99th, %.1f us worst%n%n", right
+				* 100.0 / count, accepted * 100.0 / count, MIN_SCORE,
+				median(sorted, count) / 1e3, sorted[count * 99 / 100] / 1e3,
+				sorted[count - 1] / 1e3);
+
+		reportConfusion();
+		reportLatency();
+		reportRoc();
+	}
+
+	/* Rows are what gestures were, columns what they were taken for */
+	private int[][] confusion()
+	{
+		int labels = mNames.size();
+		/* The last column is for gestures nothing was found for */
+		int[][] confusion = new int[labels][labels + 1];
+		for (int i = 0; i < mTruths.length; i++)
+		{
+			confusion[mTruths[i]][mFound[i] < 0 ? labels : mFound[i]]++;
+		}
+		return confusion;
+	}
+
+	private void reportConfusion()
+	{
+		int labels = mNames.size();
+		int[][] confusion = confusion();
+		if (labels <= MAX_PRINTED_LABELS)
+		{
+			System.out.println("Confusion, drawn down and taken for across:");
+			System.out.printf("%14s", "");
+			for (int found = 0; found < labels; found++)
+			{
+				System.out.printf(" %8.8s", mNames.get(found));
+			}
+			System.out.printf(" %8s%n", "nothing");
+			for (int truth = 0; truth < labels; truth++)
+			{
+				System.out.printf("%14.14s", mNames.get(truth));
+				for (int found = 0; found <= labels; found++)
+				{
+					System.out.printf(" %8d", confusion[truth][found]);
+				}
+				System.out.println();
+			}
+			System.out.println();
+			return;
+		}
+
+		/* Too many to print whole, so the most common mistakes */
+		List<long[]> mistakes = new ArrayList<long[]>();
+		for (int truth = 0; truth < labels; truth++)
+		{
+			for (int found = 0; found <= labels; found++)
+			{
+				if (found != truth && confusion[truth][found] > 0)
+				{
+					mistakes.add(new long[] { confusion[truth][found], truth,
+							found });
+				}
+			}
+		}
+		long[][] sorted = mistakes.toArray(new long[mistakes.size()][]);
+		Arrays.sort(sorted, new Comparator<long[]>()
+		{
+			public int compare(long[] a, long[] b)
+			{
+				return a[0] < b[0] ? 1 : a[0] > b[0] ? -1 : 0;
+			}
+		});
+		System.out.println("Most common confusions:");
+		for (int i = 0; i < Math.min(sorted.length, MAX_PRINTED_ROWS); i++)
+		{
+			int truth = (int) sorted[i][1];
+			int found = (int) sorted[i][2];
+			System.out.printf("  %6d %-14s taken for %s%n", sorted[i][0],
+					mNames.get(truth), found == labels ? "nothing" : mNames
+							.get(found));
+		}
+		System.out.println();
+	}
+
+	/*
+	 * How long gestures of each label took to recognize, as medians, 99th
+	 * percentiles and how often they were right, indexed by label
+	 */
+	private double[][] latencies()
+	{
+		int labels = mNames.size();
+		long[][] nanos = new long[labels][];
+		int[] counts = new int[labels];
+		int[] right = new int[labels];
+		for (int i = 0; i < mTruths.length; i++)
+		{
+			counts[mTruths[i]]++;
+		}
+		for (int label = 0; label < labels; label++)
+		{
+			nanos[label] = new long[counts[label]];
+			counts[label] = 0;
+		}
+		for (int i = 0; i < mTruths.length; i++)
+		{
+			int label = mTruths[i];
+			nanos[label][counts[label]++] = mNanos[i];
+			right[label] += mFound[i] == label ? 1 : 0;
+		}
+
+		double[][] latencies = new double[labels][];
+		for (int label = 0; label < labels; label++)
+		{
+			long[] sorted = nanos[label];
+			Arrays.sort(sorted);
+			int count = sorted.length;
+			latencies[label] = new double[] { count,
+					count == 0 ? 0 : median(sorted, count) / 1e3,
+					count == 0 ? 0 : sorted[count * 99 / 100] / 1e3,
+					count == 0 ? 0 : right[label] * 100.0 / count };
+		}
+		return latencies;
+	}
+
+	private void reportLatency()
+	{
+		final double[][] latencies = latencies();
+		Integer[] labels = new Integer[latencies.length];
+		for (int label = 0; label < labels.length; label++)
+		{
+			labels[label] = label;
+		}
+		Arrays.sort(labels, new Comparator<Integer>()
+		{
+			public int compare(Integer a, Integer b)
+			{
+				return Double.compare(latencies[b][1], latencies[a][1]);
+			}
+		});
+
+		System.out.println(labels.length > MAX_PRINTED_ROWS ? "Slowest "
+				+ MAX_PRINTED_ROWS + " names:" : "By name, slowest first:");
+		for (int i = 0; i < Math.min(labels.length, MAX_PRINTED_ROWS); i++)
+		{
+			double[] latency = latencies[labels[i]];
+			if (latency[0] > 0)
+			{
+				System.out.printf("  %-14s %7.0f gestures, %6.1f us median, "
+						+ "%6.1f us 99th, %5.1f%% right%n", mNames
+						.get(labels[i]), latency[0], latency[1], latency[2],
+						latency[3]);
+			}
+		}
+		System.out.println();
+	}
+
+	/*
+	 * The ROC curve for the score threshold, from the highest score down.
+	 * A gesture over the threshold is accepted, and rightly so if its best
+	 * match is what it was. Each point is a threshold, how many of the right
+	 * matches it accepts, and how many of the wrong.
+	 */
+	private double[][] roc()
+	{
+		int count = mScores.length;
+		Integer[] order = new Integer[count];
+		int rights = 0;
+		for (int i = 0; i < count; i++)
+		{
+			order[i] = i;
+			rights += mFound[i] == mTruths[i] ? 1 : 0;
+		}
+		int wrongs = count - rights;
+		Arrays.sort(order, new Comparator<Integer>()
+		{
+			public int compare(Integer a, Integer b)
+			{
+				return Float.compare(mScores[b], mScores[a]);
+			}
+		});
+
+		double[][] roc = new double[count + 1][];
+		roc[0] = new double[] { Double.POSITIVE_INFINITY, 0, 0 };
+		int right = 0;
+		for (int i = 0; i < count; i++)
+		{
+			right += mFound[order[i]] == mTruths[order[i]] ? 1 : 0;
+			roc[i + 1] = new double[] { mScores[order[i]],
+					rights == 0 ? 0 : right / (double) rights,
+					wrongs == 0 ? 0 : (i + 1 - right) / (double) wrongs };
+		}
+		return roc;
+	}
+
+	private void reportRoc()
+	{
+		int count = mScores.length;
+		int rights = 0;
+		for (int i = 0; i < count; i++)
+		{
+			rights += mFound[i] == mTruths[i] ? 1 : 0;
+		}
+		int wrongs = count - rights;
+
+		System.out.printf("Score thresholds, of %d right matches and %d "
+				+ "wrong:%n", rights, wrongs);
+		for (float threshold : THRESHOLDS)
+		{
+			int right = 0;
+			int wrong = 0;
+			for (int i = 0; i < count; i++)
+			{
+				if (mScores[i] > threshold)
+				{
+					right += mFound[i] == mTruths[i] ? 1 : 0;
+					wrong += mFound[i] == mTruths[i] ? 0 : 1;
+				}
+			}
+			System.out.printf("  over %4.2f: %6.2f%% of right accepted, "
+					+ "%6.2f%% of wrong accepted%s%n", threshold, right
+					* 100.0 / Math.max(1, rights), wrong * 100.0
+					/ Math.max(1, wrongs), threshold == MIN_SCORE ? ", the demo"
+					: "");
+		}
+
+		/*
+		 * The area under the curve, and the threshold furthest above the
+		 * diagonal, where the most right matches are let through for the
+		 * fewest wrong
+		 */
+		double[][] roc = roc();
+		double area = 0;
+		double best = -1;
+		double bestThreshold = 0;
+		for (int i = 1; i < roc.length; i++)
+		{
+			area += (roc[i][2] - roc[i - 1][2]) * (roc[i][1] + roc[i - 1][1])
+					/ 2;
+			/* Only where the next score is lower is there a threshold */
+			boolean distinct = i == roc.length - 1 || roc[i + 1][0] < roc[i][0];
+			if (distinct && roc[i][1] - roc[i][2] > best)
+			{
+				best = roc[i][1] - roc[i][2];
+				bestThreshold = i == roc.length - 1 ? 0
+						: (roc[i][0] + roc[i + 1][0]) / 2;
+			}
+		}
+		System.out.printf("Area under the curve %.4f; best threshold %.2f, "
+				+ "accepting %.2f%% more of the right than of the wrong%n",
+				wrongs == 0 || rights == 0 ? Double.NaN : area,
+				bestThreshold, best * 100);
+	}
+
+	public void writeCsv(File directory) throws IOException
+	{
+		directory.mkdirs();
+		int labels = mNames.size();
+
+		PrintWriter out = new PrintWriter(new File(directory,
+				"confusion.csv"), "UTF-8");
+		try
+		{
+			int[][] confusion = confusion();
+			out.print("drawn");
+			for (String name : mNames)
+			{
+				out.print("," + quote(name));
+			}
+			out.println(",nothing");
+			for (int truth = 0; truth < labels; truth++)
+			{
+				out.print(quote(mNames.get(truth)));
+				for (int found = 0; found <= labels; found++)
+				{
+					out.print("," + confusion[truth][found]);
+				}
+				out.println();
+			}
+		} finally
+		{
+			out.close();
+		}
+
+		out = new PrintWriter(new File(directory, "latency.csv"), "UTF-8");
+		try
+		{
+			double[][] latencies = latencies();
+			out.println("name,gestures,median_us,p99_us,right_percent");
+			for (int label = 0; label < labels; label++)
+			{
+				double[] latency = latencies[label];
+				out.printf("%s,%.0f,%.2f,%.2f,%.2f%n", quote(mNames
+						.get(label)), latency[0], latency[1], latency[2],
+						latency[3]);
+			}
+		} finally
+		{
+			out.close();
+		}
+
+		out = new PrintWriter(new File(directory, "roc.csv"), "UTF-8");
+		try
+		{
+			double[][] roc = roc();
+			out.println("threshold,right_accepted,wrong_accepted");
+			int step = Math.max(1, roc.length / CSV_POINTS);
+			for (int i = 1; i < roc.length; i += step)
+			{
+				out.printf("%.4f,%.6f,%.6f%n", roc[i][0], roc[i][1],
+						roc[i][2]);
+			}
+		} finally
+		{
+			out.close();
+		}
+	}
+
+	private static double median(long[] sorted, int count)
+	{
+		return sorted[count / 2];
+	}
+
+	private static String quote(String name)
+	{
+		return "\"" + name.replace("\"", "\"\"") + "\"";
+	}
+}
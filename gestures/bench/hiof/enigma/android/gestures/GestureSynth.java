@@ -0,0 +1,212 @@
+package hiof.enigma.android.gestures;
+
+import java.util.Random;
+
+/**
+ * Makes up gestures for the benchmarks, since there is no one to draw them on
+ * a JVM. A kind of gesture is a smooth stroke through a handful of random
+ * points, and drawing one is following that stroke the way a finger would:
+ * at some size and place on the screen, a little turned, a little shaky, and
+ * with the touch events coming faster or slower as the finger speeds up and
+ * slows down.
+ * 
+ * The same seed makes the same gestures, so runs can be compared.
+ * 
+ * @author William Killerud
+ * 
+ */
+public class GestureSynth
+{
+	/* Points of the smooth stroke a kind of gesture is */
+	private static final int SHAPE_POINTS = 64;
+
+	private final Random mRandom;
+
+	public GestureSynth(long seed)
+	{
+		mRandom = new Random(seed);
+	}
+
+	/* A new kind of gesture, as x and y pairs within the unit square */
+	public float[] shape()
+	{
+		return shape(4 + mRandom.nextInt(4));
+	}
+
+	/*
+	 * A new kind of gesture of the given number of strokes, each simpler than
+	 * a single-stroke gesture, as x and y pairs within the unit square
+	 */
+	public float[][] multiShape(int strokes)
+	{
+		float[][] shape = new float[strokes][];
+		for (int stroke = 0; stroke < strokes; stroke++)
+		{
+			shape[stroke] = shape(2 + mRandom.nextInt(2));
+		}
+		return shape;
+	}
+
+	/* A smooth stroke through the given number of random points */
+	private float[] shape(int controls)
+	{
+		float[] control = new float[controls * 2];
+		for (int i = 0; i < control.length; i++)
+		{
+			control[i] = mRandom.nextFloat();
+		}
+
+		/* Catmull-Rom through the control points, ends repeated */
+		float[] shape = new float[SHAPE_POINTS * 2];
+		for (int i = 0; i < SHAPE_POINTS; i++)
+		{
+			float along = i * (controls - 1f) / (SHAPE_POINTS - 1);
+			int segment = Math.min((int) along, controls - 2);
+			float t = along - segment;
+			for (int axis = 0; axis < 2; axis++)
+			{
+				float p0 = control[Math.max(segment - 1, 0) * 2 + axis];
+				float p1 = control[segment * 2 + axis];
+				float p2 = control[(segment + 1) * 2 + axis];
+				float p3 = control[Math.min(segment + 2, controls - 1) * 2
+						+ axis];
+				shape[i * 2 + axis] = 0.5f * (2 * p1 + (p2 - p0) * t
+						+ (2 * p0 - 5 * p1 + 4 * p2 - p3) * t * t + (3 * p1
+						- p0 - 3 * p2 + p3)
+						* t * t * t);
+			}
+		}
+		return shape;
+	}
+
+	/* Someone drawing the shape, as x and y pairs in pixels */
+	public float[] draw(float[] shape)
+	{
+		return draw(new float[][] { shape })[0];
+	}
+
+	/*
+	 * Someone drawing the strokes of a shape, one after the other, all at
+	 * the same size and place
+	 */
+	public float[][] draw(float[][] shape)
+	{
+		float size = 100 + mRandom.nextFloat() * 300;
+		float angle = (float) Math.toRadians(mRandom.nextGaussian() * 6);
+		float cos = (float) Math.cos(angle) * size;
+		float sin = (float) Math.sin(angle) * size;
+		float left = mRandom.nextFloat() * 400;
+		float top = mRandom.nextFloat() * 400;
+		float[][] drawn = new float[shape.length][];
+		for (int stroke = 0; stroke < shape.length; stroke++)
+		{
+			drawn[stroke] = drawStroke(shape[stroke], cos, sin, left, top,
+					size * 0.015f);
+		}
+		return drawn;
+	}
+
+	/*
+	 * Draws the stroke scaled and turned by cos and sin, at the given place,
+	 * with the given shake
+	 */
+	private float[] drawStroke(float[] shape, float cos, float sin,
+			float left, float top, float shake)
+	{
+		float length = 0;
+		for (int i = 2; i < shape.length; i += 2)
+		{
+			length += Math.hypot(shape[i] - shape[i - 2], shape[i + 1]
+					- shape[i - 1]);
+		}
+
+		/* Touch events come at a steady rate, so faster means further apart */
+		float[] points = new float[4 * shape.length];
+		int count = 0;
+		float step = length / (20 + mRandom.nextInt(60));
+		float speed = 1;
+		float walked = 0;
+		int segment = 0;
+		while (segment < shape.length / 2 - 1 && count < points.length / 2)
+		{
+			float x0 = shape[segment * 2];
+			float y0 = shape[segment * 2 + 1];
+			float x1 = shape[segment * 2 + 2];
+			float y1 = shape[segment * 2 + 3];
+			float d = (float) Math.hypot(x1 - x0, y1 - y0);
+			if (walked > d)
+			{
+				walked -= d;
+				segment++;
+				continue;
+			}
+			float t = d == 0 ? 0 : walked / d;
+			float x = x0 + t * (x1 - x0);
+			float y = y0 + t * (y1 - y0);
+			points[count * 2] = left + x * cos - y * sin
+					+ (float) mRandom.nextGaussian() * shake;
+			points[count * 2 + 1] = top + x * sin + y * cos
+					+ (float) mRandom.nextGaussian() * shake;
+			count++;
+
+			speed = Math.max(0.3f, Math.min(1.7f, speed
+					+ (float) mRandom.nextGaussian() * 0.2f));
+			walked += step * speed;
+		}
+
+		/* The finger lifts at the end of the stroke */
+		float endX = shape[shape.length - 2];
+		float endY = shape[shape.length - 1];
+		float[] drawn = new float[count * 2 + 2];
+		System.arraycopy(points, 0, drawn, 0, count * 2);
+		drawn[count * 2] = left + endX * cos - endY * sin;
+		drawn[count * 2 + 1] = top + endX * sin + endY * cos;
+		return drawn;
+	}
+
+	/*
+	 * The strokes of a drawing in another order, and some of them drawn the
+	 * other way
+	 */
+	public float[][] scramble(float[][] drawn)
+	{
+		float[][] scrambled = new float[drawn.length][];
+		for (int stroke = 0; stroke < drawn.length; stroke++)
+		{
+			int other = mRandom.nextInt(stroke + 1);
+			scrambled[stroke] = scrambled[other];
+			scrambled[other] = drawn[stroke];
+		}
+		for (int stroke = 0; stroke < scrambled.length; stroke++)
+		{
+			if (mRandom.nextBoolean())
+			{
+				float[] points = scrambled[stroke];
+				float[] reversed = new float[points.length];
+				for (int i = 0; i < points.length; i += 2)
+				{
+					reversed[i] = points[points.length - i - 2];
+					reversed[i + 1] = points[points.length - i - 1];
+				}
+				scrambled[stroke] = reversed;
+			}
+		}
+		return scrambled;
+	}
+
+	/* Shapes for the given number of kinds of gestures */
+	public float[][] shapes(int kinds)
+	{
+		float[][] shapes = new float[kinds][];
+		for (int i = 0; i < kinds; i++)
+		{
+			shapes[i] = shape();
+		}
+		return shapes;
+	}
+
+	public int nextKind(int kinds)
+	{
+		return mRandom.nextInt(kinds);
+	}
+}
@@ -0,0 +1,279 @@
+package hiof.enigma.android.gestures;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * Compares the point cloud recognizer to the single-stroke one, with
+ * libraries of 10, 100 and 1000 templates, one drawing of each kind of
+ * gesture. Each size is tried with single-stroke gestures, and with
+ * gestures of two or three strokes drawn four ways: in the same order and
+ * direction as the template, in any order and direction, and with two
+ * fingers at once, their points mixed up. The single-stroke recognizer
+ * is given the strokes joined end to end, which is the best it can do.
+ * 
+ * For each, it tells how often the best match is the right one, how often
+ * it is and scores over the threshold the demo uses, and how often a kind
+ * of gesture with no template scores over the threshold anyway. The point
+ * cloud recognizer is timed comparing templates of the gesture's number of
+ * strokes first and not, and the bytes it allocates counted, with buffers
+ * from the pool and with a new one for each gesture.
+ * 
+ * java hiof.enigma.android.gestures.PointCloudBenchmark [tests per size]
+ * 
+ * @author William Killerud
+ * 
+ */
+public class PointCloudBenchmark
+{
+	private static final int[] SIZES = { 10, 100, 1000 };
+	private static final float MIN_SCORE = 1.0f;
+	private static final float MIN_CLOUD_SCORE = PointCloudRecognizer.DEFAULT_MIN_SCORE;
+
+	private static final int SINGLE = 0;
+	private static final int IN_ORDER = 1;
+	private static final int SCRAMBLED = 2;
+	private static final int TWO_FINGERS = 3;
+	private static final String[] WAYS = { "Single stroke", "In order",
+			"Any order", "Two fingers" };
+
+	public static void main(String[] args)
+	{
+		int tests = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+
+		/* Once to warm up the JIT, and once for real */
+		run(tests / 10, false);
+		run(tests, true);
+	}
+
+	private static void run(int tests, boolean print)
+	{
+		for (int size : SIZES)
+		{
+			if (print)
+			{
+				System.out.printf("%d templates%n", size);
+			}
+			for (int way = SINGLE; way <= TWO_FINGERS; way++)
+			{
+				/* Two fingers draw the same gestures as the orders do */
+				GestureSynth synth = new GestureSynth(size * 4
+						+ Math.min(way, IN_ORDER));
+				float[][][] shapes = new float[size * 2][][];
+				for (int kind = 0; kind < shapes.length; kind++)
+				{
+					shapes[kind] = way == SINGLE ? new float[][] { synth
+							.shape() } : synth.multiShape(2 + kind % 2);
+				}
+
+				GestureRecognizer single = new GestureRecognizer(size);
+				PointCloudRecognizer cloud = new PointCloudRecognizer(size);
+				StrokeBuffer buffer = new StrokeBuffer();
+				for (int kind = 0; kind < size; kind++)
+				{
+					float[][] template = synth.draw(shapes[kind]);
+					float[] joined = join(template);
+					single.addTemplate("kind " + kind, joined,
+							joined.length / 2);
+					fill(buffer, template, false);
+					cloud.addTemplate("kind " + kind, buffer);
+				}
+
+				/*
+				 * Drawn up front, so only the recognizing is timed. Every
+				 * other one is a kind with no template.
+				 */
+				int[] kinds = new int[tests];
+				float[][][] drawn = new float[tests][][];
+				for (int i = 0; i < tests; i++)
+				{
+					kinds[i] = synth.nextKind(size) + (i % 2) * size;
+					drawn[i] = synth.draw(shapes[kinds[i]]);
+					if (way >= SCRAMBLED)
+					{
+						drawn[i] = synth.scramble(drawn[i]);
+					}
+				}
+
+				Result protractor = single(single, kinds, drawn, size);
+				cloud.setByStrokes(false);
+				Result unordered = cloud(cloud, kinds, drawn, size,
+						way == TWO_FINGERS, true);
+				cloud.setByStrokes(true);
+				Result pooled = cloud(cloud, kinds, drawn, size,
+						way == TWO_FINGERS, true);
+				Result allocating = cloud(cloud, kinds, drawn, size,
+						way == TWO_FINGERS, false);
+				if (print)
+				{
+					System.out.printf("  %s%n", WAYS[way]);
+					protractor.report("Protractor", MIN_SCORE);
+					unordered.report("$P", MIN_CLOUD_SCORE);
+					pooled.report("$P by strokes", MIN_CLOUD_SCORE);
+					System.out.printf("    %-14s %6.1f bytes per gesture "
+							+ "pooled, %6.1f with a new buffer each%n", "",
+							pooled.bytes, allocating.bytes);
+				}
+			}
+		}
+	}
+
+	private static Result single(GestureRecognizer recognizer, int[] kinds,
+			float[][][] drawn, int size)
+	{
+		Result result = new Result(drawn.length);
+		for (int i = 0; i < drawn.length; i++)
+		{
+			float[] joined = join(drawn[i]);
+			long start = System.nanoTime();
+			int template = recognizer.recognize(joined, joined.length / 2);
+			result.nanos[i] = System.nanoTime() - start;
+			result.add(kinds[i], size, template, recognizer.getScore(),
+					MIN_SCORE, recognizer.getComparedCount(), recognizer
+							.getAbandonedCount());
+		}
+		return result;
+	}
+
+	/*
+	 * Fills a buffer with each drawing the way the app would, one touch event
+	 * at a time, and recognizes it
+	 */
+	private static Result cloud(PointCloudRecognizer recognizer, int[] kinds,
+			float[][][] drawn, int size, boolean fingers, boolean pooled)
+	{
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		Result result = new Result(drawn.length);
+		long allocated = threads.getThreadAllocatedBytes(Thread
+				.currentThread().getId());
+		for (int i = 0; i < drawn.length; i++)
+		{
+			long start = System.nanoTime();
+			StrokeBuffer buffer = pooled ? StrokeBuffer.obtain()
+					: new StrokeBuffer();
+			fill(buffer, drawn[i], fingers);
+			int template = recognizer.recognize(buffer);
+			if (pooled)
+			{
+				buffer.recycle();
+			}
+			result.nanos[i] = System.nanoTime() - start;
+			result.add(kinds[i], size, template, recognizer.getScore(),
+					MIN_CLOUD_SCORE, recognizer.getComparedCount(),
+					recognizer.getAbandonedCount());
+		}
+		result.bytes = (threads.getThreadAllocatedBytes(Thread
+				.currentThread().getId()) - allocated)
+				/ (double) drawn.length;
+		return result;
+	}
+
+	/*
+	 * Puts the strokes in the buffer one after the other, or if two fingers
+	 * draw them, two at a time, a point of each in turn
+	 */
+	private static void fill(StrokeBuffer buffer, float[][] strokes,
+			boolean fingers)
+	{
+		buffer.clear();
+		int step = fingers ? 2 : 1;
+		for (int first = 0; first < strokes.length; first += step)
+		{
+			int together = Math.min(step, strokes.length - first);
+			int stroke = buffer.newStroke();
+			if (together == 2)
+			{
+				buffer.newStroke();
+			}
+			int longest = 0;
+			for (int finger = 0; finger < together; finger++)
+			{
+				longest = Math.max(longest, strokes[first + finger].length);
+			}
+			for (int i = 0; i < longest; i += 2)
+			{
+				for (int finger = 0; finger < together; finger++)
+				{
+					float[] points = strokes[first + finger];
+					if (i < points.length)
+					{
+						buffer.add(stroke + finger, points[i], points[i + 1]);
+					}
+				}
+			}
+		}
+	}
+
+	/* The strokes end to end, as if the finger never lifted */
+	private static float[] join(float[][] strokes)
+	{
+		int length = 0;
+		for (float[] stroke : strokes)
+		{
+			length += stroke.length;
+		}
+		float[] joined = new float[length];
+		int at = 0;
+		for (float[] stroke : strokes)
+		{
+			System.arraycopy(stroke, 0, joined, at, stroke.length);
+			at += stroke.length;
+		}
+		return joined;
+	}
+
+	/**
+	 * How a recognizer did with a set of drawings.
+	 * 
+	 * @author William Killerud
+	 * 
+	 */
+	private static class Result
+	{
+		final long[] nanos;
+		int known;
+		int correct;
+		int accepted;
+		int falselyAccepted;
+		long compared;
+		long abandoned;
+		double bytes;
+
+		Result(int tests)
+		{
+			nanos = new long[tests];
+		}
+
+		void add(int kind, int size, int template, float score,
+				float minScore, int compared, int abandoned)
+		{
+			this.compared += compared;
+			this.abandoned += abandoned;
+			if (kind >= size)
+			{
+				falselyAccepted += score > minScore ? 1 : 0;
+				return;
+			}
+			known++;
+			if (template == kind)
+			{
+				correct++;
+				accepted += score > minScore ? 1 : 0;
+			}
+		}
+
+		void report(String name, float minScore)
+		{
+			int tests = nanos.length;
+			Arrays.sort(nanos);
+			System.out.printf("    %-14s %7.1f us median, %7.1f us 99th, "
+					+ "%5.1f%% right, %5.1f%% over %.1f, %5.1f%% unknown "
+					+ "over, %6.1f compared, %6.1f abandoned%n", name,
+					nanos[tests / 2] / 1e3, nanos[tests * 99 / 100] / 1e3,
+					correct * 100.0 / known, accepted * 100.0 / known,
+					minScore, falselyAccepted * 100.0 / (tests - known),
+					compared / (double) tests, abandoned / (double) tests);
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package hiof.enigma.android.gestures;
+
+import java.util.Arrays;
+
+/**
+ * Times the recognizer against libraries of 10, 100 and 1000 templates, one
+ * drawing of each kind of gesture, with a test set of other drawings of the
+ * same kinds. The test set tells how often the best match is the right one,
+ * and how often it scores over the threshold the demo uses.
+ * 
+ * Each library is searched three ways: comparing every template all the way,
+ * the way the recognizer did before it had an index, then giving up on
+ * comparisons that can't win, and then also skipping the templates whose
+ * features are too far off.
+ * 
+ * java hiof.enigma.android.gestures.RecognizerBenchmark [tests per size]
+ * 
+ * @author William Killerud
+ * 
+ */
+public class RecognizerBenchmark
+{
+	private static final int[] SIZES = { 10, 100, 1000 };
+	private static final float MIN_SCORE = 1.0f;
+
+	public static void main(String[] args)
+	{
+		int tests = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+
+		/* Once to warm up the JIT, and once for real */
+		run(tests / 10, false);
+		run(tests, true);
+	}
+
+	private static void run(int tests, boolean print)
+	{
+		for (int size : SIZES)
+		{
+			GestureSynth synth = new GestureSynth(size);
+			float[][] shapes = synth.shapes(size);
+
+			long start = System.nanoTime();
+			GestureRecognizer recognizer = new GestureRecognizer(size);
+			float[] all = new float[size * GestureRecognizer.VECTOR];
+			for (int kind = 0; kind < size; kind++)
+			{
+				float[] template = synth.draw(shapes[kind]);
+				recognizer.addTemplate("kind " + kind, template,
+						template.length / 2);
+				GestureRecognizer.preprocess(template, template.length / 2,
+						all, kind * GestureRecognizer.VECTOR);
+			}
+			long loaded = System.nanoTime() - start;
+
+			/* Drawn up front, so only the recognizing is timed */
+			int[] kinds = new int[tests];
+			float[][] drawn = new float[tests][];
+			for (int i = 0; i < tests; i++)
+			{
+				kinds[i] = synth.nextKind(size);
+				drawn[i] = synth.draw(shapes[kinds[i]]);
+			}
+
+			if (print)
+			{
+				System.out.printf("%d templates, loaded in %.2f ms%n", size,
+						loaded / 1e6);
+			}
+			exhaustive(all, size, kinds, drawn, print);
+			recognizer.setMaxFeatureDistance(Float.POSITIVE_INFINITY);
+			indexed("Early abandon", recognizer, kinds, drawn, print);
+			recognizer
+					.setMaxFeatureDistance(GestureRecognizer.DEFAULT_MAX_FEATURE_DISTANCE);
+			indexed("Indexed", recognizer, kinds, drawn, print);
+		}
+	}
+
+	/* Every template compared all the way, best kept */
+	private static void exhaustive(float[] all, int size, int[] kinds,
+			float[][] drawn, boolean print)
+	{
+		float[] input = new float[GestureRecognizer.VECTOR];
+		long[] nanos = new long[drawn.length];
+		int correct = 0;
+		for (int i = 0; i < drawn.length; i++)
+		{
+			long start = System.nanoTime();
+			GestureRecognizer.preprocess(drawn[i], drawn[i].length / 2, input,
+					0);
+			int best = -1;
+			float bestCosine = -2;
+			for (int template = 0; template < size; template++)
+			{
+				float cosine = GestureRecognizer.cosine(input, all, template
+						* GestureRecognizer.VECTOR);
+				if (cosine > bestCosine)
+				{
+					bestCosine = cosine;
+					best = template;
+				}
+			}
+			nanos[i] = System.nanoTime() - start;
+			correct += best == kinds[i] ? 1 : 0;
+		}
+		if (print)
+		{
+			report("Exhaustive", nanos, correct, correct, size, 0);
+		}
+	}
+
+	private static void indexed(String name, GestureRecognizer recognizer,
+			int[] kinds, float[][] drawn, boolean print)
+	{
+		long[] nanos = new long[drawn.length];
+		int correct = 0;
+		int accepted = 0;
+		long compared = 0;
+		long abandoned = 0;
+		for (int i = 0; i < drawn.length; i++)
+		{
+			long start = System.nanoTime();
+			int template = recognizer.recognize(drawn[i], drawn[i].length / 2);
+			nanos[i] = System.nanoTime() - start;
+			compared += recognizer.getComparedCount();
+			abandoned += recognizer.getAbandonedCount();
+			if (template == kinds[i])
+			{
+				correct++;
+				accepted += recognizer.getScore() > MIN_SCORE ? 1 : 0;
+			}
+		}
+		if (print)
+		{
+			report(name, nanos, correct, accepted, compared
+					/ (double) drawn.length, abandoned
+					/ (double) drawn.length);
+		}
+	}
+
+	private static void report(String name, long[] nanos, int correct,
+			int accepted, double compared, double abandoned)
+	{
+		int tests = nanos.length;
+		Arrays.sort(nanos);
+		System.out.printf("  %-14s %6.1f us median, %6.1f us 99th, "
+				+ "%5.1f%% right, %5.1f%% over %.1f, %6.1f compared, "
+				+ "%6.1f abandoned%n", name, nanos[tests / 2] / 1e3,
+				nanos[tests * 99 / 100] / 1e3, correct * 100.0 / tests,
+				accepted * 100.0 / tests, MIN_SCORE, compared, abandoned);
+	}
+}
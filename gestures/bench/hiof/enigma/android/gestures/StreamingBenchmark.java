@@ -0,0 +1,114 @@
+package hiof.enigma.android.gestures;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * Feeds drawings to the streaming recognizer point by point, like the touch
+ * events of a finger, and finds how often it commits before the finger
+ * lifts, how far before, and how often it is right when it does. Each point
+ * is timed, and the bytes allocated over all of them counted.
+ * 
+ * Touch events are taken to come every 16 ms, as they do on most phones, to
+ * turn the points left when committing into time saved.
+ * 
+ * java hiof.enigma.android.gestures.StreamingBenchmark [tests per size]
+ * 
+ * @author William Killerud
+ * 
+ */
+public class StreamingBenchmark
+{
+	private static final int[] SIZES = { 10, 100, 1000 };
+	private static final float MIN_SCORE = 1.0f;
+	private static final double MILLIS_PER_POINT = 16;
+
+	public static void main(String[] args)
+	{
+		int tests = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+
+		/* Once to warm up the JIT, and once for real */
+		run(tests / 10, false);
+		run(tests, true);
+	}
+
+	private static void run(int tests, boolean print)
+	{
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		for (int size : SIZES)
+		{
+			GestureSynth synth = new GestureSynth(size);
+			float[][] shapes = synth.shapes(size);
+			GestureRecognizer recognizer = new GestureRecognizer(size);
+			for (int kind = 0; kind < size; kind++)
+			{
+				float[] template = synth.draw(shapes[kind]);
+				recognizer.addTemplate("kind " + kind, template,
+						template.length / 2);
+			}
+			StreamingRecognizer streaming = new StreamingRecognizer(
+					recognizer);
+
+			int[] kinds = new int[tests];
+			float[][] drawn = new float[tests][];
+			int points = 0;
+			for (int i = 0; i < tests; i++)
+			{
+				kinds[i] = synth.nextKind(size);
+				drawn[i] = synth.draw(shapes[kinds[i]]);
+				points += drawn[i].length / 2;
+			}
+
+			long[] nanos = new long[points];
+			int timed = 0;
+			int early = 0;
+			int earlyRight = 0;
+			int right = 0;
+			long pointsSaved = 0;
+			long allocated = threads.getThreadAllocatedBytes(Thread
+					.currentThread().getId());
+			for (int i = 0; i < tests; i++)
+			{
+				float[] stroke = drawn[i];
+				int count = stroke.length / 2;
+				streaming.begin();
+				for (int point = 0; point < count; point++)
+				{
+					long start = System.nanoTime();
+					streaming.add(stroke[point * 2], stroke[point * 2 + 1]);
+					nanos[timed++] = System.nanoTime() - start;
+				}
+				int template = streaming.end();
+				boolean correct = template == kinds[i]
+						&& streaming.getScore() > MIN_SCORE;
+				right += correct ? 1 : 0;
+				if (streaming.isCommitted())
+				{
+					early++;
+					earlyRight += correct ? 1 : 0;
+					pointsSaved += count - streaming.getCommittedAt();
+				}
+			}
+			allocated = threads.getThreadAllocatedBytes(Thread.currentThread()
+					.getId())
+					- allocated;
+
+			if (print)
+			{
+				Arrays.sort(nanos, 0, timed);
+				System.out.printf("%4d templates: %.1f us median per point, "
+						+ "%.1f us 99th, %.1f us worst, %.2f bytes per point%n",
+						size, nanos[timed / 2] / 1e3,
+						nanos[timed * 99 / 100] / 1e3, nanos[timed - 1] / 1e3,
+						allocated / (double) timed);
+				System.out.printf("      %.1f%% committed early, %.1f%% of "
+						+ "those right, %.0f ms before the finger lifted; "
+						+ "%.1f%% right in all%n", early * 100.0 / tests,
+						earlyRight * 100.0 / Math.max(1, early), pointsSaved
+								* MILLIS_PER_POINT / Math.max(1, early),
+						right * 100.0 / tests);
+			}
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package hiof.enigma.android.gestures;
+
+import java.io.File;
+
+/**
+ * Makes a template file from a gesture library, preprocessing every gesture
+ * the way the app would have to when it starts. Run it whenever the library
+ * changes, or the recognizer preprocesses differently, since the app only
+ * falls back to the library when the template file won't load:
+ * 
+ * java hiof.enigma.android.gestures.TemplateCompiler res/raw/gestures
+ * res/raw/templates
+ * 
+ * @author William Killerud
+ * 
+ */
+public class TemplateCompiler
+{
+	public static void main(String[] args) throws Exception
+	{
+		if (args.length != 2)
+		{
+			System.err.println("Usage: TemplateCompiler <gesture library> "
+					+ "<template file>");
+			System.exit(1);
+		}
+
+		GestureCorpus library = GestureCorpus.read(args[0]);
+		GestureRecognizer recognizer = new GestureRecognizer(library
+				.getCount());
+		int added = 0;
+		for (int i = 0; i < library.getCount(); i++)
+		{
+			float[] stroke = library.getStroke(i);
+			if (recognizer.addTemplate(library.getName(i), stroke,
+					stroke.length / 2) >= 0)
+			{
+				added++;
+			}
+		}
+		TemplateFile.write(recognizer, new File(args[1]));
+		System.out.printf("%d templates written to %s, %d gestures too "
+				+ "short and %d of more than one stroke left out%n", added,
+				args[1], library.getCount() - added, library
+						.getSkippedCount());
+	}
+}
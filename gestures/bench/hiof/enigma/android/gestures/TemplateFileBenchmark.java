@@ -0,0 +1,118 @@
+package hiof.enigma.android.gestures;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Times loading libraries of 100 up to 100000 templates, the way the app did
+ * before there were template files, reading a gesture library and
+ * preprocessing every gesture, against mapping a template file of the same
+ * templates. Both are loaded a few times and the fastest kept, as the first
+ * load also warms up the JIT and the disk cache. Template files that are
+ * broken are loaded as well, to check that they fail.
+ * 
+ * java hiof.enigma.android.gestures.TemplateFileBenchmark [directory]
+ * 
+ * @author William Killerud
+ * 
+ */
+public class TemplateFileBenchmark
+{
+	private static final int[] SIZES = { 100, 1000, 10000, 100000 };
+	private static final int RUNS = 5;
+
+	public static void main(String[] args) throws Exception
+	{
+		File directory = new File(args.length > 0 ? args[0] : System
+				.getProperty("java.io.tmpdir"));
+		File libraryFile = new File(directory, "bench-gestures");
+		File templateFile = new File(directory, "bench-templates");
+
+		for (int size : SIZES)
+		{
+			GestureCorpus library = GestureCorpus.synthesize(size, size, 0)[0];
+			library.write(libraryFile.getPath());
+
+			long parsed = Long.MAX_VALUE;
+			GestureRecognizer recognizer = null;
+			for (int run = 0; run < RUNS; run++)
+			{
+				long start = System.nanoTime();
+				GestureCorpus read = GestureCorpus.read(libraryFile.getPath());
+				recognizer = new GestureRecognizer(read.getCount());
+				for (int i = 0; i < read.getCount(); i++)
+				{
+					float[] stroke = read.getStroke(i);
+					recognizer.addTemplate(read.getName(i), stroke,
+							stroke.length / 2);
+				}
+				parsed = Math.min(parsed, System.nanoTime() - start);
+			}
+
+			TemplateFile.write(recognizer, templateFile);
+			long mapped = Long.MAX_VALUE;
+			GestureRecognizer loaded = null;
+			for (int run = 0; run < RUNS; run++)
+			{
+				long start = System.nanoTime();
+				loaded = TemplateFile.map(templateFile);
+				mapped = Math.min(mapped, System.nanoTime() - start);
+			}
+
+			/* The same templates, so the same matches */
+			float[] test = new GestureSynth(-size).draw(new GestureSynth(
+					size).shape());
+			int expected = recognizer.recognize(test, test.length / 2);
+			boolean same = loaded.getCount() == recognizer.getCount()
+					&& loaded.recognize(test, test.length / 2) == expected
+					&& loaded.getScore() == recognizer.getScore();
+
+			System.out.printf("%6d templates: library of %7.1f kB in "
+					+ "%8.2f ms, template file of %7.1f kB in %6.2f ms, "
+					+ "%5.1f times faster%s%n", size,
+					libraryFile.length() / 1024.0, parsed / 1e6, templateFile
+							.length() / 1024.0, mapped / 1e6, parsed
+							/ (double) mapped, same ? ""
+							: ", BUT IT RECOGNIZES DIFFERENTLY");
+		}
+
+		broken(templateFile);
+		libraryFile.delete();
+		templateFile.delete();
+	}
+
+	/* Flips a byte in the middle of the file and cuts it short */
+	private static void broken(File file) throws Exception
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try
+		{
+			long middle = raf.length() / 2;
+			raf.seek(middle);
+			int b = raf.read();
+			raf.seek(middle);
+			raf.write(b ^ 0xff);
+			fails("A flipped byte", file);
+			raf.seek(middle);
+			raf.write(b);
+			raf.setLength(raf.length() - 1);
+			fails("A missing byte", file);
+		} finally
+		{
+			raf.close();
+		}
+	}
+
+	private static void fails(String what, File file)
+	{
+		try
+		{
+			TemplateFile.map(file);
+			System.out.println(what + " was loaded anyway");
+		} catch (IOException e)
+		{
+			System.out.println(what + " fails with: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package hiof.enigma.android.gestures;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Teaches libraries of 100, 1000 and 10000 templates new gestures, the way
+ * the demo does, while another thread recognizes gestures with whatever the
+ * latest templates are, like the UI thread would. It tells how long a
+ * gesture takes to learn, written to the store and all, against making the
+ * streaming recognizer over from every template, and how long recognizing
+ * takes while training goes on against while it doesn't. Then it loads the
+ * store again, to check that it has every template taught, and compacts it.
+ * 
+ * java hiof.enigma.android.gestures.TrainingBenchmark [gestures taught]
+ * 
+ * @author William Killerud
+ * 
+ */
+public class TrainingBenchmark
+{
+	private static final int[] SIZES = { 100, 1000, 10000 };
+
+	public static void main(String[] args) throws Exception
+	{
+		int taught = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		File directory = new File(System.getProperty("java.io.tmpdir"),
+				"training-bench");
+		directory.mkdirs();
+
+		for (int size : SIZES)
+		{
+			for (File file : directory.listFiles())
+			{
+				file.delete();
+			}
+			GestureSynth synth = new GestureSynth(size);
+			float[][] shapes = synth.shapes(size + taught);
+			GestureRecognizer recognizer = new GestureRecognizer(size);
+			for (int kind = 0; kind < size; kind++)
+			{
+				float[] template = synth.draw(shapes[kind]);
+				recognizer.addTemplate("kind " + kind, template,
+						template.length / 2);
+			}
+			final float[][] drawn = new float[1000][];
+			for (int i = 0; i < drawn.length; i++)
+			{
+				drawn[i] = synth.draw(shapes[synth.nextKind(size)]);
+			}
+
+			/* Making it over from every template, which training avoids */
+			long start = System.nanoTime();
+			StreamingRecognizer streaming = new StreamingRecognizer(recognizer);
+			long rebuilt = System.nanoTime() - start;
+
+			TemplateStore store = new TemplateStore(directory);
+			store.replay(recognizer);
+			final CountDownLatch done = new CountDownLatch(taught);
+			final GestureTrainer trainer = new GestureTrainer(streaming,
+					store, new GestureTrainer.Listener()
+					{
+						public void onTrained(String name, boolean changed)
+						{
+							done.countDown();
+						}
+
+						public void onStoreFailed(IOException e)
+						{
+							throw new RuntimeException(e);
+						}
+					});
+
+			long[] idle = recognize(trainer, drawn, 5000, null);
+			start = System.nanoTime();
+			for (int i = 0; i < taught; i++)
+			{
+				float[] gesture = synth.draw(shapes[size + i]);
+				trainer.add("taught " + i, gesture, gesture.length / 2);
+			}
+			long[] training = recognize(trainer, drawn, Integer.MAX_VALUE,
+					done);
+			long learned = System.nanoTime() - start;
+			trainer.shutdown();
+
+			/* What the store has should be what the trainer has */
+			TemplateStore reopened = new TemplateStore(directory);
+			start = System.nanoTime();
+			GestureRecognizer loaded = reopened.loadTemplateFile();
+			if (loaded == null)
+			{
+				loaded = recognizer;
+			}
+			reopened.replay(loaded);
+			long replayed = System.nanoTime() - start;
+			int expected = trainer.getCurrent().getRecognizer().getCount();
+			start = System.nanoTime();
+			reopened.compact(loaded);
+			long compacted = System.nanoTime() - start;
+			reopened.close();
+
+			System.out.printf("%5d templates: %.2f ms to learn a gesture, "
+					+ "%.1f ms to make it all over%n", size, learned / 1e6
+					/ taught, rebuilt / 1e6);
+			System.out.printf("      recognizing %.1f us median, %.1f us 99th "
+					+ "while idle, %.1f us median, %.1f us 99th while "
+					+ "learning (%d gestures)%n", idle[idle.length / 2] / 1e3,
+					idle[idle.length * 99 / 100] / 1e3,
+					training[training.length / 2] / 1e3,
+					training[training.length * 99 / 100] / 1e3,
+					training.length);
+			System.out.printf("      %d of %d templates loaded again in %.1f "
+					+ "ms, compacted in %.1f ms%n", loaded.getCount(),
+					expected, replayed / 1e6, compacted / 1e6);
+		}
+	}
+
+	/*
+	 * Recognizes the gestures over and over with the latest templates, each
+	 * with the streaming recognizer that was latest when it started, until
+	 * the given number are done or training is
+	 */
+	private static long[] recognize(GestureTrainer trainer, float[][] drawn,
+			int count, CountDownLatch until)
+	{
+		long[] nanos = new long[1024];
+		int done = 0;
+		while (done < count && (until == null || until.getCount() > 0))
+		{
+			StreamingRecognizer streaming = trainer.getCurrent();
+			float[] gesture = drawn[done % drawn.length];
+			long start = System.nanoTime();
+			streaming.begin();
+			for (int point = 0; point < gesture.length / 2; point++)
+			{
+				streaming.add(gesture[point * 2], gesture[point * 2 + 1]);
+			}
+			streaming.end();
+			if (done == nanos.length)
+			{
+				nanos = Arrays.copyOf(nanos, done * 2);
+			}
+			nanos[done++] = System.nanoTime() - start;
+		}
+		nanos = Arrays.copyOf(nanos, Math.max(1, done));
+		Arrays.sort(nanos);
+		return nanos;
+	}
+}
@@ -0,0 +1,49 @@
+package hiof.enigma.android.gestures;
+
+import java.lang.reflect.Array;
+
+/**
+ * Copies of arrays at another length, cut short or padded with zeros and
+ * nulls, the way Arrays.copyOf makes them. Arrays.copyOf is API 9, and the
+ * app runs on 8, so the arrays that grow as templates and strokes are added
+ * grow through here.
+ *
+ * @author William Killerud
+ *
+ */
+final class ArrayCopies
+{
+	private ArrayCopies()
+	{
+	}
+
+	static float[] copyOf(float[] array, int length)
+	{
+		float[] copy = new float[length];
+		System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+		return copy;
+	}
+
+	static int[] copyOf(int[] array, int length)
+	{
+		int[] copy = new int[length];
+		System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+		return copy;
+	}
+
+	static long[] copyOf(long[] array, int length)
+	{
+		long[] copy = new long[length];
+		System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+		return copy;
+	}
+
+	@SuppressWarnings("unchecked")
+	static <T> T[] copyOf(T[] array, int length)
+	{
+		T[] copy = (T[]) Array.newInstance(array.getClass()
+				.getComponentType(), length);
+		System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+		return copy;
+	}
+}
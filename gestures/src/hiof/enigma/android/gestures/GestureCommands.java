@@ -0,0 +1,227 @@
+package hiof.enigma.android.gestures;
+
+import android.app.Activity;
+import android.util.Log;
+
+/**
+ * What to do for each gesture. A command is registered for the name a
+ * gesture was given in the Gesture Tool, and bound to the templates of a
+ * recognizer, and of the point cloud recognizer, once, so acting on a
+ * gesture is looking up the template the recognizer found in an array,
+ * with no names compared. Templates of names
+ * with no command get the default command, if there is one.
+ * 
+ * For each command, it counts how often it was run, and how long it took
+ * from the touch event the gesture was recognized at to the command being
+ * done. That is the latency the user sees, recognizing included.
+ * 
+ * Commands are given the activity to act on when they are run, rather than
+ * holding on to one, so the commands can outlive it. All of it is meant to
+ * be used from the UI thread.
+ * 
+ * @author William Killerud
+ * 
+ */
+public class GestureCommands
+{
+	/**
+	 * Something to do when a gesture is recognized.
+	 * 
+	 * @author William Killerud
+	 * 
+	 */
+	public interface Command
+	{
+		public void run(Activity activity, String name, float score);
+	}
+
+	private Command[] mCommands = new Command[4];
+	private String[] mNames = new String[4];
+	private int mCount;
+	private Command mDefault;
+
+	/* The index of the command for each template, or -1 for the default */
+	private int[] mByTemplate = new int[0];
+	private GestureRecognizer mBound;
+
+	/* The same for the templates of gestures of more than one stroke */
+	private int[] mByCloudTemplate = new int[0];
+	private PointCloudRecognizer mBoundClouds;
+
+	/*
+	 * Times each command was run, and the nanoseconds it took, with the
+	 * default command's first
+	 */
+	private int[] mRuns = new int[5];
+	private long[] mTotalNanos = new long[5];
+	private long[] mWorstNanos = new long[5];
+
+	/*
+	 * Registers a command for the gestures of the given name, replacing any
+	 * command it had. Takes effect for the templates at the next bind().
+	 */
+	public void register(String name, Command command)
+	{
+		for (int i = 0; i < mCount; i++)
+		{
+			if (mNames[i].equals(name))
+			{
+				mCommands[i] = command;
+				return;
+			}
+		}
+		if (mCount == mCommands.length)
+		{
+			mCommands = ArrayCopies.copyOf(mCommands, mCount * 2);
+			mNames = ArrayCopies.copyOf(mNames, mCount * 2);
+			mRuns = ArrayCopies.copyOf(mRuns, mCount * 2 + 1);
+			mTotalNanos = ArrayCopies.copyOf(mTotalNanos, mCount * 2 + 1);
+			mWorstNanos = ArrayCopies.copyOf(mWorstNanos, mCount * 2 + 1);
+		}
+		mCommands[mCount] = command;
+		mNames[mCount] = name;
+		mCount++;
+	}
+
+	/* The command for the gestures of names that have none, or null */
+	public void setDefault(Command command)
+	{
+		mDefault = command;
+	}
+
+	/*
+	 * Looks up the command for each template of the recognizer, by its name.
+	 * Must be done again when the recognizer gets templates added.
+	 */
+	public void bind(GestureRecognizer recognizer)
+	{
+		int templates = recognizer.getCount();
+		mByTemplate = new int[templates];
+		for (int template = 0; template < templates; template++)
+		{
+			String name = recognizer.getName(template);
+			mByTemplate[template] = -1;
+			for (int i = 0; i < mCount; i++)
+			{
+				if (mNames[i].equals(name))
+				{
+					mByTemplate[template] = i;
+					break;
+				}
+			}
+		}
+		mBound = recognizer;
+	}
+
+	/*
+	 * Looks up the command for each template of the point cloud recognizer.
+	 * It gets no templates added once it is loaded, so once is enough.
+	 */
+	public void bind(PointCloudRecognizer clouds)
+	{
+		int templates = clouds.getCount();
+		mByCloudTemplate = new int[templates];
+		for (int template = 0; template < templates; template++)
+		{
+			mByCloudTemplate[template] = indexOf(clouds.getName(template)) - 1;
+		}
+		mBoundClouds = clouds;
+	}
+
+	public PointCloudRecognizer getBoundClouds()
+	{
+		return mBoundClouds;
+	}
+
+	/*
+	 * Runs the command for the template recognized at the touch event of the
+	 * given System.nanoTime(). Returns false if there was no command to run.
+	 */
+	public boolean dispatch(Activity activity, int template, float score,
+			long eventNanos)
+	{
+		if (template < 0 || template >= mByTemplate.length)
+		{
+			return false;
+		}
+		return run(activity, mByTemplate[template], mBound.getName(template),
+				score, eventNanos);
+	}
+
+	/* The same, for a template of the bound point cloud recognizer */
+	public boolean dispatchCloud(Activity activity, int template, float score,
+			long eventNanos)
+	{
+		if (template < 0 || template >= mByCloudTemplate.length)
+		{
+			return false;
+		}
+		return run(activity, mByCloudTemplate[template], mBoundClouds
+				.getName(template), score, eventNanos);
+	}
+
+	private boolean run(Activity activity, int command, String name,
+			float score, long eventNanos)
+	{
+		Command run = command < 0 ? mDefault : mCommands[command];
+		if (run == null)
+		{
+			return false;
+		}
+		run.run(activity, name, score);
+
+		int stats = command + 1;
+		long nanos = System.nanoTime() - eventNanos;
+		mRuns[stats]++;
+		mTotalNanos[stats] += nanos;
+		mWorstNanos[stats] = Math.max(mWorstNanos[stats], nanos);
+		return true;
+	}
+
+	/* Times the command of the given name was run, or the default if it has none */
+	public int getRunCount(String name)
+	{
+		return mRuns[indexOf(name)];
+	}
+
+	/* The average latency of the command of the given name, in milliseconds */
+	public double getAverageMillis(String name)
+	{
+		int index = indexOf(name);
+		return mRuns[index] == 0 ? 0 : mTotalNanos[index] / 1e6
+				/ mRuns[index];
+	}
+
+	public double getWorstMillis(String name)
+	{
+		return mWorstNanos[indexOf(name)] / 1e6;
+	}
+
+	/* Logs how often every command was run, and how long it took */
+	public void logStats(String tag)
+	{
+		for (int i = 0; i <= mCount; i++)
+		{
+			if (mRuns[i] > 0)
+			{
+				Log.d(tag, String.format("%s: run %d times, %.1f ms average, "
+						+ "%.1f ms worst", i == 0 ? "default" : mNames[i - 1],
+						mRuns[i], mTotalNanos[i] / 1e6 / mRuns[i],
+						mWorstNanos[i] / 1e6));
+			}
+		}
+	}
+
+	/* Where the stats of the command of the given name are */
+	private int indexOf(String name)
+	{
+		for (int i = 0; i < mCount; i++)
+		{
+			if (mNames[i].equals(name))
+			{
+				return i + 1;
+			}
+		}
+		return 0;
+	}
+}
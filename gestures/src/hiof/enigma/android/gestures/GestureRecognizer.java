@@ -0,0 +1,695 @@
+package hiof.enigma.android.gestures;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Recognizes single-stroke gestures with the Protractor algorithm, which is
+ * what the platform GestureLibrary uses as well, but without needing Android
+ * to run. That way it can be timed, tuned and tried out on an ordinary JVM.
+ * 
+ * Every gesture, template or not, is preprocessed the same way: resampled to
+ * a fixed number of points evenly spaced along the stroke, moved so its
+ * centroid is at the origin, turned to the nearest of eight orientations and
+ * scaled to unit length. Comparing two gestures is then a dot product, and
+ * the rotation that makes them match best has a closed form.
+ * 
+ * The templates are preprocessed once, when they are added, and kept side by
+ * side in one float array. Recognizing a gesture allocates nothing, but
+ * reuses arrays of the recognizer, so a recognizer must only be used by one
+ * thread at a time.
+ * 
+ * With many templates, most of them are nothing like the gesture, and we try
+ * not to compare against those at all. Each template is indexed by a few
+ * cheap features: which directions the stroke goes in, and the aspect of its
+ * bounding box. Only templates whose features are close to the gesture's are
+ * compared: the closest one first, so there is a good match to beat early,
+ * and then the rest in the order they were added. A comparison is given up
+ * halfway once it can no longer beat the best match so far.
+ * 
+ * That makes recognizing with the index approximate. A gesture's features
+ * are now and then further from its own template's than the cutoff, and
+ * then the right template isn't compared at all. RecognizerBenchmark finds
+ * that costs one or two gestures in a thousand.
+ * 
+ * @author William Killerud
+ * 
+ */
+public class GestureRecognizer
+{
+	/* Points every gesture is resampled to */
+	public static final int POINTS = 32;
+
+	/* Floats per preprocessed gesture, an x and a y for each point */
+	public static final int VECTOR = POINTS * 2;
+
+	/*
+	 * Gestures are turned to the nearest of this many orientations, so a
+	 * gesture drawn upside down is a different gesture. The same as the
+	 * platform's ORIENTATION_SENSITIVE.
+	 */
+	private static final int ORIENTATIONS = 8;
+
+	/* The most matches recognize() can be asked for */
+	public static final int MAX_MATCHES = 8;
+
+	/*
+	 * How much further from the gesture than the closest template a
+	 * template's features may be before it isn't compared. The features of a
+	 * gesture and its own template are rarely further apart than this.
+	 */
+	public static final float DEFAULT_MAX_FEATURE_DISTANCE = 0.8f;
+
+	/* With fewer templates than this, looking at their features isn't worth it */
+	private static final int MIN_INDEXED = 32;
+
+	/*
+	 * The features are how much of the stroke goes in each of eight
+	 * directions, and the aspect of its bounding box
+	 */
+	private static final int DIRECTIONS = 8;
+	static final int FEATURES = DIRECTIONS + 1;
+	private static final float ASPECT_WEIGHT = 0.5f;
+	/* Keeps a straight line from having an aspect of infinity */
+	private static final float ASPECT_SLACK = 0.02f;
+
+	/*
+	 * A comparison checks whether it can still win this many times along the
+	 * way, at evenly spaced points
+	 */
+	static final int CHECKS = 4;
+	private static final int CHECK_POINTS = POINTS / CHECKS;
+
+	private float[] mTemplates;
+	private String[] mNames;
+	/* The features of each template, and the length of what is left of its vector at each check */
+	private float[] mFeatures;
+	private float[] mTails;
+	private int mCount;
+
+	private final float[] mInput = new float[VECTOR];
+	private final float[] mInputFeatures = new float[FEATURES];
+	private final float[] mInputTails = new float[CHECKS];
+	private float[] mFeatureDistances;
+	private float mMaxFeatureDistance = DEFAULT_MAX_FEATURE_DISTANCE;
+
+	/* The best matches of the last recognize(), best first */
+	private final int[] mMatches = new int[MAX_MATCHES];
+	private final float[] mCosines = new float[MAX_MATCHES];
+	private int mMatchCount;
+
+	/* How many templates the last recognize() compared, and gave up on */
+	private int mCompared;
+	private int mAbandoned;
+
+	/* Room for the given number of templates is allocated up front */
+	public GestureRecognizer(int capacity)
+	{
+		capacity = Math.max(1, capacity);
+		mTemplates = new float[capacity * VECTOR];
+		mNames = new String[capacity];
+		mFeatures = new float[capacity * FEATURES];
+		mTails = new float[capacity * CHECKS];
+		mFeatureDistances = new float[capacity];
+	}
+
+	/*
+	 * Adds a template, from x and y pairs like GestureStroke.points. Returns
+	 * its index, which is what recognize() returns when it is the best match,
+	 * or -1 if the stroke is too short to tell anything from.
+	 */
+	public int addTemplate(String name, float[] points, int count)
+	{
+		if (mCount == mNames.length)
+		{
+			grow(mCount * 2);
+		}
+		if (!preprocess(points, count, mTemplates, mCount * VECTOR))
+		{
+			return -1;
+		}
+		features(mTemplates, mCount * VECTOR, mFeatures, mCount * FEATURES);
+		tails(mTemplates, mCount * VECTOR, mTails, mCount * CHECKS);
+		mNames[mCount] = name;
+		return mCount++;
+	}
+
+	/*
+	 * Adds a template that is preprocessed already, the VECTOR floats at the
+	 * given offset. Returns its index.
+	 */
+	int addPreprocessed(String name, float[] vector, int offset)
+	{
+		if (mCount == mNames.length)
+		{
+			grow(mCount * 2);
+		}
+		System.arraycopy(vector, offset, mTemplates, mCount * VECTOR, VECTOR);
+		features(mTemplates, mCount * VECTOR, mFeatures, mCount * FEATURES);
+		tails(mTemplates, mCount * VECTOR, mTails, mCount * CHECKS);
+		mNames[mCount] = name;
+		return mCount++;
+	}
+
+	/*
+	 * A recognizer with the same templates as this one, and room for the
+	 * given number more. Only reads the templates of this one, so it can be
+	 * made on one thread while this one recognizes on another.
+	 */
+	GestureRecognizer copy(int extra)
+	{
+		GestureRecognizer copy = new GestureRecognizer(mCount + extra);
+		System.arraycopy(mTemplates, 0, copy.mTemplates, 0, mCount * VECTOR);
+		System.arraycopy(mFeatures, 0, copy.mFeatures, 0, mCount * FEATURES);
+		System.arraycopy(mTails, 0, copy.mTails, 0, mCount * CHECKS);
+		System.arraycopy(mNames, 0, copy.mNames, 0, mCount);
+		copy.mCount = mCount;
+		copy.mMaxFeatureDistance = mMaxFeatureDistance;
+		return copy;
+	}
+
+	/*
+	 * Removes every template of the given name, moving the ones after them
+	 * down, so they keep their order. Returns how many there were.
+	 */
+	int removeTemplates(String name)
+	{
+		int kept = 0;
+		for (int template = 0; template < mCount; template++)
+		{
+			if (mNames[template].equals(name))
+			{
+				continue;
+			}
+			if (kept != template)
+			{
+				System.arraycopy(mTemplates, template * VECTOR, mTemplates,
+						kept * VECTOR, VECTOR);
+				System.arraycopy(mFeatures, template * FEATURES, mFeatures,
+						kept * FEATURES, FEATURES);
+				System.arraycopy(mTails, template * CHECKS, mTails, kept
+						* CHECKS, CHECKS);
+				mNames[kept] = mNames[template];
+			}
+			kept++;
+		}
+		int removed = mCount - kept;
+		for (int template = kept; template < mCount; template++)
+		{
+			mNames[template] = null;
+		}
+		mCount = kept;
+		return removed;
+	}
+
+	/*
+	 * Adds a template that is the first points of a preprocessed template,
+	 * like the one at the given offset of another recognizer's getVectors().
+	 */
+	int addPrefix(String name, float[] vectors, int offset, int points)
+	{
+		System.arraycopy(vectors, offset, mInput, 0, points * 2);
+		return addTemplate(name, mInput, points);
+	}
+
+	private void grow(int capacity)
+	{
+		mTemplates = ArrayCopies.copyOf(mTemplates, capacity * VECTOR);
+		mNames = ArrayCopies.copyOf(mNames, capacity);
+		mFeatures = ArrayCopies.copyOf(mFeatures, capacity * FEATURES);
+		mTails = ArrayCopies.copyOf(mTails, capacity * CHECKS);
+		mFeatureDistances = new float[capacity];
+	}
+
+	/*
+	 * Replaces the templates with ones preprocessed before, as written by
+	 * TemplateFile: VECTOR floats of each, then FEATURES, then CHECKS tails.
+	 */
+	void setTemplates(String[] names, FloatBuffer vectors,
+			FloatBuffer features, FloatBuffer tails)
+	{
+		int capacity = Math.max(1, names.length);
+		mTemplates = new float[capacity * VECTOR];
+		mNames = new String[capacity];
+		mFeatures = new float[capacity * FEATURES];
+		mTails = new float[capacity * CHECKS];
+		mFeatureDistances = new float[capacity];
+		vectors.get(mTemplates, 0, names.length * VECTOR);
+		features.get(mFeatures, 0, names.length * FEATURES);
+		tails.get(mTails, 0, names.length * CHECKS);
+		System.arraycopy(names, 0, mNames, 0, names.length);
+		mCount = names.length;
+	}
+
+	/*
+	 * Returns the index of the template most like the stroke, or -1 if there
+	 * are no templates or the stroke is too short. How alike they are is then
+	 * given by getScore().
+	 */
+	public int recognize(float[] points, int count)
+	{
+		recognize(points, count, 1);
+		return mMatchCount == 0 ? -1 : mMatches[0];
+	}
+
+	/*
+	 * Finds the given number of templates most like the stroke, at most
+	 * MAX_MATCHES, and returns how many there were. They are then given by
+	 * getMatch() and getScore(), best first. With MIN_INDEXED templates or
+	 * more, only those close to the stroke by their features are compared,
+	 * so the best template may be missed; see setMaxFeatureDistance().
+	 */
+	public int recognize(float[] points, int count, int matches)
+	{
+		mMatchCount = 0;
+		mCompared = 0;
+		mAbandoned = 0;
+		matches = Math.min(matches, MAX_MATCHES);
+		if (mCount == 0 || !preprocess(points, count, mInput, 0))
+		{
+			return 0;
+		}
+		tails(mInput, 0, mInputTails, 0);
+		if (mCount < MIN_INDEXED)
+		{
+			for (int template = 0; template < mCount; template++)
+			{
+				compare(template, matches);
+			}
+			return mMatchCount;
+		}
+		features(mInput, 0, mInputFeatures, 0);
+
+		/* The closest template by features is compared first */
+		int closest = 0;
+		for (int template = 0; template < mCount; template++)
+		{
+			float distance = featureDistance(mInputFeatures, mFeatures,
+					template * FEATURES);
+			mFeatureDistances[template] = distance;
+			if (distance < mFeatureDistances[closest])
+			{
+				closest = template;
+			}
+		}
+		compare(closest, matches);
+
+		float furthest = mFeatureDistances[closest] + mMaxFeatureDistance;
+		for (int template = 0; template < mCount; template++)
+		{
+			if (template != closest && mFeatureDistances[template] <= furthest)
+			{
+				compare(template, matches);
+			}
+		}
+		return mMatchCount;
+	}
+
+	/*
+	 * How alike the last gesture recognized was to its best template. The
+	 * inverse of the angle between them, like the score of the platform's
+	 * predictions, so anything over 1 is a fair match.
+	 */
+	public float getScore()
+	{
+		return getScore(0);
+	}
+
+	/* The score of a match of the last recognize(), 0 being the best */
+	public float getScore(int match)
+	{
+		return match < mMatchCount ? score(mCosines[match]) : 0;
+	}
+
+	/* The template of a match of the last recognize(), 0 being the best */
+	public int getMatch(int match)
+	{
+		return match < mMatchCount ? mMatches[match] : -1;
+	}
+
+	/*
+	 * How much further from the gesture than the closest template, by their
+	 * features, a template may be and still be compared. Lower is faster but
+	 * may miss the right template, and infinity compares them all.
+	 */
+	public void setMaxFeatureDistance(float distance)
+	{
+		mMaxFeatureDistance = distance;
+	}
+
+	/* Templates the last recognize() started comparing */
+	public int getComparedCount()
+	{
+		return mCompared;
+	}
+
+	/* Templates the last recognize() gave up on halfway */
+	public int getAbandonedCount()
+	{
+		return mAbandoned;
+	}
+
+	/*
+	 * The preprocessed templates, VECTOR floats each. Replaced by a bigger
+	 * array when templates are added beyond the capacity.
+	 */
+	float[] getVectors()
+	{
+		return mTemplates;
+	}
+
+	/* The features of the templates, FEATURES floats each */
+	float[] getFeatures()
+	{
+		return mFeatures;
+	}
+
+	/* The tails of the templates, CHECKS floats each */
+	float[] getTails()
+	{
+		return mTails;
+	}
+
+	public String getName(int template)
+	{
+		return mNames[template];
+	}
+
+	public int getCount()
+	{
+		return mCount;
+	}
+
+	/*
+	 * Preprocesses a stroke of x and y pairs into VECTOR floats at the given
+	 * offset. Returns false if the stroke has no length.
+	 */
+	public static boolean preprocess(float[] points, int count, float[] out,
+			int offset)
+	{
+		if (count < 2 || !resample(points, count, out, offset))
+		{
+			return false;
+		}
+
+		/* Centroid to the origin */
+		float cx = 0;
+		float cy = 0;
+		for (int i = offset; i < offset + VECTOR; i += 2)
+		{
+			cx += out[i];
+			cy += out[i + 1];
+		}
+		cx /= POINTS;
+		cy /= POINTS;
+
+		/*
+		 * Turn so the first point is at the nearest of the base orientations,
+		 * seen from the centroid
+		 */
+		float first = (float) Math.atan2(out[offset + 1] - cy, out[offset]
+				- cx);
+		float step = (float) (2 * Math.PI / ORIENTATIONS);
+		float turn = Math.round(first / step) * step - first;
+		float cos = (float) Math.cos(turn);
+		float sin = (float) Math.sin(turn);
+
+		float magnitude = 0;
+		for (int i = offset; i < offset + VECTOR; i += 2)
+		{
+			float x = out[i] - cx;
+			float y = out[i + 1] - cy;
+			out[i] = x * cos - y * sin;
+			out[i + 1] = x * sin + y * cos;
+			magnitude += out[i] * out[i] + out[i + 1] * out[i + 1];
+		}
+
+		/* And unit length, which takes care of the scale */
+		magnitude = (float) Math.sqrt(magnitude);
+		for (int i = offset; i < offset + VECTOR; i++)
+		{
+			out[i] /= magnitude;
+		}
+		return true;
+	}
+
+	/*
+	 * Compares the gesture to a template, and adds the template to the
+	 * matches if it is among the best. Gives up as soon as the template can't
+	 * beat the worst of the matches, once we have as many as were asked for.
+	 */
+	private void compare(int template, int matches)
+	{
+		mCompared++;
+		float[] templates = mTemplates;
+		float[] gesture = mInput;
+		int offset = template * VECTOR;
+		float worst = mMatchCount < matches ? -2 : mCosines[mMatchCount - 1];
+
+		float a = 0;
+		float b = 0;
+		for (int check = 0; check < CHECKS; check++)
+		{
+			/*
+			 * However the rest of the points go, they can't add more to the
+			 * length of (a, b) than the product of their lengths, and the
+			 * cosine can't be more than the length of (a, b).
+			 */
+			if (check > 0)
+			{
+				float left = mTails[template * CHECKS + check]
+						* mInputTails[check];
+				if ((float) Math.sqrt(a * a + b * b) + left <= worst)
+				{
+					mAbandoned++;
+					return;
+				}
+			}
+			int end = (check + 1) * CHECK_POINTS * 2;
+			for (int i = check * CHECK_POINTS * 2; i < end; i += 2)
+			{
+				float tx = templates[offset + i];
+				float ty = templates[offset + i + 1];
+				a += tx * gesture[i] + ty * gesture[i + 1];
+				b += tx * gesture[i + 1] - ty * gesture[i];
+			}
+		}
+
+		float cosine = turned(a, b);
+		if (cosine <= worst)
+		{
+			return;
+		}
+
+		/* Into the matches, which are kept best first */
+		int at = Math.min(mMatchCount, matches - 1);
+		while (at > 0 && mCosines[at - 1] < cosine)
+		{
+			mMatches[at] = mMatches[at - 1];
+			mCosines[at] = mCosines[at - 1];
+			at--;
+		}
+		mMatches[at] = template;
+		mCosines[at] = cosine;
+		mMatchCount = Math.min(mMatchCount + 1, matches);
+	}
+
+	/*
+	 * The cosine of the angle between a preprocessed gesture and a template,
+	 * after turning the gesture as far as it takes to match the template
+	 * best, though only a little: a turn of more than half the angle between
+	 * two orientations is a different orientation.
+	 */
+	static float cosine(float[] gesture, float[] templates, int offset)
+	{
+		float a = 0;
+		float b = 0;
+		for (int i = 0; i < VECTOR; i += 2)
+		{
+			float tx = templates[offset + i];
+			float ty = templates[offset + i + 1];
+			a += tx * gesture[i] + ty * gesture[i + 1];
+			b += tx * gesture[i + 1] - ty * gesture[i];
+		}
+		return turned(a, b);
+	}
+
+	/*
+	 * Writes the features of a preprocessed gesture: how much of its length
+	 * goes in each direction, shared between the two nearest when it goes
+	 * in between, and the log of the aspect of its bounding box.
+	 */
+	static void features(float[] vector, int offset, float[] out,
+			int outOffset)
+	{
+		float left = Float.MAX_VALUE;
+		float right = -Float.MAX_VALUE;
+		float top = Float.MAX_VALUE;
+		float bottom = -Float.MAX_VALUE;
+		for (int i = 0; i < DIRECTIONS; i++)
+		{
+			out[outOffset + i] = 0;
+		}
+
+		float length = 0;
+		for (int i = offset; i < offset + VECTOR; i += 2)
+		{
+			float x = vector[i];
+			float y = vector[i + 1];
+			left = Math.min(left, x);
+			right = Math.max(right, x);
+			top = Math.min(top, y);
+			bottom = Math.max(bottom, y);
+			if (i == offset)
+			{
+				continue;
+			}
+
+			float dx = x - vector[i - 2];
+			float dy = y - vector[i - 1];
+			float d = (float) Math.sqrt(dx * dx + dy * dy);
+			float direction = diamondAngle(dx, dy) * DIRECTIONS / 4;
+			int bin = (int) direction;
+			float share = direction - bin;
+			out[outOffset + bin % DIRECTIONS] += d * (1 - share);
+			out[outOffset + (bin + 1) % DIRECTIONS] += d * share;
+			length += d;
+		}
+		for (int i = 0; i < DIRECTIONS; i++)
+		{
+			out[outOffset + i] /= length;
+		}
+		out[outOffset + DIRECTIONS] = (float) Math.log((right - left
+				+ ASPECT_SLACK)
+				/ (bottom - top + ASPECT_SLACK));
+	}
+
+	/*
+	 * An angle from 0 to 4 that grows with the real angle, but evenly only
+	 * along the sides of a diamond rather than around a circle. Good enough
+	 * to sort directions into bins, and much cheaper than atan2.
+	 */
+	private static float diamondAngle(float dx, float dy)
+	{
+		float sum = Math.abs(dx) + Math.abs(dy);
+		if (sum == 0)
+		{
+			return 0;
+		}
+		if (dy >= 0)
+		{
+			return dx >= 0 ? dy / sum : 1 - dx / sum;
+		}
+		return dx < 0 ? 2 - dy / sum : 3 + dx / sum;
+	}
+
+	static float featureDistance(float[] features, float[] others, int offset)
+	{
+		float distance = 0;
+		for (int i = 0; i < DIRECTIONS; i++)
+		{
+			distance += Math.abs(features[i] - others[offset + i]);
+		}
+		return distance + ASPECT_WEIGHT
+				* Math.abs(features[DIRECTIONS] - others[offset + DIRECTIONS]);
+	}
+
+	/*
+	 * Writes the length of what is left of a preprocessed gesture from each
+	 * check on. The first is the whole vector, which has unit length.
+	 */
+	static void tails(float[] vector, int offset, float[] out, int outOffset)
+	{
+		float left = 0;
+		for (int check = CHECKS - 1; check >= 0; check--)
+		{
+			int end = offset + (check + 1) * CHECK_POINTS * 2;
+			for (int i = offset + check * CHECK_POINTS * 2; i < end; i++)
+			{
+				left += vector[i] * vector[i];
+			}
+			out[outOffset + check] = (float) Math.sqrt(left);
+		}
+	}
+
+	/* The best cosine from the sums a and b of Protractor */
+	static float turned(float a, float b)
+	{
+		double angle = Math.atan(b / a);
+		if (Math.abs(angle) >= Math.PI / ORIENTATIONS)
+		{
+			return a;
+		}
+		return (float) (a * Math.cos(angle) + b * Math.sin(angle));
+	}
+
+	static float score(float cosine)
+	{
+		double angle = Math.acos(Math.min(1, Math.max(-1, cosine)));
+		return angle == 0 ? Float.MAX_VALUE : (float) (1 / angle);
+	}
+
+	/*
+	 * Writes POINTS points evenly spaced along the stroke, walking it segment
+	 * by segment so nothing has to be inserted into the input.
+	 */
+	private static boolean resample(float[] points, int count, float[] out,
+			int offset)
+	{
+		float length = 0;
+		for (int i = 2; i < count * 2; i += 2)
+		{
+			length += distance(points[i - 2], points[i - 1], points[i],
+					points[i + 1]);
+		}
+		if (length == 0)
+		{
+			return false;
+		}
+
+		float interval = length / (POINTS - 1);
+		float px = points[0];
+		float py = points[1];
+		out[offset] = px;
+		out[offset + 1] = py;
+		int written = 1;
+		float walked = 0;
+		for (int i = 2; i < count * 2 && written < POINTS - 1; i += 2)
+		{
+			float qx = points[i];
+			float qy = points[i + 1];
+			float d = distance(px, py, qx, qy);
+			while (d > 0 && walked + d >= interval && written < POINTS - 1)
+			{
+				float t = (interval - walked) / d;
+				px += t * (qx - px);
+				py += t * (qy - py);
+				out[offset + written * 2] = px;
+				out[offset + written * 2 + 1] = py;
+				written++;
+				walked = 0;
+				d = distance(px, py, qx, qy);
+			}
+			walked += d;
+			px = qx;
+			py = qy;
+		}
+
+		/* Rounding may leave us short, and the last point is the end anyway */
+		float lastX = points[count * 2 - 2];
+		float lastY = points[count * 2 - 1];
+		for (; written < POINTS; written++)
+		{
+			out[offset + written * 2] = lastX;
+			out[offset + written * 2 + 1] = lastY;
+		}
+		return true;
+	}
+
+	private static float distance(float x1, float y1, float x2, float y2)
+	{
+		float dx = x2 - x1;
+		float dy = y2 - y1;
+		return (float) Math.sqrt(dx * dx + dy * dy);
+	}
+}
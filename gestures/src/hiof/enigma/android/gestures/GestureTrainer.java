@@ -0,0 +1,188 @@
+package hiof.enigma.android.gestures;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Teaches the recognizer new gestures while the app uses it. Training is
+ * done on a thread of its own: the new gesture is preprocessed, added to a
+ * copy of the recognizer in use, and written to the template store. Only
+ * then is the copy handed over, so the recognizer in use is never changed
+ * while it recognizes, and recognizing never waits for training.
+ * 
+ * Adding a gesture preprocesses only that gesture; the templates already
+ * there are copied as they are. The copy is the cost of never changing a
+ * recognizer in use, and is a few arrays, however many templates there are.
+ * 
+ * The listener is told when a change is done, or could not be stored, on
+ * the training thread.
+ * 
+ * @author William Killerud
+ * 
+ */
+public class GestureTrainer
+{
+	/**
+	 * Told when a change to the templates is done.
+	 * 
+	 * @author William Killerud
+	 * 
+	 */
+	public interface Listener
+	{
+		/*
+		 * The templates of the name were changed, or weren't, if the stroke
+		 * was too short to learn anything from
+		 */
+		public void onTrained(String name, boolean changed);
+
+		/*
+		 * A change could not be written to the store. It is still made, but
+		 * will be gone when the app starts again.
+		 */
+		public void onStoreFailed(IOException e);
+	}
+
+	private final ExecutorService mTrainer = Executors
+			.newSingleThreadExecutor();
+	private final TemplateStore mStore;
+	private final Listener mListener;
+
+	/* The latest templates, replaced as a whole by each change */
+	private volatile StreamingRecognizer mCurrent;
+
+	/*
+	 * Starts from the given templates, which must be those of the store, and
+	 * the store must have replayed its log already
+	 */
+	public GestureTrainer(StreamingRecognizer current, TemplateStore store,
+			Listener listener)
+	{
+		mCurrent = current;
+		mStore = store;
+		mListener = listener;
+	}
+
+	/*
+	 * The recognizer with every change done so far. Take a new one at the
+	 * start of each gesture, and use it for the whole of it.
+	 */
+	public StreamingRecognizer getCurrent()
+	{
+		return mCurrent;
+	}
+
+	/* Adds the stroke as one more template of the name */
+	public void add(final String name, float[] points, final int count)
+	{
+		final float[] stroke = copy(points, count);
+		mTrainer.execute(new Runnable()
+		{
+			public void run()
+			{
+				learn(name, stroke, count, false);
+			}
+		});
+	}
+
+	/* Makes the stroke the only template of the name */
+	public void replace(final String name, float[] points, final int count)
+	{
+		final float[] stroke = copy(points, count);
+		mTrainer.execute(new Runnable()
+		{
+			public void run()
+			{
+				learn(name, stroke, count, true);
+			}
+		});
+	}
+
+	/* Forgets every template of the name */
+	public void remove(final String name)
+	{
+		mTrainer.execute(new Runnable()
+		{
+			public void run()
+			{
+				StreamingRecognizer next = mCurrent.withoutTemplates(name);
+				mCurrent = next;
+				try
+				{
+					mStore.remove(name);
+					compactIfNeeded(next);
+				} catch (IOException e)
+				{
+					mListener.onStoreFailed(e);
+				}
+				mListener.onTrained(name, true);
+			}
+		});
+	}
+
+	/* Finishes the changes already asked for, and closes the store */
+	public void shutdown()
+	{
+		mTrainer.execute(new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					mStore.close();
+				} catch (IOException e)
+				{
+					/* Every change was synced when it was written */
+				}
+			}
+		});
+		mTrainer.shutdown();
+	}
+
+	/* Run on the training thread */
+	private void learn(String name, float[] stroke, int count, boolean replace)
+	{
+		StreamingRecognizer current = replace ? mCurrent.withoutTemplates(name)
+				: mCurrent;
+		StreamingRecognizer next = current.withTemplate(name, stroke, count);
+		if (next == null)
+		{
+			mListener.onTrained(name, false);
+			return;
+		}
+		mCurrent = next;
+
+		GestureRecognizer recognizer = next.getRecognizer();
+		try
+		{
+			if (replace)
+			{
+				mStore.remove(name);
+			}
+			mStore.add(name, recognizer.getVectors(),
+					(recognizer.getCount() - 1) * GestureRecognizer.VECTOR);
+			compactIfNeeded(next);
+		} catch (IOException e)
+		{
+			mListener.onStoreFailed(e);
+		}
+		mListener.onTrained(name, true);
+	}
+
+	private void compactIfNeeded(StreamingRecognizer current)
+			throws IOException
+	{
+		if (mStore.shouldCompact())
+		{
+			mStore.compact(current.getRecognizer());
+		}
+	}
+
+	private static float[] copy(float[] points, int count)
+	{
+		float[] copy = new float[count * 2];
+		System.arraycopy(points, 0, copy, 0, count * 2);
+		return copy;
+	}
+}
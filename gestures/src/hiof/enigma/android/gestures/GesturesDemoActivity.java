@@ -1,19 +1,34 @@
 package hiof.enigma.android.gestures;
 
-import java.util.ArrayList;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 
 import android.app.Activity;
+import android.app.AlertDialog;
+import android.content.Context;
+import android.content.DialogInterface;
 import android.content.pm.ActivityInfo;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
 import android.gesture.Gesture;
 import android.gesture.GestureLibraries;
 import android.gesture.GestureLibrary;
 import android.gesture.GestureOverlayView;
-import android.gesture.GestureOverlayView.OnGesturePerformedListener;
-import android.gesture.Prediction;
+import android.gesture.GestureOverlayView.OnGestureListener;
+import android.gesture.GestureStroke;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
 import android.view.Display;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.MotionEvent;
 import android.view.Surface;
 import android.view.WindowManager;
+import android.widget.EditText;
 import android.widget.Toast;
 import demo.killerud.gestures.R;
 
@@ -29,7 +44,9 @@ import demo.killerud.gestures.R;
  * The file /sdcard/gestures created by either tool must be moved to the project
  * /res/raw folder. This can be done by opening the DDMS perspective
  * (Window->Open perspective->DDMS) and using the file explorer. Save the
- * gesture file to disk by pressing the floppy disk in the top-right.
+ * gesture file to disk by pressing the floppy disk in the top-right. Then
+ * run TemplateCompiler on it to make /res/raw/templates, which is what the
+ * app loads, as it is already preprocessed.
  * 
  * The gestures area, usually brought forth by a button or other command, opens
  * for simple, one-finger shapes to be drawn and recognized by the app in order
@@ -38,17 +55,68 @@ import demo.killerud.gestures.R;
  * 
  * The API opens up for recognition of specific gestures by the name given in
  * the Gesture Tool, running different blocks of code for the different
- * gestures.
+ * gestures. We register a command for each name with GestureCommands, which
+ * finds the command for the gesture recognized without comparing names.
+ * 
+ * We only use the API for loading the gestures and for drawing them. The
+ * recognizing is done by our own GestureRecognizer, which works the same way
+ * but can be run and timed without a phone. It is fed the points of the
+ * gesture as it is drawn, and often knows what it is before it is finished.
+ * 
+ * Gestures of more than one stroke, drawn one stroke after the other or
+ * with two fingers at once, are recognized by a PointCloudRecognizer
+ * instead, which doesn't care about the order or direction of the strokes.
+ * The overlay only follows one finger, so we follow every finger ourselves,
+ * with a StrokeCollector. A stroke the single-stroke recognizer doesn't
+ * recognize may be the first of more, so we wait a moment for the next
+ * before trying the strokes as a whole.
+ * 
+ * New gestures can also be taught from the menu, without the Gesture Tool.
+ * They are learned in the background by GestureTrainer, and kept in a
+ * TemplateStore in the app's files, which is loaded instead of
+ * /res/raw/templates once it has templates of its own.
  * 
  * @author William Killerud
  * 
  */
 public class GesturesDemoActivity extends Activity implements
-		OnGesturePerformedListener
+		OnGestureListener
 {
+	private static final String TAG = "GesturesDemo";
+
+	/* How alike a gesture must be to a template to count as recognized */
+	private static final float MIN_SCORE = 1.0f;
+
+	/*
+	 * The templates, preprocessed once. Kept when the activity is recreated,
+	 * as it is every time we change the orientation. The trainer has the
+	 * latest templates, and the others are those of the gesture drawn now.
+	 */
+	private static GestureTrainer sTrainer;
+	private static StreamingRecognizer sStreaming;
+	private static GestureCommands sCommands;
+
+	/* Loaded in the background, and null until then */
+	private static volatile PointCloudRecognizer sClouds;
 
-	private GestureLibrary mLibrary;
 	private Display display;
+	private GestureOverlayView mGestures;
+	private final int[] mGesturesLocation = new int[2];
+
+	/* Every finger, for gestures of more than one stroke */
+	private final StrokeCollector mStrokes = new StrokeCollector();
+	private boolean mMultiTouch;
+	private final Handler mHandler = new Handler();
+	private final Runnable mRecognizeStrokes = new Runnable()
+	{
+		public void run()
+		{
+			recognizeStrokes();
+		}
+	};
+
+	/* Whether the next gesture drawn is to be taught, not recognized */
+	private boolean mTeaching;
 
 	/** Called when the activity is first created. */
 	@Override
@@ -65,60 +133,515 @@ public class GesturesDemoActivity extends Activity implements
 				.getDefaultDisplay();
 
 		/* Get the gestures we created using the Gesture Tool */
-		mLibrary = GestureLibraries.fromRawResource(this, R.raw.gestures);
-		if (!mLibrary.load())
+		if (sTrainer == null)
 		{
-			finish(); // If we can't load the library we quit the application
+			TemplateStore store = new TemplateStore(getFilesDir());
+			GestureRecognizer recognizer = loadRecognizer(store);
+			if (recognizer == null)
+			{
+				/* There is still an app, it just won't recognize anything */
+				Toast.makeText(getApplicationContext(),
+						"Could not load the gestures, sorry!",
+						Toast.LENGTH_LONG).show();
+				return;
+			}
+			try
+			{
+				store.replay(recognizer);
+			} catch (IOException e)
+			{
+				Log.e(TAG, "Could not open the template log, so nothing "
+						+ "taught will be kept", e);
+			}
+			sStreaming = new StreamingRecognizer(recognizer);
+			sTrainer = new GestureTrainer(sStreaming, store,
+					new TrainerListener(getApplicationContext()));
+			sCommands = createCommands();
+			sCommands.bind(recognizer);
+			loadClouds(getApplicationContext());
 		}
 
 		/*
 		 * Create an object instance of a screen overlay that accepts gestures.
 		 * We defined this layout in /res/layout/main.xml
 		 */
-		GestureOverlayView gestures = (GestureOverlayView) findViewById(R.id.gestures);
-		gestures.addOnGesturePerformedListener(this);
+		mGestures = (GestureOverlayView) findViewById(R.id.gestures);
+		mGestures.addOnGestureListener(this);
+	}
+
+	/*
+	 * Every touch event of the window comes through here before the overlay
+	 * gets it, with all the fingers, which the overlay ignores but the
+	 * first of. It may even change the event, so we look at it first.
+	 */
+	@Override
+	public boolean dispatchTouchEvent(MotionEvent event)
+	{
+		if (mGestures == null || mTeaching)
+		{
+			return super.dispatchTouchEvent(event);
+		}
+
+		boolean up = false;
+		if (event.getActionMasked() != MotionEvent.ACTION_DOWN
+				|| isOnGestures(event))
+		{
+			mHandler.removeCallbacks(mRecognizeStrokes);
+			up = mStrokes.onTouchEvent(event);
+			if (event.getActionMasked() == MotionEvent.ACTION_DOWN)
+			{
+				mMultiTouch = false;
+			}
+		}
+
+		/*
+		 * A second finger means this is no single-stroke gesture, whatever
+		 * the first finger has drawn
+		 */
+		if (!mMultiTouch && mStrokes.getMostPointers() > 1)
+		{
+			mMultiTouch = true;
+			mGestures.cancelGesture();
+		}
+
+		boolean handled = super.dispatchTouchEvent(event);
+
+		/*
+		 * Unless the overlay acted on the stroke, in which case it is gone
+		 * from the collector, it may be the first of more
+		 */
+		if (up && mStrokes.isCollecting())
+		{
+			if (mMultiTouch)
+			{
+				recognizeStrokes();
+			} else
+			{
+				mHandler.postDelayed(mRecognizeStrokes,
+						StrokeCollector.STROKE_GAP_MILLIS);
+			}
+		}
+		return handled;
+	}
+
+	private boolean isOnGestures(MotionEvent event)
+	{
+		mGestures.getLocationInWindow(mGesturesLocation);
+		float x = event.getX() - mGesturesLocation[0];
+		float y = event.getY() - mGesturesLocation[1];
+		return x >= 0 && y >= 0 && x < mGestures.getWidth()
+				&& y < mGestures.getHeight();
+	}
+
+	@Override
+	public boolean onCreateOptionsMenu(Menu menu)
+	{
+		getMenuInflater().inflate(R.menu.menu, menu);
+		return sTrainer != null;
+	}
+
+	@Override
+	public boolean onOptionsItemSelected(MenuItem item)
+	{
+		switch (item.getItemId())
+		{
+		case R.id.teach:
+			mTeaching = true;
+			Toast.makeText(getApplicationContext(), R.string.teach_draw,
+					Toast.LENGTH_SHORT).show();
+			return true;
+		default:
+			return super.onOptionsItemSelected(item);
+		}
+	}
+
+	public void onGestureStarted(GestureOverlayView overlay, MotionEvent event)
+	{
+		/*
+		 * Anything taught since the last gesture is only used from the next
+		 * one on, so the templates never change halfway through a gesture
+		 */
+		StreamingRecognizer latest = sTrainer.getCurrent();
+		if (latest != sStreaming)
+		{
+			sStreaming = latest;
+			sCommands.bind(latest.getRecognizer());
+		}
+		sStreaming.begin();
+		sStreaming.add(event.getX(), event.getY());
+	}
+
+	@Override
+	protected void onDestroy()
+	{
+		super.onDestroy();
+		mHandler.removeCallbacks(mRecognizeStrokes);
+		mStrokes.cancel();
+		if (isFinishing() && sTrainer != null)
+		{
+			sCommands.logStats(TAG);
+			sTrainer.shutdown();
+			sTrainer = null;
+		}
+	}
+
+	public void onGesture(GestureOverlayView overlay, MotionEvent event)
+	{
+		if (mTeaching || sStreaming.isCommitted())
+		{
+			return;
+		}
+
+		/*
+		 * The points that came in since the last event are batched up in its
+		 * history
+		 */
+		for (int i = 0; i < event.getHistorySize(); i++)
+		{
+			sStreaming.add(event.getHistoricalX(i), event.getHistoricalY(i));
+		}
+		int template = sStreaming.add(event.getX(), event.getY());
+
+		/*
+		 * If it is already clear what the gesture is, we act on it right
+		 * away, and the rest of the stroke is not a gesture any more
+		 */
+		if (template >= 0)
+		{
+			overlay.cancelGesture();
+			recognized(template, sStreaming.getScore(), event);
+		}
 	}
 
-	public void onGesturePerformed(GestureOverlayView overlay, Gesture gesture)
+	public void onGestureEnded(GestureOverlayView overlay, MotionEvent event)
 	{
+		if (mTeaching)
+		{
+			mTeaching = false;
+			float[] points = overlay.getGesture().getStrokes().get(0).points;
+			askName(points);
+		} else if (!sStreaming.isCommitted())
+		{
+			/* Not clear while drawing, so we go by the whole of it */
+			sStreaming.add(event.getX(), event.getY());
+			recognized(sStreaming.end(), sStreaming.getScore(), event);
+		}
+	}
 
-		/* Creates an arraylist of different suggestions for recognitions */
-		ArrayList<Prediction> predictions = mLibrary.recognize(gesture);
+	public void onGestureCancelled(GestureOverlayView overlay,
+			MotionEvent event)
+	{
+		/* Only when we cancel it ourselves, and then we already acted */
+	}
 
+	private void recognized(int template, float score, MotionEvent event)
+	{
 		/*
-		 * Sometimes the API doesn't find a thing. In that case, the app skips
-		 * this block.
+		 * Sometimes the recognizer doesn't find a thing, or finds something
+		 * that isn't much like it. In that case, the app skips this block.
 		 */
-		if (predictions.size() > 0)
-		{
-			/*
-			 * Gets the first prediction and checks its score. If it's low,
-			 * skips the next block.
-			 */
-			Prediction prediction = predictions.get(0);
-			if (prediction.score > 1.0)
-			{
-
-				/*
-				 * Uses the build-in Toast class to create a small message to
-				 * the user that we recognize the gesture! :D
-				 */
-				Toast.makeText(
-						getApplicationContext(),
-						"Hey, I recognize that gesture! It's "
-								+ prediction.name + "!", Toast.LENGTH_SHORT)
-						.show();
-
-				if (prediction.name.equals("square"))
+		if (template >= 0 && score > MIN_SCORE)
+		{
+			/* So the stroke isn't tried as part of a bigger gesture as well */
+			mStrokes.cancel();
+			sCommands.dispatch(this, template, score, eventNanos(event
+					.getEventTime()));
+		}
+	}
+
+	/*
+	 * Tries the strokes collected as one gesture of many strokes, once no
+	 * more are coming. One stroke on its own was the overlay's to recognize,
+	 * and it didn't.
+	 */
+	private void recognizeStrokes()
+	{
+		long upTime = mStrokes.getLastUpTime();
+		StrokeBuffer gesture = mStrokes.take();
+		PointCloudRecognizer clouds = sClouds;
+		if (gesture == null)
+		{
+			return;
+		}
+		if (clouds != null && gesture.getStrokeCount() > 1)
+		{
+			/* The clouds are loaded after the commands are made */
+			if (clouds != sCommands.getBoundClouds())
+			{
+				sCommands.bind(clouds);
+			}
+			int template = clouds.recognize(gesture);
+			float score = clouds.getScore();
+			if (template >= 0 && score > PointCloudRecognizer.DEFAULT_MIN_SCORE)
+			{
+				/* Waiting for more strokes is part of the latency */
+				sCommands.dispatchCloud(this, template, score,
+						eventNanos(upTime));
+			}
+		}
+		gesture.recycle();
+	}
+
+	/*
+	 * When a touch event of the given SystemClock.uptimeMillis() came, by the
+	 * clock the latency is timed by
+	 */
+	private static long eventNanos(long eventTime)
+	{
+		return System.nanoTime() - (SystemClock.uptimeMillis() - eventTime)
+				* 1000000l;
+	}
+
+	/*
+	 * What each gesture does, by the name it was given in the Gesture Tool.
+	 * Kept with the recognizer, so the commands must not hold on to an
+	 * activity, but act on the one they are given.
+	 */
+	private static GestureCommands createCommands()
+	{
+		GestureCommands commands = new GestureCommands();
+		commands.register("square", new GestureCommands.Command()
+		{
+			public void run(Activity activity, String name, float score)
+			{
+				// Do stuff for this gesture
+				((GesturesDemoActivity) activity).showRecognized(name);
+			}
+		});
+		commands.register("circle", new GestureCommands.Command()
+		{
+			public void run(Activity activity, String name, float score)
+			{
+				// Do other stuff for this other gesture
+				((GesturesDemoActivity) activity).showRecognized(name);
+			}
+		});
+		commands.setDefault(new GestureCommands.Command()
+		{
+			public void run(Activity activity, String name, float score)
+			{
+				((GesturesDemoActivity) activity).showRecognized(name);
+			}
+		});
+		return commands;
+	}
+
+	private void showRecognized(String name)
+	{
+		/*
+		 * Uses the build-in Toast class to create a small message to the user
+		 * that we recognize the gesture! :D
+		 */
+		Toast.makeText(getApplicationContext(),
+				"Hey, I recognize that gesture! It's " + name + "!",
+				Toast.LENGTH_SHORT).show();
+		toggleOrientation();
+	}
+
+	/*
+	 * Asks what the gesture taught is called, and whether it is one more way
+	 * to draw that gesture or the only way
+	 */
+	private void askName(final float[] points)
+	{
+		final EditText name = new EditText(this);
+		DialogInterface.OnClickListener teach = new DialogInterface.OnClickListener()
+		{
+			public void onClick(DialogInterface dialog, int which)
+			{
+				String taught = name.getText().toString().trim();
+				if (taught.length() == 0)
+				{
+					return;
+				}
+				if (which == DialogInterface.BUTTON_POSITIVE)
 				{
-					// Do stuff for this gesture
-				} else if (prediction.name.equals("circle"))
+					sTrainer.add(taught, points, points.length / 2);
+				} else
 				{
-					// Do other stuff for this other gesture
+					sTrainer.replace(taught, points, points.length / 2);
 				}
-				toggleOrientation();
+			}
+		};
+		new AlertDialog.Builder(this).setTitle(R.string.teach_name)
+				.setView(name).setPositiveButton(R.string.teach_add, teach)
+				.setNeutralButton(R.string.teach_replace, teach)
+				.setNegativeButton(R.string.teach_cancel, null).show();
+	}
+
+	/**
+	 * Tells how teaching went. Called on the trainer's thread, and kept with
+	 * the trainer, so it holds on to the application, not an activity.
+	 * 
+	 * @author William Killerud
+	 * 
+	 */
+	private static class TrainerListener implements GestureTrainer.Listener
+	{
+		private final Context mContext;
+		private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+		public TrainerListener(Context context)
+		{
+			mContext = context;
+		}
+
+		public void onTrained(final String name, final boolean changed)
+		{
+			mHandler.post(new Runnable()
+			{
+				public void run()
+				{
+					Toast.makeText(
+							mContext,
+							changed ? mContext.getString(R.string.taught, name)
+									: mContext
+											.getString(R.string.taught_nothing),
+							Toast.LENGTH_SHORT).show();
+				}
+			});
+		}
+
+		public void onStoreFailed(IOException e)
+		{
+			Log.e(TAG, "Could not keep what was taught", e);
+		}
+	}
+
+	/*
+	 * Loads the templates taught before, or if there are none, those of the
+	 * template file, and if that fails, preprocesses them from the gesture
+	 * library instead. Returns null if nothing works.
+	 */
+	private GestureRecognizer loadRecognizer(TemplateStore store)
+	{
+		try
+		{
+			GestureRecognizer taught = store.loadTemplateFile();
+			if (taught != null)
+			{
+				return taught;
+			}
+		} catch (IOException e)
+		{
+			Log.w(TAG, "Could not load the templates taught", e);
+		}
+		try
+		{
+			return loadTemplateFile();
+		} catch (IOException e)
+		{
+			Log.w(TAG, "Could not load the template file, so using the "
+					+ "gesture library", e);
+		}
+
+		GestureLibrary library = GestureLibraries.fromRawResource(this,
+				R.raw.gestures);
+		if (!library.load())
+		{
+			Log.e(TAG, "Could not load the gesture library either");
+			return null;
+		}
+		return loadTemplates(library);
+	}
+
+	/*
+	 * Makes point clouds of every gesture of the library, on a thread of its
+	 * own, as the template file only has single strokes. The gestures of one
+	 * stroke go in as well, since a square drawn in two strokes is still a
+	 * square. Until it is done, only single strokes are recognized.
+	 */
+	private static void loadClouds(final Context context)
+	{
+		new Thread(new Runnable()
+		{
+			public void run()
+			{
+				GestureLibrary library = GestureLibraries.fromRawResource(
+						context, R.raw.gestures);
+				if (!library.load())
+				{
+					Log.w(TAG, "Could not load the gesture library, so only "
+							+ "single strokes will be recognized");
+					return;
+				}
+				PointCloudRecognizer clouds = new PointCloudRecognizer(library
+						.getGestureEntries().size());
+				StrokeBuffer buffer = StrokeBuffer.obtain();
+				for (String name : library.getGestureEntries())
+				{
+					for (Gesture gesture : library.getGestures(name))
+					{
+						buffer.clear();
+						for (GestureStroke stroke : gesture.getStrokes())
+						{
+							buffer.addStroke(stroke.points,
+									stroke.points.length / 2);
+						}
+						clouds.addTemplate(name.trim(), buffer);
+					}
+				}
+				buffer.recycle();
+				sClouds = clouds;
+			}
+		}, "PointCloudLoader").start();
+	}
+
+	/*
+	 * Maps the template file straight from the APK if it is stored
+	 * uncompressed there, or else reads it
+	 */
+	private GestureRecognizer loadTemplateFile() throws IOException
+	{
+		Resources resources = getResources();
+		AssetFileDescriptor fd;
+		try
+		{
+			fd = resources.openRawResourceFd(R.raw.templates);
+		} catch (Resources.NotFoundException e)
+		{
+			/* Which is what it throws when the file is compressed */
+			InputStream in = resources.openRawResource(R.raw.templates);
+			try
+			{
+				return TemplateFile.read(in);
+			} finally
+			{
+				in.close();
+			}
+		}
+
+		/* Closing the stream closes the descriptor as well */
+		FileInputStream in = fd.createInputStream();
+		try
+		{
+			return TemplateFile.map(in.getChannel(), fd.getStartOffset(), fd
+					.getLength());
+		} finally
+		{
+			in.close();
+		}
+	}
+
+	/*
+	 * Preprocesses every gesture of the library into a recognizer, by the
+	 * name it was given in the Gesture Tool. The tool saves the names with
+	 * any spaces typed after them, which TemplateCompiler trims as well.
+	 */
+	private static GestureRecognizer loadTemplates(GestureLibrary library)
+	{
+		GestureRecognizer recognizer = new GestureRecognizer(library
+				.getGestureEntries().size());
+		for (String name : library.getGestureEntries())
+		{
+			for (Gesture gesture : library.getGestures(name))
+			{
+				GestureStroke stroke = gesture.getStrokes().get(0);
+				recognizer.addTemplate(name.trim(), stroke.points,
+						stroke.points.length / 2);
 			}
 		}
+		return recognizer;
 	}
 
 	/**
@@ -0,0 +1,506 @@
+package hiof.enigma.android.gestures;
+
+import java.util.Arrays;
+
+/**
+ * Recognizes gestures of any number of strokes with the $P algorithm, which
+ * looks at a gesture as a cloud of points rather than a path. It does not
+ * matter which stroke was drawn first, which way each stroke went, or
+ * whether two fingers drew them at once: an X is two crossing lines however
+ * it came about. The price is that it is slower than GestureRecognizer, and
+ * a gesture drawn backwards is the same gesture, so single strokes are
+ * still best left to that.
+ * 
+ * Every gesture is resampled to a fixed number of points evenly spaced
+ * along all its strokes, as if they were one path with jumps between the
+ * strokes, scaled to fit the unit square without changing its aspect, and
+ * moved so its centroid is at the origin. Comparing two gestures is then
+ * matching each point of one to the nearest point of the other that isn't
+ * matched yet, and adding up how far apart they are, the first points
+ * weighing the most. That is done from a few points to start at, both ways,
+ * and the least of the sums is how far apart the gestures are.
+ * 
+ * A sum is given up as soon as it is over the best so far, and isn't
+ * started at all if the points of the one are too far from any of the
+ * other for it to be less, which is most of them once a close template is
+ * found. So templates with the same number
+ * of strokes as the gesture, which are likely to be the closest, are
+ * compared first. Templates with other numbers of strokes are still
+ * compared, as people draw the same thing with different numbers of strokes.
+ * 
+ * Recognizing allocates nothing, but reuses arrays of the recognizer, so a
+ * recognizer must only be used by one thread at a time.
+ * 
+ * @author William Killerud
+ * 
+ */
+public class PointCloudRecognizer
+{
+	/* Points every gesture is resampled to */
+	public static final int POINTS = 32;
+
+	/* Floats per preprocessed gesture, an x and a y for each point */
+	public static final int VECTOR = POINTS * 2;
+
+	/*
+	 * How alike a gesture should be to a template to count as recognized,
+	 * on the scale of getScore(). PointCloudBenchmark tells how it does.
+	 */
+	public static final float DEFAULT_MIN_SCORE = 10.0f;
+
+	/*
+	 * Matching starts from every STEP'th point, the square root of the
+	 * points, as in $P. Starting from every point is only a little better.
+	 */
+	private static final int STEP = (int) Math.sqrt(POINTS);
+
+	/* The sum of the weights of the points, POINTS down to 1, over POINTS */
+	private static final float WEIGHTS = (POINTS + 1) / 2f;
+
+	private float[] mTemplates;
+	private String[] mNames;
+	private int[] mStrokeCounts;
+	private int mCount;
+
+	private final float[] mInput = new float[VECTOR];
+	private final boolean[] mMatched = new boolean[POINTS];
+	private final float[] mInputNearest = new float[POINTS];
+	private final float[] mTemplateNearest = new float[POINTS];
+	private boolean mByStrokes = true;
+
+	/* The best match of the last recognize(), and how far off it was */
+	private int mMatch = -1;
+	private float mDistance;
+
+	/* How many templates the last recognize() compared, and gave up on */
+	private int mCompared;
+	private int mAbandoned;
+
+	/* Room for the given number of templates is allocated up front */
+	public PointCloudRecognizer(int capacity)
+	{
+		capacity = Math.max(1, capacity);
+		mTemplates = new float[capacity * VECTOR];
+		mNames = new String[capacity];
+		mStrokeCounts = new int[capacity];
+	}
+
+	/*
+	 * Adds a template. Returns its index, which is what recognize() returns
+	 * when it is the best match, or -1 if the gesture has no length.
+	 */
+	public int addTemplate(String name, StrokeBuffer gesture)
+	{
+		if (mCount == mNames.length)
+		{
+			grow(mCount * 2);
+		}
+		if (!preprocess(gesture, mTemplates, mCount * VECTOR))
+		{
+			return -1;
+		}
+		mNames[mCount] = name;
+		mStrokeCounts[mCount] = gesture.getStrokeCount();
+		return mCount++;
+	}
+
+	private void grow(int capacity)
+	{
+		mTemplates = ArrayCopies.copyOf(mTemplates, capacity * VECTOR);
+		mNames = ArrayCopies.copyOf(mNames, capacity);
+		mStrokeCounts = ArrayCopies.copyOf(mStrokeCounts, capacity);
+	}
+
+	/*
+	 * Returns the index of the template most like the gesture, or -1 if
+	 * there are no templates or the gesture has no length. How alike they
+	 * are is then given by getScore().
+	 */
+	public int recognize(StrokeBuffer gesture)
+	{
+		mMatch = -1;
+		mDistance = Float.POSITIVE_INFINITY;
+		mCompared = 0;
+		mAbandoned = 0;
+		if (mCount == 0 || !preprocess(gesture, mInput, 0))
+		{
+			return -1;
+		}
+
+		int strokes = gesture.getStrokeCount();
+		for (int template = 0; template < mCount; template++)
+		{
+			if (!mByStrokes || mStrokeCounts[template] == strokes)
+			{
+				compare(template);
+			}
+		}
+		if (mByStrokes)
+		{
+			for (int template = 0; template < mCount; template++)
+			{
+				if (mStrokeCounts[template] != strokes)
+				{
+					compare(template);
+				}
+			}
+		}
+		return mMatch;
+	}
+
+	/*
+	 * How alike the last gesture recognized was to its best template: the
+	 * inverse of how far the points of the one are from those of the other,
+	 * on average, in the unit square.
+	 */
+	public float getScore()
+	{
+		if (mMatch < 0)
+		{
+			return 0;
+		}
+		return mDistance == 0 ? Float.MAX_VALUE : WEIGHTS / mDistance;
+	}
+
+	/*
+	 * Whether templates of the same number of strokes as the gesture are
+	 * compared first. Either way, the best match is the same, but first is
+	 * faster.
+	 */
+	public void setByStrokes(boolean byStrokes)
+	{
+		mByStrokes = byStrokes;
+	}
+
+	/* Templates the last recognize() started comparing */
+	public int getComparedCount()
+	{
+		return mCompared;
+	}
+
+	/*
+	 * Templates the last recognize() made no match with in full, as every
+	 * way it tried was skipped by its bound or given up on halfway
+	 */
+	public int getAbandonedCount()
+	{
+		return mAbandoned;
+	}
+
+	public String getName(int template)
+	{
+		return mNames[template];
+	}
+
+	public int getStrokeCount(int template)
+	{
+		return mStrokeCounts[template];
+	}
+
+	public int getCount()
+	{
+		return mCount;
+	}
+
+	/*
+	 * Preprocesses a gesture into VECTOR floats at the given offset. Returns
+	 * false if the gesture has no length.
+	 */
+	public static boolean preprocess(StrokeBuffer gesture, float[] out,
+			int offset)
+	{
+		if (gesture.getCount() < 2 || !resample(gesture, out, offset))
+		{
+			return false;
+		}
+
+		float left = Float.MAX_VALUE;
+		float right = -Float.MAX_VALUE;
+		float top = Float.MAX_VALUE;
+		float bottom = -Float.MAX_VALUE;
+		for (int i = offset; i < offset + VECTOR; i += 2)
+		{
+			left = Math.min(left, out[i]);
+			right = Math.max(right, out[i]);
+			top = Math.min(top, out[i + 1]);
+			bottom = Math.max(bottom, out[i + 1]);
+		}
+		float size = Math.max(right - left, bottom - top);
+
+		float cx = 0;
+		float cy = 0;
+		for (int i = offset; i < offset + VECTOR; i += 2)
+		{
+			out[i] = (out[i] - left) / size;
+			out[i + 1] = (out[i + 1] - top) / size;
+			cx += out[i];
+			cy += out[i + 1];
+		}
+		cx /= POINTS;
+		cy /= POINTS;
+		for (int i = offset; i < offset + VECTOR; i += 2)
+		{
+			out[i] -= cx;
+			out[i + 1] -= cy;
+		}
+		return true;
+	}
+
+	/*
+	 * Compares the gesture to a template, from each point to start at, both
+	 * ways, and makes it the best match if it is. A point can be matched to
+	 * no nearer a point than the nearest of all, so the sum of how far each
+	 * point is from its nearest is the least a match can come to. Finding
+	 * those takes as long as one match, and tells which of the rest are
+	 * worth trying.
+	 */
+	private void compare(int template)
+	{
+		mCompared++;
+		int offset = template * VECTOR;
+		nearest(offset);
+		float best = mDistance;
+
+		/*
+		 * Whether any match was made in full, rather than skipped by its
+		 * bound or given up on halfway. One that is is always the best yet.
+		 */
+		boolean matched = false;
+		for (int start = 0; start < POINTS; start += STEP)
+		{
+			if (bound(mInputNearest, start) < best)
+			{
+				float distance = cloudDistance(mInput, 0, mTemplates, offset,
+						start, best);
+				if (distance < best)
+				{
+					best = distance;
+					matched = true;
+				}
+			}
+			if (bound(mTemplateNearest, start) < best)
+			{
+				float distance = cloudDistance(mTemplates, offset, mInput, 0,
+						start, best);
+				if (distance < best)
+				{
+					best = distance;
+					matched = true;
+				}
+			}
+		}
+		if (matched)
+		{
+			mDistance = best;
+			mMatch = template;
+		} else
+		{
+			mAbandoned++;
+		}
+	}
+
+	/*
+	 * How far each point of the gesture is from the nearest point of the
+	 * template, and each point of the template from the nearest of the
+	 * gesture
+	 */
+	private void nearest(int offset)
+	{
+		float[] templates = mTemplates;
+		float[] input = mInput;
+		float[] inputNearest = mInputNearest;
+		float[] templateNearest = mTemplateNearest;
+		Arrays.fill(templateNearest, Float.MAX_VALUE);
+		for (int i = 0; i < POINTS; i++)
+		{
+			float x = input[i * 2];
+			float y = input[i * 2 + 1];
+			float nearest = Float.MAX_VALUE;
+			for (int j = 0; j < POINTS; j++)
+			{
+				float dx = templates[offset + j * 2] - x;
+				float dy = templates[offset + j * 2 + 1] - y;
+				float squared = dx * dx + dy * dy;
+				nearest = Math.min(nearest, squared);
+				templateNearest[j] = Math.min(templateNearest[j], squared);
+			}
+			inputNearest[i] = (float) Math.sqrt(nearest);
+		}
+		for (int j = 0; j < POINTS; j++)
+		{
+			templateNearest[j] = (float) Math.sqrt(templateNearest[j]);
+		}
+	}
+
+	/* The least a match from the given point on can come to */
+	private static float bound(float[] nearest, int start)
+	{
+		float sum = 0;
+		int weight = POINTS;
+		for (int i = start; i < POINTS; i++)
+		{
+			sum += weight-- * nearest[i];
+		}
+		for (int i = 0; i < start; i++)
+		{
+			sum += weight-- * nearest[i];
+		}
+		return sum / POINTS;
+	}
+
+	/*
+	 * Matches each point of one cloud, from the given one on and around, to
+	 * the nearest point of the other not matched yet, and sums how far apart
+	 * they are. Gives up and returns infinity as soon as the sum is no less
+	 * than the given one, as the rest can only add to it.
+	 */
+	private float cloudDistance(float[] from, int fromOffset, float[] to,
+			int toOffset, int start, float most)
+	{
+		boolean[] matched = mMatched;
+		Arrays.fill(matched, false);
+		float sum = 0;
+		int weight = POINTS;
+		int i = start;
+		do
+		{
+			float x = from[fromOffset + i * 2];
+			float y = from[fromOffset + i * 2 + 1];
+			int nearest = -1;
+			float nearestSquared = Float.MAX_VALUE;
+			for (int j = 0; j < POINTS; j++)
+			{
+				if (matched[j])
+				{
+					continue;
+				}
+				float dx = to[toOffset + j * 2] - x;
+				float dy = to[toOffset + j * 2 + 1] - y;
+				float squared = dx * dx + dy * dy;
+				if (squared < nearestSquared)
+				{
+					nearestSquared = squared;
+					nearest = j;
+				}
+			}
+			matched[nearest] = true;
+			sum += weight * (float) Math.sqrt(nearestSquared) / POINTS;
+			if (sum >= most)
+			{
+				return Float.POSITIVE_INFINITY;
+			}
+			weight--;
+			i = (i + 1) % POINTS;
+		} while (i != start);
+		return sum;
+	}
+
+	/*
+	 * Writes POINTS points evenly spaced along the strokes, one after the
+	 * other in the order they were started, leaving out the jumps between
+	 * them. The points of a stroke are picked out of the others, which they
+	 * may be mixed in with if more than one finger drew.
+	 */
+	private static boolean resample(StrokeBuffer gesture, float[] out,
+			int offset)
+	{
+		float[] points = gesture.getPoints();
+		int[] strokes = gesture.getStrokes();
+		int count = gesture.getCount();
+		int strokeCount = gesture.getStrokeCount();
+
+		float length = 0;
+		for (int stroke = 0; stroke < strokeCount; stroke++)
+		{
+			int previous = -1;
+			for (int i = 0; i < count; i++)
+			{
+				if (strokes[i] != stroke)
+				{
+					continue;
+				}
+				if (previous >= 0)
+				{
+					length += distance(points[previous * 2],
+							points[previous * 2 + 1], points[i * 2],
+							points[i * 2 + 1]);
+				}
+				previous = i;
+			}
+		}
+		if (length == 0)
+		{
+			return false;
+		}
+
+		float interval = length / (POINTS - 1);
+		int written = 0;
+		float walked = 0;
+		float lastX = 0;
+		float lastY = 0;
+		for (int stroke = 0; stroke < strokeCount; stroke++)
+		{
+			boolean started = false;
+			float px = 0;
+			float py = 0;
+			for (int i = 0; i < count; i++)
+			{
+				if (strokes[i] != stroke)
+				{
+					continue;
+				}
+				float qx = points[i * 2];
+				float qy = points[i * 2 + 1];
+				if (!started)
+				{
+					/* Only the very first point is written as it is */
+					if (written == 0)
+					{
+						out[offset] = qx;
+						out[offset + 1] = qy;
+						written = 1;
+					}
+					started = true;
+					px = qx;
+					py = qy;
+					continue;
+				}
+				float d = distance(px, py, qx, qy);
+				while (d > 0 && walked + d >= interval && written < POINTS - 1)
+				{
+					float t = (interval - walked) / d;
+					px += t * (qx - px);
+					py += t * (qy - py);
+					out[offset + written * 2] = px;
+					out[offset + written * 2 + 1] = py;
+					written++;
+					walked = 0;
+					d = distance(px, py, qx, qy);
+				}
+				walked += d;
+				px = qx;
+				py = qy;
+			}
+			if (started)
+			{
+				lastX = px;
+				lastY = py;
+			}
+		}
+
+		/* Rounding may leave us short, and the last point is the end anyway */
+		for (; written < POINTS; written++)
+		{
+			out[offset + written * 2] = lastX;
+			out[offset + written * 2 + 1] = lastY;
+		}
+		return true;
+	}
+
+	private static float distance(float x1, float y1, float x2, float y2)
+	{
+		float dx = x2 - x1;
+		float dy = y2 - y1;
+		return (float) Math.sqrt(dx * dx + dy * dy);
+	}
+}
@@ -0,0 +1,316 @@
+package hiof.enigma.android.gestures;
+
+/**
+ * Recognizes a gesture while it is being drawn, point by point, so the app
+ * can act on it the moment it is clear what it is instead of waiting for the
+ * finger to lift.
+ * 
+ * A gesture half drawn looks like the first half of its template, so every
+ * template is also kept cut short at a few lengths: half of it, five eighths
+ * and so on. As points come in, what has been drawn so far is compared to
+ * all of them, and each template scores as well as its best fitting length.
+ * Once one template has scored well, and well ahead of any other, a few times
+ * in a row, it is committed to.
+ * 
+ * The stroke is kept in an array of fixed size, thinned out to every other
+ * point when it fills up, and everything else is allocated up front as well.
+ * So whatever the stroke and however long it goes on, a point costs at most
+ * one comparison against the cut templates, and allocates nothing. Like the
+ * recognizer it is built from, it must only be used by one thread at a time.
+ * 
+ * @author William Killerud
+ * 
+ */
+public class StreamingRecognizer
+{
+	/* The lengths templates are cut to, in points of their POINTS */
+	private static final int[] PREFIXES = { 16, 20, 24, 28,
+			GestureRecognizer.POINTS };
+
+	/* Points of the stroke kept, before it is thinned out */
+	private static final int MAX_POINTS = 128;
+
+	/* Points before anything is compared at all */
+	private static final int MIN_POINTS = 8;
+
+	/*
+	 * To commit early, a template must score this well, this many times
+	 * better than any other, this many points in a row. Stricter than for a
+	 * finished stroke, since the rest of it could still turn out different.
+	 * The lead matters most: with a hundred templates, the first half of one
+	 * is often much like all of another, and a lead of 1.5 committed to the
+	 * wrong one four times in ten.
+	 */
+	public static final float COMMIT_SCORE = 2.5f;
+	public static final float COMMIT_LEAD = 3.0f;
+	private static final int COMMIT_POINTS = 3;
+
+	private final GestureRecognizer mFull;
+	private final GestureRecognizer[] mPrefixes;
+
+	private final float[] mStroke = new float[MAX_POINTS * 2];
+	private int mCount;
+	/* Only every this many points is kept, after thinning out */
+	private int mStride = 1;
+	private int mSkipped;
+	private float mLastX;
+	private float mLastY;
+	private boolean mHasLast;
+
+	private int mLeader = -1;
+	private float mLeaderScore;
+	private float mRunnerUpScore;
+	private int mLeadingFor;
+	private int mCommitted = -1;
+	private int mCommittedAt;
+	private int mPointsSeen;
+
+	/*
+	 * Cuts the templates of the recognizer, as they are now. The recognizer
+	 * itself recognizes the finished stroke.
+	 */
+	public StreamingRecognizer(GestureRecognizer recognizer)
+	{
+		mFull = recognizer;
+		mPrefixes = new GestureRecognizer[PREFIXES.length - 1];
+		float[] vectors = recognizer.getVectors();
+		for (int i = 0; i < mPrefixes.length; i++)
+		{
+			mPrefixes[i] = new GestureRecognizer(recognizer.getCount());
+			for (int template = 0; template < recognizer.getCount(); template++)
+			{
+				mPrefixes[i].addPrefix(recognizer.getName(template), vectors,
+						template * GestureRecognizer.VECTOR, PREFIXES[i]);
+			}
+		}
+	}
+
+	private StreamingRecognizer(GestureRecognizer full,
+			GestureRecognizer[] prefixes)
+	{
+		mFull = full;
+		mPrefixes = prefixes;
+	}
+
+	/*
+	 * A streaming recognizer with the templates of this one and one more,
+	 * made from the stroke, which is preprocessed once and cut for the
+	 * prefixes. This one is only read, so it can go on recognizing on
+	 * another thread meanwhile. Returns null if the stroke is too short.
+	 */
+	public StreamingRecognizer withTemplate(String name, float[] points,
+			int count)
+	{
+		GestureRecognizer full = mFull.copy(1);
+		int template = full.addTemplate(name, points, count);
+		if (template < 0)
+		{
+			return null;
+		}
+		GestureRecognizer[] prefixes = new GestureRecognizer[mPrefixes.length];
+		for (int i = 0; i < prefixes.length; i++)
+		{
+			prefixes[i] = mPrefixes[i].copy(1);
+			prefixes[i].addPrefix(name, full.getVectors(), template
+					* GestureRecognizer.VECTOR, PREFIXES[i]);
+		}
+		return new StreamingRecognizer(full, prefixes);
+	}
+
+	/*
+	 * A streaming recognizer with the templates of this one but those of the
+	 * given name, which like withTemplate() leaves this one as it is
+	 */
+	public StreamingRecognizer withoutTemplates(String name)
+	{
+		GestureRecognizer full = mFull.copy(0);
+		full.removeTemplates(name);
+		GestureRecognizer[] prefixes = new GestureRecognizer[mPrefixes.length];
+		for (int i = 0; i < prefixes.length; i++)
+		{
+			prefixes[i] = mPrefixes[i].copy(0);
+			prefixes[i].removeTemplates(name);
+		}
+		return new StreamingRecognizer(full, prefixes);
+	}
+
+	/* The recognizer of whole strokes, whose template indexes add() returns */
+	public GestureRecognizer getRecognizer()
+	{
+		return mFull;
+	}
+
+	/* Starts on a new stroke, forgetting the last */
+	public void begin()
+	{
+		mCount = 0;
+		mStride = 1;
+		mSkipped = 0;
+		mHasLast = false;
+		mLeader = -1;
+		mLeaderScore = 0;
+		mRunnerUpScore = 0;
+		mLeadingFor = 0;
+		mCommitted = -1;
+		mCommittedAt = 0;
+		mPointsSeen = 0;
+	}
+
+	/*
+	 * Adds a point of the stroke. Returns the template committed to, which
+	 * may be this point or an earlier one, or -1 if it isn't clear yet.
+	 */
+	public int add(float x, float y)
+	{
+		mPointsSeen++;
+		mLastX = x;
+		mLastY = y;
+		mHasLast = true;
+		if (mCommitted >= 0)
+		{
+			return mCommitted;
+		}
+
+		if (++mSkipped >= mStride)
+		{
+			mSkipped = 0;
+			if (mCount == MAX_POINTS)
+			{
+				thinOut();
+			}
+			mStroke[mCount * 2] = x;
+			mStroke[mCount * 2 + 1] = y;
+			mCount++;
+		}
+		if (mCount < MIN_POINTS)
+		{
+			return -1;
+		}
+
+		score();
+		if (mLeaderScore >= COMMIT_SCORE
+				&& mLeaderScore >= mRunnerUpScore * COMMIT_LEAD)
+		{
+			if (++mLeadingFor >= COMMIT_POINTS)
+			{
+				mCommitted = mLeader;
+				mCommittedAt = mPointsSeen;
+			}
+		} else
+		{
+			mLeadingFor = 0;
+		}
+		return mCommitted;
+	}
+
+	/*
+	 * Ends the stroke. Returns the template committed to while drawing if
+	 * there was one, or else the best match for the whole stroke, or -1 if
+	 * there is none. Its score is then given by getScore().
+	 */
+	public int end()
+	{
+		if (mCommitted >= 0)
+		{
+			return mCommitted;
+		}
+
+		/* The last point may have been skipped by the thinning out */
+		if (mHasLast
+				&& mCount > 0
+				&& (mStroke[mCount * 2 - 2] != mLastX || mStroke[mCount * 2 - 1] != mLastY))
+		{
+			if (mCount == MAX_POINTS)
+			{
+				thinOut();
+			}
+			mStroke[mCount * 2] = mLastX;
+			mStroke[mCount * 2 + 1] = mLastY;
+			mCount++;
+		}
+		int template = mFull.recognize(mStroke, mCount);
+		mLeaderScore = mFull.getScore();
+		return template;
+	}
+
+	/* The score of the template committed to, or matched at the end */
+	public float getScore()
+	{
+		return mLeaderScore;
+	}
+
+	public boolean isCommitted()
+	{
+		return mCommitted >= 0;
+	}
+
+	/* How many points into the stroke we committed, or 0 if we didn't */
+	public int getCommittedAt()
+	{
+		return mCommittedAt;
+	}
+
+	/* Points added since the stroke began */
+	public int getPointCount()
+	{
+		return mPointsSeen;
+	}
+
+	/*
+	 * Scores the stroke so far against every cut of every template, and
+	 * finds the template with the best score and the best score of any
+	 * other.
+	 */
+	private void score()
+	{
+		int leader = -1;
+		float leaderScore = 0;
+		float runnerUpScore = 0;
+		for (int i = 0; i <= mPrefixes.length; i++)
+		{
+			GestureRecognizer recognizer = i < mPrefixes.length ? mPrefixes[i]
+					: mFull;
+			int matches = recognizer.recognize(mStroke, mCount, 2);
+			for (int match = 0; match < matches; match++)
+			{
+				int template = recognizer.getMatch(match);
+				float score = recognizer.getScore(match);
+				if (template == leader)
+				{
+					leaderScore = Math.max(leaderScore, score);
+				} else if (score > leaderScore)
+				{
+					runnerUpScore = Math.max(runnerUpScore, leaderScore);
+					leader = template;
+					leaderScore = score;
+				} else
+				{
+					runnerUpScore = Math.max(runnerUpScore, score);
+				}
+			}
+		}
+
+		/* A new leader has to prove itself from scratch */
+		if (leader != mLeader)
+		{
+			mLeadingFor = 0;
+		}
+		mLeader = leader;
+		mLeaderScore = leaderScore;
+		mRunnerUpScore = runnerUpScore;
+	}
+
+	/* Keeps every other point, and from now on only every other one added */
+	private void thinOut()
+	{
+		int kept = 0;
+		for (int i = 0; i < mCount; i += 2)
+		{
+			mStroke[kept * 2] = mStroke[i * 2];
+			mStroke[kept * 2 + 1] = mStroke[i * 2 + 1];
+			kept++;
+		}
+		mCount = kept;
+		mStride *= 2;
+	}
+}
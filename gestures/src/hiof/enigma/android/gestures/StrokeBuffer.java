@@ -0,0 +1,127 @@
+package hiof.enigma.android.gestures;
+
+/**
+ * The points of a gesture of any number of strokes, as they were drawn. Each
+ * point has the x and y of the touch event and the stroke it belongs to, so
+ * the strokes of two fingers drawing at once may come in mixed up, point by
+ * point, and still be told apart.
+ * 
+ * A gesture needs a buffer from its first touch to being recognized, and
+ * there is a new gesture every few seconds, so buffers are pooled rather
+ * than allocated for each: take one with obtain(), and give it back with
+ * recycle() once it is recognized. The arrays of a buffer grow to fit the
+ * longest gesture it has had, and are kept, so after the first few gestures
+ * nothing is allocated at all.
+ * 
+ * A buffer must only be used by one thread at a time, but obtain() and
+ * recycle() may be called from any.
+ * 
+ * @author William Killerud
+ * 
+ */
+public class StrokeBuffer
+{
+	/* Buffers kept for reuse. A gesture or two at a time is all there is. */
+	private static final int POOL_SIZE = 4;
+	private static final StrokeBuffer[] sPool = new StrokeBuffer[POOL_SIZE];
+	private static int sPooled;
+
+	private float[] mPoints = new float[256];
+	private int[] mStrokes = new int[128];
+	private int mCount;
+	private int mStrokeCount;
+
+	/* Use obtain(), unless the buffer is to be kept */
+	public StrokeBuffer()
+	{
+	}
+
+	/* An empty buffer, from the pool if there is one there */
+	public static StrokeBuffer obtain()
+	{
+		synchronized (sPool)
+		{
+			if (sPooled > 0)
+			{
+				StrokeBuffer buffer = sPool[--sPooled];
+				sPool[sPooled] = null;
+				return buffer;
+			}
+		}
+		return new StrokeBuffer();
+	}
+
+	/* Gives the buffer back to the pool. It must not be used after this. */
+	public void recycle()
+	{
+		clear();
+		synchronized (sPool)
+		{
+			if (sPooled < POOL_SIZE)
+			{
+				sPool[sPooled++] = this;
+			}
+		}
+	}
+
+	public void clear()
+	{
+		mCount = 0;
+		mStrokeCount = 0;
+	}
+
+	/*
+	 * Starts a new stroke, and returns its number, which is what its points
+	 * are added with
+	 */
+	public int newStroke()
+	{
+		return mStrokeCount++;
+	}
+
+	/* Adds a point of a stroke started with newStroke() */
+	public void add(int stroke, float x, float y)
+	{
+		if (mCount == mStrokes.length)
+		{
+			mPoints = ArrayCopies.copyOf(mPoints, mCount * 4);
+			mStrokes = ArrayCopies.copyOf(mStrokes, mCount * 2);
+		}
+		mPoints[mCount * 2] = x;
+		mPoints[mCount * 2 + 1] = y;
+		mStrokes[mCount] = stroke;
+		mCount++;
+	}
+
+	/* Adds a whole stroke of x and y pairs, like GestureStroke.points */
+	public void addStroke(float[] points, int count)
+	{
+		int stroke = newStroke();
+		for (int i = 0; i < count; i++)
+		{
+			add(stroke, points[i * 2], points[i * 2 + 1]);
+		}
+	}
+
+	/* The x and y pairs of all the points, in the order they were added */
+	public float[] getPoints()
+	{
+		return mPoints;
+	}
+
+	/* The stroke of each point */
+	public int[] getStrokes()
+	{
+		return mStrokes;
+	}
+
+	public int getCount()
+	{
+		return mCount;
+	}
+
+	public int getStrokeCount()
+	{
+		return mStrokeCount;
+	}
+}
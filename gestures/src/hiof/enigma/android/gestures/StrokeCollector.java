@@ -0,0 +1,191 @@
+package hiof.enigma.android.gestures;
+
+import java.util.Arrays;
+
+import android.view.MotionEvent;
+
+/**
+ * Collects the strokes of a gesture from touch events, every finger down
+ * at once being a stroke of its own, into a StrokeBuffer from the pool. A
+ * finger going down again soon after the last one lifted starts another
+ * stroke of the same gesture, so a gesture may be drawn one stroke after
+ * the other, with two fingers at once, or both.
+ * 
+ * The buffer is the collector's until it is taken with take(), and then
+ * whoever took it must recycle it.
+ * 
+ * @author William Killerud
+ * 
+ */
+public class StrokeCollector
+{
+	/*
+	 * How long after the fingers lift a finger may go down again and draw
+	 * more of the same gesture
+	 */
+	public static final long STROKE_GAP_MILLIS = 500;
+
+	/* Fingers past this many aren't followed */
+	private static final int MAX_POINTERS = 4;
+
+	private StrokeBuffer mBuffer;
+
+	/* The stroke each finger, by its pointer id, is drawing, or -1 */
+	private final int[] mPointerStrokes = new int[MAX_POINTERS];
+	private int mMostPointers;
+	private long mLastUpTime;
+
+	public StrokeCollector()
+	{
+		Arrays.fill(mPointerStrokes, -1);
+	}
+
+	/*
+	 * Adds the points of a touch event to the gesture, or starts a new one.
+	 * Returns true when the last finger lifts, and the gesture may be
+	 * finished, unless another stroke is started within STROKE_GAP_MILLIS.
+	 */
+	public boolean onTouchEvent(MotionEvent event)
+	{
+		switch (event.getActionMasked())
+		{
+		case MotionEvent.ACTION_DOWN:
+			if (mBuffer == null
+					|| event.getEventTime() - mLastUpTime > STROKE_GAP_MILLIS)
+			{
+				cancel();
+				mBuffer = StrokeBuffer.obtain();
+			}
+			mMostPointers = Math.max(mMostPointers, 1);
+			startStroke(event, 0);
+			return false;
+		case MotionEvent.ACTION_POINTER_DOWN:
+			if (mBuffer != null)
+			{
+				mMostPointers = Math.max(mMostPointers, event
+						.getPointerCount());
+				startStroke(event, event.getActionIndex());
+			}
+			return false;
+		case MotionEvent.ACTION_MOVE:
+			if (mBuffer != null)
+			{
+				addMove(event);
+			}
+			return false;
+		case MotionEvent.ACTION_POINTER_UP:
+			if (mBuffer != null)
+			{
+				endStroke(event, event.getActionIndex());
+			}
+			return false;
+		case MotionEvent.ACTION_UP:
+			if (mBuffer == null)
+			{
+				return false;
+			}
+			endStroke(event, 0);
+			mLastUpTime = event.getEventTime();
+			return true;
+		case MotionEvent.ACTION_CANCEL:
+			cancel();
+			return false;
+		default:
+			return false;
+		}
+	}
+
+	/* Whether there is a gesture being drawn, or waiting for more strokes */
+	public boolean isCollecting()
+	{
+		return mBuffer != null;
+	}
+
+	/* The most fingers that were down at once while drawing the gesture */
+	public int getMostPointers()
+	{
+		return mMostPointers;
+	}
+
+	/* When the last finger lifted, by SystemClock.uptimeMillis() */
+	public long getLastUpTime()
+	{
+		return mLastUpTime;
+	}
+
+	/*
+	 * Hands over the gesture, to be recycled by the caller, and starts
+	 * collecting the next one from scratch. Returns null if there is none.
+	 */
+	public StrokeBuffer take()
+	{
+		StrokeBuffer buffer = mBuffer;
+		mBuffer = null;
+		mMostPointers = 0;
+		Arrays.fill(mPointerStrokes, -1);
+		return buffer;
+	}
+
+	/* Forgets the gesture, as when it was acted on some other way */
+	public void cancel()
+	{
+		StrokeBuffer buffer = take();
+		if (buffer != null)
+		{
+			buffer.recycle();
+		}
+	}
+
+	private void startStroke(MotionEvent event, int index)
+	{
+		int pointer = event.getPointerId(index);
+		if (pointer < MAX_POINTERS)
+		{
+			int stroke = mBuffer.newStroke();
+			mPointerStrokes[pointer] = stroke;
+			mBuffer.add(stroke, event.getX(index), event.getY(index));
+		}
+	}
+
+	private void endStroke(MotionEvent event, int index)
+	{
+		int pointer = event.getPointerId(index);
+		if (pointer < MAX_POINTERS && mPointerStrokes[pointer] >= 0)
+		{
+			mBuffer.add(mPointerStrokes[pointer], event.getX(index), event
+					.getY(index));
+			mPointerStrokes[pointer] = -1;
+		}
+	}
+
+	/*
+	 * The points of every finger, those batched up in the history of the
+	 * event first
+	 */
+	private void addMove(MotionEvent event)
+	{
+		int pointers = event.getPointerCount();
+		for (int h = 0; h < event.getHistorySize(); h++)
+		{
+			for (int index = 0; index < pointers; index++)
+			{
+				int pointer = event.getPointerId(index);
+				if (pointer < MAX_POINTERS && mPointerStrokes[pointer] >= 0)
+				{
+					mBuffer.add(mPointerStrokes[pointer], event
+							.getHistoricalX(index, h), event.getHistoricalY(
+							index, h));
+				}
+			}
+		}
+		for (int index = 0; index < pointers; index++)
+		{
+			int pointer = event.getPointerId(index);
+			if (pointer < MAX_POINTERS && mPointerStrokes[pointer] >= 0)
+			{
+				mBuffer.add(mPointerStrokes[pointer], event.getX(index), event
+						.getY(index));
+			}
+		}
+	}
+}
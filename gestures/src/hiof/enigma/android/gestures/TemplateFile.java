@@ -0,0 +1,247 @@
+package hiof.enigma.android.gestures;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Templates of a recognizer kept the way the recognizer keeps them,
+ * preprocessed and indexed, so loading them is copying arrays instead of
+ * parsing gestures and preprocessing every one. The file is made from a
+ * gesture library with TemplateCompiler, and shipped as res/raw/templates.
+ * 
+ * The file is a header, then the vectors of all the templates, their
+ * features and their tails, each as one block of floats, then where each
+ * name ends and the names, in UTF-8. The header tells the version of the
+ * format and the POINTS, FEATURES and CHECKS the blocks were made with, so a
+ * file from a recognizer that preprocesses differently is never loaded, and
+ * the CRC32 of everything after it, so neither is a file that is broken.
+ * Everything is little-endian, like every Android device, so the blocks are
+ * copied as they are.
+ * 
+ * Loading a file that is wrong in any way throws an IOException telling how,
+ * and loads nothing, so the caller can fall back to another way of getting
+ * the templates.
+ * 
+ * @author William Killerud
+ * 
+ */
+public class TemplateFile
+{
+	private static final int MAGIC = 0x4754504c;
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 32;
+
+	/* How much is checksummed at a time, as CRC32 only takes arrays */
+	private static final int CHUNK_BYTES = 16 * 1024;
+
+	private TemplateFile()
+	{
+	}
+
+	/* Maps the file and loads it */
+	public static GestureRecognizer map(File file) throws IOException
+	{
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try
+		{
+			return map(in.getChannel(), 0, in.length());
+		} finally
+		{
+			in.close();
+		}
+	}
+
+	/*
+	 * Maps the part of a file that is the template file and loads it, like a
+	 * raw resource from AssetFileDescriptor
+	 */
+	public static GestureRecognizer map(FileChannel channel, long offset,
+			long length) throws IOException
+	{
+		/* A buffer can't hold more than this, and no library is this big */
+		if (length > Integer.MAX_VALUE)
+		{
+			throw new IOException("Template file of " + length + " bytes");
+		}
+		return read(channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+	}
+
+	/* Reads the whole stream and loads it, for when it can't be mapped */
+	public static GestureRecognizer read(InputStream in) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] chunk = new byte[CHUNK_BYTES];
+		int read;
+		while ((read = in.read(chunk)) > 0)
+		{
+			bytes.write(chunk, 0, read);
+		}
+		return read(ByteBuffer.wrap(bytes.toByteArray()));
+	}
+
+	/* Loads the templates from the whole of the buffer */
+	public static GestureRecognizer read(ByteBuffer buffer) throws IOException
+	{
+		ByteBuffer file = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+		int length = file.remaining();
+		if (length < HEADER_BYTES || file.getInt() != MAGIC)
+		{
+			throw new IOException("Not a template file");
+		}
+		int version = file.getInt();
+		if (version != VERSION)
+		{
+			throw new IOException("Template file version " + version
+					+ ", expected " + VERSION);
+		}
+		if (file.getInt() != GestureRecognizer.POINTS
+				|| file.getInt() != GestureRecognizer.FEATURES
+				|| file.getInt() != GestureRecognizer.CHECKS)
+		{
+			throw new IOException("Templates preprocessed differently");
+		}
+		int count = file.getInt();
+		int nameBytes = file.getInt();
+		int checksum = file.getInt();
+
+		long floats = (long) count
+				* (GestureRecognizer.VECTOR + GestureRecognizer.FEATURES + GestureRecognizer.CHECKS);
+		long expected = HEADER_BYTES + floats * 4 + count * 4l + nameBytes;
+		if (count < 0 || nameBytes < 0 || expected != length)
+		{
+			throw new IOException("Template file of " + length
+					+ " bytes, expected " + expected);
+		}
+		if (checksum(file, HEADER_BYTES, length) != checksum)
+		{
+			throw new IOException("Template file checksum does not match");
+		}
+
+		file.position(HEADER_BYTES);
+		ByteBuffer vectors = slice(file, count * GestureRecognizer.VECTOR * 4);
+		ByteBuffer features = slice(file, count * GestureRecognizer.FEATURES
+				* 4);
+		ByteBuffer tails = slice(file, count * GestureRecognizer.CHECKS * 4);
+
+		int[] ends = new int[count];
+		file.asIntBuffer().get(ends);
+		file.position(file.position() + count * 4);
+		byte[] utf8 = new byte[nameBytes];
+		file.get(utf8);
+		String[] names = new String[count];
+		int start = 0;
+		for (int i = 0; i < count; i++)
+		{
+			if (ends[i] < start || ends[i] > nameBytes)
+			{
+				throw new IOException("Template file names are broken");
+			}
+			names[i] = new String(utf8, start, ends[i] - start, "UTF-8");
+			start = ends[i];
+		}
+
+		GestureRecognizer recognizer = new GestureRecognizer(count);
+		recognizer.setTemplates(names, vectors.asFloatBuffer(), features
+				.asFloatBuffer(), tails.asFloatBuffer());
+		return recognizer;
+	}
+
+	/*
+	 * Writes the templates of the recognizer. The file is written next to
+	 * where it goes and only moved there when it is finished, so a half
+	 * written file is never loaded.
+	 */
+	public static void write(GestureRecognizer recognizer, File file)
+			throws IOException
+	{
+		int count = recognizer.getCount();
+		byte[][] names = new byte[count][];
+		int nameBytes = 0;
+		for (int i = 0; i < count; i++)
+		{
+			names[i] = recognizer.getName(i).getBytes("UTF-8");
+			nameBytes += names[i].length;
+		}
+
+		int length = HEADER_BYTES
+				+ count
+				* (GestureRecognizer.VECTOR + GestureRecognizer.FEATURES
+						+ GestureRecognizer.CHECKS + 1) * 4 + nameBytes;
+		ByteBuffer out = ByteBuffer.allocate(length).order(
+				ByteOrder.LITTLE_ENDIAN);
+		out.putInt(MAGIC).putInt(VERSION).putInt(GestureRecognizer.POINTS)
+				.putInt(GestureRecognizer.FEATURES)
+				.putInt(GestureRecognizer.CHECKS).putInt(count)
+				.putInt(nameBytes);
+		out.position(HEADER_BYTES);
+		out.asFloatBuffer().put(recognizer.getVectors(), 0,
+				count * GestureRecognizer.VECTOR);
+		out.position(out.position() + count * GestureRecognizer.VECTOR * 4);
+		out.asFloatBuffer().put(recognizer.getFeatures(), 0,
+				count * GestureRecognizer.FEATURES);
+		out.position(out.position() + count * GestureRecognizer.FEATURES * 4);
+		out.asFloatBuffer().put(recognizer.getTails(), 0,
+				count * GestureRecognizer.CHECKS);
+		out.position(out.position() + count * GestureRecognizer.CHECKS * 4);
+		int end = 0;
+		for (byte[] name : names)
+		{
+			end += name.length;
+			out.putInt(end);
+		}
+		for (byte[] name : names)
+		{
+			out.put(name);
+		}
+		out.putInt(28, checksum(out, HEADER_BYTES, length));
+
+		File partial = new File(file.getPath() + ".partial");
+		RandomAccessFile raf = new RandomAccessFile(partial, "rw");
+		try
+		{
+			raf.setLength(0);
+			raf.write(out.array());
+			raf.getFD().sync();
+		} finally
+		{
+			raf.close();
+		}
+		if (!partial.renameTo(file))
+		{
+			partial.delete();
+			throw new IOException("Could not move " + partial + " to " + file);
+		}
+	}
+
+	/* The next bytes of the buffer, from where it is, and moves past them */
+	private static ByteBuffer slice(ByteBuffer buffer, int bytes)
+	{
+		ByteBuffer slice = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+		slice.limit(bytes);
+		buffer.position(buffer.position() + bytes);
+		return slice;
+	}
+
+	private static int checksum(ByteBuffer buffer, int from, int to)
+	{
+		CRC32 crc = new CRC32();
+		ByteBuffer bytes = buffer.duplicate();
+		bytes.limit(to);
+		bytes.position(from);
+		byte[] chunk = new byte[CHUNK_BYTES];
+		while (bytes.hasRemaining())
+		{
+			int length = Math.min(chunk.length, bytes.remaining());
+			bytes.get(chunk, 0, length);
+			crc.update(chunk, 0, length);
+		}
+		return (int) crc.getValue();
+	}
+}
@@ -0,0 +1,279 @@
+package hiof.enigma.android.gestures;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the templates trained on the device. Every change is appended to a
+ * log as it is made, which is cheap however many templates there are, and
+ * once the log has grown long, all the templates are written to a template
+ * file and the log is started over. Loading is then mapping the template
+ * file, if there is one, and replaying the log on top of it.
+ * 
+ * A change is a template added, preprocessed already, or all the templates
+ * of a name removed. Each is written with its length and CRC32, so a change
+ * that was only half written when the app died is found and cut off, and
+ * the ones before it are kept. The log starts with a fingerprint of the
+ * templates it was made on top of, so if the app dies after a new template
+ * file was written but before the log was started over, the old log isn't
+ * replayed on top of the templates it is already part of.
+ * 
+ * It is not thread safe, and is meant to be used from one background thread,
+ * as writing blocks until the change is on the disk.
+ * 
+ * @author William Killerud
+ * 
+ */
+public class TemplateStore
+{
+	private static final int LOG_MAGIC = 0x47544c47;
+	private static final int LOG_VERSION = 1;
+	private static final int LOG_HEADER_BYTES = 12;
+
+	private static final byte ADD = 1;
+	private static final byte REMOVE = 2;
+
+	/* Changes the log may have before it is compacted into a template file */
+	private static final int MAX_LOGGED = 64;
+
+	private final File mTemplateFile;
+	private final File mLogFile;
+	private RandomAccessFile mLog;
+	private int mLogged;
+
+	/* The template file and the log are kept in the given directory */
+	public TemplateStore(File directory)
+	{
+		mTemplateFile = new File(directory, "trained-templates");
+		mLogFile = new File(directory, "trained-templates.log");
+	}
+
+	/*
+	 * Loads the trained templates, or returns null if nothing has been
+	 * trained yet, in which case the app starts from its own templates.
+	 */
+	public GestureRecognizer loadTemplateFile() throws IOException
+	{
+		return mTemplateFile.isFile() ? TemplateFile.map(mTemplateFile) : null;
+	}
+
+	/*
+	 * Replays the changes of the log on the recognizer, if the log was made
+	 * on top of the same templates, and opens the log for more. Whatever
+	 * goes wrong with the log, it is started over, losing the changes since
+	 * the last compact(), rather than the templates.
+	 */
+	public void replay(GestureRecognizer recognizer) throws IOException
+	{
+		mLogged = 0;
+		long end = LOG_HEADER_BYTES;
+		boolean valid = false;
+		if (mLogFile.isFile())
+		{
+			RandomAccessFile log = new RandomAccessFile(mLogFile, "r");
+			try
+			{
+				valid = log.length() >= LOG_HEADER_BYTES
+						&& log.readInt() == LOG_MAGIC
+						&& log.readInt() == LOG_VERSION
+						&& log.readInt() == fingerprint(recognizer);
+				while (valid && replayChange(log, recognizer))
+				{
+					mLogged++;
+					end = log.getFilePointer();
+				}
+			} finally
+			{
+				log.close();
+			}
+		}
+
+		if (valid)
+		{
+			/* Anything after the last whole change is cut off */
+			mLog = new RandomAccessFile(mLogFile, "rw");
+			mLog.setLength(end);
+			mLog.seek(end);
+		} else
+		{
+			startLog(recognizer);
+		}
+	}
+
+	/* Appends a template, the VECTOR floats at the offset of the array */
+	public void add(String name, float[] vector, int offset)
+			throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream change = new DataOutputStream(bytes);
+		change.writeByte(ADD);
+		change.writeUTF(name);
+		for (int i = 0; i < GestureRecognizer.VECTOR; i++)
+		{
+			change.writeFloat(vector[offset + i]);
+		}
+		append(bytes.toByteArray());
+	}
+
+	/* Appends the removal of every template of the name */
+	public void remove(String name) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream change = new DataOutputStream(bytes);
+		change.writeByte(REMOVE);
+		change.writeUTF(name);
+		append(bytes.toByteArray());
+	}
+
+	/* Whether the log has grown long enough to be worth compacting */
+	public boolean shouldCompact()
+	{
+		return mLogged >= MAX_LOGGED;
+	}
+
+	/*
+	 * Writes all the templates of the recognizer, which must be those of the
+	 * template file with the changes of the log, to a new template file, and
+	 * starts the log over.
+	 */
+	public void compact(GestureRecognizer recognizer) throws IOException
+	{
+		TemplateFile.write(recognizer, mTemplateFile);
+		startLog(recognizer);
+	}
+
+	public void close() throws IOException
+	{
+		if (mLog != null)
+		{
+			mLog.close();
+			mLog = null;
+		}
+	}
+
+	private void startLog(GestureRecognizer recognizer) throws IOException
+	{
+		close();
+		mLog = new RandomAccessFile(mLogFile, "rw");
+		mLog.setLength(0);
+		mLog.writeInt(LOG_MAGIC);
+		mLog.writeInt(LOG_VERSION);
+		mLog.writeInt(fingerprint(recognizer));
+		mLog.getFD().sync();
+		mLogged = 0;
+	}
+
+	private void append(byte[] change) throws IOException
+	{
+		if (mLog == null)
+		{
+			throw new IOException("Template log is not open");
+		}
+		CRC32 crc = new CRC32();
+		crc.update(change);
+		/* One write, so a change is never interleaved with another */
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+				change.length + 8);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(change.length);
+		out.writeInt((int) crc.getValue());
+		out.write(change);
+		mLog.write(bytes.toByteArray());
+		mLog.getFD().sync();
+		mLogged++;
+	}
+
+	/*
+	 * Reads the next change and makes it, or returns false if there is no
+	 * whole change left
+	 */
+	private static boolean replayChange(RandomAccessFile log,
+			GestureRecognizer recognizer) throws IOException
+	{
+		byte[] change;
+		try
+		{
+			int length = log.readInt();
+			int checksum = log.readInt();
+			if (length <= 0 || length > log.length() - log.getFilePointer())
+			{
+				return false;
+			}
+			change = new byte[length];
+			log.readFully(change);
+			CRC32 crc = new CRC32();
+			crc.update(change);
+			if ((int) crc.getValue() != checksum)
+			{
+				return false;
+			}
+		} catch (EOFException e)
+		{
+			return false;
+		}
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+				change));
+		byte type = in.readByte();
+		String name = in.readUTF();
+		if (type == ADD)
+		{
+			float[] vector = new float[GestureRecognizer.VECTOR];
+			for (int i = 0; i < vector.length; i++)
+			{
+				vector[i] = in.readFloat();
+			}
+			recognizer.addPreprocessed(name, vector, 0);
+		} else if (type == REMOVE)
+		{
+			recognizer.removeTemplates(name);
+		} else
+		{
+			return false;
+		}
+		return true;
+	}
+
+	/* Tells different sets of templates apart, by their names and vectors */
+	static int fingerprint(GestureRecognizer recognizer)
+	{
+		CRC32 crc = new CRC32();
+		float[] vectors = recognizer.getVectors();
+		byte[] chunk = new byte[GestureRecognizer.VECTOR * 4];
+		for (int template = 0; template < recognizer.getCount(); template++)
+		{
+			int offset = template * GestureRecognizer.VECTOR;
+			for (int i = 0; i < GestureRecognizer.VECTOR; i++)
+			{
+				int bits = Float.floatToIntBits(vectors[offset + i]);
+				chunk[i * 4] = (byte) (bits >> 24);
+				chunk[i * 4 + 1] = (byte) (bits >> 16);
+				chunk[i * 4 + 2] = (byte) (bits >> 8);
+				chunk[i * 4 + 3] = (byte) bits;
+			}
+			crc.update(chunk);
+
+			/*
+			 * All of the name, as update(int) only takes the low byte: its
+			 * length, then both bytes of every char
+			 */
+			String name = recognizer.getName(template);
+			crc.update(name.length() >> 8);
+			crc.update(name.length());
+			for (int i = 0; i < name.length(); i++)
+			{
+				char c = name.charAt(i);
+				crc.update(c >> 8);
+				crc.update(c);
+			}
+		}
+		return (int) crc.getValue();
+	}
+}
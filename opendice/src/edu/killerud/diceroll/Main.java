@@ -22,6 +22,7 @@
 
 package edu.killerud.diceroll;
 
+import java.io.IOException;
 import java.util.ArrayList;
 
 import android.app.ActionBar;
@@ -33,7 +34,6 @@ import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.media.AudioManager;
-import android.media.MediaPlayer;
 import android.os.Bundle;
 import android.os.PowerManager;
 import android.os.PowerManager.WakeLock;
@@ -54,6 +54,9 @@ import android.widget.ArrayAdapter;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 import android.widget.Toast;
+import edu.killerud.audioassets.AssetPlayer;
+import edu.killerud.audioassets.AudioAssets;
+import edu.killerud.audioassets.NativePlayers;
 
 public class Main extends Activity implements SensorEventListener
 {
@@ -68,7 +71,7 @@ public class Main extends Activity implements SensorEventListener
 
 	private LinearLayout mAppWindow;
 	private final int mTextSize = 50;
-	private static MediaPlayer mMediaPlayer;
+	private static AssetPlayer mRollSound;
 
 	private DieType mDieType = DieType.SIXFACED;
 
@@ -127,9 +130,19 @@ public class Main extends Activity implements SensorEventListener
 		/*
 		 * Sets up the roll sound. Sound by Mike Koenig
 		 * http://soundbible.com/182-Shake-And-Roll-Dice.html
+		 * 
+		 * The player is shared through AudioAssets, so when the activity is
+		 * recreated, like when the screen rotates, we get the one we already
+		 * prepared back instead of opening the sound again.
 		 */
-		mMediaPlayer = MediaPlayer.create(getApplicationContext(),
-				R.raw.dice_roll);
+		try
+		{
+			mRollSound = AudioAssets.get(this).acquire(R.raw.dice_roll);
+		} catch (IOException e)
+		{
+			/* The dice roll just as well without the sound */
+			Log.e("OpenDice", "Could not open the roll sound", e);
+		}
 
 		/* Find the OS sensor manager, and the accelerometer sensor */
 		mSensorManager = (SensorManager) getSystemService(SENSOR_SERVICE);
@@ -236,6 +249,29 @@ public class Main extends Activity implements SensorEventListener
 		mWakeLock.acquire();
 	}
 
+	@Override
+	public void onDestroy()
+	{
+		super.onDestroy();
+		if (mRollSound != null)
+		{
+			mRollSound.release();
+			mRollSound = null;
+		}
+
+		/*
+		 * If we are done for good, nothing should be playing any more. Any
+		 * player still alive after the idle ones are let go is a leak.
+		 */
+		if (isFinishing())
+		{
+			AudioAssets assets = AudioAssets.get(this);
+			assets.logLatency("OpenDice");
+			assets.trim();
+			NativePlayers.logLive("OpenDice");
+		}
+	}
+
 	@Override
 	public void onSaveInstanceState(Bundle outState)
 	{
@@ -355,7 +391,10 @@ public class Main extends Activity implements SensorEventListener
 
 	public static void playRollSound()
 	{
-		mMediaPlayer.start();
+		if (mRollSound != null)
+		{
+			mRollSound.play();
+		}
 	}
 
 	@Override
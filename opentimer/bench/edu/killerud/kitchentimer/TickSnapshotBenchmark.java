@@ -0,0 +1,183 @@
+/**
+ *   Copyright William Killerud 2012
+ *   
+ *   This file is part of OpenTimer.
+ *
+ *   OpenTimer is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   any later version.
+ *
+ *   OpenTimer is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with OpenTimer.  If not, see <http://www.gnu.org/licenses/>.
+ *   
+ *   For questions contact William Killerud at william@killerud.com
+ * 
+ */
+
+package edu.killerud.kitchentimer;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Counts what the service hands the UI a second while counting down 1, 10
+ * and 1000 timers for a minute, with the UI showing and not. The old way
+ * broadcasts an Intent for every tick of every timer, whether the UI is
+ * showing or not, and each broadcast is a call into the system and, if the
+ * UI is showing, another back out to its receiver. The new way calls the
+ * UI's listener in the same process once for every run of the scheduler
+ * that ticked any timer, with an array of what each shows, and doesn't
+ * tick at all while the UI isn't showing.
+ *
+ * The new way is run for real, with the scheduler and the listener doing
+ * what the service and activity do, and the bytes it allocates counted.
+ * The Intents of the old way can't be made off a phone, so they are only
+ * counted.
+ *
+ * java edu.killerud.kitchentimer.TickSnapshotBenchmark [seconds]
+ *
+ * @author William Killerud
+ *
+ */
+public class TickSnapshotBenchmark
+{
+	private static final int[] COUNTS = { 1, 10, 1000 };
+
+	/* Long enough that no timer finishes */
+	private static final long DURATION = 3600000;
+
+	public static void main(String[] args)
+	{
+		int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+
+		/* Once to warm up the JIT, and once for real */
+		for (int round = 0; round < 2; round++)
+		{
+			for (int count : COUNTS)
+			{
+				if (round == 1)
+				{
+					System.out.printf("%d timers%n", count);
+				}
+				for (int showing = 1; showing >= 0; showing--)
+				{
+					Result old = run(count, seconds, showing == 1, false);
+					Result snapshots = run(count, seconds, showing == 1, true);
+					if (round == 1)
+					{
+						String ui = showing == 1 ? "showing" : "not showing";
+						old.report("Broadcasts, UI " + ui);
+						snapshots.report("Snapshots, UI " + ui);
+					}
+				}
+			}
+		}
+	}
+
+	private static Result run(int count, int seconds, final boolean showing,
+			final boolean snapshots)
+	{
+		final Result result = new Result(seconds);
+
+		/* The service's snapshot, and what the activity's views show */
+		final long[] millisLeft = new long[count];
+		final long[] shown = new long[count];
+		final boolean[] ticked = new boolean[1];
+
+		TimerScheduler scheduler = new TimerScheduler(
+				new TimerScheduler.Listener()
+				{
+					public void onTick(int timer, long millis)
+					{
+						if (snapshots)
+						{
+							millisLeft[timer] = millis;
+							ticked[0] = true;
+						} else
+						{
+							result.intents++;
+							result.transactions += showing ? 2 : 1;
+						}
+					}
+
+					public void onFinish(int timer)
+					{
+					}
+				});
+		scheduler.setTicking(showing || !snapshots, 0);
+
+		/* The timers are started spread over the first second */
+		for (int timer = 0; timer < count; timer++)
+		{
+			scheduler.start(timer, DURATION, timer * 1000L / count);
+		}
+		ticked[0] = false;
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		long allocated = threads.getThreadAllocatedBytes(thread);
+		long end = 1000 + seconds * 1000L;
+		while (scheduler.getNextWakeup() < end)
+		{
+			scheduler.run(scheduler.getNextWakeup());
+			result.wakeups++;
+			if (ticked[0] && showing)
+			{
+				result.publishes++;
+				for (int timer = 0; timer < count; timer++)
+				{
+					if (millisLeft[timer] >= 0 && millisLeft[timer] != shown[timer])
+					{
+						shown[timer] = millisLeft[timer];
+						result.updates++;
+					}
+				}
+			}
+			ticked[0] = false;
+		}
+		if (snapshots)
+		{
+			result.bytes = threads.getThreadAllocatedBytes(thread) - allocated;
+		}
+		return result;
+	}
+
+	/**
+	 * What was handed to the UI in a run.
+	 *
+	 * @author William Killerud
+	 *
+	 */
+	private static class Result
+	{
+		final int seconds;
+		long wakeups;
+		long intents;
+		long transactions;
+		long publishes;
+		long updates;
+		long bytes = -1;
+
+		Result(int seconds)
+		{
+			this.seconds = seconds;
+		}
+
+		void report(String name)
+		{
+			System.out.printf("  %-28s %7.1f wakeups/s, %7.1f Intents/s, "
+					+ "%7.1f binder calls/s, %5.1f snapshots/s, %7.1f views "
+					+ "set/s, %s bytes/s%n", name, wakeups / (double) seconds,
+					intents / (double) seconds, transactions
+							/ (double) seconds, publishes / (double) seconds,
+					updates / (double) seconds, bytes < 0 ? "     -"
+							: String.format("%6.1f", bytes / (double) seconds));
+		}
+	}
+}
@@ -0,0 +1,403 @@
+/**
+ *   Copyright William Killerud 2012
+ *   
+ *   This file is part of OpenTimer.
+ *
+ *   OpenTimer is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   any later version.
+ *
+ *   OpenTimer is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with OpenTimer.  If not, see <http://www.gnu.org/licenses/>.
+ *   
+ *   For questions contact William Killerud at william@killerud.com
+ * 
+ */
+
+package edu.killerud.kitchentimer;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Simulates the service's main looper counting down 1, 10 and 1000 timers
+ * for ten minutes, each restarting with a new duration when it finishes,
+ * the old way, with a CountDownTimer for each timer, and with the
+ * TimerScheduler. The looper runs one message at a time, and is woken up
+ * a few millis late when it was idle, like a phone is. Each message and
+ * each tick broadcast takes a while to run, during which nothing else can.
+ *
+ * For each, it tells how many times a minute the looper was woken, how
+ * many ticks were broadcast, how late the timers finished, and how far off
+ * from when it should have the display of a timer changed, by the way the
+ * display was worked out then: rounded down for the old, up for the new.
+ * The scheduler's own time is measured for real.
+ *
+ * java edu.killerud.kitchentimer.TimerSchedulerBenchmark [minutes]
+ *
+ * @author William Killerud
+ *
+ */
+public class TimerSchedulerBenchmark
+{
+	private static final int[] COUNTS = { 1, 10, 1000 };
+
+	/* In micros, like the clock of the simulation */
+	private static final long MAX_WAKE_LATENESS = 4000;
+	private static final long MESSAGE_COST = 20;
+	private static final long BROADCAST_COST = 250;
+
+	/* Timers run for 10 seconds to 10 minutes, whole seconds, as they are set */
+	private static final long MIN_DURATION = 10000;
+	private static final long MAX_DURATION = 600000;
+
+	public static void main(String[] args)
+	{
+		int minutes = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+
+		/* Once to warm up the JIT, and once for real */
+		for (int round = 0; round < 2; round++)
+		{
+			for (int count : COUNTS)
+			{
+				Result old = new Looper(count, minutes).runOld();
+				Result scheduled = new Looper(count, minutes).runScheduled();
+				if (round == 1)
+				{
+					System.out.printf("%d timers%n", count);
+					old.report("CountDownTimer");
+					scheduled.report("TimerScheduler");
+				}
+			}
+		}
+	}
+
+	/**
+	 * The main looper, and the timers on it, on a clock of micros.
+	 *
+	 * @author William Killerud
+	 *
+	 */
+	private static class Looper
+	{
+		private final PriorityQueue<Message> mQueue = new PriorityQueue<Message>();
+		private final Random mRandom = new Random(42);
+		private final Random mDurations = new Random(7);
+		private final int mCount;
+		private final long mEnd;
+		private final Result mResult;
+		private long mClock;
+		private long mSequence;
+
+		/* The deadline, in millis, and the last thing shown of each timer */
+		private final long[] mDeadlines;
+		private final long[] mShown;
+
+		/* Timers that finished in a run of the scheduler, to be restarted */
+		private final int[] mFinished;
+		private int mFinishedCount;
+
+		Looper(int count, int minutes)
+		{
+			mCount = count;
+			mEnd = minutes * 60000000L;
+			mResult = new Result(minutes);
+			mDeadlines = new long[count];
+			mShown = new long[count];
+			mFinished = new int[count];
+		}
+
+		long now()
+		{
+			return mClock / 1000;
+		}
+
+		Message post(long atMillis, Runnable runnable)
+		{
+			Message message = new Message();
+			message.when = atMillis * 1000;
+			message.sequence = mSequence++;
+			message.runnable = runnable;
+			mQueue.add(message);
+			return message;
+		}
+
+		void remove(Message message)
+		{
+			mQueue.remove(message);
+		}
+
+		void loop()
+		{
+			while (!mQueue.isEmpty() && mQueue.peek().when < mEnd)
+			{
+				Message message = mQueue.poll();
+				if (mClock < message.when)
+				{
+					mClock = message.when
+							+ (long) (mRandom.nextDouble() * MAX_WAKE_LATENESS);
+				}
+				mResult.wakeups++;
+				mClock += MESSAGE_COST;
+				mResult.busy += MESSAGE_COST;
+				message.runnable.run();
+			}
+		}
+
+		/* The timers start at random in the first minute */
+		long startAt()
+		{
+			return (long) (mRandom.nextDouble() * 60000);
+		}
+
+		long nextDuration()
+		{
+			long duration = MIN_DURATION
+					+ (long) (mDurations.nextDouble() * (MAX_DURATION - MIN_DURATION));
+			return duration / 1000 * 1000;
+		}
+
+		/*
+		 * The display changed to show the millis left, rounded down or up,
+		 * and should have when the deadline was that close, or closer
+		 */
+		void display(int timer, long millisLeft, boolean roundUp)
+		{
+			long seconds = roundUp ? (millisLeft + 999) / 1000
+					: millisLeft / 1000;
+			long due = mDeadlines[timer] - (roundUp ? seconds : seconds + 1)
+					* 1000;
+			mClock += BROADCAST_COST;
+			mResult.busy += BROADCAST_COST;
+			mResult.ticks++;
+			if (mShown[timer] >= 0)
+			{
+				mResult.addOffset(now() - due);
+				mResult.skipped += Math.max(0, mShown[timer] - seconds - 1);
+			}
+			mShown[timer] = seconds;
+		}
+
+		void finished(int timer)
+		{
+			mClock += BROADCAST_COST;
+			mResult.busy += BROADCAST_COST;
+			mResult.addLateness(now() - mDeadlines[timer]);
+		}
+
+		/*
+		 * A CountDownTimer of a second, as Android has it: the next tick is
+		 * a second from when the last one started, less what is left over
+		 * once it is less than a second
+		 */
+		Result runOld()
+		{
+			for (int i = 0; i < mCount; i++)
+			{
+				final int timer = i;
+				post(startAt(), new Runnable()
+				{
+					public void run()
+					{
+						startOld(timer);
+					}
+				});
+			}
+			loop();
+			return mResult;
+		}
+
+		void startOld(final int timer)
+		{
+			mDeadlines[timer] = now() + nextDuration();
+			mShown[timer] = -1;
+			post(now(), new Runnable()
+			{
+				public void run()
+				{
+					long left = mDeadlines[timer] - now();
+					if (left <= 0)
+					{
+						finished(timer);
+						startOld(timer);
+					} else if (left < 1000)
+					{
+						post(now() + left, this);
+					} else
+					{
+						long lastTickStart = now();
+						display(timer, left, false);
+						long delay = lastTickStart + 1000 - now();
+						while (delay < 0)
+						{
+							delay += 1000;
+						}
+						post(now() + delay, this);
+					}
+				}
+			});
+		}
+
+		/* The way the service does it, with one wakeup posted at a time */
+		Result runScheduled()
+		{
+			final TimerScheduler scheduler = new TimerScheduler(
+					new TimerScheduler.Listener()
+					{
+						public void onTick(int timer, long millisLeft)
+						{
+							display(timer, millisLeft, true);
+						}
+
+						public void onFinish(int timer)
+						{
+							finished(timer);
+							mFinished[mFinishedCount++] = timer;
+						}
+					});
+			final Message[] posted = new Message[1];
+			final Runnable wakeup = new Runnable()
+			{
+				public void run()
+				{
+					long start = System.nanoTime();
+					scheduler.run(now());
+					mResult.nanos += System.nanoTime() - start;
+					restartFinished(scheduler);
+					schedule(scheduler, this, posted);
+				}
+			};
+			for (int i = 0; i < mCount; i++)
+			{
+				final int timer = i;
+				post(startAt(), new Runnable()
+				{
+					public void run()
+					{
+						startScheduled(scheduler, timer);
+						schedule(scheduler, wakeup, posted);
+					}
+				});
+			}
+			loop();
+			return mResult;
+		}
+
+		void startScheduled(TimerScheduler scheduler, int timer)
+		{
+			long duration = nextDuration();
+			mDeadlines[timer] = now() + duration;
+			mShown[timer] = -1;
+			long start = System.nanoTime();
+			scheduler.start(timer, duration, now());
+			mResult.nanos += System.nanoTime() - start;
+		}
+
+		void restartFinished(TimerScheduler scheduler)
+		{
+			for (int i = 0; i < mFinishedCount; i++)
+			{
+				startScheduled(scheduler, mFinished[i]);
+			}
+			mFinishedCount = 0;
+		}
+
+		void schedule(TimerScheduler scheduler, Runnable wakeup,
+				Message[] posted)
+		{
+			if (posted[0] != null)
+			{
+				remove(posted[0]);
+				posted[0] = null;
+			}
+			long next = scheduler.getNextWakeup();
+			if (next != TimerScheduler.NEVER)
+			{
+				posted[0] = post(Math.max(next, now()), wakeup);
+			}
+		}
+	}
+
+	/**
+	 * A runnable posted to run at a time, in the order it was posted.
+	 *
+	 * @author William Killerud
+	 *
+	 */
+	private static class Message implements Comparable<Message>
+	{
+		long when;
+		long sequence;
+		Runnable runnable;
+
+		public int compareTo(Message other)
+		{
+			if (when != other.when)
+			{
+				return when < other.when ? -1 : 1;
+			}
+			return sequence < other.sequence ? -1
+					: sequence > other.sequence ? 1 : 0;
+		}
+	}
+
+	/**
+	 * What happened on the looper of a simulation.
+	 *
+	 * @author William Killerud
+	 *
+	 */
+	private static class Result
+	{
+		final int minutes;
+		long wakeups;
+		long ticks;
+		long busy;
+		long nanos;
+		long skipped;
+		long offsets;
+		long offsetSum;
+		long maxLate;
+		long finishes;
+		long latenessSum;
+		long maxLateness;
+
+		Result(int minutes)
+		{
+			this.minutes = minutes;
+		}
+
+		void addOffset(long millis)
+		{
+			offsets++;
+			offsetSum += Math.abs(millis);
+			maxLate = Math.max(maxLate, millis);
+		}
+
+		void addLateness(long millis)
+		{
+			finishes++;
+			latenessSum += millis;
+			maxLateness = Math.max(maxLateness, millis);
+		}
+
+		void report(String name)
+		{
+			System.out.printf("  %-14s %8.1f wakeups/min, %8.1f ticks/min, "
+					+ "looper %5.1f%% busy, finish %6.1f ms late mean, "
+					+ "%5d max, display %7.1f ms off mean, %5d ms late max, "
+					+ "%4d seconds skipped, scheduler %6.1f us/min%n", name,
+					wakeups / (double) minutes, ticks / (double) minutes,
+					busy / (minutes * 600000.0), latenessSum
+							/ (double) Math.max(1, finishes), maxLateness,
+					offsetSum / (double) Math.max(1, offsets), maxLate,
+					skipped, nanos / 1e3 / minutes);
+		}
+	}
+}
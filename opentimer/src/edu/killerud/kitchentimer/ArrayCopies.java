@@ -0,0 +1,58 @@
+/**
+ *   Copyright William Killerud 2012
+ *   
+ *   This file is part of OpenTimer.
+ *
+ *   OpenTimer is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   any later version.
+ *
+ *   OpenTimer is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with OpenTimer.  If not, see <http://www.gnu.org/licenses/>.
+ *   
+ *   For questions contact William Killerud at william@killerud.com
+ * 
+ */
+
+package edu.killerud.kitchentimer;
+
+import java.util.Arrays;
+
+/**
+ * Copies of arrays at another length, the way Arrays.copyOf makes them, with
+ * what they grew by filled with a value of our choosing. Arrays.copyOf is API
+ * 9, and OpenTimer runs on 7, so the arrays of the timers grow through here.
+ *
+ * @author William Killerud
+ *
+ */
+final class ArrayCopies
+{
+	private ArrayCopies()
+	{
+	}
+
+	static long[] copyOf(long[] array, int length, long fill)
+	{
+		long[] copy = new long[length];
+		int kept = Math.min(array.length, length);
+		System.arraycopy(array, 0, copy, 0, kept);
+		Arrays.fill(copy, kept, length, fill);
+		return copy;
+	}
+
+	static int[] copyOf(int[] array, int length, int fill)
+	{
+		int[] copy = new int[length];
+		int kept = Math.min(array.length, length);
+		System.arraycopy(array, 0, copy, 0, kept);
+		Arrays.fill(copy, kept, length, fill);
+		return copy;
+	}
+}
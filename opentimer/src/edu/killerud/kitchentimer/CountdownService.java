@@ -24,6 +24,7 @@ package edu.killerud.kitchentimer;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import android.app.AlarmManager;
 import android.app.Notification;
@@ -33,14 +34,17 @@ import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
 import android.media.AudioManager;
-import android.media.MediaPlayer;
 import android.media.RingtoneManager;
 import android.net.Uri;
 import android.os.Binder;
-import android.os.CountDownTimer;
+import android.os.Handler;
 import android.os.IBinder;
 import android.os.PowerManager;
+import android.os.SystemClock;
 import android.os.Vibrator;
+import edu.killerud.audioassets.AssetPlayer;
+import edu.killerud.audioassets.AudioAssets;
+import edu.killerud.audioassets.NativePlayers;
 
 public class CountdownService extends Service
 
@@ -56,6 +60,36 @@ public class CountdownService extends Service
 
 	private ArrayList<Timer> timers;
 
+	/*
+	 * Counts every timer down, from deadlines on the elapsedRealtime() clock,
+	 * and tells us the one time to wake up at for whatever is due next. We
+	 * wake up on the main looper for the display, and by an alarm for the
+	 * deadlines, since the looper's clock stops while the phone sleeps.
+	 */
+	private static final String ACTION_DEADLINE = "TIMER_DEADLINE";
+	private TimerScheduler scheduler;
+	private final Handler handler = new Handler();
+	private final Runnable wakeup = new Runnable()
+	{
+		public void run()
+		{
+			runScheduler();
+		}
+	};
+	private AlarmManager alarmManager;
+	private PendingIntent deadlineIntent;
+	private long alarmSetFor = TimerScheduler.NEVER;
+
+	/*
+	 * What each timer shows, or -1 if it isn't counting, handed to the UI all
+	 * at once after every run of the scheduler that ticked any of them. There
+	 * is no UI to tell while no activity is bound, and then the displays
+	 * aren't ticked at all.
+	 */
+	private long[] millisLeft;
+	private boolean ticked;
+	private TimerListener timerListener;
+
 	/*
 	 * Setting up the service to be bindable by an activity. Binding an activity
 	 * to a service allows the activity to make method calls and access
@@ -81,6 +115,34 @@ public class CountdownService extends Service
 		}
 	}
 
+	/**
+	 * Told what happens to the timers, on the main thread. The UI sets one
+	 * with setTimerListener() while it is showing, in place of listening for
+	 * a broadcast for each tick of each timer.
+	 * 
+	 * @author William Killerud
+	 * 
+	 */
+	public interface TimerListener
+	{
+		/*
+		 * The displays of one or more timers changed. The array holds what
+		 * every timer shows, or -1 for those that aren't counting, and is the
+		 * service's own, so it must not be kept past the call.
+		 */
+		public void onTicks(long[] millisLeft, int count);
+
+		public void onTimerAdded();
+
+		public void onTimerRemoved(int timer);
+
+		public void onTimerStopped(int timer);
+
+		public void onAlarmSounding(int timer);
+
+		public void onAlarmStopped(int timer);
+	}
+
 
 
 	@Override
@@ -116,70 +178,185 @@ public class CountdownService extends Service
 		startForeground(NOTIFICATION_ID, notification);
 
 		/* Sets up resources */
+		scheduler = new TimerScheduler(new TimerScheduler.Listener()
+		{
+			public void onTick(int timer, long millisLeft)
+			{
+				timers.get(timer).tick(millisLeft);
+			}
+
+			public void onFinish(int timer)
+			{
+				timers.get(timer).finish();
+			}
+		});
+		scheduler.setTicking(false, SystemClock.elapsedRealtime());
+		alarmManager = (AlarmManager) getSystemService(Context.ALARM_SERVICE);
+		Intent deadline = new Intent(this, CountdownService.class);
+		deadline.setAction(ACTION_DEADLINE);
+		deadlineIntent = PendingIntent.getService(this, 0, deadline, 0);
+
 		timers = new ArrayList<Timer>();
 		timers.add(new Timer(timers.size()));
 		timers.add(new Timer(timers.size()));
 		timers.add(new Timer(timers.size()));
+		millisLeft = new long[timers.size()];
+		Arrays.fill(millisLeft, -1);
 
 		vibrator = (Vibrator) getSystemService(Context.VIBRATOR_SERVICE);
 	}
 
+	@Override
+	public void onDestroy()
+	{
+		for (int i = 0; i < timers.size(); i++)
+		{
+			timers.get(i).stop();
+			timers.get(i).stopAlarm();
+		}
+		handler.removeCallbacks(wakeup);
+
+		/*
+		 * Nothing should be playing once the timers are gone, so any player
+		 * still alive after the idle ones are let go is a leak.
+		 */
+		AudioAssets assets = AudioAssets.get(this);
+		assets.logLatency("CountdownService");
+		assets.trim();
+		NativePlayers.logLive("CountdownService");
+		super.onDestroy();
+	}
+
 	@Override
 	public int onStartCommand(Intent intent, int flags, int startid)
 	{
+		/* The alarm for a deadline, which may have woken the phone for it */
+		if (intent != null && ACTION_DEADLINE.equals(intent.getAction()))
+		{
+			runScheduler();
+		}
 		return Service.START_STICKY;
 	}
 
-	public int announceServiceState()
+	/* Ticks and finishes whatever timers are due, and waits for the next */
+	private void runScheduler()
 	{
+		scheduler.run(SystemClock.elapsedRealtime());
+		scheduleWakeup();
+		publishTicks();
+	}
+
+	/* Hands the UI what the timers show, if it changed */
+	private void publishTicks()
+	{
+		if (ticked && timerListener != null)
+		{
+			timerListener.onTicks(millisLeft, timers.size());
+		}
+		ticked = false;
+	}
+
+	/*
+	 * Starts telling the listener what happens to the timers, or stops with
+	 * null. A new listener is told right away what every timer shows, and
+	 * which alarms are sounding, since it may have missed it.
+	 */
+	public void setTimerListener(TimerListener listener)
+	{
+		timerListener = listener;
+		scheduler.setTicking(listener != null, SystemClock.elapsedRealtime());
+		scheduleWakeup();
+		if (listener == null)
+		{
+			return;
+		}
 		for (int i = 0; i < timers.size(); i++)
 		{
 			if (timers.get(i).isSounding)
 			{
-				Intent intentA = new Intent();
-				intentA.setAction("ALARM_SOUNDING");
-				intentA.putExtra("TIMER_ID", i);
-				sendBroadcast(intentA);
+				listener.onAlarmSounding(i);
+			}
+		}
+		ticked = true;
+		publishTicks();
+	}
+
+	/*
+	 * Wakes us up again when the scheduler next has something due, and
+	 * moves the alarm if the soonest deadline changed
+	 */
+	private void scheduleWakeup()
+	{
+		handler.removeCallbacks(wakeup);
+		long next = scheduler.getNextWakeup();
+		if (next != TimerScheduler.NEVER)
+		{
+			long delay = Math.max(0, next - SystemClock.elapsedRealtime());
+			handler.postAtTime(wakeup, SystemClock.uptimeMillis() + delay);
+		}
+
+		long deadline = scheduler.getNextDeadline();
+		if (deadline != alarmSetFor)
+		{
+			if (deadline == TimerScheduler.NEVER)
+			{
+				alarmManager.cancel(deadlineIntent);
+			} else
+			{
+				alarmManager.set(AlarmManager.ELAPSED_REALTIME_WAKEUP,
+						deadline, deadlineIntent);
 			}
+			alarmSetFor = deadline;
 		}
+	}
+
+	public int getTimerCount()
+	{
 		return timers.size();
 	}
 
 	public void addTimer()
 	{
 		timers.add(new Timer(timers.size()));
-		Intent added = new Intent();
-		added.setAction("TIMER_ADDED");
-		sendBroadcast(added);
+		if (timers.size() > millisLeft.length)
+		{
+			millisLeft = ArrayCopies.copyOf(millisLeft, millisLeft.length * 2,
+					-1);
+		}
+		if (timerListener != null)
+		{
+			timerListener.onTimerAdded();
+		}
 	}
 
 	public void removeTimer()
 	{
 		timers.get(timers.size() - 1).stop();
+		timers.get(timers.size() - 1).stopAlarm();
 		timers.remove(timers.size() - 1);
-		Intent removed = new Intent();
-		removed.setAction("TIMER_REMOVED");
-		removed.putExtra("TIMER_ID", timers.size());
-		sendBroadcast(removed);
+		if (timerListener != null)
+		{
+			timerListener.onTimerRemoved(timers.size());
+		}
 	}
 
 	public void stopTimer(int timerId)
 	{
 		timers.get(timerId).stop();
-		Intent stopped = new Intent();
-		stopped.setAction("TIMER_STOPPED");
-		stopped.putExtra("TIMER_ID", timerId);
-		sendBroadcast(stopped);
+		if (timerListener != null)
+		{
+			timerListener.onTimerStopped(timerId);
+		}
 	}
 
 	public void stopAlarm(int timerId)
 	{
 		timers.get(timerId).stopAlarm();
 		vibrator.cancel();
-		Intent stopped = new Intent();
-		stopped.setAction("TIMER_ALARM_STOPPED");
-		stopped.putExtra("TIMER_ID", timerId);
-		sendBroadcast(stopped);
+		if (timerListener != null)
+		{
+			timerListener.onAlarmStopped(timerId);
+		}
 	}
 
 	public void startTimer(int timerId, long millisInFuture)
@@ -240,15 +417,12 @@ public class CountdownService extends Service
 
 	private class Timer
 	{
-		private CountdownTimer mTimer;
-		private Object mPendingAlarmIntent;
-		private AlarmManager mAlarmManager;
 		private final int mTimerId;
 
 		boolean isSounding;
 		boolean isCounting;
 
-		MediaPlayer mMediaPlayer;
+		AssetPlayer mAlarm;
 		AudioManager mAudioManager;
 
 		PowerManager mPowerManager;
@@ -268,43 +442,29 @@ public class CountdownService extends Service
 			isCounting = true;
 
 			/*
-			 * Uses the systems Alarm Manager to set an alarm at millisInFuture
+			 * Starts counting down, from now by the clock that keeps going
+			 * while the phone sleeps. The scheduler sets the system's Alarm
+			 * Manager to wake the phone up at the deadline, if need be.
 			 * 
 			 * Note that an Alarm in Android doesn't necessarily play a sound.
 			 * They are used by apps to do stuff at certain times, like for
 			 * instance start a download of RSS elements, or play an alarm sound
-			 * like we do in CountdownTimer.onFinish().
+			 * like we do in finish().
 			 */
-			Intent mAlarmIntent = new Intent(getApplicationContext(),
-					OpenTimerActivity.class);
-			mPendingAlarmIntent = PendingIntent.getBroadcast(
-					getApplicationContext(), 1234, mAlarmIntent, 0);
-			mAlarmManager = (AlarmManager) getApplicationContext()
-					.getSystemService(Context.ALARM_SERVICE);
-			mAlarmManager.set(AlarmManager.RTC_WAKEUP, millisInFuture,
-					(PendingIntent) mPendingAlarmIntent);
-
-			/* Starts our countdown timer */
-			mTimer = new CountdownTimer(millisInFuture, 1000);
-			mTimer.start();
+			scheduler.start(mTimerId, millisInFuture, SystemClock
+					.elapsedRealtime());
+			scheduleWakeup();
+			publishTicks();
 		}
 
 		public void stop()
 		{
 			isCounting = false;
 
-			/* Stops the timer */
-			if (mTimer != null)
-			{
-				mTimer.cancel();
-				mTimer = null;
-			}
-
-			/* Stops the alarm as we no longer need it */
-			if (mAlarmManager != null && mPendingAlarmIntent != null)
-			{
-				mAlarmManager.cancel((PendingIntent) mPendingAlarmIntent);
-			}
+			/* Stops the countdown, and the alarm if it was the soonest */
+			scheduler.stop(mTimerId);
+			scheduleWakeup();
+			millisLeft[mTimerId] = -1;
 
 			/* Releases the wake lock (if held) as we no longer need it */
 			if (mWakeLock != null && mWakeLock.isHeld())
@@ -317,10 +477,14 @@ public class CountdownService extends Service
 		{
 			isSounding = false;
 
-			/* Stops the playing alarm sound */
-			if (mMediaPlayer != null)
+			/*
+			 * Stops the playing alarm sound, unless another timer is still
+			 * sounding it
+			 */
+			if (mAlarm != null)
 			{
-				mMediaPlayer.stop();
+				mAlarm.release();
+				mAlarm = null;
 			}
 
 			/* Releases the wake lock (if held) as we no longer need it */
@@ -331,171 +495,124 @@ public class CountdownService extends Service
 
 		}
 
-		/* Our implementation of the CountDownTimer */
-		private class CountdownTimer extends CountDownTimer
-
+		/* Called by the scheduler when the deadline is reached */
+		void finish()
 		{
-			private Intent tick;
+			isCounting = false;
+			isSounding = true;
+			millisLeft[mTimerId] = -1;
 
-			public CountdownTimer(long millisInFuture, long countDownInterval)
+			/*
+			 * The PowerManager and its flags make sure the phone screen
+			 * lights up if it has been locked down. This is called
+			 * AQUIRE_CAUSES_WAKEUP, which basically means that when an app
+			 * acquires a Wake Lock like below (wl.acquire()) the phone
+			 * wakes up from its slumber. The wakeup requires that the flag
+			 * FULL_WAKE_LOCK is also set. The wakelock is released when the
+			 * user stops the alarm. It is important that the lock is
+			 * released, or else the screen won't turn off automatically!
+			 */
+			mPowerManager = (PowerManager) getApplicationContext()
+					.getSystemService(Context.POWER_SERVICE);
+			mWakeLock = mPowerManager.newWakeLock(
+					PowerManager.FULL_WAKE_LOCK
+							| PowerManager.ACQUIRE_CAUSES_WAKEUP
+							| PowerManager.ON_AFTER_RELEASE, "Time is up");
+
+			if (!mWakeLock.isHeld())
 			{
-				super(millisInFuture, countDownInterval);
-
+				mWakeLock.acquire();
 			}
 
-			@Override
-			public void onFinish()
-			{
+			showAlarmFinishedNotification();
 
-				isCounting = false;
-				isSounding = true;
-
-				/*
-				 * The PowerManager and its flags make sure the phone screen
-				 * lights up if it has been locked down. This is called
-				 * AQUIRE_CAUSES_WAKEUP, which basically means that when an app
-				 * acquires a Wake Lock like below (wl.acquire()) the phone
-				 * wakes up from its slumber. The wakeup requires that the flag
-				 * FULL_WAKE_LOCK is also set. The wakelock is released when the
-				 * user stops the alarm. It is important that the lock is
-				 * released, or else the screen won't turn off automatically!
-				 */
-				mPowerManager = (PowerManager) getApplicationContext()
-						.getSystemService(Context.POWER_SERVICE);
-				mWakeLock = mPowerManager.newWakeLock(
-						PowerManager.FULL_WAKE_LOCK
-								| PowerManager.ACQUIRE_CAUSES_WAKEUP
-								| PowerManager.ON_AFTER_RELEASE, "Time is up");
-
-				if (!mWakeLock.isHeld())
-				{
-					mWakeLock.acquire();
-				}
-
-				showAlarmFinishedNotification();
-
-				/*
-				 * Sets up the sound the app plays for an alarm, using the
-				 * default alarm for the particular phone, and some backups just
-				 * in case.
-				 * 
-				 * TODO: Consider allowing the user to select his own alarm
-				 * sound, or bundle our own?
-				 */
-				Uri alertSound = RingtoneManager
-						.getDefaultUri(RingtoneManager.TYPE_ALARM);
+			/*
+			 * Sets up the sound the app plays for an alarm, using the
+			 * default alarm for the particular phone, and some backups just
+			 * in case.
+			 * 
+			 * TODO: Consider allowing the user to select his own alarm
+			 * sound, or bundle our own?
+			 */
+			Uri alertSound = RingtoneManager
+					.getDefaultUri(RingtoneManager.TYPE_ALARM);
+			if (alertSound == null)
+			{
+				alertSound = RingtoneManager
+						.getDefaultUri(RingtoneManager.TYPE_NOTIFICATION);
 				if (alertSound == null)
 				{
 					alertSound = RingtoneManager
-							.getDefaultUri(RingtoneManager.TYPE_NOTIFICATION);
-					if (alertSound == null)
-					{
-						alertSound = RingtoneManager
-								.getDefaultUri(RingtoneManager.TYPE_RINGTONE);
-					}
+							.getDefaultUri(RingtoneManager.TYPE_RINGTONE);
 				}
+			}
 
-				/* Sets up the MediaPlayer and points it to the sound. */
-				mMediaPlayer = new MediaPlayer();
+			/*
+			 * Finds the Audio Manager and checks the alarm volume. If it
+			 * isn't zero (silent) we play the alarm.
+			 * 
+			 * The player comes from AudioAssets, which prepares the sound
+			 * once and shares it, so timers finishing at the same time
+			 * sound one alarm rather than several on top of each other,
+			 * and it keeps playing until the last of them is stopped.
+			 */
+			mAudioManager = (AudioManager) getApplicationContext()
+					.getSystemService(Context.AUDIO_SERVICE);
+			if (alertSound != null
+					&& mAudioManager
+							.getStreamVolume(AudioManager.STREAM_ALARM) != 0)
+			{
 				try
 				{
-					mMediaPlayer.setDataSource(getApplicationContext(),
-							alertSound);
-				} catch (IllegalArgumentException e1)
-				{
-					/*
-					 * The media player was given a bad parameter.
-					 * 
-					 * Bad parameter, bad! >:(
-					 */
-					// Log.e("CountdownTimer",
-					// "Illegal argument exception:" + e1.toString());
-				} catch (SecurityException e1)
-				{
-					/*
-					 * We were somehow not allowed access to a required
-					 * resource. This exception is mainly a sign that the app
-					 * lacks a permission in AndroidManifest.xml.
-					 */
-					// Log.e("CountdownTimer",
-					// "Security exception: " + e1.toString());
-				} catch (IllegalStateException e1)
-				{
-					/*
-					 * The media player was in a state that didn't allow for
-					 * this particular operation right now.
-					 */
-					// Log.e("CountdownService",
-					// "Illegal state exception: " + e1.toString());
-				} catch (IOException e1)
-				{
-					/*
-					 * The app could not read the sound file. We have nothing to
-					 * play! This isn't that critical, as we vibrate as well.
-					 */
-					// Log.e("CountdownTimer", "IOException: " + e1.toString());
-				}
-
-				/*
-				 * Finds the Audio Manager and checks the media volume. If it
-				 * isn't zero (silent) we play the alarm.
-				 */
-				mAudioManager = (AudioManager) getApplicationContext()
-						.getSystemService(Context.AUDIO_SERVICE);
-				if (mAudioManager.getStreamVolume(AudioManager.STREAM_ALARM) != 0)
-				{
-					mMediaPlayer.setAudioStreamType(AudioManager.STREAM_ALARM);
-
-					/* Don't stop until the user has responded! */
-					mMediaPlayer.setLooping(true);
-					try
-					{
-						mMediaPlayer.prepare();
-					} catch (IllegalStateException e)
+					if (mAlarm == null)
 					{
-						// Log.e("CountdownService", "Illegal state exception: "
-						// + e.toString());
-					} catch (IOException e)
-					{
-						// Log.e("CountdownTimer", "IOException: " +
-						// e.toString());
+						/* Don't stop until the user has responded! */
+						mAlarm = AudioAssets.get(getApplicationContext())
+								.acquire(alertSound,
+										AudioManager.STREAM_ALARM, true);
 					}
-					mMediaPlayer.start();
-				}
-
-				/* Starts vibrating, repeating until cancel()-ed */
-				try
-				{
-					vibrator.vibrate(vibratorPattern, 0);
-				} catch (Exception e)
+					mAlarm.play();
+				} catch (IOException e)
 				{
-					/* Already vibrating, no biggie */
-					// Log.e("CountdownTimer",
-					// "Vibrator exception: " + e.toString());
+					/*
+					 * The app could not read the sound, or was not
+					 * allowed to. We have nothing to play! This isn't that
+					 * critical, as we vibrate as well.
+					 */
+					// Log.e("CountdownTimer", "IOException: " + e.toString());
 				}
+			}
 
-				/*
-				 * Broadcasts that the alarm finished, so we can update our UI
-				 * and let the user turn the damned thing off!
-				 */
-				Intent alarm = new Intent();
-				alarm.setAction("ALARM_SOUNDING");
-				alarm.putExtra("TIMER_ID", mTimerId);
-				sendBroadcast(alarm);
-
+			/* Starts vibrating, repeating until cancel()-ed */
+			try
+			{
+				vibrator.vibrate(vibratorPattern, 0);
+			} catch (Exception e)
+			{
+				/* Already vibrating, no biggie */
+				// Log.e("CountdownTimer",
+				// "Vibrator exception: " + e.toString());
 			}
 
-			@Override
-			public void onTick(long millisUntillFinished)
+			/*
+			 * Tells the UI that the alarm finished, so it can let the user
+			 * turn the damned thing off! If there is no UI, it is told when
+			 * there is one again.
+			 */
+			if (timerListener != null)
 			{
-				/* Broadcasts the tick, so we can update our UI */
-				tick = new Intent();
-				tick.setAction("TIMER_TICK");
-				tick.putExtra("TIMER_ID", mTimerId);
-				tick.putExtra("TIME_LEFT", millisUntillFinished);
-				sendBroadcast(tick);
+				timerListener.onAlarmSounding(mTimerId);
 			}
+		}
 
+		/*
+		 * Called by the scheduler every time the display changes. The UI is
+		 * told once the scheduler is done, with every other timer it ticked.
+		 */
+		void tick(long shown)
+		{
+			millisLeft[mTimerId] = shown;
+			ticked = true;
 		}
 	}
 }
\ No newline at end of file
@@ -69,21 +69,23 @@ public class OpenTimerActivity extends Activity
 		{
 			countdownService = ((CountdownService.ServiceBinder) service)
 					.getService();
-			countdownService.announceServiceState();
 
-			if (countdownService.announceServiceState() != timerViews.size())
+			if (countdownService.getTimerCount() != timerViews.size())
 			{
 				for (int i = 0; i < timerViews.size(); i++)
 				{
 					timerViews.get(i).remove();
 				}
-				for (int i = 0; i < countdownService.announceServiceState(); i++)
+				for (int i = 0; i < countdownService.getTimerCount(); i++)
 				{
 					addTimerView();
 				}
 			}
 
 			contentLayout.removeView(findViewById(R.id.tvLoading));
+
+			/* Tells us what the timers show now, and which are sounding */
+			countdownService.setTimerListener(timerListener);
 		}
 
 		public void onServiceDisconnected(ComponentName className)
@@ -146,10 +148,13 @@ public class OpenTimerActivity extends Activity
 	public void onResume()
 	{
 		super.onResume();
-		registerBroadcastReceiver();
 
 		Intent bindIntent = new Intent(this, CountdownService.class);
 		bindService(bindIntent, countdownServiceConnection, Context.BIND_IMPORTANT);
+		if (countdownService != null)
+		{
+			countdownService.setTimerListener(timerListener);
+		}
 
 		Intent startService = new Intent(this, CountdownService.class);
 		startService(startService);
@@ -170,7 +175,12 @@ public class OpenTimerActivity extends Activity
 	public void onPause()
 	{
 		super.onPause();
-		unregisterReceiver(broadcastReceiver);
+
+		/* Nothing is shown, so the service needn't tick the displays */
+		if (countdownService != null)
+		{
+			countdownService.setTimerListener(null);
+		}
 		unbindService(countdownServiceConnection);
 		shutDownServiceIfNotUsed();
 	}
@@ -223,7 +233,7 @@ public class OpenTimerActivity extends Activity
 		switch (item.getItemId())
 		{
 		case R.id.stopAll:
-			for (int i = 0; i < countdownService.announceServiceState(); i++)
+			for (int i = 0; i < countdownService.getTimerCount(); i++)
 			{
 				countdownService.stopTimer(i);
 			}
@@ -236,20 +246,6 @@ public class OpenTimerActivity extends Activity
 		}
 	}
 
-	protected void registerBroadcastReceiver()
-	{
-		IntentFilter ifilter = new IntentFilter();
-		ifilter.addAction("TIMER_ADDED");
-		ifilter.addAction("TIMER_REMOVED");
-		ifilter.addAction("TIMER_STOPPED");
-		ifilter.addAction("TIMER_ALARM_STOPPED");
-		ifilter.addAction("TIMER_STARTED");
-		// ifilter.addAction("NUMBER_OF_TIMERS");
-		ifilter.addAction("TIMER_TICK");
-		ifilter.addAction("ALARM_SOUNDING");
-		registerReceiver(broadcastReceiver, new IntentFilter(ifilter));
-	}
-
 	protected void addTimer()
 	{
 		countdownService.addTimer();
@@ -265,7 +261,7 @@ public class OpenTimerActivity extends Activity
 
 	protected void removeTimer()
 	{
-		if (countdownService.announceServiceState() > 0)
+		if (countdownService.getTimerCount() > 0)
 		{
 			countdownService.removeTimer();
 		}
@@ -305,42 +301,48 @@ public class OpenTimerActivity extends Activity
 		timePicker.addView(secondsPicker);
 	}
 
-	private final BroadcastReceiver broadcastReceiver = new BroadcastReceiver()
+	/*
+	 * Told by the service what happens to the timers, while we are showing.
+	 * The ticks of all the timers come at once, as what each shows.
+	 */
+	private final CountdownService.TimerListener timerListener = new CountdownService.TimerListener()
 	{
-
-		@Override
-		public void onReceive(Context context, Intent intent)
+		public void onTicks(long[] millisLeft, int count)
 		{
-			if (intent == null)
+			count = Math.min(count, timerViews.size());
+			for (int i = 0; i < count; i++)
 			{
-				return;
+				if (millisLeft[i] >= 0)
+				{
+					timerViews.get(i).updateTick(millisLeft[i]);
+				}
 			}
-			if (intent.getAction().equals("TIMER_TICK"))
-			{
-				timerViews.get(intent.getIntExtra("TIMER_ID", -1)).updateTick(
-						intent.getLongExtra("TIME_LEFT", 0l));
-			} else if (intent.getAction().equals("TIMER_REMOVED"))
-			{
-				removeTimerView();
-			} else if (intent.getAction().equals("TIMER_STOPPED"))
-			{
-				timerViews.get(intent.getIntExtra("TIMER_ID", -1)).resetUI();
+		}
 
-			} else if (intent.getAction().equals("ALARM_SOUNDING"))
-			{
-				timerViews.get(intent.getIntExtra("TIMER_ID", -1))
-						.setSounding();
-			} else if (intent.getAction().equals("TIMER_ALARM_STOPPED"))
+		public void onTimerAdded()
+		{
+			addTimerView();
+		}
 
-			{
-				timerViews.get(intent.getIntExtra("TIMER_ID", -1)).resetUI();
-			} else if (intent.getAction().equals("TIMER_ADDED"))
-			{
-				addTimerView();
-			}
+		public void onTimerRemoved(int timer)
+		{
+			removeTimerView();
+		}
 
+		public void onTimerStopped(int timer)
+		{
+			timerViews.get(timer).resetUI();
 		}
 
+		public void onAlarmSounding(int timer)
+		{
+			timerViews.get(timer).setSounding();
+		}
+
+		public void onAlarmStopped(int timer)
+		{
+			timerViews.get(timer).resetUI();
+		}
 	};
 
 	public static int getHours()
@@ -0,0 +1,347 @@
+/**
+ *   Copyright William Killerud 2012
+ *   
+ *   This file is part of OpenTimer.
+ *
+ *   OpenTimer is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   any later version.
+ *
+ *   OpenTimer is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with OpenTimer.  If not, see <http://www.gnu.org/licenses/>.
+ *   
+ *   For questions contact William Killerud at william@killerud.com
+ * 
+ */
+
+package edu.killerud.kitchentimer;
+
+/**
+ * Counts down every timer of the app at once. Each timer has a deadline,
+ * set once when it starts, on a clock that only goes forward, like
+ * SystemClock.elapsedRealtime(). What it shows, and when it finishes, is
+ * worked out from the deadline every time, so a timer woken late one second
+ * is not late the next, the way a CountDownTimer that waits a second from
+ * its last tick is.
+ * 
+ * The timers are kept in a min-heap by when their display next changes,
+ * which is every whole second before the deadline, and then the deadline.
+ * So whatever the number of timers, there is only ever one time to wake up
+ * at: the top of the heap. Each time run() is called, it ticks the timers
+ * that are due and tells when to call it next.
+ * 
+ * Timers whose display changes within DISPLAY_SLACK_MILLIS of the one that
+ * is due are ticked along with it, showing their next second that much
+ * early, so many timers don't each wake us up for their own second. A
+ * deadline is never run early, though.
+ * 
+ * When nobody is looking at the timers, setTicking(false) stops the ticks,
+ * and the only times to wake up at are the deadlines.
+ * 
+ * Nothing here knows about Android, so it can be run and timed on a JVM.
+ * It is not thread safe; use it from one thread, like the main looper.
+ * 
+ * @author William Killerud
+ * 
+ */
+public class TimerScheduler
+{
+	/**
+	 * Told when timers tick and finish, from run(), start() and setTicking().
+	 * 
+	 * @author William Killerud
+	 * 
+	 */
+	public interface Listener
+	{
+		/*
+		 * The display of the timer changed. It has the given millis left,
+		 * rounded up to a whole second, which is what it shows until the
+		 * next tick.
+		 */
+		public void onTick(int timer, long millisLeft);
+
+		/* The timer reached its deadline */
+		public void onFinish(int timer);
+	}
+
+	/* How often the display of a timer changes */
+	public static final long DISPLAY_MILLIS = 1000;
+
+	/* How much early a display may change, to share a wakeup */
+	public static final long DISPLAY_SLACK_MILLIS = 50;
+
+	/* What run() returns when no timer is counting */
+	public static final long NEVER = Long.MAX_VALUE;
+
+	private final Listener mListener;
+
+	/* The deadline of each timer, and when its display next changes */
+	private long[] mDeadlines = new long[4];
+	private long[] mNextTicks = new long[4];
+
+	/* The counting timers, by their next tick, and where each is in it, or -1 */
+	private int[] mHeap = new int[4];
+	private int[] mHeapIndex = new int[] { -1, -1, -1, -1 };
+	private int mSize;
+
+	/* Times run() was called, for measuring */
+	private long mWakeups;
+
+	/* Whether the displays are ticked, or only the deadlines run */
+	private boolean mTicking = true;
+
+	public TimerScheduler(Listener listener)
+	{
+		mListener = listener;
+	}
+
+	/*
+	 * Starts counting the timer down from now, or again from now if it was
+	 * counting already. Ticks it once right away, like a CountDownTimer, if
+	 * ticking. The time to wake up at may be sooner afterwards, see
+	 * getNextWakeup().
+	 */
+	public void start(int timer, long millisInFuture, long now)
+	{
+		ensureCapacity(timer + 1);
+		mDeadlines[timer] = now + millisInFuture;
+		long shown = roundUp(millisInFuture);
+		mNextTicks[timer] = nextTick(mDeadlines[timer], shown);
+		if (mHeapIndex[timer] < 0)
+		{
+			mHeap[mSize] = timer;
+			mHeapIndex[timer] = mSize;
+			mSize++;
+		}
+		siftUp(mHeapIndex[timer]);
+		siftDown(mHeapIndex[timer]);
+		if (mTicking)
+		{
+			mListener.onTick(timer, shown);
+		}
+	}
+
+	/*
+	 * Starts or stops ticking the displays. Starting ticks every counting
+	 * timer right away, with what it shows now, since none were ticked while
+	 * stopped. The deadlines run either way.
+	 */
+	public void setTicking(boolean ticking, long now)
+	{
+		if (ticking == mTicking)
+		{
+			return;
+		}
+		mTicking = ticking;
+		for (int i = 0; i < mSize; i++)
+		{
+			int timer = mHeap[i];
+			long left = mDeadlines[timer] - now;
+			mNextTicks[timer] = left > 0 ? nextTick(mDeadlines[timer],
+					roundUp(left)) : mDeadlines[timer];
+		}
+		for (int i = mSize / 2 - 1; i >= 0; i--)
+		{
+			siftDown(i);
+		}
+		if (ticking)
+		{
+			for (int i = 0; i < mSize; i++)
+			{
+				int timer = mHeap[i];
+				long left = mDeadlines[timer] - now;
+				if (left > 0)
+				{
+					mListener.onTick(timer, roundUp(left));
+				}
+			}
+		}
+	}
+
+	public boolean isTicking()
+	{
+		return mTicking;
+	}
+
+	/* Stops counting the timer down, if it was */
+	public void stop(int timer)
+	{
+		if (timer >= mHeapIndex.length || mHeapIndex[timer] < 0)
+		{
+			return;
+		}
+		int at = mHeapIndex[timer];
+		mHeapIndex[timer] = -1;
+		mSize--;
+		if (at < mSize)
+		{
+			int moved = mHeap[mSize];
+			mHeap[at] = moved;
+			mHeapIndex[moved] = at;
+			siftUp(at);
+			siftDown(mHeapIndex[moved]);
+		}
+	}
+
+	public boolean isCounting(int timer)
+	{
+		return timer < mHeapIndex.length && mHeapIndex[timer] >= 0;
+	}
+
+	/* The millis left of a counting timer, or 0 if it isn't counting */
+	public long getMillisLeft(int timer, long now)
+	{
+		return isCounting(timer) ? Math.max(0, mDeadlines[timer] - now) : 0;
+	}
+
+	/* How many timers are counting */
+	public int getCount()
+	{
+		return mSize;
+	}
+
+	/* When run() must be called next, or NEVER if no timer is counting */
+	public long getNextWakeup()
+	{
+		return mSize == 0 ? NEVER : mNextTicks[mHeap[0]];
+	}
+
+	/* The soonest deadline of all the timers, or NEVER */
+	public long getNextDeadline()
+	{
+		long soonest = NEVER;
+		for (int i = 0; i < mSize; i++)
+		{
+			soonest = Math.min(soonest, mDeadlines[mHeap[i]]);
+		}
+		return soonest;
+	}
+
+	/*
+	 * Ticks every timer whose display changes by now, or within the slack of
+	 * now, and finishes those whose deadline has passed. Returns when it must
+	 * be called next.
+	 */
+	public long run(long now)
+	{
+		mWakeups++;
+		while (mSize > 0)
+		{
+			int timer = mHeap[0];
+			long tick = mNextTicks[timer];
+			long deadline = mDeadlines[timer];
+			if (tick > now
+					&& (tick > now + DISPLAY_SLACK_MILLIS || tick == deadline))
+			{
+				break;
+			}
+			if (deadline <= now)
+			{
+				stop(timer);
+				mListener.onFinish(timer);
+				continue;
+			}
+
+			/*
+			 * Shows the latest second that is due, skipping any that were
+			 * missed while we weren't woken, and never past the deadline
+			 */
+			long shown = roundUp(deadline - Math.max(now, tick));
+			mNextTicks[timer] = nextTick(deadline, shown);
+			siftDown(0);
+			mListener.onTick(timer, shown);
+		}
+		return getNextWakeup();
+	}
+
+	/* Times run() has been called */
+	public long getWakeupCount()
+	{
+		return mWakeups;
+	}
+
+	/*
+	 * When the display next changes from showing the given millis, or only
+	 * the deadline if not ticking
+	 */
+	private long nextTick(long deadline, long shown)
+	{
+		if (!mTicking)
+		{
+			return deadline;
+		}
+		return Math.min(deadline - shown + DISPLAY_MILLIS, deadline);
+	}
+
+	private static long roundUp(long millis)
+	{
+		return (millis + DISPLAY_MILLIS - 1) / DISPLAY_MILLIS * DISPLAY_MILLIS;
+	}
+
+	private void ensureCapacity(int timers)
+	{
+		if (timers <= mDeadlines.length)
+		{
+			return;
+		}
+		int capacity = Math.max(timers, mDeadlines.length * 2);
+		mDeadlines = ArrayCopies.copyOf(mDeadlines, capacity, 0);
+		mNextTicks = ArrayCopies.copyOf(mNextTicks, capacity, 0);
+		mHeap = ArrayCopies.copyOf(mHeap, capacity, 0);
+		mHeapIndex = ArrayCopies.copyOf(mHeapIndex, capacity, -1);
+	}
+
+	private void siftUp(int at)
+	{
+		int timer = mHeap[at];
+		long tick = mNextTicks[timer];
+		while (at > 0)
+		{
+			int parent = (at - 1) / 2;
+			if (mNextTicks[mHeap[parent]] <= tick)
+			{
+				break;
+			}
+			mHeap[at] = mHeap[parent];
+			mHeapIndex[mHeap[at]] = at;
+			at = parent;
+		}
+		mHeap[at] = timer;
+		mHeapIndex[timer] = at;
+	}
+
+	private void siftDown(int at)
+	{
+		int timer = mHeap[at];
+		long tick = mNextTicks[timer];
+		while (true)
+		{
+			int child = at * 2 + 1;
+			if (child >= mSize)
+			{
+				break;
+			}
+			if (child + 1 < mSize
+					&& mNextTicks[mHeap[child + 1]] < mNextTicks[mHeap[child]])
+			{
+				child++;
+			}
+			if (mNextTicks[mHeap[child]] >= tick)
+			{
+				break;
+			}
+			mHeap[at] = mHeap[child];
+			mHeapIndex[mHeap[at]] = at;
+			at = child;
+		}
+		mHeap[at] = timer;
+		mHeapIndex[timer] = at;
+	}
+}
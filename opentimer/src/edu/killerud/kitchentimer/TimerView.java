@@ -49,6 +49,23 @@ public class TimerView
 	boolean isSounding;
 	private CountdownService countdownService;
 
+	/*
+	 * What the display shows, or -1 when it was reset, so a tick that changes
+	 * nothing sets no text. The service hands over what every timer shows at
+	 * once, and most of them show the same as before.
+	 */
+	private long shownMillis = -1;
+
+	/* "00" to "99", so a tick doesn't make new strings */
+	private static final String[] TWO_DIGITS = new String[100];
+	static
+	{
+		for (int i = 0; i < TWO_DIGITS.length; i++)
+		{
+			TWO_DIGITS[i] = (i < 10) ? "0" + i : "" + i;
+		}
+	}
+
 	public TimerView(Context context, int timerViewId,
 			CountdownService serviceBinder)
 	{
@@ -210,17 +227,28 @@ public class TimerView
 		hours.setText("00");
 		minutes.setText("00");
 		seconds.setText("00");
+		shownMillis = -1;
 	}
 
 	public void updateTick(long millisUntillFinished)
 	{
+		if (millisUntillFinished == shownMillis)
+		{
+			return;
+		}
+		shownMillis = millisUntillFinished;
 		int hours = (int) (millisUntillFinished / 3600000);
 		int minutes = (int) (millisUntillFinished / 60000) - (hours * 60);
 		int seconds = (int) (millisUntillFinished / 1000) - (hours * 60 * 60)
 				- (minutes * 60);
-		this.hours.setText((hours < 10) ? "0" + hours : "" + hours);
-		this.minutes.setText((minutes < 10) ? "0" + minutes : "" + minutes);
-		this.seconds.setText((seconds < 10) ? "0" + seconds : "" + seconds);
+		this.hours.setText(twoDigits(hours));
+		this.minutes.setText(TWO_DIGITS[minutes]);
+		this.seconds.setText(TWO_DIGITS[seconds]);
+	}
+
+	private static String twoDigits(int value)
+	{
+		return value < TWO_DIGITS.length ? TWO_DIGITS[value] : "" + value;
 	}
 
 	/* Used by the UI for object reference */
@@ -264,7 +292,7 @@ public class TimerView
 		hours.setText("00");
 		minutes.setText("00");
 		seconds.setText("00");
-
+		shownMillis = -1;
 	}
 
 }
@@ -0,0 +1,82 @@
+package hiof.enigma.android.soundboard;
+
+/**
+ * Times mixing with every voice busy, for a growing number of voices, and
+ * prints how many voice blocks and voice frames are mixed per millisecond.
+ * A block has to be mixed in well under its own length, 5.8 ms at 256
+ * frames and 44.1 kHz, or the speaker runs dry.
+ * 
+ * java hiof.enigma.android.soundboard.MixerBenchmark [block frames]
+ * 
+ * @author William Killerud
+ * 
+ */
+public class MixerBenchmark
+{
+	private static final int SAMPLE_RATE = 44100;
+	private static final int[] VOICES = { 1, 2, 4, 8, 16, 32, 64 };
+	private static final long RUN_NANOS = 500000000l;
+
+	public static void main(String[] args)
+	{
+		int blockFrames = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+
+		/* Long enough that no voice ends while we time it */
+		short[] pcm = new short[SAMPLE_RATE * 60];
+		for (int i = 0; i < pcm.length; i++)
+		{
+			pcm[i] = (short) (Math.sin(i * 0.05) * 8000);
+		}
+		Sample sample = new Sample(pcm, SAMPLE_RATE);
+
+		for (int voices : VOICES)
+		{
+			for (int unity = 1; unity >= 0; unity--)
+			{
+				Mixer mixer = new Mixer(voices, blockFrames,
+						Mixer.STEAL_QUIETEST);
+				mixer.setLimitPerSample(voices);
+				for (int v = 0; v < voices; v++)
+				{
+					mixer.start(sample, unity == 1 ? 1 : 0.5f);
+				}
+
+				/* Warm up, then keep mixing until enough time has passed */
+				long checksum = 0;
+				for (int i = 0; i < 2000; i++)
+				{
+					checksum += mixer.mix()[i % blockFrames];
+				}
+				int blocks = 0;
+				long start = System.nanoTime();
+				long elapsed;
+				do
+				{
+					for (int i = 0; i < 100; i++)
+					{
+						checksum += mixer.mix()[i % blockFrames];
+						if (mixer.getActiveVoiceCount() < voices)
+						{
+							/* Ran out of sample, start them over */
+							mixer.stopAll();
+							for (int v = 0; v < voices; v++)
+							{
+								mixer.start(sample, unity == 1 ? 1 : 0.5f);
+							}
+						}
+					}
+					blocks += 100;
+					elapsed = System.nanoTime() - start;
+				} while (elapsed < RUN_NANOS);
+
+				double millis = elapsed / 1e6;
+				System.out.printf("%2d voices, %s gain: %.1f us per block, "
+						+ "%.0f voice blocks/ms, %.0f voice frames/ms "
+						+ "(%d)%n", voices, unity == 1 ? "unity" : "half ",
+						millis * 1000 / blocks, (double) blocks * voices
+								/ millis, (double) blocks * voices
+								* blockFrames / millis, checksum & 0xff);
+			}
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package hiof.enigma.android.soundboard;
+
+import java.io.File;
+
+/**
+ * Renders a burst of taps through the mixer to a WAV file, the way a user
+ * hammering the buttons would, and checks what came out: that taps overlap
+ * instead of cutting each other off, that no more voices play than there
+ * are, that a loud mix is clipped rather than wrapped around, and that the
+ * quietest voice is the one stolen when asked to.
+ * 
+ * java hiof.enigma.android.soundboard.MixerRender [file.wav]
+ * 
+ * @author William Killerud
+ * 
+ */
+public class MixerRender
+{
+	private static final int SAMPLE_RATE = 44100;
+	private static final int BLOCK_FRAMES = 256;
+	private static final int VOICES = 8;
+	private static final int SECONDS = 4;
+
+	/* A tap every this many blocks, about 17 a second */
+	private static final int TAP_EVERY = 10;
+
+	public static void main(String[] args) throws Exception
+	{
+		File file = new File(args.length > 0 ? args[0] : "mixer.wav");
+		Sample coin = tone(988, 0.6, 0.5);
+		Sample tube = tone(196, 1.2, 0.8);
+
+		boolean right = true;
+		int[] policies = { Mixer.STEAL_OLDEST, Mixer.STEAL_QUIETEST };
+		for (int policy : policies)
+		{
+			Mixer mixer = new Mixer(VOICES, BLOCK_FRAMES, policy);
+			mixer.setLimitPerSample(VOICES - 2);
+
+			int blocks = SECONDS * SAMPLE_RATE / BLOCK_FRAMES;
+			short[] out = new short[blocks * BLOCK_FRAMES];
+			int mostVoices = 0;
+			int clipped = 0;
+			for (int block = 0; block < blocks; block++)
+			{
+				if (block % TAP_EVERY == 0)
+				{
+					/* Mostly coins, with the odd tube that should survive them */
+					boolean isTube = block % (TAP_EVERY * 8) == 0;
+					mixer.start(isTube ? tube : coin, isTube ? 1 : 0.7f);
+				}
+				mostVoices = Math.max(mostVoices, mixer.getActiveVoiceCount());
+				short[] mixed = mixer.mix();
+				for (int i = 0; i < BLOCK_FRAMES; i++)
+				{
+					if (mixed[i] == Short.MAX_VALUE
+							|| mixed[i] == Short.MIN_VALUE)
+					{
+						clipped++;
+					}
+				}
+				System.arraycopy(mixed, 0, out, block * BLOCK_FRAMES,
+						BLOCK_FRAMES);
+			}
+
+			String name = policy == Mixer.STEAL_OLDEST ? "oldest" : "quietest";
+			boolean overlapped = mostVoices > 1 && mostVoices <= VOICES;
+			boolean loudEnough = clipped > 0;
+			right &= overlapped && loudEnough;
+			System.out.printf("Stealing %s: at most %d voices, %d frames "
+					+ "clipped%s%n", name, mostVoices, clipped, overlapped
+					&& loudEnough ? "" : " (WRONG)");
+
+			if (policy == Mixer.STEAL_QUIETEST)
+			{
+				WavWriter.write(file, out, out.length, SAMPLE_RATE);
+				System.out.println("Wrote " + file);
+			}
+		}
+
+		/* With both voices busy, the quiet one is the one to go */
+		Mixer mixer = new Mixer(2, BLOCK_FRAMES, Mixer.STEAL_QUIETEST);
+		int loud = mixer.start(tube, 1);
+		int quiet = mixer.start(tube, 0.05f);
+		mixer.mix();
+		int stolen = mixer.start(coin, 1);
+		boolean quietestStolen = stolen == quiet && stolen != loud;
+		right &= quietestStolen;
+		System.out.println("Quietest voice stolen: " + quietestStolen);
+
+		if (!right)
+		{
+			System.exit(1);
+		}
+	}
+
+	/* A sine with an exponential decay, a stand-in for a real sound effect */
+	private static Sample tone(double frequency, double seconds, double volume)
+	{
+		short[] pcm = new short[(int) (seconds * SAMPLE_RATE)];
+		for (int i = 0; i < pcm.length; i++)
+		{
+			double time = (double) i / SAMPLE_RATE;
+			pcm[i] = (short) (Math.sin(2 * Math.PI * frequency * time)
+					* Math.exp(-3 * time / seconds) * volume * Short.MAX_VALUE);
+		}
+		return new Sample(pcm, SAMPLE_RATE);
+	}
+}
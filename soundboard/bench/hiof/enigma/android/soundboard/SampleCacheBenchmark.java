@@ -0,0 +1,137 @@
+package hiof.enigma.android.soundboard;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Plays a bank of made-up sounds through the sample cache the way a user
+ * tends to, tapping a few favourites a lot and the rest now and then, and
+ * times taps on sounds that were loaded (warm) against taps that had to
+ * decode first (cold). Decoding is stood in for by making a sound at 22.05
+ * kHz and resampling it to 44.1 kHz, which the real path does as well.
+ * 
+ * Also compares starting up by decoding the whole bank, which is what the
+ * board used to do, against starting with nothing decoded.
+ * 
+ * java hiof.enigma.android.soundboard.SampleCacheBenchmark [sounds] [budget MB]
+ * 
+ * @author William Killerud
+ * 
+ */
+public class SampleCacheBenchmark
+{
+	private static final int SOURCE_RATE = 22050;
+	private static final int OUTPUT_RATE = 44100;
+	private static final int TAPS = 20000;
+
+	public static void main(String[] args) throws IOException
+	{
+		final int sounds = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+		long budget = (args.length > 1 ? Long.parseLong(args[1]) : 16) * 1024 * 1024;
+
+		SampleCache.Loader loader = new SampleCache.Loader()
+		{
+			public Sample load(int sound)
+			{
+				return make(sound).resampledTo(OUTPUT_RATE);
+			}
+		};
+
+		/* Warm up the decoding, then time loading everything up front */
+		for (int i = 0; i < 50; i++)
+		{
+			loader.load(i % sounds);
+		}
+		long start = System.nanoTime();
+		long eagerBytes = 0;
+		for (int i = 0; i < sounds; i++)
+		{
+			eagerBytes += loader.load(i).getFrameCount() * 2l;
+		}
+		double eagerMillis = (System.nanoTime() - start) / 1e6;
+
+		start = System.nanoTime();
+		SampleCache cache = new SampleCache(loader, budget);
+		double lazyMillis = (System.nanoTime() - start) / 1e6;
+		System.out.printf("%d sounds: decoding all up front %.0f ms and %.1f "
+				+ "MB, starting lazily %.3f ms within %d MB%n", sounds,
+				eagerMillis, eagerBytes / 1e6, lazyMillis, budget / 1024 / 1024);
+
+		/* Sound n is tapped about 1/n as often as the first, shuffled */
+		Random random = new Random(42);
+		int[] popular = new int[sounds];
+		for (int i = 0; i < sounds; i++)
+		{
+			popular[i] = i;
+		}
+		for (int i = sounds - 1; i > 0; i--)
+		{
+			int other = random.nextInt(i + 1);
+			int swap = popular[i];
+			popular[i] = popular[other];
+			popular[other] = swap;
+		}
+		double[] weights = new double[sounds];
+		double total = 0;
+		for (int i = 0; i < sounds; i++)
+		{
+			total += 1.0 / (i + 1);
+			weights[i] = total;
+		}
+
+		long warmNanos = 0;
+		long coldNanos = 0;
+		long worstCold = 0;
+		int warm = 0;
+		int cold = 0;
+		long mostBytes = 0;
+		for (int tap = 0; tap < TAPS; tap++)
+		{
+			double pick = random.nextDouble() * total;
+			int rank = 0;
+			while (weights[rank] < pick)
+			{
+				rank++;
+			}
+			int sound = popular[rank];
+
+			long tapped = System.nanoTime();
+			Sample sample = cache.getIfLoaded(sound);
+			if (sample != null)
+			{
+				warmNanos += System.nanoTime() - tapped;
+				warm++;
+			} else
+			{
+				sample = cache.load(sound);
+				long took = System.nanoTime() - tapped;
+				coldNanos += took;
+				worstCold = Math.max(worstCold, took);
+				cold++;
+			}
+			mostBytes = Math.max(mostBytes, cache.getBytes());
+		}
+
+		System.out.printf("%d taps: %d warm at %.2f us, %d cold at %.2f ms "
+				+ "(worst %.2f ms), %d evicted, at most %.1f MB decoded%s%n",
+				TAPS, warm, warmNanos / 1e3 / Math.max(1, warm), cold,
+				coldNanos / 1e6 / Math.max(1, cold), worstCold / 1e6,
+				cache.getEvictions(), mostBytes / 1e6,
+				mostBytes <= budget ? "" : " (OVER BUDGET)");
+	}
+
+	/* Between half a second and two seconds of a decaying tone */
+	private static Sample make(int sound)
+	{
+		Random random = new Random(sound);
+		short[] pcm = new short[SOURCE_RATE / 2
+				+ random.nextInt(SOURCE_RATE * 3 / 2)];
+		double step = 2 * Math.PI * (200 + random.nextInt(1000)) / SOURCE_RATE;
+		for (int i = 0; i < pcm.length; i++)
+		{
+			pcm[i] = (short) (Math.sin(i * step) * (pcm.length - i)
+					/ pcm.length * 12000);
+		}
+		return new Sample(pcm, SOURCE_RATE);
+	}
+}
@@ -0,0 +1,184 @@
+package hiof.enigma.android.soundboard;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays coin on every beat and tube on every fourth at 120 BPM, with the
+ * blocks mixed in real time the way the audio output would ask for them, and
+ * finds where each sound starts in what was mixed. How far the starts are
+ * from where the beats are due is the jitter.
+ * 
+ * This is done twice: once with the sequencer keeping time on the mixer's
+ * clock, while another thread keeps changing the pattern through the command
+ * queue, and once with a timer thread that sleeps until each beat and then
+ * starts the sound like a tap would, which is what a Handler would do.
+ * 
+ * java hiof.enigma.android.soundboard.SequencerBenchmark [seconds]
+ * 
+ * @author William Killerud
+ * 
+ */
+public class SequencerBenchmark
+{
+	private static final int SAMPLE_RATE = 44100;
+	private static final int BLOCK_FRAMES = 256;
+	private static final float TEMPO = 120;
+	private static final double FRAMES_PER_BEAT = SAMPLE_RATE * 60.0 / TEMPO;
+	private static final long BLOCK_NANOS = BLOCK_FRAMES * 1000000000l
+			/ SAMPLE_RATE;
+
+	/* One frame clicks, so where a sound starts is easy to find */
+	private static final Sample COIN = click(20000);
+	private static final Sample TUBE = click(10000);
+	private static final Sample SILENCE = new Sample(new short[1], SAMPLE_RATE);
+
+	public static void main(String[] args) throws Exception
+	{
+		int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		int blocks = (int) ((long) seconds * SAMPLE_RATE / BLOCK_FRAMES);
+
+		System.out.printf("%.0f BPM, %d frame blocks (%.1f ms), %d s%n", TEMPO,
+				BLOCK_FRAMES, BLOCK_NANOS / 1e6, seconds);
+		report("Sequencer", runSequencer(blocks));
+		report("Timer", runTimer(blocks));
+	}
+
+	private static short[] runSequencer(int blocks) throws Exception
+	{
+		Mixer mixer = new Mixer(8, BLOCK_FRAMES, Mixer.STEAL_OLDEST);
+		final Sequencer sequencer = new Sequencer(3, SAMPLE_RATE, TEMPO);
+		sequencer.setSound(0, COIN);
+		sequencer.setSound(1, TUBE);
+		sequencer.setSound(2, SILENCE);
+		for (int beat = 0; beat < Sequencer.STEPS / Sequencer.STEPS_PER_BEAT; beat++)
+		{
+			sequencer.setStep(0, beat * Sequencer.STEPS_PER_BEAT, true);
+		}
+		sequencer.setStep(1, 0, true);
+		sequencer.start();
+
+		/* Someone playing with the pattern of a silent track meanwhile */
+		Thread editor = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				for (int i = 0; !Thread.currentThread().isInterrupted(); i++)
+				{
+					sequencer.setStep(2, i % Sequencer.STEPS, i % 3 == 0);
+					LockSupport.parkNanos(100000);
+				}
+			}
+		});
+		editor.start();
+
+		short[] out = new short[blocks * BLOCK_FRAMES];
+		long start = System.nanoTime();
+		for (int block = 0; block < blocks; block++)
+		{
+			sequencer.schedule(mixer);
+			System.arraycopy(mixer.mix(), 0, out, block * BLOCK_FRAMES,
+					BLOCK_FRAMES);
+			waitUntil(start + (block + 1) * BLOCK_NANOS);
+		}
+		editor.interrupt();
+		editor.join();
+		return out;
+	}
+
+	private static short[] runTimer(final int blocks) throws Exception
+	{
+		final Mixer mixer = new Mixer(8, BLOCK_FRAMES, Mixer.STEAL_OLDEST);
+		final List<Sample> pending = new ArrayList<Sample>();
+		final long start = System.nanoTime();
+
+		Thread timer = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				long beatNanos = (long) (60e9 / TEMPO);
+				for (int beat = 0; !Thread.currentThread().isInterrupted(); beat++)
+				{
+					waitUntil(start + beat * beatNanos);
+					synchronized (pending)
+					{
+						pending.add(COIN);
+						if (beat % 4 == 0)
+						{
+							pending.add(TUBE);
+						}
+					}
+				}
+			}
+		});
+		timer.start();
+
+		short[] out = new short[blocks * BLOCK_FRAMES];
+		for (int block = 0; block < blocks; block++)
+		{
+			synchronized (pending)
+			{
+				for (Sample sample : pending)
+				{
+					mixer.start(sample, 1);
+				}
+				pending.clear();
+			}
+			System.arraycopy(mixer.mix(), 0, out, block * BLOCK_FRAMES,
+					BLOCK_FRAMES);
+			waitUntil(start + (block + 1) * BLOCK_NANOS);
+		}
+		timer.interrupt();
+		timer.join();
+		return out;
+	}
+
+	/*
+	 * Finds every coin in the output, alone or with a tube on top, and how far
+	 * each is from the beat nearest to it.
+	 */
+	private static void report(String name, short[] out)
+	{
+		int coins = 0;
+		int tubes = 0;
+		double worst = 0;
+		double total = 0;
+		for (int frame = 0; frame < out.length; frame++)
+		{
+			if (out[frame] == 0)
+			{
+				continue;
+			}
+			if (out[frame] >= 20000)
+			{
+				coins++;
+				tubes += out[frame] >= 30000 ? 1 : 0;
+				double beat = Math.round(frame / FRAMES_PER_BEAT)
+						* FRAMES_PER_BEAT;
+				double error = Math.abs(frame - beat) * 1000 / SAMPLE_RATE;
+				worst = Math.max(worst, error);
+				total += error;
+			}
+		}
+		int beats = (int) Math.ceil(out.length / FRAMES_PER_BEAT);
+		System.out.printf("%s: %d of %d beats, %d of %d bars, jitter mean "
+				+ "%.3f ms, worst %.3f ms%s%n", name, coins, beats, tubes,
+				(beats + 3) / 4, total / Math.max(1, coins), worst,
+				worst < 1 ? "" : " (over 1 ms)");
+	}
+
+	private static void waitUntil(long nanos)
+	{
+		long left;
+		while ((left = nanos - System.nanoTime()) > 0)
+		{
+			LockSupport.parkNanos(left);
+		}
+	}
+
+	private static Sample click(int level)
+	{
+		return new Sample(new short[] { (short) level }, SAMPLE_RATE);
+	}
+}
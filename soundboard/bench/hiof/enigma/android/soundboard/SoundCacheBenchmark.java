@@ -0,0 +1,173 @@
+package hiof.enigma.android.soundboard;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares the ways the board can get at its sounds when it starts and when
+ * a sound is first tapped: decoding every sound up front, decoding each on
+ * its first tap, and mapping the sound cache file. Decoding is stood in for
+ * by making a sound at 22.05 kHz and resampling it to 44.1 kHz. Also times
+ * mixing voices that play from the mapped file against voices on the heap,
+ * and checks that what was read back is what was written.
+ * 
+ * java hiof.enigma.android.soundboard.SoundCacheBenchmark [sounds]
+ * 
+ * @author William Killerud
+ * 
+ */
+public class SoundCacheBenchmark
+{
+	private static final int SOURCE_RATE = 22050;
+	private static final int OUTPUT_RATE = 44100;
+	private static final int BLOCK_FRAMES = 256;
+	private static final int VOICES = 8;
+	private static final int FIRST_TAPS = 200;
+	private static final int RUNS = 3;
+
+	/* Keeps the mixing from being optimized away */
+	private static long sChecksum;
+
+	public static void main(String[] args) throws IOException
+	{
+		int sounds = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+		File file = new File(System.getProperty("java.io.tmpdir"),
+				"sound-cache-bench-" + System.nanoTime() + ".pcm");
+		try
+		{
+			/* Warm up the decoding */
+			for (int i = 0; i < 50; i++)
+			{
+				decode(i);
+			}
+
+			long start = System.nanoTime();
+			SoundCacheFile.Writer writer = new SoundCacheFile.Writer(file,
+					OUTPUT_RATE, 1, sounds);
+			for (int i = 0; i < sounds; i++)
+			{
+				writer.add(decode(i));
+			}
+			writer.finish();
+			System.out.printf("%d sounds: writing the cache file on the first "
+					+ "run %.0f ms, %.1f MB%n", sounds,
+					(System.nanoTime() - start) / 1e6, file.length() / 1e6);
+
+			for (int run = 0; run < RUNS; run++)
+			{
+				start = System.nanoTime();
+				for (int i = 0; i < sounds; i++)
+				{
+					decode(i);
+				}
+				double eagerMillis = (System.nanoTime() - start) / 1e6;
+
+				start = System.nanoTime();
+				SoundCacheFile cached = SoundCacheFile.open(file, OUTPUT_RATE,
+						1, sounds);
+				double mapMillis = (System.nanoTime() - start) / 1e6;
+
+				/* A first tap needs the sound's first block */
+				Random random = new Random(run);
+				short[] block = new short[BLOCK_FRAMES];
+				long decodeNanos = 0;
+				long mappedNanos = 0;
+				for (int tap = 0; tap < FIRST_TAPS; tap++)
+				{
+					int sound = random.nextInt(sounds);
+					start = System.nanoTime();
+					decode(sound).read(0, block, 0, BLOCK_FRAMES);
+					decodeNanos += System.nanoTime() - start;
+					start = System.nanoTime();
+					cached.getSample(sound).read(0, block, 0, BLOCK_FRAMES);
+					mappedNanos += System.nanoTime() - start;
+				}
+				System.out.printf("Startup: decoding all %.0f ms, mapping "
+						+ "%.2f ms. First tap: decoding %.2f ms, mapped "
+						+ "%.1f us%n", eagerMillis, mapMillis, decodeNanos
+						/ 1e6 / FIRST_TAPS, mappedNanos / 1e3 / FIRST_TAPS);
+			}
+
+			SoundCacheFile cached = SoundCacheFile.open(file, OUTPUT_RATE, 1,
+					sounds);
+			boolean same = true;
+			for (int i = 0; i < sounds && same; i += 7)
+			{
+				same = sameFrames(decode(i), cached.getSample(i));
+			}
+			boolean stale = SoundCacheFile.open(file, OUTPUT_RATE, 2, sounds) == null;
+			stale &= SoundCacheFile.open(file, 48000, 1, sounds) == null;
+			System.out.println("Read back as written: " + same
+					+ ", stale file refused: " + stale);
+
+			System.out.printf("Mixing %d voices: heap %.2f us, mapped %.2f us "
+					+ "per block%n", VOICES, mixMicros(decode(0)),
+					mixMicros(cached.getSample(0)));
+
+			if (!same || !stale)
+			{
+				System.exit(1);
+			}
+		} finally
+		{
+			file.delete();
+		}
+	}
+
+	private static double mixMicros(Sample sample)
+	{
+		Mixer mixer = new Mixer(VOICES, BLOCK_FRAMES, Mixer.STEAL_OLDEST);
+		long checksum = 0;
+		long nanos = 0;
+		int blocks = 0;
+		for (int round = 0; round < 400; round++)
+		{
+			for (int v = 0; v < VOICES; v++)
+			{
+				mixer.start(sample, 1);
+			}
+			long start = System.nanoTime();
+			for (int i = 0; i < 50; i++)
+			{
+				checksum += mixer.mix()[i];
+			}
+			if (round >= 100)
+			{
+				nanos += System.nanoTime() - start;
+				blocks += 50;
+			}
+		}
+		sChecksum += checksum;
+		return nanos / 1e3 / blocks;
+	}
+
+	private static boolean sameFrames(Sample a, Sample b)
+	{
+		if (a.getFrameCount() != b.getFrameCount())
+		{
+			return false;
+		}
+		short[] left = new short[a.getFrameCount()];
+		short[] right = new short[b.getFrameCount()];
+		a.read(0, left, 0, left.length);
+		b.read(0, right, 0, right.length);
+		return Arrays.equals(left, right);
+	}
+
+	/* Between half a second and two seconds of a decaying tone */
+	private static Sample decode(int sound)
+	{
+		Random random = new Random(sound);
+		short[] pcm = new short[SOURCE_RATE / 2
+				+ random.nextInt(SOURCE_RATE * 3 / 2)];
+		double step = 2 * Math.PI * (200 + random.nextInt(1000)) / SOURCE_RATE;
+		for (int i = 0; i < pcm.length; i++)
+		{
+			pcm[i] = (short) (Math.sin(i * step) * (pcm.length - i)
+					/ pcm.length * 12000);
+		}
+		return new Sample(pcm, SOURCE_RATE).resampledTo(OUTPUT_RATE);
+	}
+}
@@ -0,0 +1,66 @@
+package hiof.enigma.android.soundboard;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes 16-bit mono PCM as a WAV file, so what the mixer made can be
+ * listened to or opened in an audio editor.
+ * 
+ * @author William Killerud
+ * 
+ */
+public class WavWriter
+{
+	private WavWriter()
+	{
+	}
+
+	public static void write(File file, short[] pcm, int length, int sampleRate)
+			throws IOException
+	{
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+		try
+		{
+			int dataBytes = length * 2;
+			out.write(new byte[] { 'R', 'I', 'F', 'F' });
+			writeInt(out, 36 + dataBytes);
+			out.write(new byte[] { 'W', 'A', 'V', 'E', 'f', 'm', 't', ' ' });
+			writeInt(out, 16);
+			/* Uncompressed, one channel */
+			writeShort(out, 1);
+			writeShort(out, 1);
+			writeInt(out, sampleRate);
+			writeInt(out, sampleRate * 2);
+			writeShort(out, 2);
+			writeShort(out, 16);
+			out.write(new byte[] { 'd', 'a', 't', 'a' });
+			writeInt(out, dataBytes);
+			for (int i = 0; i < length; i++)
+			{
+				writeShort(out, pcm[i]);
+			}
+		} finally
+		{
+			out.close();
+		}
+	}
+
+	/* WAV is little endian */
+	private static void writeInt(OutputStream out, int value)
+			throws IOException
+	{
+		writeShort(out, value);
+		writeShort(out, value >> 16);
+	}
+
+	private static void writeShort(OutputStream out, int value)
+			throws IOException
+	{
+		out.write(value & 0xff);
+		out.write((value >> 8) & 0xff);
+	}
+}
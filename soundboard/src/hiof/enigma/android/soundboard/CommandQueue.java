@@ -0,0 +1,122 @@
+package hiof.enigma.android.soundboard;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Carries commands from any thread to the audio thread without locks, so the
+ * audio thread never waits for a thread that may have been put to sleep
+ * holding one. A command is an operation code, two ints and an object, all
+ * kept in arrays allocated up front.
+ * 
+ * Any number of threads may offer commands, but only the audio thread may
+ * poll. Each slot has a sequence number telling whose turn it is: a writer
+ * claims a slot by moving the tail, and hands it to the reader by setting the
+ * slot's sequence when it is done writing.
+ * 
+ * @author William Killerud
+ * 
+ */
+public class CommandQueue
+{
+	private final int mMask;
+	private final AtomicLongArray mSequences;
+	private final int[] mOps;
+	private final int[] mFirsts;
+	private final int[] mSeconds;
+	private final Object[] mObjects;
+
+	private final AtomicLong mTail = new AtomicLong();
+	/* Only touched by the reader */
+	private long mHead;
+
+	/* The command last polled, for the reader */
+	private int mOp;
+	private int mFirst;
+	private int mSecond;
+	private Object mObject;
+
+	/* The capacity is rounded up to a power of two */
+	public CommandQueue(int capacity)
+	{
+		int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+		mMask = size - 1;
+		mSequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++)
+		{
+			mSequences.set(i, i);
+		}
+		mOps = new int[size];
+		mFirsts = new int[size];
+		mSeconds = new int[size];
+		mObjects = new Object[size];
+	}
+
+	/* Returns false if the queue is full, in which case nothing was added */
+	public boolean offer(int op, int first, int second, Object object)
+	{
+		while (true)
+		{
+			long position = mTail.get();
+			int slot = (int) position & mMask;
+			long sequence = mSequences.get(slot);
+			if (sequence < position)
+			{
+				/* The reader hasn't taken what was here a lap ago */
+				return false;
+			}
+			if (sequence == position
+					&& mTail.compareAndSet(position, position + 1))
+			{
+				mOps[slot] = op;
+				mFirsts[slot] = first;
+				mSeconds[slot] = second;
+				mObjects[slot] = object;
+				mSequences.set(slot, position + 1);
+				return true;
+			}
+			/* Another writer got the slot first, try the next one */
+		}
+	}
+
+	/*
+	 * Takes the next command, which can then be read with the getters until
+	 * the next poll. Returns false if there is none.
+	 */
+	public boolean poll()
+	{
+		int slot = (int) mHead & mMask;
+		if (mSequences.get(slot) != mHead + 1)
+		{
+			return false;
+		}
+		mOp = mOps[slot];
+		mFirst = mFirsts[slot];
+		mSecond = mSeconds[slot];
+		mObject = mObjects[slot];
+		mObjects[slot] = null;
+		mSequences.set(slot, mHead + mMask + 1);
+		mHead++;
+		return true;
+	}
+
+	public int getOp()
+	{
+		return mOp;
+	}
+
+	public int getFirst()
+	{
+		return mFirst;
+	}
+
+	public int getSecond()
+	{
+		return mSecond;
+	}
+
+	public Object getObject()
+	{
+		return mObject;
+	}
+}
@@ -0,0 +1,148 @@
+package hiof.enigma.android.soundboard;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import edu.killerud.audioassets.BufferPool;
+
+/**
+ * Decodes a sound in res/raw into PCM with the platform decoders.
+ * 
+ * MediaCodec only exists from Android 4.1 (API 16), so this class must not
+ * even be loaded on older versions. Check Build.VERSION.SDK_INT before
+ * touching it.
+ * 
+ * The codec hands us the sound a piece at a time, so it is gathered in a
+ * buffer from the pool before it is mixed down to the mono Sample we keep.
+ * 
+ * @author William Killerud
+ * 
+ */
+class MediaDecoder
+{
+	/* How long we wait for the codec to take or give a buffer */
+	private static final long TIMEOUT_MICROS = 10000;
+
+	private MediaDecoder()
+	{
+	}
+
+	static Sample decode(Context context, int resource, BufferPool buffers)
+			throws IOException
+	{
+		MediaExtractor extractor = new MediaExtractor();
+		MediaCodec codec = null;
+		short[] pcm = null;
+		try
+		{
+			AssetFileDescriptor file = context.getResources()
+					.openRawResourceFd(resource);
+			try
+			{
+				extractor.setDataSource(file.getFileDescriptor(),
+						file.getStartOffset(), file.getLength());
+			} finally
+			{
+				file.close();
+			}
+			if (extractor.getTrackCount() < 1)
+			{
+				throw new IOException("No audio in resource " + resource);
+			}
+
+			extractor.selectTrack(0);
+			MediaFormat format = extractor.getTrackFormat(0);
+			int sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+			int channels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+
+			codec = MediaCodec.createDecoderByType(format
+					.getString(MediaFormat.KEY_MIME));
+			codec.configure(format, null, null, 0);
+			codec.start();
+
+			ByteBuffer[] inputs = codec.getInputBuffers();
+			ByteBuffer[] outputs = codec.getOutputBuffers();
+			MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+			pcm = buffers.take(sampleRate * channels);
+			int length = 0;
+			boolean inputDone = false;
+
+			while (true)
+			{
+				/* Feed the codec with compressed data while it wants more */
+				if (!inputDone)
+				{
+					int input = codec.dequeueInputBuffer(TIMEOUT_MICROS);
+					if (input >= 0)
+					{
+						int size = extractor.readSampleData(inputs[input], 0);
+						if (size < 0)
+						{
+							codec.queueInputBuffer(input, 0, 0, 0,
+									MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+							inputDone = true;
+						} else
+						{
+							codec.queueInputBuffer(input, 0, size,
+									extractor.getSampleTime(), 0);
+							extractor.advance();
+						}
+					}
+				}
+
+				/* And take whatever PCM it has ready */
+				int output = codec.dequeueOutputBuffer(info, TIMEOUT_MICROS);
+				if (output >= 0)
+				{
+					ByteBuffer buffer = outputs[output];
+					buffer.position(info.offset);
+					buffer.limit(info.offset + info.size);
+					int shorts = info.size / 2;
+					if (length + shorts > pcm.length)
+					{
+						pcm = buffers.grow(pcm, length, Math.max(pcm.length * 2,
+								length + shorts));
+					}
+					buffer.order(ByteOrder.nativeOrder()).asShortBuffer()
+							.get(pcm, length, shorts);
+					length += shorts;
+					codec.releaseOutputBuffer(output, false);
+
+					if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0)
+					{
+						break;
+					}
+				} else if (output == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED)
+				{
+					outputs = codec.getOutputBuffers();
+				} else if (output == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED)
+				{
+					/* The decoder knows better than the file header */
+					MediaFormat decoded = codec.getOutputFormat();
+					sampleRate = decoded.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+					channels = decoded.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+				}
+			}
+
+			return Sample.fromInterleaved(pcm, length, channels, sampleRate);
+		} finally
+		{
+			if (codec != null)
+			{
+				codec.stop();
+				codec.release();
+			}
+			extractor.release();
+			if (pcm != null)
+			{
+				buffers.give(pcm);
+			}
+		}
+	}
+}
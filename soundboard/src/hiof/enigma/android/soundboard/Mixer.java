@@ -0,0 +1,283 @@
+package hiof.enigma.android.soundboard;
+
+/**
+ * Mixes a fixed number of voices, each playing a sample at its own volume,
+ * into blocks of 16-bit mono PCM. Everything is allocated up front, so mixing
+ * a block never makes garbage, which matters on the audio thread where a
+ * garbage collection pause is heard as a click.
+ * 
+ * When every voice is busy, starting another sound steals one. Stealing the
+ * oldest is cheap and predictable, stealing the quietest is less audible when
+ * old sounds have long tails. A limit per sample keeps one sound tapped
+ * quickly from taking every voice.
+ * 
+ * Not thread safe. Only the thread that mixes should start and stop voices.
+ * 
+ * @author William Killerud
+ * 
+ */
+public class Mixer
+{
+	public static final int STEAL_OLDEST = 0;
+	public static final int STEAL_QUIETEST = 1;
+
+	/* Gain is fixed point, so the mixing loop stays in integers */
+	private static final int GAIN_SHIFT = 12;
+	private static final int UNITY_GAIN = 1 << GAIN_SHIFT;
+
+	private final int mBlockFrames;
+	private final int mStealPolicy;
+	private int mLimitPerSample;
+
+	/* The voices. A null sample means the voice is free */
+	private final Sample[] mSamples;
+	private final int[] mPositions;
+	/* Frames into the next block a voice starts at, for sample accuracy */
+	private final int[] mDelays;
+	private final int[] mGains;
+	private final long[] mStarted;
+	/* The loudest the voice was in the last block it was mixed into */
+	private final int[] mLevels;
+
+	private final short[] mRead;
+	private final int[] mMix;
+	private final short[] mBlock;
+	private long mFramesMixed;
+
+	public Mixer(int voices, int blockFrames, int stealPolicy)
+	{
+		if (voices < 1 || blockFrames < 1)
+		{
+			throw new IllegalArgumentException("Need at least one voice and frame");
+		}
+		mBlockFrames = blockFrames;
+		mStealPolicy = stealPolicy;
+		mLimitPerSample = voices;
+
+		mSamples = new Sample[voices];
+		mPositions = new int[voices];
+		mDelays = new int[voices];
+		mGains = new int[voices];
+		mStarted = new long[voices];
+		mLevels = new int[voices];
+
+		mRead = new short[blockFrames];
+		mMix = new int[blockFrames];
+		mBlock = new short[blockFrames];
+	}
+
+	/*
+	 * How many voices may play the same sample at once. Starting it again
+	 * beyond that steals the oldest voice playing it.
+	 */
+	public void setLimitPerSample(int limit)
+	{
+		mLimitPerSample = Math.max(1, limit);
+	}
+
+	public int getVoiceCount()
+	{
+		return mSamples.length;
+	}
+
+	public int getBlockFrames()
+	{
+		return mBlockFrames;
+	}
+
+	/* Frames mixed since the mixer was made, the clock voices start by */
+	public long getFramesMixed()
+	{
+		return mFramesMixed;
+	}
+
+	public int getActiveVoiceCount()
+	{
+		int active = 0;
+		for (int v = 0; v < mSamples.length; v++)
+		{
+			if (mSamples[v] != null)
+			{
+				active++;
+			}
+		}
+		return active;
+	}
+
+	/*
+	 * Starts the sample at the given gain, where 1 is its own volume, from the
+	 * next block. Returns the voice it got.
+	 */
+	public int start(Sample sample, float gain)
+	{
+		return start(sample, gain, 0);
+	}
+
+	/*
+	 * Like start(), but the sample starts the given number of frames into the
+	 * next block rather than at the start of it.
+	 */
+	public int start(Sample sample, float gain, int delay)
+	{
+		if (delay < 0 || delay >= mBlockFrames)
+		{
+			throw new IllegalArgumentException("Delay of " + delay
+					+ " frames is outside the block");
+		}
+		int voice = findVoice(sample);
+		mSamples[voice] = sample;
+		mPositions[voice] = 0;
+		mDelays[voice] = delay;
+		mGains[voice] = Math.max(0, Math.round(gain * UNITY_GAIN));
+		mStarted[voice] = mFramesMixed + delay;
+		/* Nothing has been heard from it yet, so it is never the quietest */
+		mLevels[voice] = Integer.MAX_VALUE;
+		return voice;
+	}
+
+	public void setGain(int voice, float gain)
+	{
+		mGains[voice] = Math.max(0, Math.round(gain * UNITY_GAIN));
+	}
+
+	public void stop(int voice)
+	{
+		mSamples[voice] = null;
+	}
+
+	public void stopAll()
+	{
+		for (int v = 0; v < mSamples.length; v++)
+		{
+			mSamples[v] = null;
+		}
+	}
+
+	/*
+	 * Mixes the next block and returns it. The array is the same every time,
+	 * so copy or write it out before mixing the next one.
+	 */
+	public short[] mix()
+	{
+		short[] read = mRead;
+		int[] mix = mMix;
+		int frames = mBlockFrames;
+		for (int i = 0; i < frames; i++)
+		{
+			mix[i] = 0;
+		}
+
+		for (int v = 0; v < mSamples.length; v++)
+		{
+			Sample sample = mSamples[v];
+			if (sample == null)
+			{
+				continue;
+			}
+			int position = mPositions[v];
+			int delay = mDelays[v];
+			int length = Math.min(frames - delay, sample.getFrameCount()
+					- position);
+			int gain = mGains[v];
+			int level = 0;
+
+			/*
+			 * Copying the block out first lets sounds in the cache file be
+			 * mixed just like sounds on the heap
+			 */
+			sample.read(position, read, 0, length);
+
+			if (gain == UNITY_GAIN)
+			{
+				for (int i = 0; i < length; i++)
+				{
+					int value = read[i];
+					mix[delay + i] += value;
+					level |= value ^ (value >> 31);
+				}
+			} else
+			{
+				for (int i = 0; i < length; i++)
+				{
+					int value = (read[i] * gain) >> GAIN_SHIFT;
+					mix[delay + i] += value;
+					level |= value ^ (value >> 31);
+				}
+			}
+
+			/*
+			 * Or-ing the magnitudes gives the highest bit any of them had,
+			 * which is all the precision choosing a voice to steal needs
+			 */
+			mLevels[v] = level;
+			mDelays[v] = 0;
+			mPositions[v] = position + length;
+			if (mPositions[v] >= sample.getFrameCount())
+			{
+				mSamples[v] = null;
+			}
+		}
+
+		short[] block = mBlock;
+		for (int i = 0; i < frames; i++)
+		{
+			int value = mix[i];
+			block[i] = (short) (value > Short.MAX_VALUE ? Short.MAX_VALUE
+					: value < Short.MIN_VALUE ? Short.MIN_VALUE : value);
+		}
+		mFramesMixed += frames;
+		return block;
+	}
+
+	/*
+	 * Picks the voice a new sound gets: the oldest one playing the same sample
+	 * if it is at its limit, otherwise a free one, otherwise one to steal.
+	 */
+	private int findVoice(Sample sample)
+	{
+		int free = -1;
+		int same = 0;
+		int oldestSame = -1;
+		for (int v = 0; v < mSamples.length; v++)
+		{
+			if (mSamples[v] == null)
+			{
+				if (free < 0)
+				{
+					free = v;
+				}
+			} else if (mSamples[v] == sample)
+			{
+				same++;
+				if (oldestSame < 0 || mStarted[v] < mStarted[oldestSame])
+				{
+					oldestSame = v;
+				}
+			}
+		}
+		if (same >= mLimitPerSample)
+		{
+			return oldestSame;
+		}
+		if (free >= 0)
+		{
+			return free;
+		}
+
+		int victim = 0;
+		for (int v = 1; v < mSamples.length; v++)
+		{
+			if (mStealPolicy == STEAL_QUIETEST && mLevels[v] != mLevels[victim])
+			{
+				if (mLevels[v] < mLevels[victim])
+				{
+					victim = v;
+				}
+			} else if (mStarted[v] < mStarted[victim])
+			{
+				victim = v;
+			}
+		}
+		return victim;
+	}
+}
@@ -0,0 +1,417 @@
+package hiof.enigma.android.soundboard;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import android.content.Context;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Process;
+import android.util.Log;
+import edu.killerud.audioassets.BufferPool;
+import edu.killerud.audioassets.LatencyStats;
+import edu.killerud.audioassets.NativePlayers;
+
+/**
+ * Plays sounds decoded into PCM through an AudioTrack that is fed by our own
+ * audio thread. The thread has a Mixer mix whatever voices are playing into
+ * small blocks and writes them to the track, which blocks until there is
+ * room, so the thread runs exactly as fast as the speaker plays.
+ * 
+ * A tap puts the sound in a small queue that the audio thread empties before
+ * every block. The latency we report is the time the tap waited in that
+ * queue, plus the time it takes to play what was already in the track when
+ * the sound was mixed in. A sound that isn't decoded yet is decoded on a
+ * thread of its own first, and the time that takes counts towards the cold
+ * latency rather than the warm.
+ * 
+ * The first time the app runs, every sound is decoded in the background and
+ * written to the sound cache file. From then on the file is just mapped when
+ * the engine starts, and every sound plays from it without decoding.
+ * 
+ * The audio thread also has the sequencer start the steps of the loop that
+ * are due in each block, on the exact frame they are due.
+ * 
+ * @author William Killerud
+ * 
+ */
+class PcmSoundEngine extends SoundEngine implements Runnable
+{
+	private static final String TAG = "PcmSoundEngine";
+
+	/* Frames mixed per write. Smaller means less latency but more overhead */
+	private static final int BLOCK_FRAMES = 256;
+
+	/* Taps beyond this many between two blocks are dropped */
+	private static final int MAX_PENDING = 16;
+
+	private static final String CACHE_FILE = "sounds.pcm";
+
+	/* The decoding buffers kept between sounds, enough for a few seconds */
+	private static final long MAX_BUFFER_BYTES = 1024 * 1024;
+
+	private final SoundBank mBank;
+	private final File mCacheFile;
+	private final long mCacheStamp;
+	/* Null until the cache file is written, then every sound is in here */
+	private volatile SoundCacheFile mCached;
+
+	/* Sounds decoded while there is no cache file yet */
+	private final SampleCache mSamples;
+	private final int mSampleRate;
+	private final AudioTrack mTrack;
+	private final ExecutorService mDecoder = Executors.newSingleThreadExecutor();
+	private final BufferPool mBuffers = new BufferPool(MAX_BUFFER_BYTES);
+	private final LatencyStats mLatency = new LatencyStats();
+	private final LatencyStats mColdLatency = new LatencyStats();
+
+	/*
+	 * Sounds tapped but not yet started, with the time of the tap and whether
+	 * they had to be decoded first
+	 */
+	private final Sample[] mPending = new Sample[MAX_PENDING];
+	private final long[] mPendingSince = new long[MAX_PENDING];
+	private final boolean[] mPendingCold = new boolean[MAX_PENDING];
+	private int mPendingCount;
+
+	/* Only touched by the audio thread, and never allocates */
+	private final Mixer mMixer = new Mixer(VOICES, BLOCK_FRAMES,
+			Mixer.STEAL_OLDEST);
+
+	private final Sequencer mSequencer;
+	/*
+	 * The sounds the sequencer has been given, or is being given. The decoder
+	 * clears a sound that couldn't be loaded, so the next step tries again.
+	 */
+	private final boolean[] mLoopSounds;
+
+	private volatile boolean mRunning;
+	private volatile boolean mReleased;
+	private Thread mThread;
+	private long mFramesWritten;
+
+	PcmSoundEngine(final Context context, final SoundBank bank, long maxBytes)
+			throws IOException
+	{
+		/* Playing at the rate of the hardware saves the system resampling */
+		mSampleRate = AudioTrack
+				.getNativeOutputSampleRate(AudioManager.STREAM_MUSIC);
+		mBank = bank;
+		mSequencer = new Sequencer(bank.getCount(), mSampleRate,
+				Sequencer.DEFAULT_TEMPO);
+		mLoopSounds = new boolean[bank.getCount()];
+		mSamples = new SampleCache(new SampleCache.Loader()
+		{
+			public Sample load(int sound) throws IOException
+			{
+				return decode(context, sound);
+			}
+		}, maxBytes);
+
+		/*
+		 * The sounds only change when the app does, and updating the app
+		 * replaces its package file
+		 */
+		mCacheFile = new File(context.getCacheDir(), CACHE_FILE);
+		mCacheStamp = new File(context.getPackageCodePath()).lastModified();
+		long start = System.nanoTime();
+		mCached = SoundCacheFile.open(mCacheFile, mSampleRate, mCacheStamp,
+				bank.getCount());
+		if (mCached != null)
+		{
+			Log.d(TAG, "Mapped " + mCached.getCount() + " sounds, "
+					+ mCached.getByteCount() / 1024 + " kB, in "
+					+ (System.nanoTime() - start) / 1000 + " us");
+		}
+		startCacheFileThread(context);
+
+		int bufferBytes = Math.max(AudioTrack.getMinBufferSize(mSampleRate,
+				AudioFormat.CHANNEL_OUT_MONO, AudioFormat.ENCODING_PCM_16BIT),
+				BLOCK_FRAMES * 2 * 2);
+		mTrack = new AudioTrack(AudioManager.STREAM_MUSIC, mSampleRate,
+				AudioFormat.CHANNEL_OUT_MONO, AudioFormat.ENCODING_PCM_16BIT,
+				bufferBytes, AudioTrack.MODE_STREAM);
+		NativePlayers.opened(mTrack, "output at " + mSampleRate + " Hz");
+		if (mTrack.getState() != AudioTrack.STATE_INITIALIZED)
+		{
+			mTrack.release();
+			NativePlayers.closed(mTrack);
+			throw new IOException("Could not open audio output");
+		}
+		Log.d(TAG, "Output at " + mSampleRate + " Hz, buffer of "
+				+ bufferBytes / 2 + " frames");
+	}
+
+	@Override
+	public void play(final int sound)
+	{
+		final long tapped = System.nanoTime();
+		SoundCacheFile cached = mCached;
+		Sample sample = cached != null ? cached.getSample(sound) : mSamples
+				.getIfLoaded(sound);
+		if (sample != null)
+		{
+			enqueue(sample, tapped, false);
+			return;
+		}
+
+		mDecoder.execute(new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					enqueue(mSamples.load(sound), tapped, true);
+				} catch (IOException e)
+				{
+					Log.e(TAG, "Could not decode sound " + sound, e);
+				}
+			}
+		});
+	}
+
+	@Override
+	public void setLoopStep(final int sound, int step, boolean on)
+	{
+		mSequencer.setStep(sound, step, on);
+
+		/* The sequencer holds on to the sound, so it is only loaded once */
+		synchronized (mLoopSounds)
+		{
+			if (!on || mLoopSounds[sound])
+			{
+				return;
+			}
+			mLoopSounds[sound] = true;
+		}
+		SoundCacheFile cached = mCached;
+		if (cached != null)
+		{
+			mSequencer.setSound(sound, cached.getSample(sound));
+			return;
+		}
+		mDecoder.execute(new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					mSequencer.setSound(sound, mSamples.load(sound));
+				} catch (IOException e)
+				{
+					Log.e(TAG, "Could not decode sound " + sound, e);
+					synchronized (mLoopSounds)
+					{
+						mLoopSounds[sound] = false;
+					}
+				}
+			}
+		});
+	}
+
+	@Override
+	public Sequencer getSequencer()
+	{
+		return mSequencer;
+	}
+
+	@Override
+	public synchronized void resume()
+	{
+		if (mThread != null)
+		{
+			return;
+		}
+		mRunning = true;
+		mTrack.play();
+		mThread = new Thread(this, TAG);
+		mThread.start();
+	}
+
+	@Override
+	public synchronized void pause()
+	{
+		if (mThread == null)
+		{
+			return;
+		}
+		mRunning = false;
+		try
+		{
+			mThread.join();
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		mThread = null;
+		mTrack.pause();
+		mTrack.flush();
+
+		/* The flush puts the playback head back at 0, so we count from 0 too */
+		mFramesWritten = 0;
+
+		/* Whatever was playing is cut off, not resumed later */
+		mMixer.stopAll();
+	}
+
+	@Override
+	public void release()
+	{
+		mReleased = true;
+		mDecoder.shutdownNow();
+		pause();
+		mTrack.release();
+		NativePlayers.closed(mTrack);
+		mSamples.clear();
+		mBuffers.clear();
+	}
+
+	@Override
+	public LatencyStats getLatency()
+	{
+		return mLatency;
+	}
+
+	@Override
+	public LatencyStats getColdLatency()
+	{
+		return mColdLatency;
+	}
+
+	public void run()
+	{
+		Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+		while (mRunning)
+		{
+			startPending();
+			mSequencer.schedule(mMixer);
+			short[] block = mMixer.mix();
+
+			int written = 0;
+			while (written < BLOCK_FRAMES && mRunning)
+			{
+				int result = mTrack.write(block, written, BLOCK_FRAMES
+						- written);
+				if (result < 0)
+				{
+					Log.e(TAG, "Writing to the audio output failed: " + result);
+					mRunning = false;
+					return;
+				}
+				written += result;
+			}
+			mFramesWritten += written;
+		}
+	}
+
+	private Sample decode(Context context, int sound) throws IOException
+	{
+		return MediaDecoder.decode(context, mBank.getResource(sound), mBuffers)
+				.resampledTo(mSampleRate);
+	}
+
+	/*
+	 * Reads the cache file into memory in the background, or if there is none
+	 * yet, decodes every sound into it and then switches over to playing from
+	 * it. Until then, taps decode what they need as usual.
+	 */
+	private void startCacheFileThread(final Context context)
+	{
+		Thread thread = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+				SoundCacheFile cached = mCached;
+				if (cached != null)
+				{
+					cached.load();
+					return;
+				}
+
+				long start = System.nanoTime();
+				SoundCacheFile.Writer out = null;
+				try
+				{
+					out = new SoundCacheFile.Writer(mCacheFile, mSampleRate,
+							mCacheStamp, mBank.getCount());
+					for (int i = 0; i < mBank.getCount(); i++)
+					{
+						if (mReleased)
+						{
+							out.abort();
+							return;
+						}
+						out.add(decode(context, i));
+					}
+					out.finish();
+					out = null;
+
+					mCached = SoundCacheFile.open(mCacheFile, mSampleRate,
+							mCacheStamp, mBank.getCount());
+					/* Voices still playing keep what they need */
+					mSamples.clear();
+					Log.d(TAG, "Wrote " + mBank.getCount()
+							+ " sounds to the cache file in "
+							+ (System.nanoTime() - start) / 1000000 + " ms");
+				} catch (IOException e)
+				{
+					if (out != null)
+					{
+						out.abort();
+					}
+					Log.e(TAG, "Could not write the sound cache file", e);
+				}
+			}
+		}, "SoundCacheFile");
+		thread.start();
+	}
+
+	private void enqueue(Sample sample, long tapped, boolean cold)
+	{
+		synchronized (mPending)
+		{
+			if (mPendingCount < MAX_PENDING)
+			{
+				mPending[mPendingCount] = sample;
+				mPendingSince[mPendingCount] = tapped;
+				mPendingCold[mPendingCount] = cold;
+				mPendingCount++;
+			}
+		}
+	}
+
+	/*
+	 * Gives every tap since the last block a voice, taking the one that has
+	 * played the longest if they are all busy.
+	 */
+	private void startPending()
+	{
+		synchronized (mPending)
+		{
+			if (mPendingCount == 0)
+			{
+				return;
+			}
+
+			/* Frames in the track ahead of the block we are about to mix */
+			long queued = mFramesWritten
+					- (mTrack.getPlaybackHeadPosition() & 0xffffffffl);
+			long now = System.nanoTime();
+
+			for (int i = 0; i < mPendingCount; i++)
+			{
+				mMixer.start(mPending[i], 1);
+				mPending[i] = null;
+				LatencyStats latency = mPendingCold[i] ? mColdLatency
+						: mLatency;
+				latency.record(now - mPendingSince[i]
+						+ Math.max(0, queued) * 1000000000l / mSampleRate);
+			}
+			mPendingCount = 0;
+		}
+	}
+}
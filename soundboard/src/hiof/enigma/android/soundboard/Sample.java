@@ -0,0 +1,127 @@
+package hiof.enigma.android.soundboard;
+
+import java.nio.ShortBuffer;
+
+/**
+ * A sound, decoded into 16-bit mono PCM and ready to be played. Decoding an
+ * mp3 takes a lot longer than playing it, so we do it once and keep the
+ * result around.
+ *
+ * The PCM is either in an array of our own, or in a buffer mapped from the
+ * sound cache file, in which case it takes no heap at all and the system
+ * pages it in as it is played.
+ *
+ * @author William Killerud
+ *
+ */
+public class Sample
+{
+	private final short[] mPcm;
+	/* Only read from the thread that mixes, as reading moves its position */
+	private final ShortBuffer mMapped;
+	private final int mFrames;
+	private final int mSampleRate;
+
+	public Sample(short[] pcm, int sampleRate)
+	{
+		mPcm = pcm;
+		mMapped = null;
+		mFrames = pcm.length;
+		mSampleRate = sampleRate;
+	}
+
+	/* A sample of the PCM remaining in the buffer, which is not copied */
+	public Sample(ShortBuffer pcm, int sampleRate)
+	{
+		mPcm = null;
+		mMapped = pcm.slice();
+		mFrames = mMapped.remaining();
+		mSampleRate = sampleRate;
+	}
+
+	/*
+	 * Makes a mono sample out of interleaved PCM with any number of channels,
+	 * by averaging the channels of each frame.
+	 */
+	public static Sample fromInterleaved(short[] pcm, int length, int channels,
+			int sampleRate)
+	{
+		int frames = length / channels;
+		short[] mono = new short[frames];
+		for (int frame = 0; frame < frames; frame++)
+		{
+			int sum = 0;
+			for (int channel = 0; channel < channels; channel++)
+			{
+				sum += pcm[frame * channels + channel];
+			}
+			mono[frame] = (short) (sum / channels);
+		}
+		return new Sample(mono, sampleRate);
+	}
+
+	/*
+	 * Copies frames from the given position into the array. A mapped sample
+	 * must only be read by one thread at a time.
+	 */
+	public void read(int position, short[] into, int offset, int count)
+	{
+		if (mPcm != null)
+		{
+			System.arraycopy(mPcm, position, into, offset, count);
+		} else
+		{
+			mMapped.position(position);
+			mMapped.get(into, offset, count);
+		}
+	}
+
+	/* True if the PCM is in the sound cache file rather than on the heap */
+	public boolean isMapped()
+	{
+		return mMapped != null;
+	}
+
+	public int getSampleRate()
+	{
+		return mSampleRate;
+	}
+
+	public int getFrameCount()
+	{
+		return mFrames;
+	}
+
+	/*
+	 * Returns the sample at another sample rate, so it can be mixed straight
+	 * into the output without converting anything while playing. Linear
+	 * interpolation is plenty for short sound effects.
+	 */
+	public Sample resampledTo(int sampleRate)
+	{
+		if (sampleRate == mSampleRate || mFrames == 0)
+		{
+			return this;
+		}
+
+		short[] pcm = mPcm;
+		if (pcm == null)
+		{
+			pcm = new short[mFrames];
+			read(0, pcm, 0, mFrames);
+		}
+		int frames = (int) ((long) pcm.length * sampleRate / mSampleRate);
+		short[] resampled = new short[frames];
+		double step = (double) mSampleRate / sampleRate;
+		for (int i = 0; i < frames; i++)
+		{
+			double position = i * step;
+			int index = (int) position;
+			double fraction = position - index;
+			int next = Math.min(index + 1, pcm.length - 1);
+			resampled[i] = (short) Math.round(pcm[index] * (1 - fraction)
+					+ pcm[next] * fraction);
+		}
+		return new Sample(resampled, sampleRate);
+	}
+}
@@ -0,0 +1,134 @@
+package hiof.enigma.android.soundboard;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Decoded sounds, kept within a fixed number of bytes. A sound is decoded
+ * the first time it is asked for, and the sounds played least recently are
+ * dropped to make room, so a bank of hundreds of sounds neither has to be
+ * decoded before the board can be used nor fit in memory all at once.
+ * 
+ * A sound that is dropped while a voice is still playing it stays in memory
+ * until the voice is done, so the budget can be exceeded by what is playing.
+ * It may be used from any thread, but sounds should be loaded from a thread
+ * that can afford to wait.
+ * 
+ * @author William Killerud
+ * 
+ */
+public class SampleCache
+{
+	/* Decodes a sound, by its index in the bank */
+	public interface Loader
+	{
+		Sample load(int sound) throws IOException;
+	}
+
+	private final LinkedHashMap<Integer, Sample> mSamples = new LinkedHashMap<Integer, Sample>(
+			16, 0.75f, true);
+	private final Loader mLoader;
+	private final long mMaxBytes;
+	private long mBytes;
+
+	private int mHits;
+	private int mMisses;
+	private int mEvictions;
+
+	public SampleCache(Loader loader, long maxBytes)
+	{
+		mLoader = loader;
+		mMaxBytes = maxBytes;
+	}
+
+	/*
+	 * Returns the sound if it is already decoded, or null if it has to be
+	 * loaded first.
+	 */
+	public synchronized Sample getIfLoaded(int sound)
+	{
+		Sample sample = mSamples.get(sound);
+		if (sample == null)
+		{
+			mMisses++;
+		} else
+		{
+			mHits++;
+		}
+		return sample;
+	}
+
+	/* Returns the sound, decoding it first if need be */
+	public Sample load(int sound) throws IOException
+	{
+		synchronized (this)
+		{
+			Sample sample = mSamples.get(sound);
+			if (sample != null)
+			{
+				return sample;
+			}
+		}
+
+		/* Decoding takes a while, so other threads may use the cache meanwhile */
+		Sample sample = mLoader.load(sound);
+		put(sound, sample);
+		return sample;
+	}
+
+	public synchronized void clear()
+	{
+		mSamples.clear();
+		mBytes = 0;
+	}
+
+	public synchronized long getBytes()
+	{
+		return mBytes;
+	}
+
+	public synchronized int getLoadedCount()
+	{
+		return mSamples.size();
+	}
+
+	public synchronized int getHits()
+	{
+		return mHits;
+	}
+
+	public synchronized int getMisses()
+	{
+		return mMisses;
+	}
+
+	public synchronized int getEvictions()
+	{
+		return mEvictions;
+	}
+
+	private synchronized void put(int sound, Sample sample)
+	{
+		Sample replaced = mSamples.put(sound, sample);
+		if (replaced != null)
+		{
+			mBytes -= bytesOf(replaced);
+		}
+		mBytes += bytesOf(sample);
+
+		/* The sound just added is the last one we would drop */
+		Iterator<Sample> eldest = mSamples.values().iterator();
+		while (mBytes > mMaxBytes && mSamples.size() > 1)
+		{
+			mBytes -= bytesOf(eldest.next());
+			eldest.remove();
+			mEvictions++;
+		}
+	}
+
+	private static long bytesOf(Sample sample)
+	{
+		return sample.getFrameCount() * 2l;
+	}
+}
@@ -0,0 +1,207 @@
+package hiof.enigma.android.soundboard;
+
+/**
+ * Plays a pattern of sounds in a loop, one bar of sixteen steps at a time. A
+ * track is a sound, and each step of the bar either plays it or not, so coin
+ * on every beat is steps 0, 4, 8 and 12 of the coin track.
+ * 
+ * The timing is kept by counting frames on the mixer's clock, not by a timer,
+ * so every step starts on the exact frame it is due, however late the audio
+ * thread got to mixing that block. Any thread may change the pattern or the
+ * tempo. The changes are queued, and picked up by the audio thread before it
+ * mixes the next block.
+ * 
+ * @author William Killerud
+ * 
+ */
+public class Sequencer
+{
+	public static final int STEPS = 16;
+	public static final int STEPS_PER_BEAT = 4;
+	public static final float DEFAULT_TEMPO = 120;
+
+	private static final int SET_STEP = 1;
+	private static final int SET_SOUND = 2;
+	private static final int SET_TEMPO = 3;
+	private static final int START = 4;
+	private static final int STOP = 5;
+	private static final int CLEAR = 6;
+
+	private final CommandQueue mCommands = new CommandQueue(256);
+	private final int mSampleRate;
+
+	/* Only touched by the audio thread. Each track has a bit per step */
+	private final int[] mSteps;
+	private final Sample[] mSounds;
+	private boolean mPlaying;
+	private double mFramesPerStep;
+	private double mNextStepFrame;
+	private int mNextStep;
+
+	/* Written by the audio thread, read by anyone */
+	private volatile int mStepsPlayed;
+	private volatile int mLateSteps;
+	private volatile double mWorstErrorFrames;
+
+	public Sequencer(int tracks, int sampleRate, float beatsPerMinute)
+	{
+		mSampleRate = sampleRate;
+		mSteps = new int[tracks];
+		mSounds = new Sample[tracks];
+		mFramesPerStep = framesPerStep(beatsPerMinute);
+	}
+
+	/*
+	 * The methods that change the sequencer may be called from any thread, and
+	 * return false if the change couldn't be queued.
+	 */
+	public boolean setStep(int track, int step, boolean on)
+	{
+		return mCommands.offer(SET_STEP, track, on ? step : ~step, null);
+	}
+
+	/* The sound the track plays, or null for none */
+	public boolean setSound(int track, Sample sound)
+	{
+		return mCommands.offer(SET_SOUND, track, 0, sound);
+	}
+
+	public boolean setTempo(float beatsPerMinute)
+	{
+		return mCommands.offer(SET_TEMPO, Float
+				.floatToIntBits(beatsPerMinute), 0, null);
+	}
+
+	/* Starts the bar over, from the next block */
+	public boolean start()
+	{
+		return mCommands.offer(START, 0, 0, null);
+	}
+
+	public boolean stop()
+	{
+		return mCommands.offer(STOP, 0, 0, null);
+	}
+
+	/* Turns every step of every track off */
+	public boolean clear()
+	{
+		return mCommands.offer(CLEAR, 0, 0, null);
+	}
+
+	public int getStepsPlayed()
+	{
+		return mStepsPlayed;
+	}
+
+	/* Steps that were due before the block they ended up in */
+	public int getLateSteps()
+	{
+		return mLateSteps;
+	}
+
+	/* The furthest a step has been from where it was due, in milliseconds */
+	public double getWorstErrorMillis()
+	{
+		return mWorstErrorFrames * 1000 / mSampleRate;
+	}
+
+	/*
+	 * Applies the queued changes and starts the voices for the steps due in
+	 * the next block. Must be called by the audio thread, right before it has
+	 * the mixer mix that block.
+	 */
+	public void schedule(Mixer mixer)
+	{
+		long blockStart = mixer.getFramesMixed();
+		while (mCommands.poll())
+		{
+			apply(blockStart);
+		}
+		if (!mPlaying)
+		{
+			return;
+		}
+
+		long blockEnd = blockStart + mixer.getBlockFrames();
+		while (true)
+		{
+			long frame = Math.round(mNextStepFrame);
+			if (frame >= blockEnd)
+			{
+				break;
+			}
+
+			int delay = 0;
+			if (frame < blockStart)
+			{
+				/* Only if blocks were mixed without scheduling them first */
+				mLateSteps++;
+			} else
+			{
+				delay = (int) (frame - blockStart);
+			}
+			double error = Math.abs(blockStart + delay - mNextStepFrame);
+			if (error > mWorstErrorFrames)
+			{
+				mWorstErrorFrames = error;
+			}
+
+			int bit = 1 << mNextStep;
+			for (int track = 0; track < mSteps.length; track++)
+			{
+				if ((mSteps[track] & bit) != 0 && mSounds[track] != null)
+				{
+					mixer.start(mSounds[track], 1, delay);
+				}
+			}
+			mStepsPlayed++;
+			mNextStep = (mNextStep + 1) % STEPS;
+			mNextStepFrame += mFramesPerStep;
+		}
+	}
+
+	private void apply(long blockStart)
+	{
+		CommandQueue command = mCommands;
+		switch (command.getOp())
+		{
+		case SET_STEP:
+			int step = command.getSecond();
+			if (step >= 0)
+			{
+				mSteps[command.getFirst()] |= 1 << step;
+			} else
+			{
+				mSteps[command.getFirst()] &= ~(1 << ~step);
+			}
+			break;
+		case SET_SOUND:
+			mSounds[command.getFirst()] = (Sample) command.getObject();
+			break;
+		case SET_TEMPO:
+			mFramesPerStep = framesPerStep(Float.intBitsToFloat(command
+					.getFirst()));
+			break;
+		case START:
+			mPlaying = true;
+			mNextStep = 0;
+			mNextStepFrame = blockStart;
+			break;
+		case STOP:
+			mPlaying = false;
+			break;
+		case CLEAR:
+			for (int track = 0; track < mSteps.length; track++)
+			{
+				mSteps[track] = 0;
+			}
+			break;
+		}
+	}
+
+	private double framesPerStep(float beatsPerMinute)
+	{
+		return mSampleRate * 60.0 / beatsPerMinute / STEPS_PER_BEAT;
+	}
+}
@@ -0,0 +1,94 @@
+package hiof.enigma.android.soundboard;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import android.content.res.Resources;
+import android.content.res.XmlResourceParser;
+
+/**
+ * The sounds on the board, as listed in res/xml/sound_bank.xml. Each sound
+ * has a label, and the sound file in res/raw. Adding a sound to the board is
+ * just a matter of adding it to that file.
+ * 
+ * @author William Killerud
+ * 
+ */
+public class SoundBank
+{
+	private final String[] mLabels;
+	private final int[] mResources;
+
+	public SoundBank(String[] labels, int[] resources)
+	{
+		mLabels = labels;
+		mResources = resources;
+	}
+
+	/*
+	 * Reads a bank from an xml resource of sound tags, each with a label
+	 * string and a file in res/raw.
+	 */
+	public static SoundBank fromXml(Resources resources, int xml)
+			throws IOException
+	{
+		List<String> labels = new ArrayList<String>();
+		List<Integer> files = new ArrayList<Integer>();
+		XmlResourceParser parser = resources.getXml(xml);
+		try
+		{
+			for (int event = parser.next(); event != XmlPullParser.END_DOCUMENT; event = parser
+					.next())
+			{
+				if (event != XmlPullParser.START_TAG
+						|| !"sound".equals(parser.getName()))
+				{
+					continue;
+				}
+				int label = parser.getAttributeResourceValue(null, "label", 0);
+				int file = parser.getAttributeResourceValue(null, "file", 0);
+				if (label == 0 || file == 0)
+				{
+					throw new IOException("A sound needs a label and a file");
+				}
+				labels.add(resources.getString(label));
+				files.add(file);
+			}
+		} catch (XmlPullParserException e)
+		{
+			throw new IOException("Could not read the sound bank: "
+					+ e.getMessage());
+		} finally
+		{
+			parser.close();
+		}
+
+		int[] fileArray = new int[files.size()];
+		for (int i = 0; i < fileArray.length; i++)
+		{
+			fileArray[i] = files.get(i);
+		}
+		return new SoundBank(labels.toArray(new String[labels.size()]),
+				fileArray);
+	}
+
+	public int getCount()
+	{
+		return mLabels.length;
+	}
+
+	public String getLabel(int sound)
+	{
+		return mLabels[sound];
+	}
+
+	/* The raw resource the sound is decoded from */
+	public int getResource(int sound)
+	{
+		return mResources[sound];
+	}
+}
@@ -0,0 +1,79 @@
+package hiof.enigma.android.soundboard;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.View.OnClickListener;
+import android.view.View.OnLongClickListener;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.Button;
+
+/**
+ * Makes a button for each sound in the bank. The buttons share one click
+ * listener and one long click listener, which find the sound from the
+ * button's tag, so the grid can hold hundreds of sounds without listeners for
+ * each.
+ * 
+ * @author William Killerud
+ * 
+ */
+public class SoundBankAdapter extends BaseAdapter
+{
+	private final LayoutInflater mInflater;
+	private final SoundBank mBank;
+	private final OnClickListener mListener;
+	private final OnLongClickListener mLongListener;
+	private boolean mEnabled;
+
+	/*
+	 * The listeners are given the button that was tapped. Its tag is the index
+	 * of the sound in the bank.
+	 */
+	public SoundBankAdapter(Context context, SoundBank bank,
+			OnClickListener listener, OnLongClickListener longListener)
+	{
+		mInflater = LayoutInflater.from(context);
+		mBank = bank;
+		mListener = listener;
+		mLongListener = longListener;
+	}
+
+	/* The buttons are disabled until there is something to play them with */
+	public void setEnabled(boolean enabled)
+	{
+		mEnabled = enabled;
+		notifyDataSetChanged();
+	}
+
+	public int getCount()
+	{
+		return mBank.getCount();
+	}
+
+	public Object getItem(int position)
+	{
+		return mBank.getLabel(position);
+	}
+
+	public long getItemId(int position)
+	{
+		return position;
+	}
+
+	public View getView(int position, View convertView, ViewGroup parent)
+	{
+		Button button = (Button) convertView;
+		if (button == null)
+		{
+			button = (Button) mInflater.inflate(R.layout.sound_button, parent,
+					false);
+			button.setOnClickListener(mListener);
+			button.setOnLongClickListener(mLongListener);
+		}
+		button.setText(mBank.getLabel(position));
+		button.setTag(Integer.valueOf(position));
+		button.setEnabled(mEnabled);
+		return button;
+	}
+}
@@ -0,0 +1,255 @@
+package hiof.enigma.android.soundboard;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Every sound of the bank, decoded to PCM at the output sample rate and kept
+ * in one file. Opening it maps the file into memory and reads nothing but the
+ * header, so the board can play any sound right away, and the sounds take no
+ * heap since voices mix them straight from the mapped file.
+ * 
+ * The file is a header, a table with where each sound starts and how many
+ * frames it has, and the PCM of all the sounds after each other. Everything
+ * is in the byte order of the device, as the file never leaves it. The file
+ * is only good for the sample rate and the stamp it was written with, where
+ * the stamp tells which version of the sounds it was made from.
+ * 
+ * @author William Killerud
+ * 
+ */
+public class SoundCacheFile
+{
+	private static final int MAGIC = 0x53425043;
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 32;
+	private static final int ENTRY_BYTES = 8;
+
+	private final MappedByteBuffer mMap;
+	private final Sample[] mSamples;
+
+	private SoundCacheFile(MappedByteBuffer map, Sample[] samples)
+	{
+		mMap = map;
+		mSamples = samples;
+	}
+
+	/*
+	 * Maps the file, or returns null if there is none, or it was written for
+	 * another sample rate, stamp or number of sounds, or it is broken.
+	 */
+	public static SoundCacheFile open(File file, int sampleRate, long stamp,
+			int count) throws IOException
+	{
+		if (!file.isFile())
+		{
+			return null;
+		}
+
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		MappedByteBuffer map;
+		try
+		{
+			/* A buffer can't hold more than this, and no bank is this big */
+			if (in.length() > Integer.MAX_VALUE)
+			{
+				return null;
+			}
+			/* The mapping stays valid after the file is closed */
+			map = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+					in.length());
+		} finally
+		{
+			in.close();
+		}
+		map.order(ByteOrder.nativeOrder());
+
+		long length = map.capacity();
+		long dataStart = HEADER_BYTES + (long) count * ENTRY_BYTES;
+		if (length < dataStart || map.getInt(0) != MAGIC
+				|| map.getInt(4) != VERSION || map.getInt(8) != sampleRate
+				|| map.getInt(12) != count || map.getLong(16) != stamp)
+		{
+			return null;
+		}
+
+		Sample[] samples = new Sample[count];
+		for (int i = 0; i < count; i++)
+		{
+			int entry = HEADER_BYTES + i * ENTRY_BYTES;
+			long start = dataStart + map.getInt(entry) * 2l;
+			long end = start + map.getInt(entry + 4) * 2l;
+			if (start < dataStart || end < start || end > length)
+			{
+				return null;
+			}
+
+			ByteBuffer bytes = map.duplicate();
+			bytes.limit((int) end);
+			bytes.position((int) start);
+			ByteBuffer pcm = bytes.slice().order(ByteOrder.nativeOrder());
+			samples[i] = new Sample(pcm.asShortBuffer(), sampleRate);
+		}
+		return new SoundCacheFile(map, samples);
+	}
+
+	public int getCount()
+	{
+		return mSamples.length;
+	}
+
+	public Sample getSample(int sound)
+	{
+		return mSamples[sound];
+	}
+
+	public long getByteCount()
+	{
+		return mMap.capacity();
+	}
+
+	/*
+	 * Reads the whole file into memory, so the audio thread doesn't have to
+	 * wait for the disk the first time it plays a sound. This takes a while,
+	 * so do it in the background.
+	 */
+	public void load()
+	{
+		mMap.load();
+	}
+
+	/**
+	 * Writes a cache file one sound at a time, so the sounds never have to be
+	 * in memory all at once. The file is written next to where it goes and
+	 * only moved there when it is finished, so a half written file is never
+	 * opened.
+	 * 
+	 * @author William Killerud
+	 * 
+	 */
+	public static class Writer
+	{
+		/* How much PCM is written at a time */
+		private static final int CHUNK_FRAMES = 16 * 1024;
+
+		private final File mFile;
+		private final File mPartial;
+		private final RandomAccessFile mOut;
+		private final FileChannel mChannel;
+		private final int mSampleRate;
+		private final long mStamp;
+		private final int[] mStarts;
+		private final int[] mFrames;
+		private final ByteBuffer mChunk = ByteBuffer.allocateDirect(
+				CHUNK_FRAMES * 2).order(ByteOrder.nativeOrder());
+		private final short[] mRead = new short[CHUNK_FRAMES];
+		private int mAdded;
+		private int mWrittenFrames;
+
+		public Writer(File file, int sampleRate, long stamp, int count)
+				throws IOException
+		{
+			mFile = file;
+			mPartial = new File(file.getPath() + ".partial");
+			mOut = new RandomAccessFile(mPartial, "rw");
+			mOut.setLength(0);
+			mChannel = mOut.getChannel();
+			mSampleRate = sampleRate;
+			mStamp = stamp;
+			mStarts = new int[count];
+			mFrames = new int[count];
+
+			/* Room for the header and the table, which are written last */
+			mChannel.position(HEADER_BYTES + (long) count * ENTRY_BYTES);
+		}
+
+		/* Adds the next sound, which must be at the sample rate of the file */
+		public void add(Sample sample) throws IOException
+		{
+			if (sample.getSampleRate() != mSampleRate)
+			{
+				throw new IllegalArgumentException("Sample at "
+						+ sample.getSampleRate() + " Hz, expected "
+						+ mSampleRate);
+			}
+			int frames = sample.getFrameCount();
+			mStarts[mAdded] = mWrittenFrames;
+			mFrames[mAdded] = frames;
+			mAdded++;
+
+			for (int done = 0; done < frames; done += CHUNK_FRAMES)
+			{
+				int chunk = Math.min(CHUNK_FRAMES, frames - done);
+				sample.read(done, mRead, 0, chunk);
+				mChunk.clear();
+				mChunk.asShortBuffer().put(mRead, 0, chunk);
+				mChunk.limit(chunk * 2);
+				while (mChunk.hasRemaining())
+				{
+					mChannel.write(mChunk);
+				}
+			}
+			mWrittenFrames += frames;
+		}
+
+		/* Writes the header and the table, and moves the file in place */
+		public void finish() throws IOException
+		{
+			if (mAdded != mStarts.length)
+			{
+				abort();
+				throw new IOException("Only " + mAdded + " of "
+						+ mStarts.length + " sounds were added");
+			}
+
+			ByteBuffer head = ByteBuffer.allocate(
+					HEADER_BYTES + mStarts.length * ENTRY_BYTES).order(
+					ByteOrder.nativeOrder());
+			head.putInt(MAGIC).putInt(VERSION).putInt(mSampleRate)
+					.putInt(mStarts.length).putLong(mStamp);
+			head.position(HEADER_BYTES);
+			for (int i = 0; i < mStarts.length; i++)
+			{
+				head.putInt(mStarts[i]).putInt(mFrames[i]);
+			}
+			head.flip();
+			try
+			{
+				mChannel.position(0);
+				while (head.hasRemaining())
+				{
+					mChannel.write(head);
+				}
+				mChannel.force(false);
+			} finally
+			{
+				mOut.close();
+			}
+
+			if (!mPartial.renameTo(mFile))
+			{
+				mPartial.delete();
+				throw new IOException("Could not move " + mPartial + " to "
+						+ mFile);
+			}
+		}
+
+		/* Gives up on the file, leaving any older one as it was */
+		public void abort()
+		{
+			try
+			{
+				mOut.close();
+			} catch (IOException e)
+			{
+				/* Deleting it is all that matters */
+			}
+			mPartial.delete();
+		}
+	}
+}
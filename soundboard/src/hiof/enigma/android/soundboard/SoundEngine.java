@@ -0,0 +1,69 @@
+package hiof.enigma.android.soundboard;
+
+import java.io.IOException;
+
+import android.content.Context;
+import android.os.Build;
+import edu.killerud.audioassets.LatencyStats;
+
+/**
+ * Plays the sounds of a sound bank with as little delay as possible. A sound
+ * is loaded the first time it is played and kept while there is room for it,
+ * after which playing it is just a matter of telling a free voice to start on
+ * it, so taps that come quickly overlap instead of cutting each other off.
+ * 
+ * On Android 4.1 and up the sounds are decoded into PCM and mixed by our own
+ * audio thread, which also measures the latency. Older versions can't decode
+ * mp3 for us, so there we leave the decoding and mixing to SoundPool.
+ * 
+ * @author William Killerud
+ * 
+ */
+public abstract class SoundEngine
+{
+	/* How many sounds can play at once */
+	protected static final int VOICES = 8;
+
+	/*
+	 * Opens the audio output, which may take a moment, so don't call this from
+	 * the UI thread. Decoded sounds are kept within the given number of bytes.
+	 * The sounds are played by their index in the bank.
+	 */
+	public static SoundEngine create(Context context, SoundBank bank,
+			long maxBytes) throws IOException
+	{
+		if (Build.VERSION.SDK_INT >= 16)
+		{
+			return new PcmSoundEngine(context, bank, maxBytes);
+		}
+		return new SoundPoolEngine(context, bank);
+	}
+
+	public abstract void play(int sound);
+
+	/* Starts the audio output, call when the activity comes into view */
+	public abstract void resume();
+
+	/* Stops the audio output, call when the activity goes out of view */
+	public abstract void pause();
+
+	public abstract void release();
+
+	/*
+	 * How long taps on sounds that were already loaded took to be heard.
+	 * Returns null if this engine can't tell.
+	 */
+	public abstract LatencyStats getLatency();
+
+	/* The same, for taps that had to load the sound first */
+	public abstract LatencyStats getColdLatency();
+
+	/*
+	 * Turns a step of the loop on or off for a sound, loading the sound first
+	 * if need be. Does nothing if this engine can't loop.
+	 */
+	public abstract void setLoopStep(int sound, int step, boolean on);
+
+	/* Plays the loop, or returns null if this engine can't */
+	public abstract Sequencer getSequencer();
+}
@@ -0,0 +1,182 @@
+package hiof.enigma.android.soundboard;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import android.content.Context;
+import android.media.AudioManager;
+import android.media.SoundPool;
+import edu.killerud.audioassets.LatencyStats;
+import edu.killerud.audioassets.NativePlayers;
+
+/**
+ * The sound engine for Android versions before 4.1. SoundPool decodes every
+ * sound once when it is loaded and mixes up to a fixed number of them, which
+ * is what we want, but it can't tell us how long anything took.
+ *
+ * SoundPool doesn't tell us how big a sound is either, so instead of a
+ * memory budget we keep a fixed number of sounds loaded. Loading happens in
+ * the background, and SoundPool refuses to play a sound until it is done, so
+ * the first tap on a sound waits for it on a thread of its own.
+ *
+ * @author William Killerud
+ *
+ */
+class SoundPoolEngine extends SoundEngine
+{
+	/* How many sounds we keep loaded */
+	private static final int MAX_LOADED = 32;
+
+	/* How often and how long a tap waits for its sound to load */
+	private static final long LOAD_POLL_MILLIS = 10;
+	private static final int LOAD_POLLS = 200;
+
+	private final Context mContext;
+	private final SoundBank mBank;
+	private final SoundPool mPool;
+	private final ExecutorService mLoader = Executors.newSingleThreadExecutor();
+
+	/* Sound pool IDs by our sound index, least recently played first */
+	private final LinkedHashMap<Integer, Integer> mLoaded = new LinkedHashMap<Integer, Integer>(
+			16, 0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, Integer> eldest)
+		{
+			if (size() > MAX_LOADED)
+			{
+				mPool.unload(eldest.getValue());
+				return true;
+			}
+			return false;
+		}
+	};
+
+	/* The streams we started last, so they can be stopped when we pause */
+	private final int[] mStreams = new int[VOICES];
+	private int mNextStream;
+
+	SoundPoolEngine(Context context, SoundBank bank)
+	{
+		mContext = context;
+		mBank = bank;
+		mPool = new SoundPool(VOICES, AudioManager.STREAM_MUSIC, 0);
+		NativePlayers.opened(mPool, bank.getCount() + " sounds");
+	}
+
+	@Override
+	public void play(int sound)
+	{
+		Integer id;
+		synchronized (mLoaded)
+		{
+			id = mLoaded.get(sound);
+			if (id == null)
+			{
+				id = mPool.load(mContext, mBank.getResource(sound), 1);
+				mLoaded.put(sound, id);
+			} else if (start(id))
+			{
+				return;
+			}
+		}
+
+		/* Not done loading yet, so wait for it out of the way */
+		final int loading = id;
+		mLoader.execute(new Runnable()
+		{
+			public void run()
+			{
+				for (int i = 0; i < LOAD_POLLS; i++)
+				{
+					if (start(loading))
+					{
+						return;
+					}
+					try
+					{
+						Thread.sleep(LOAD_POLL_MILLIS);
+					} catch (InterruptedException e)
+					{
+						return;
+					}
+				}
+			}
+		});
+	}
+
+	@Override
+	public void resume()
+	{
+		/* SoundPool is always ready to play */
+	}
+
+	@Override
+	public void pause()
+	{
+		/* Short sounds aren't worth resuming, so they are just stopped */
+		synchronized (mStreams)
+		{
+			for (int i = 0; i < mStreams.length; i++)
+			{
+				if (mStreams[i] != 0)
+				{
+					mPool.stop(mStreams[i]);
+					mStreams[i] = 0;
+				}
+			}
+		}
+	}
+
+	@Override
+	public void release()
+	{
+		mLoader.shutdownNow();
+		mPool.release();
+		NativePlayers.closed(mPool);
+	}
+
+	@Override
+	public LatencyStats getLatency()
+	{
+		return null;
+	}
+
+	@Override
+	public LatencyStats getColdLatency()
+	{
+		return null;
+	}
+
+	@Override
+	public void setLoopStep(int sound, int step, boolean on)
+	{
+		/* Without a clock of our own, a loop can't be kept in time */
+	}
+
+	@Override
+	public Sequencer getSequencer()
+	{
+		return null;
+	}
+
+	/* Returns false if the sound isn't loaded yet */
+	private boolean start(int id)
+	{
+		int stream = mPool.play(id, 1, 1, 1, 0, 1);
+		if (stream == 0)
+		{
+			return false;
+		}
+		synchronized (mStreams)
+		{
+			mStreams[mNextStream] = stream;
+			mNextStream = (mNextStream + 1) % mStreams.length;
+		}
+		return true;
+	}
+}
@@ -1,11 +1,25 @@
 package hiof.enigma.android.soundboard;
 
+import java.io.IOException;
+
 import android.app.Activity;
-import android.media.MediaPlayer;
+import android.app.ActivityManager;
+import android.app.AlertDialog;
+import android.content.DialogInterface;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
 import android.view.View;
 import android.view.View.OnClickListener;
-import android.widget.Button;
+import android.view.View.OnLongClickListener;
+import android.widget.CompoundButton;
+import android.widget.CompoundButton.OnCheckedChangeListener;
+import android.widget.GridView;
+import android.widget.TextView;
+import android.widget.Toast;
+import android.widget.ToggleButton;
+import edu.killerud.audioassets.LatencyStats;
+import edu.killerud.audioassets.NativePlayers;
 
 /**
  * An example showcasing the creation of a very simple soundboard, using only
@@ -19,7 +33,36 @@ import android.widget.Button;
  */
 public class Soundboard extends Activity
 {
-	private static MediaPlayer mediaplayer;
+	/* How much of the memory the app may use we spend on decoded sounds */
+	private static final int SOUND_MEMORY_SHARE = 4;
+
+	/* How long after a tap we look up how long it took */
+	private static final long LATENCY_UPDATE_DELAY = 200;
+
+	/* How often the timing of the loop is shown while it plays */
+	private static final long LOOP_UPDATE_DELAY = 1000;
+
+	/*
+	 * Plays our sounds. It is null until the sounds are loaded, and the
+	 * buttons are disabled until then.
+	 */
+	private SoundEngine mSounds;
+	private boolean mResumed;
+
+	/*
+	 * Set once the activity is gone, which it may be, as when the screen is
+	 * turned, before the sounds are loaded
+	 */
+	private boolean mDestroyed;
+
+	private SoundBank mBank;
+	private SoundBankAdapter mAdapter;
+	private ToggleButton mLoop;
+	private TextView mLatencyOut;
+
+	/* The steps of the loop each sound plays on */
+	private boolean[][] mPattern;
+	private final Handler mHandler = new Handler();
 
 	/** Called when the activity is first created. */
 	@Override
@@ -34,38 +77,257 @@ public class Soundboard extends Activity
 		setContentView(R.layout.soundboard);
 
 		/*
-		 * Creates instances of the buttons from our layout file in code
+		 * Reads the list of sounds, and makes a button for each of them. None
+		 * of the sounds are decoded until they are first played.
 		 */
-		Button coin = (Button) findViewById(R.id.Coin);
-		Button tube = (Button) findViewById(R.id.Tube);
+		try
+		{
+			mBank = SoundBank.fromXml(getResources(), R.xml.sound_bank);
+		} catch (IOException e)
+		{
+			Toast.makeText(getApplicationContext(),
+					R.string.load_error_english, Toast.LENGTH_LONG).show();
+			finish();
+			return;
+		}
+		mAdapter = new SoundBankAdapter(this, mBank, new OnClickListener()
+		{
+			public void onClick(View button)
+			{
+				playSound((Integer) button.getTag());
+			}
+		}, new OnLongClickListener()
+		{
+			public boolean onLongClick(View button)
+			{
+				return showPattern((Integer) button.getTag());
+			}
+		});
+		((GridView) findViewById(R.id.Sounds)).setAdapter(mAdapter);
+		mLatencyOut = (TextView) findViewById(R.id.Latency);
 
 		/*
-		 * Create the listeners for each of our buttons, and determine what to
-		 * do on click
+		 * The loop is kept in time by the audio thread, so all we do here is
+		 * tell it to start or stop
 		 */
-		coin.setOnClickListener(new OnClickListener()
+		mPattern = new boolean[mBank.getCount()][Sequencer.STEPS];
+		mLoop = (ToggleButton) findViewById(R.id.Loop);
+		mLoop.setOnCheckedChangeListener(new OnCheckedChangeListener()
 		{
-			public void onClick(View view)
+			public void onCheckedChanged(CompoundButton button, boolean checked)
 			{
-				/*
-				 * Creates the media player with the wanted file, then starts it
-				 * right away
-				 */
-				mediaplayer = MediaPlayer.create(getApplicationContext(),
-						R.raw.coin);
-				mediaplayer.start();
+				Sequencer sequencer = mSounds == null ? null : mSounds
+						.getSequencer();
+				if (sequencer == null)
+				{
+					return;
+				}
+				if (checked)
+				{
+					sequencer.start();
+					mHandler.postDelayed(mShowLatency, LOOP_UPDATE_DELAY);
+				} else
+				{
+					sequencer.stop();
+				}
 			}
 		});
 
-		tube.setOnClickListener(new OnClickListener()
+		/*
+		 * Opening the audio output takes a moment, so it is done in the
+		 * background
+		 */
+		new LoadSoundsTask().execute();
+	}
+
+	@Override
+	protected void onResume()
+	{
+		super.onResume();
+		mResumed = true;
+		if (mSounds != null)
+		{
+			mSounds.resume();
+		}
+	}
+
+	@Override
+	protected void onPause()
+	{
+		super.onPause();
+		mResumed = false;
+		if (mSounds != null)
 		{
-			public void onClick(View view)
+			mSounds.pause();
+		}
+	}
+
+	@Override
+	protected void onDestroy()
+	{
+		super.onDestroy();
+		mDestroyed = true;
+		mHandler.removeCallbacks(mShowLatency);
+		if (mSounds != null)
+		{
+			/* Frees the audio output and the decoded sounds */
+			mSounds.release();
+			mSounds = null;
+			if (isFinishing())
 			{
-				mediaplayer = MediaPlayer.create(getApplicationContext(),
-						R.raw.tube);
-				mediaplayer.start();
+				NativePlayers.logLive("Soundboard");
 			}
-		});
+		}
+	}
+
+	private void playSound(int sound)
+	{
+		if (mSounds != null)
+		{
+			mSounds.play(sound);
+			mHandler.removeCallbacks(mShowLatency);
+			mHandler.postDelayed(mShowLatency, LATENCY_UPDATE_DELAY);
+		}
+	}
 
+	/*
+	 * Lets the user pick the steps of the bar the sound plays on when looping.
+	 */
+	private boolean showPattern(final int sound)
+	{
+		if (mSounds == null || mSounds.getSequencer() == null)
+		{
+			return false;
+		}
+
+		String[] steps = new String[Sequencer.STEPS];
+		for (int i = 0; i < steps.length; i++)
+		{
+			steps[i] = getString(R.string.step_english, i
+					/ Sequencer.STEPS_PER_BEAT + 1, i % Sequencer.STEPS_PER_BEAT
+					+ 1);
+		}
+		new AlertDialog.Builder(this).setTitle(
+				getString(R.string.pattern_title_english, mBank
+						.getLabel(sound))).setMultiChoiceItems(steps,
+				mPattern[sound],
+				new DialogInterface.OnMultiChoiceClickListener()
+				{
+					public void onClick(DialogInterface dialog, int step,
+							boolean on)
+					{
+						mPattern[sound][step] = on;
+						mSounds.setLoopStep(sound, step, on);
+					}
+				}).setPositiveButton(android.R.string.ok, null).show();
+		return true;
+	}
+
+	/*
+	 * Shows how long the last tap took to be heard, and how well the loop
+	 * keeps time while it plays. Not every sound engine can tell, in which
+	 * case nothing is shown.
+	 */
+	private final Runnable mShowLatency = new Runnable()
+	{
+		public void run()
+		{
+			if (mSounds == null || mSounds.getLatency() == null)
+			{
+				return;
+			}
+			StringBuilder text = new StringBuilder();
+			appendLatency(text, R.string.latency_english, mSounds.getLatency());
+			appendLatency(text, R.string.cold_latency_english, mSounds
+					.getColdLatency());
+
+			Sequencer sequencer = mSounds.getSequencer();
+			if (sequencer != null && sequencer.getStepsPlayed() > 0)
+			{
+				if (text.length() > 0)
+				{
+					text.append('\n');
+				}
+				text.append(getString(R.string.loop_timing_english, sequencer
+						.getStepsPlayed(), sequencer.getLateSteps(), sequencer
+						.getWorstErrorMillis()));
+			}
+			mLatencyOut.setText(text);
+
+			if (mLoop.isChecked())
+			{
+				mHandler.removeCallbacks(this);
+				mHandler.postDelayed(this, LOOP_UPDATE_DELAY);
+			}
+		}
+	};
+
+	private void appendLatency(StringBuilder text, int format,
+			LatencyStats latency)
+	{
+		if (latency.getCount() == 0)
+		{
+			return;
+		}
+		if (text.length() > 0)
+		{
+			text.append('\n');
+		}
+		text.append(getString(format, latency.getLastMillis(), latency
+				.getMedianMillis(), latency.getWorstMillis(), latency
+				.getCount()));
+	}
+
+	/*
+	 * Opens the sound engine, then enables the buttons.
+	 */
+	private class LoadSoundsTask extends AsyncTask<Void, Void, SoundEngine>
+	{
+		@Override
+		protected SoundEngine doInBackground(Void... params)
+		{
+			try
+			{
+				ActivityManager activities = (ActivityManager) getSystemService(ACTIVITY_SERVICE);
+				long maxBytes = activities.getMemoryClass() * 1024l * 1024
+						/ SOUND_MEMORY_SHARE;
+				return SoundEngine.create(getApplicationContext(), mBank,
+						maxBytes);
+			} catch (IOException e)
+			{
+				return null;
+			}
+		}
+
+		@Override
+		protected void onPostExecute(SoundEngine sounds)
+		{
+			if (sounds == null)
+			{
+				Toast.makeText(getApplicationContext(),
+						R.string.load_error_english, Toast.LENGTH_LONG).show();
+				return;
+			}
+			/*
+			 * Turning the screen destroys the activity without it finishing,
+			 * and the new one loads its own engine, so this one is no use
+			 */
+			if (isFinishing() || mDestroyed)
+			{
+				sounds.release();
+				return;
+			}
+
+			mSounds = sounds;
+			if (mResumed)
+			{
+				mSounds.resume();
+			}
+			mAdapter.setEnabled(true);
+			if (mSounds.getSequencer() != null)
+			{
+				mLoop.setVisibility(View.VISIBLE);
+			}
+		}
 	}
-}
\ No newline at end of file
+}